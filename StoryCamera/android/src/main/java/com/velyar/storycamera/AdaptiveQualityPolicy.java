@@ -0,0 +1,148 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraMetadata;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.CameraInfo;
+
+/**
+ * Caps the requested capture tier to what the device can sustain for a whole take.
+ *
+ * Three signals each allow a highest tier: the current thermal status (a hot device throttles
+ * the encoder and drops frames), the camera's hardware level (LEGACY and LIMITED devices run
+ * fewer and smaller streams) and the declared media performance class (Android 12+). The lowest
+ * of those caps wins and is reported as the reason. The policy only ever lowers the request.
+ */
+public class AdaptiveQualityPolicy {
+    private static final String TAG = "AdaptiveQualityPolicy";
+
+    public static final String REASON_REQUESTED = "requested";
+    public static final String REASON_THERMAL = "thermal";
+    public static final String REASON_HARDWARE_LEVEL = "hardwareLevel";
+    public static final String REASON_PERFORMANCE_CLASS = "performanceClass";
+
+    static final int THERMAL_UNKNOWN = -1;
+    static final int HARDWARE_LEVEL_UNKNOWN = -1;
+
+    private static final int SD = 0;
+    private static final int HD = 1;
+    private static final int FHD = 2;
+    private static final int UHD = 3;
+
+    public static class Decision {
+        public final CaptureProfile profile;
+        public final String reason;
+        public final int thermalStatus;
+        public final int hardwareLevel;
+        public final int performanceClass;
+
+        Decision(CaptureProfile profile, String reason, int thermalStatus, int hardwareLevel, int performanceClass) {
+            this.profile = profile;
+            this.reason = reason;
+            this.thermalStatus = thermalStatus;
+            this.hardwareLevel = hardwareLevel;
+            this.performanceClass = performanceClass;
+        }
+    }
+
+    /** Caps {@code requested} by signals read with thermalStatus(), hardwareLevel() and performanceClass(). */
+    static Decision decide(CaptureProfile requested, int thermalStatus, int hardwareLevel, int performanceClass) {
+        int tier = CaptureProfile.tierIndex(requested.effectiveTier());
+        int cap = tier;
+        String reason = REASON_REQUESTED;
+
+        int thermalCap = thermalCap(thermalStatus);
+        if (thermalCap < cap) {
+            cap = thermalCap;
+            reason = REASON_THERMAL;
+        }
+        int hardwareCap = hardwareCap(hardwareLevel);
+        if (hardwareCap < cap) {
+            cap = hardwareCap;
+            reason = REASON_HARDWARE_LEVEL;
+        }
+        int performanceCap = performanceCap(performanceClass);
+        if (performanceCap < cap) {
+            cap = performanceCap;
+            reason = REASON_PERFORMANCE_CLASS;
+        }
+
+        CaptureProfile profile = cap < tier ? requested.withTier(cap) : requested;
+        if (cap < tier) {
+            Log.d(TAG, "Capping " + requested.effectiveTier() + " to " + CaptureProfile.TIERS[cap] + " (" + reason
+                + ", thermal " + thermalStatus + ", hardware level " + hardwareLevel + ", performance class " + performanceClass + ")");
+        }
+        return new Decision(profile, reason, thermalStatus, hardwareLevel, performanceClass);
+    }
+
+    private static int thermalCap(int status) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || status == THERMAL_UNKNOWN) {
+            return UHD;
+        }
+        if (status >= PowerManager.THERMAL_STATUS_SEVERE) return SD;
+        if (status >= PowerManager.THERMAL_STATUS_MODERATE) return HD;
+        if (status >= PowerManager.THERMAL_STATUS_LIGHT) return FHD;
+        return UHD;
+    }
+
+    private static int hardwareCap(int level) {
+        switch (level) {
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY:
+                return HD;
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED:
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL:
+                return FHD;
+            default:
+                return UHD;
+        }
+    }
+
+    private static int performanceCap(int performanceClass) {
+        // Only Android 12+ performance class devices are known to sustain 4K encoding for a full take
+        return performanceClass >= Build.VERSION_CODES.S ? UHD : FHD;
+    }
+
+    static int thermalStatus(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return THERMAL_UNKNOWN;
+        }
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return powerManager != null ? powerManager.getCurrentThermalStatus() : THERMAL_UNKNOWN;
+    }
+
+    static int performanceClass() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? Build.VERSION.MEDIA_PERFORMANCE_CLASS : 0;
+    }
+
+    @androidx.annotation.OptIn(markerClass = ExperimentalCamera2Interop.class)
+    static int hardwareLevel(CameraInfo cameraInfo) {
+        if (cameraInfo == null) {
+            return HARDWARE_LEVEL_UNKNOWN;
+        }
+        try {
+            Integer level = Camera2CameraInfo.from(cameraInfo)
+                .getCameraCharacteristic(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            return level != null ? level : HARDWARE_LEVEL_UNKNOWN;
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read hardware level: " + e.getMessage());
+            return HARDWARE_LEVEL_UNKNOWN;
+        }
+    }
+
+    static String hardwareLevelName(int level) {
+        switch (level) {
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY: return "LEGACY";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED: return "LIMITED";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_FULL: return "FULL";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_3: return "LEVEL_3";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL: return "EXTERNAL";
+            default: return "UNKNOWN";
+        }
+    }
+}
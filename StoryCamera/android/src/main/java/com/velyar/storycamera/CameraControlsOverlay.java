@@ -0,0 +1,371 @@
+package com.velyar.storycamera;
+
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.InsetDrawable;
+import android.os.Build;
+import android.view.Gravity;
+import android.view.View;
+import android.view.animation.LinearInterpolator;
+import android.view.animation.OvershootInterpolator;
+import android.widget.Button;
+import android.widget.ImageButton;
+import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * The camera screen's controls: record, pause, switch, flash, info and close buttons, the pulsing
+ * ring behind the record button, the countdown and the prompt text.
+ *
+ * Every background and icon the controls can show is built once here, one instance per view, so a
+ * tap or a recording state change only swaps references; nothing is allocated or inflated while the
+ * camera is streaming. The pulse is one {@link ValueAnimator} that is started and cancelled, never
+ * rebuilt. The activity drives the controls through {@link #setState}, {@link #setFlashOn} and
+ * {@link #setInfoActive} and hears about taps through a {@link Listener}.
+ *
+ * Main thread only.
+ */
+public class CameraControlsOverlay {
+    /** STOPPING covers a stop that was requested until the recording is finalized. */
+    public enum State { IDLE, RECORDING, PAUSED, STOPPING }
+
+    public interface Listener {
+        void onCloseTapped();
+        void onRecordTapped();
+        void onPauseTapped();
+        void onSwitchCameraTapped();
+        void onFlashTapped();
+        void onInfoTapped();
+        void onPaletteTapped();
+    }
+
+    private static final int ACCENT = 0xFFFF7F5A; // Octo accent
+    private static final int BUTTON_FILL = 0xCC000000; // Semi-transparent black
+    private static final int ACTIVE_FILL = 0xCCFFD700; // Gold when on, pressed or paused
+    private static final float PULSE_SCALE = 0.3f;
+
+    final Button recordButton;
+    final ImageButton pauseButton;
+    final ImageButton switchCameraButton;
+    final ImageButton flashButton;
+    final ImageButton infoButton;
+    final TextView countdownLabel;
+    final TextView promptText;
+    private final ImageButton paletteButton;
+    private final View pulsingRing;
+
+    private final Drawable recordIdleBackground;
+    private final Drawable recordingBackground;
+    private final Drawable pauseBackground;
+    private final Drawable pausedBackground;
+    private final Drawable flashOffBackground;
+    private final Drawable flashOnBackground;
+    private final Drawable infoBackground;
+    private final Drawable infoActiveBackground;
+    private final Drawable pauseIcon;
+    private final Drawable resumeIcon;
+    private final Drawable flashOffIcon;
+    private final Drawable flashOnIcon;
+    private final OvershootInterpolator overshoot = new OvershootInterpolator(1.1f);
+    private final ValueAnimator pulseAnimator;
+    private final Runnable startPulse = this::startPulse;
+    private final Runnable hidePauseButton;
+
+    private State state = State.IDLE;
+    private boolean flashOn;
+    private boolean infoActive;
+
+    public CameraControlsOverlay(Context context, RelativeLayout layout, final Listener listener) {
+        GradientDrawable fill = oval(BUTTON_FILL);
+        GradientDrawable activeFill = oval(ACTIVE_FILL);
+
+        // Pulsing ring behind the record button
+        pulsingRing = new View(context);
+        GradientDrawable ringDrawable = oval(0x00FF7F5A); // Transparent inside
+        ringDrawable.setStroke(8, ACCENT);
+        pulsingRing.setBackground(ringDrawable);
+        pulsingRing.setAlpha(0f);
+        RelativeLayout.LayoutParams ringParams = new RelativeLayout.LayoutParams(160, 160);
+        ringParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
+        ringParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
+        ringParams.bottomMargin = 100; // Positioned behind the button
+        layout.addView(pulsingRing, ringParams);
+
+        // Record button: an accent circle, morphing to a smaller rounded square while recording
+        recordIdleBackground = oval(ACCENT);
+        GradientDrawable square = new GradientDrawable();
+        square.setShape(GradientDrawable.RECTANGLE);
+        square.setCornerRadius(25);
+        square.setColor(ACCENT);
+        int insetPx = Math.round(8 * context.getResources().getDisplayMetrics().density);
+        recordingBackground = new InsetDrawable(square, insetPx);
+
+        recordButton = new Button(context);
+        recordButton.setText(""); // No text - clean circle
+        recordButton.setWidth(120);
+        recordButton.setHeight(120);
+        recordButton.setPadding(0, 0, 0, 0);
+        recordButton.setContentDescription("Record"); // Also how UI tests find the button
+        // No elevation/shadow in any state
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            recordButton.setStateListAnimator(null);
+            recordButton.setElevation(0f);
+            recordButton.setTranslationZ(0f);
+        }
+        recordButton.setBackground(recordIdleBackground);
+        RelativeLayout.LayoutParams recordParams = new RelativeLayout.LayoutParams(120, 120);
+        recordParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
+        recordParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
+        recordParams.bottomMargin = 120; // More space from bottom for safe area
+        layout.addView(recordButton, recordParams);
+
+        // Pause/resume button, next to the record button while recording
+        pauseIcon = ContextCompat.getDrawable(context, android.R.drawable.ic_media_pause);
+        resumeIcon = ContextCompat.getDrawable(context, android.R.drawable.ic_media_play);
+        pauseBackground = copy(fill);
+        pausedBackground = copy(activeFill);
+        pauseButton = iconButton(context, pauseIcon, pauseBackground, 25);
+        pauseButton.setColorFilter(0xFFFFFFFF, PorterDuff.Mode.SRC_IN);
+        pauseButton.setVisibility(View.GONE);
+        layout.addView(pauseButton, bottomRight(300)); // Next to the switch camera button
+        hidePauseButton = () -> pauseButton.setVisibility(View.GONE);
+
+        // Palette/filter button, shown by setPaletteVisible when the color grade is in the pipeline
+        paletteButton = iconButton(context, ContextCompat.getDrawable(context, R.drawable.ic_palette), copy(fill), 25);
+        paletteButton.setColorFilter(0xFFFFFFFF, PorterDuff.Mode.SRC_IN);
+        paletteButton.setVisibility(View.GONE);
+        layout.addView(paletteButton, bottomRight(60));
+
+        switchCameraButton = iconButton(context, ContextCompat.getDrawable(context, R.drawable.flip_camera_ios_24), copy(fill), 25);
+        // Tint icon to white so it is visible on dark background
+        switchCameraButton.setColorFilter(0xFFFFFFFF, PorterDuff.Mode.SRC_IN);
+        layout.addView(switchCameraButton, bottomRight(180)); // Between record button and palette
+
+        ImageButton closeButton = iconButton(context, ContextCompat.getDrawable(context, R.drawable.ic_close), copy(fill), 20);
+        RelativeLayout.LayoutParams closeParams = new RelativeLayout.LayoutParams(110, 110);
+        closeParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+        closeParams.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
+        closeParams.topMargin = 120; // More space from top for safe area
+        closeParams.leftMargin = 60;
+        layout.addView(closeButton, closeParams);
+
+        flashOffIcon = ContextCompat.getDrawable(context, R.drawable.ic_flash_off);
+        flashOnIcon = ContextCompat.getDrawable(context, R.drawable.ic_flash_on);
+        flashOffBackground = copy(fill);
+        flashOnBackground = copy(activeFill);
+        flashButton = iconButton(context, flashOffIcon, flashOffBackground, 25);
+        RelativeLayout.LayoutParams flashParams = new RelativeLayout.LayoutParams(110, 110);
+        flashParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+        flashParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
+        flashParams.topMargin = 120;
+        flashParams.rightMargin = 60;
+        layout.addView(flashButton, flashParams);
+
+        // Countdown label (top center, between the close and flash buttons)
+        countdownLabel = new TextView(context);
+        countdownLabel.setTextColor(0xFFFFFFFF);
+        countdownLabel.setTextSize(16f);
+        countdownLabel.setText("");
+        RelativeLayout.LayoutParams cdParams = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
+        cdParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+        cdParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
+        cdParams.topMargin = 140;
+        layout.addView(countdownLabel, cdParams);
+
+        // Prompt text above the record button, up to 4 lines; hidden until the info button is tapped
+        promptText = new TextView(context);
+        promptText.setTextColor(0xFFFFFFFF);
+        promptText.setTextSize(14f);
+        promptText.setTypeface(null, android.graphics.Typeface.BOLD);
+        promptText.setGravity(Gravity.CENTER);
+        promptText.setPadding(16, 8, 16, 8);
+        promptText.setVisibility(View.GONE);
+        promptText.setSingleLine(false);
+        promptText.setMaxLines(4);
+        promptText.setEllipsize(android.text.TextUtils.TruncateAt.END);
+        promptText.setLineSpacing(2, 1.0f);
+        RelativeLayout.LayoutParams promptParams = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
+        promptParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
+        promptParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
+        promptParams.bottomMargin = 280; // Higher above the record button to avoid intersection
+        layout.addView(promptText, promptParams);
+
+        // Info button, left of the record button at the switch button's distance
+        infoBackground = copy(fill);
+        infoActiveBackground = copy(activeFill);
+        infoButton = iconButton(context, ContextCompat.getDrawable(context, R.drawable.info_24), infoBackground, 20);
+        RelativeLayout.LayoutParams infoParams = new RelativeLayout.LayoutParams(110, 110);
+        infoParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
+        infoParams.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
+        infoParams.bottomMargin = 120;
+        infoParams.leftMargin = 180;
+        layout.addView(infoButton, infoParams);
+
+        // 1 second cycle: ring grows to 1.3x and back while its alpha glows
+        pulseAnimator = ValueAnimator.ofFloat(0f, 1f);
+        pulseAnimator.setDuration(1000);
+        pulseAnimator.setRepeatCount(ValueAnimator.INFINITE);
+        pulseAnimator.setRepeatMode(ValueAnimator.RESTART);
+        pulseAnimator.setInterpolator(new LinearInterpolator());
+        pulseAnimator.addUpdateListener(animation -> {
+            // The fraction is a primitive; getAnimatedValue() would box a Float every frame
+            float fraction = animation.getAnimatedFraction();
+            float scale = 1f + PULSE_SCALE * (1f - Math.abs(2f * fraction - 1f));
+            pulsingRing.setScaleX(scale);
+            pulsingRing.setScaleY(scale);
+            pulsingRing.setAlpha(0.3f + 0.4f * (float) Math.sin(fraction * Math.PI * 2));
+        });
+
+        closeButton.setOnClickListener(v -> listener.onCloseTapped());
+        recordButton.setOnClickListener(v -> listener.onRecordTapped());
+        pauseButton.setOnClickListener(v -> listener.onPauseTapped());
+        flashButton.setOnClickListener(v -> listener.onFlashTapped());
+        infoButton.setOnClickListener(v -> listener.onInfoTapped());
+        final Runnable switchCamera = listener::onSwitchCameraTapped;
+        switchCameraButton.setOnClickListener(v -> {
+            // Rotate icon for interactivity, then switch camera
+            switchCameraButton.animate().rotationBy(180f).setDuration(200).withEndAction(switchCamera).start();
+        });
+        final Runnable paletteRelease = () -> paletteButton.animate().scaleX(1f).scaleY(1f).setDuration(120).start();
+        paletteButton.setOnClickListener(v -> {
+            listener.onPaletteTapped();
+            // Subtle pulse on theme change
+            paletteButton.animate().scaleX(0.92f).scaleY(0.92f).setDuration(90).withEndAction(paletteRelease).start();
+        });
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Shows {@code next}: the record button's shape, the pause button's visibility and icon, and the
+     * pulse, which runs only while recording. With {@code animate} off, e.g. when restoring a paused
+     * session, the controls jump to the new state.
+     */
+    public void setState(State next, boolean animate) {
+        if (next == state) {
+            return;
+        }
+        State previous = state;
+        state = next;
+        recordButton.animate().cancel();
+        pauseButton.animate().cancel();
+
+        // Square from the start of a recording until it has been finalized
+        recordButton.setBackground(next == State.IDLE ? recordIdleBackground : recordingBackground);
+        boolean paused = next == State.PAUSED;
+        pauseButton.setImageDrawable(paused ? resumeIcon : pauseIcon);
+        pauseButton.setBackground(paused ? pausedBackground : pauseBackground);
+
+        boolean showPause = next == State.RECORDING || paused;
+        boolean pauseShown = previous == State.RECORDING || previous == State.PAUSED;
+        if (showPause && !pauseShown) {
+            pauseButton.setVisibility(View.VISIBLE);
+            pauseButton.setAlpha(animate ? 0f : 1f);
+            if (animate) {
+                pauseButton.animate().alpha(1f).setDuration(300).start();
+            }
+        } else if (!showPause && pauseShown) {
+            if (animate) {
+                pauseButton.animate().alpha(0f).setDuration(200).withEndAction(hidePauseButton).start();
+            } else {
+                pauseButton.setVisibility(View.GONE);
+            }
+        }
+
+        if (next != State.RECORDING) {
+            stopPulse();
+        } else if (animate && previous == State.IDLE) {
+            // Subtle scale feedback on the morph, then the pulse
+            recordButton.setScaleX(0.96f);
+            recordButton.setScaleY(0.96f);
+            recordButton.animate().scaleX(1f).scaleY(1f).setDuration(180).setInterpolator(overshoot)
+                .withEndAction(startPulse).start();
+        } else {
+            recordButton.setScaleX(1f);
+            recordButton.setScaleY(1f);
+            startPulse();
+        }
+    }
+
+    public void setFlashOn(boolean on) {
+        if (on == flashOn) {
+            return;
+        }
+        flashOn = on;
+        flashButton.setImageDrawable(on ? flashOnIcon : flashOffIcon);
+        flashButton.setBackground(on ? flashOnBackground : flashOffBackground);
+    }
+
+    /** Highlights the info button and shows the prompt text with it. */
+    public void setInfoActive(boolean active) {
+        if (active == infoActive) {
+            return;
+        }
+        infoActive = active;
+        infoButton.setBackground(active ? infoActiveBackground : infoBackground);
+        promptText.setVisibility(active ? View.VISIBLE : View.GONE);
+    }
+
+    /** Shows the palette button that cycles the filters. */
+    public void setPaletteVisible(boolean visible) {
+        paletteButton.setVisibility(visible ? View.VISIBLE : View.GONE);
+    }
+
+    /** Stops the pulse; call when the activity goes away. */
+    public void release() {
+        stopPulse();
+        recordButton.animate().cancel();
+        pauseButton.animate().cancel();
+    }
+
+    private void startPulse() {
+        if (state == State.RECORDING && !pulseAnimator.isStarted()) {
+            pulseAnimator.start();
+        }
+    }
+
+    private void stopPulse() {
+        pulseAnimator.cancel();
+        // Reset ring to its resting, hidden state
+        pulsingRing.setScaleX(1f);
+        pulsingRing.setScaleY(1f);
+        pulsingRing.setAlpha(0f);
+    }
+
+    private static GradientDrawable oval(int color) {
+        GradientDrawable drawable = new GradientDrawable();
+        drawable.setShape(GradientDrawable.OVAL);
+        drawable.setColor(color);
+        return drawable;
+    }
+
+    // A drawable keeps the bounds and callback of the view it is set on, so each view gets its own
+    private static Drawable copy(Drawable drawable) {
+        return drawable.getConstantState().newDrawable().mutate();
+    }
+
+    private static ImageButton iconButton(Context context, Drawable icon, Drawable background, int padding) {
+        ImageButton button = new ImageButton(context);
+        button.setImageDrawable(icon);
+        button.setScaleType(ImageButton.ScaleType.CENTER_INSIDE);
+        button.setPadding(padding, padding, padding, padding);
+        button.setBackground(background);
+        return button;
+    }
+
+    private static RelativeLayout.LayoutParams bottomRight(int rightMargin) {
+        RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(110, 110);
+        params.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
+        params.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
+        params.bottomMargin = 120;
+        params.rightMargin = rightMargin;
+        return params;
+    }
+}
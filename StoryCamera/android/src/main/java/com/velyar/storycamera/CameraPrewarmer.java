@@ -0,0 +1,136 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.camera.core.CameraSelector;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.video.Recorder;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide camera warm-up, so {@link StoryCameraActivity} can bind on its first frame.
+ *
+ * {@link #prewarm} initializes the {@link ProcessCameraProvider} (camera enumeration and
+ * characteristics, the slow part of a cold start), checks which lenses exist and pre-builds the
+ * {@link Recorder} for the requested profile, all on a background thread. The activity then picks
+ * the provider up synchronously and takes the recorder instead of building one.
+ */
+public class CameraPrewarmer {
+    private static final String TAG = "CameraPrewarmer";
+    private static CameraPrewarmer instance;
+
+    public interface Listener {
+        void onReady(CameraPrewarmer prewarmer);
+
+        void onError(Exception error);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile ProcessCameraProvider cameraProvider;
+    private volatile boolean hasBackCamera = true;
+    private volatile boolean hasFrontCamera = true;
+    private volatile long providerInitMs = -1;
+    private Recorder warmRecorder;
+    private CaptureProfile warmProfile;
+    private volatile long lastTimeToPreviewMs = -1;
+    private volatile boolean lastPreviewPrewarmed = false;
+
+    public static synchronized CameraPrewarmer getInstance() {
+        if (instance == null) {
+            instance = new CameraPrewarmer();
+        }
+        return instance;
+    }
+
+    public void prewarm(Context context, CaptureProfile profile, Listener listener) {
+        long startedAt = SystemClock.elapsedRealtime();
+        ListenableFuture<ProcessCameraProvider> future = ProcessCameraProvider.getInstance(context.getApplicationContext());
+        future.addListener(() -> {
+            try {
+                ProcessCameraProvider provider = future.get();
+                if (providerInitMs < 0) {
+                    providerInitMs = SystemClock.elapsedRealtime() - startedAt;
+                }
+                hasBackCamera = hasCamera(provider, CameraSelector.DEFAULT_BACK_CAMERA);
+                hasFrontCamera = hasCamera(provider, CameraSelector.DEFAULT_FRONT_CAMERA);
+                synchronized (this) {
+                    if (warmRecorder == null || !profile.equals(warmProfile)) {
+                        warmRecorder = profile.applyTo(new Recorder.Builder()).build();
+                        warmProfile = profile;
+                    }
+                }
+                cameraProvider = provider;
+                Log.d(TAG, "Camera prewarmed in " + (SystemClock.elapsedRealtime() - startedAt) + " ms (back=" + hasBackCamera + ", front=" + hasFrontCamera + ")");
+                if (listener != null) listener.onReady(this);
+            } catch (Exception e) {
+                Log.e(TAG, "Camera prewarm failed: " + e.getMessage(), e);
+                if (listener != null) listener.onError(e);
+            }
+        }, executor);
+    }
+
+    /** The initialized provider, or null if prewarm has not completed. */
+    public ProcessCameraProvider getCameraProvider() {
+        return cameraProvider;
+    }
+
+    /**
+     * Hands over the pre-built recorder if it was built for an equal profile. A Recorder can only
+     * feed one VideoCapture, so it is given out once.
+     */
+    public synchronized Recorder takeRecorder(CaptureProfile profile) {
+        if (warmRecorder == null || !profile.equals(warmProfile)) {
+            return null;
+        }
+        Recorder recorder = warmRecorder;
+        warmRecorder = null;
+        warmProfile = null;
+        return recorder;
+    }
+
+    /** Falls back to the other lens on devices that lack the requested one. */
+    public CameraSelector resolveSelector(boolean front) {
+        if (front && !hasFrontCamera && hasBackCamera) return CameraSelector.DEFAULT_BACK_CAMERA;
+        if (!front && !hasBackCamera && hasFrontCamera) return CameraSelector.DEFAULT_FRONT_CAMERA;
+        return front ? CameraSelector.DEFAULT_FRONT_CAMERA : CameraSelector.DEFAULT_BACK_CAMERA;
+    }
+
+    public boolean hasBackCamera() {
+        return hasBackCamera;
+    }
+
+    public boolean hasFrontCamera() {
+        return hasFrontCamera;
+    }
+
+    public long getProviderInitMs() {
+        return providerInitMs;
+    }
+
+    void recordTimeToPreview(long elapsedMs, boolean prewarmed) {
+        lastTimeToPreviewMs = elapsedMs;
+        lastPreviewPrewarmed = prewarmed;
+    }
+
+    public long getLastTimeToPreviewMs() {
+        return lastTimeToPreviewMs;
+    }
+
+    public boolean wasLastPreviewPrewarmed() {
+        return lastPreviewPrewarmed;
+    }
+
+    private static boolean hasCamera(ProcessCameraProvider provider, CameraSelector selector) {
+        try {
+            return provider.hasCamera(selector);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.velyar.storycamera;
+
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.camera.video.FallbackStrategy;
+import androidx.camera.video.Quality;
+import androidx.camera.video.QualitySelector;
+import androidx.camera.video.Recorder;
+
+import java.util.Locale;
+
+/**
+ * Encoding profile for a recording session: quality tier, fallback direction, a cap on the
+ * longest edge and an optional target bitrate. Travels from the plugin call to
+ * {@link StoryCameraActivity} as intent extras and ends up on the {@link Recorder.Builder}.
+ */
+public class CaptureProfile {
+    private static final String TAG = "CaptureProfile";
+
+    static final String EXTRA_QUALITY = "profileQuality";
+    static final String EXTRA_FALLBACK = "profileFallback";
+    static final String EXTRA_MAX_WIDTH_OR_HEIGHT = "profileMaxWidthOrHeight";
+    static final String EXTRA_VIDEO_BITRATE = "profileVideoBitrate";
+
+    public static final String FALLBACK_LOWER = "lower";
+    public static final String FALLBACK_HIGHER = "higher";
+    public static final String FALLBACK_NONE = "none";
+
+    // Tiers from lowest to highest, with the long edge of each tier's nominal resolution
+    static final String[] TIERS = { "SD", "HD", "FHD", "UHD" };
+    private static final int[] TIER_LONG_EDGE = { 720, 1280, 1920, 3840 };
+    // Upper end of the video bitrate CameraX picks per tier, in bits per second
+    private static final int[] TIER_MAX_BITRATE = { 4_000_000, 10_000_000, 20_000_000, 50_000_000 };
+
+    // Stories are published at <= 1080p; recording 4K only to recompress it later wastes I/O
+    public static final String DEFAULT_QUALITY = "FHD";
+
+    public final String quality;
+    public final String fallback;
+    public final int maxWidthOrHeight;
+    public final int videoBitrate;
+
+    public CaptureProfile(String quality, String fallback, int maxWidthOrHeight, int videoBitrate) {
+        this.quality = normalizeQuality(quality);
+        this.fallback = normalizeFallback(fallback);
+        this.maxWidthOrHeight = Math.max(0, maxWidthOrHeight);
+        this.videoBitrate = Math.max(0, videoBitrate);
+    }
+
+    public static CaptureProfile defaults() {
+        return new CaptureProfile(DEFAULT_QUALITY, FALLBACK_LOWER, 0, 0);
+    }
+
+    public static CaptureProfile fromIntent(Intent intent) {
+        if (intent == null) {
+            return defaults();
+        }
+        return new CaptureProfile(
+            intent.getStringExtra(EXTRA_QUALITY),
+            intent.getStringExtra(EXTRA_FALLBACK),
+            intent.getIntExtra(EXTRA_MAX_WIDTH_OR_HEIGHT, 0),
+            intent.getIntExtra(EXTRA_VIDEO_BITRATE, 0)
+        );
+    }
+
+    public void putExtras(Intent intent) {
+        intent.putExtra(EXTRA_QUALITY, quality);
+        intent.putExtra(EXTRA_FALLBACK, fallback);
+        intent.putExtra(EXTRA_MAX_WIDTH_OR_HEIGHT, maxWidthOrHeight);
+        intent.putExtra(EXTRA_VIDEO_BITRATE, videoBitrate);
+    }
+
+    /** Requested tier, lowered so its nominal long edge does not exceed maxWidthOrHeight. */
+    public String effectiveTier() {
+        int requested = "LOWEST".equals(quality) ? 0 : tierIndex(quality);
+        if (requested < 0) {
+            requested = TIERS.length - 1; // HIGHEST
+        }
+        if (maxWidthOrHeight > 0) {
+            int cap = 0;
+            for (int i = 0; i < TIERS.length; i++) {
+                if (TIER_LONG_EDGE[i] <= maxWidthOrHeight) {
+                    cap = i;
+                }
+            }
+            requested = Math.min(requested, cap);
+        }
+        return TIERS[requested];
+    }
+
+    /** This profile moved to {@code tier}, falling back lower; a bitrate above the tier's nominal rate is dropped. */
+    public CaptureProfile withTier(int tier) {
+        int bitrate = videoBitrate > TIER_MAX_BITRATE[tier] ? 0 : videoBitrate;
+        return new CaptureProfile(TIERS[tier], FALLBACK_LOWER, maxWidthOrHeight, bitrate);
+    }
+
+    /** Video bitrate to plan with: the explicit one, otherwise the tier's nominal maximum. */
+    public int estimatedVideoBitrate() {
+        return videoBitrate > 0 ? videoBitrate : TIER_MAX_BITRATE[Math.max(0, tierIndex(effectiveTier()))];
+    }
+
+    public QualitySelector buildQualitySelector() {
+        Quality target = toQuality(effectiveTier());
+        switch (fallback) {
+            case FALLBACK_NONE:
+                return QualitySelector.from(target);
+            case FALLBACK_HIGHER:
+                return QualitySelector.from(target, FallbackStrategy.higherQualityOrLowerThan(target));
+            case FALLBACK_LOWER:
+            default:
+                return QualitySelector.from(target, FallbackStrategy.lowerQualityOrHigherThan(target));
+        }
+    }
+
+    public Recorder.Builder applyTo(Recorder.Builder builder) {
+        builder.setQualitySelector(buildQualitySelector());
+        if (videoBitrate > 0) {
+            builder.setTargetVideoEncodingBitRate(videoBitrate);
+        }
+        Log.d(TAG, "Recorder profile: " + this);
+        return builder;
+    }
+
+    static Quality toQuality(String tier) {
+        switch (tier) {
+            case "SD": return Quality.SD;
+            case "HD": return Quality.HD;
+            case "UHD": return Quality.UHD;
+            case "FHD":
+            default:
+                return Quality.FHD;
+        }
+    }
+
+    static int tierIndex(String tier) {
+        for (int i = 0; i < TIERS.length; i++) {
+            if (TIERS[i].equals(tier)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String normalizeQuality(String value) {
+        if (value == null) {
+            return DEFAULT_QUALITY;
+        }
+        String upper = value.trim().toUpperCase(Locale.ROOT);
+        if ("HIGHEST".equals(upper) || "LOWEST".equals(upper) || tierIndex(upper) >= 0) {
+            return upper;
+        }
+        Log.w(TAG, "Unknown quality '" + value + "', using " + DEFAULT_QUALITY);
+        return DEFAULT_QUALITY;
+    }
+
+    private static String normalizeFallback(String value) {
+        if (value == null) {
+            return FALLBACK_LOWER;
+        }
+        String lower = value.trim().toLowerCase(Locale.ROOT);
+        if (FALLBACK_HIGHER.equals(lower) || FALLBACK_NONE.equals(lower)) {
+            return lower;
+        }
+        return FALLBACK_LOWER;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CaptureProfile)) return false;
+        CaptureProfile other = (CaptureProfile) o;
+        return quality.equals(other.quality) && fallback.equals(other.fallback)
+            && maxWidthOrHeight == other.maxWidthOrHeight && videoBitrate == other.videoBitrate;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = quality.hashCode();
+        result = 31 * result + fallback.hashCode();
+        result = 31 * result + maxWidthOrHeight;
+        result = 31 * result + videoBitrate;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "quality=" + quality + " (effective " + effectiveTier() + "), fallback=" + fallback
+            + ", maxWidthOrHeight=" + maxWidthOrHeight + ", videoBitrate=" + videoBitrate;
+    }
+}
@@ -0,0 +1,197 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Remembers the video codec configuration (SPS/PPS, size, frame rate) of the last good recording
+ * per quality tier and camera facing.
+ *
+ * A truncated MP4 has no moov box, so nothing in it says how its samples were encoded.
+ * {@link RecordingSalvager} copies the entry for the tier and camera a take starts with into the
+ * take's marker, and uses it to rebuild a playable file if the take is never finalized. The
+ * encoder produces the same parameter sets for the same tier on the same camera, so the previous
+ * recording's are good enough.
+ */
+public class CodecConfigCache {
+    private static final String TAG = "CodecConfigCache";
+    private static final String PREFS_NAME = "StoryCameraCodecConfig";
+    // Sample times read to work out the frame rate
+    private static final int FRAME_RATE_SAMPLES = 60;
+    private static final int DEFAULT_FRAME_RATE = 30;
+
+    /** The video track format of a recording. */
+    public static class CodecConfig {
+        public final String mime;
+        public final int width;
+        public final int height;
+        public final int rotation;
+        public final int frameRate;
+        public final byte[] csd0;
+        public final byte[] csd1; // null for HEVC, where csd-0 holds VPS, SPS and PPS
+
+        CodecConfig(String mime, int width, int height, int rotation, int frameRate, byte[] csd0, byte[] csd1) {
+            this.mime = mime;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.frameRate = frameRate;
+            this.csd0 = csd0;
+            this.csd1 = csd1;
+        }
+
+        public boolean isHevc() {
+            return MediaFormat.MIMETYPE_VIDEO_HEVC.equals(mime);
+        }
+
+        public MediaFormat toFormat() {
+            MediaFormat format = MediaFormat.createVideoFormat(mime, width, height);
+            format.setByteBuffer("csd-0", ByteBuffer.wrap(csd0));
+            if (csd1 != null) {
+                format.setByteBuffer("csd-1", ByteBuffer.wrap(csd1));
+            }
+            format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+            return format;
+        }
+
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("mime", mime);
+            json.put("width", width);
+            json.put("height", height);
+            json.put("rotation", rotation);
+            json.put("frameRate", frameRate);
+            json.put("csd0", Base64.encodeToString(csd0, Base64.NO_WRAP));
+            if (csd1 != null) {
+                json.put("csd1", Base64.encodeToString(csd1, Base64.NO_WRAP));
+            }
+            return json;
+        }
+
+        /** The config stored by {@link #toJson()}, or null when {@code json} is missing or incomplete. */
+        public static CodecConfig fromJson(JSONObject json) {
+            if (json == null || !json.has("mime") || !json.has("csd0")) {
+                return null;
+            }
+            try {
+                String csd1 = json.optString("csd1", null);
+                return new CodecConfig(
+                    json.getString("mime"),
+                    json.getInt("width"),
+                    json.getInt("height"),
+                    json.optInt("rotation", 0),
+                    json.optInt("frameRate", DEFAULT_FRAME_RATE),
+                    Base64.decode(json.getString("csd0"), Base64.NO_WRAP),
+                    csd1 != null ? Base64.decode(csd1, Base64.NO_WRAP) : null);
+            } catch (JSONException | IllegalArgumentException e) {
+                Log.w(TAG, "Unreadable codec config: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /** Cache key for a quality tier ("SD", "HD", ...) and camera facing. */
+    public static String key(String tier, boolean frontCamera) {
+        return tier + "|" + (frontCamera ? "front" : "back");
+    }
+
+    /** The cached config for {@code key}, or null if no recording was finalized with it yet. */
+    public static CodecConfig get(Context context, String key) {
+        String stored = prefs(context).getString(key, null);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            return CodecConfig.fromJson(new JSONObject(stored));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /** Reads the video track format of the finished {@code recording} and caches it under {@code key}. Blocking. */
+    public static void capture(Context context, String key, File recording) {
+        CodecConfig config = read(recording);
+        if (config == null) {
+            return;
+        }
+        try {
+            prefs(context).edit().putString(key, config.toJson().toString()).apply();
+            Log.d(TAG, "Cached " + config.mime + " " + config.width + "x" + config.height + "@" + config.frameRate + " for " + key);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not store codec config: " + e.getMessage());
+        }
+    }
+
+    static CodecConfig read(File recording) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(recording.getAbsolutePath());
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime == null || !mime.startsWith("video/") || !format.containsKey("csd-0")) {
+                    continue;
+                }
+                extractor.selectTrack(i);
+                return new CodecConfig(
+                    mime,
+                    format.getInteger(MediaFormat.KEY_WIDTH),
+                    format.getInteger(MediaFormat.KEY_HEIGHT),
+                    format.containsKey("rotation-degrees") ? format.getInteger("rotation-degrees") : 0,
+                    frameRate(extractor, format),
+                    bytes(format.getByteBuffer("csd-0")),
+                    format.containsKey("csd-1") ? bytes(format.getByteBuffer("csd-1")) : null);
+            }
+            Log.w(TAG, "No video track with codec config in " + recording.getName());
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read codec config: " + e.getMessage());
+        } finally {
+            extractor.release();
+        }
+        return null;
+    }
+
+    // MP4 tracks rarely declare a frame rate, so it is measured from the first sample times
+    private static int frameRate(MediaExtractor extractor, MediaFormat format) {
+        if (format.containsKey(MediaFormat.KEY_FRAME_RATE)) {
+            try {
+                return format.getInteger(MediaFormat.KEY_FRAME_RATE);
+            } catch (ClassCastException e) {
+                return Math.round(format.getFloat(MediaFormat.KEY_FRAME_RATE));
+            }
+        }
+        long first = extractor.getSampleTime();
+        long last = first;
+        int samples = 1;
+        while (samples < FRAME_RATE_SAMPLES && extractor.advance()) {
+            last = extractor.getSampleTime();
+            samples++;
+        }
+        if (first < 0 || last <= first) {
+            return DEFAULT_FRAME_RATE;
+        }
+        return Math.max(1, Math.round((samples - 1) * 1_000_000f / (last - first)));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        ByteBuffer copy = buffer.duplicate();
+        copy.rewind();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
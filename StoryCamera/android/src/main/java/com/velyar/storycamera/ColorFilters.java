@@ -0,0 +1,105 @@
+package com.velyar.storycamera;
+
+import java.util.Locale;
+
+/**
+ * The camera's named looks as {@link ColorLut}s. Index order matches the palette button
+ * (0=None, 1=Warm Glow, 2=Cool Mist, 3=Sunset, 4=Film Fade); index 0 has no table.
+ */
+public class ColorFilters {
+    public static final int NONE = 0;
+    public static final int WARM = 1;
+    public static final int COOL = 2;
+    public static final int SUNSET = 3;
+    public static final int FILM = 4;
+    public static final int COUNT = 5;
+
+    private static final String[] NAMES = { "None", "Warm Glow", "Cool Mist", "Sunset", "Film Fade" };
+    private static final String[] KEYS = { "none", "warm", "cool", "sunset", "film" };
+
+    private static final ColorLut[] cache = new ColorLut[COUNT];
+
+    public static String displayName(int index) {
+        return index >= 0 && index < COUNT ? NAMES[index] : NAMES[NONE];
+    }
+
+    /** Parses a recordVideo "filter" option ("warm", "cool", ...); unknown values map to NONE. */
+    public static int indexOf(String key) {
+        if (key == null) return NONE;
+        String lower = key.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(lower)) return i;
+        }
+        return NONE;
+    }
+
+    /** The filter's LUT at {@link ColorLut#DEFAULT_SIZE}, built once and cached; null for NONE. */
+    public static synchronized ColorLut lutFor(int index) {
+        if (index <= NONE || index >= COUNT) return null;
+        if (cache[index] == null) {
+            cache[index] = ColorLut.fromTransform(ColorLut.DEFAULT_SIZE, transformFor(index));
+        }
+        return cache[index];
+    }
+
+    static ColorLut.ColorTransform transformFor(int index) {
+        switch (index) {
+            case WARM:
+                return (r, g, b, out) -> {
+                    out[0] = r * 1.06f + 0.03f;
+                    out[1] = g * 1.01f + 0.01f;
+                    out[2] = b * 0.86f;
+                    saturate(out, 1.08f);
+                };
+            case COOL:
+                return (r, g, b, out) -> {
+                    out[0] = r * 0.90f;
+                    out[1] = g * 0.98f + 0.01f;
+                    out[2] = b * 1.04f + 0.04f;
+                    fade(out, 0.04f, 0.98f);
+                };
+            case SUNSET:
+                return (r, g, b, out) -> {
+                    out[0] = r * 1.08f + 0.02f;
+                    out[1] = g * 0.93f;
+                    out[2] = b * 0.95f + 0.02f;
+                    // Magenta-orange tint strongest in the highlights
+                    float luma = 0.299f * r + 0.587f * g + 0.114f * b;
+                    float tint = 0.12f * luma;
+                    out[0] += (1.0f - out[0]) * tint;
+                    out[1] += (0.39f - out[1]) * tint;
+                    out[2] += (0.52f - out[2]) * tint;
+                };
+            case FILM:
+                return (r, g, b, out) -> {
+                    out[0] = r;
+                    out[1] = g;
+                    out[2] = b;
+                    saturate(out, 0.75f);
+                    fade(out, 0.08f, 0.92f);
+                    out[0] += 0.01f;
+                    out[2] -= 0.01f;
+                };
+            default:
+                return (r, g, b, out) -> {
+                    out[0] = r;
+                    out[1] = g;
+                    out[2] = b;
+                };
+        }
+    }
+
+    private static void saturate(float[] rgb, float amount) {
+        float luma = 0.299f * rgb[0] + 0.587f * rgb[1] + 0.114f * rgb[2];
+        for (int i = 0; i < 3; i++) {
+            rgb[i] = luma + (rgb[i] - luma) * amount;
+        }
+    }
+
+    /** Lifts blacks to {@code black} and rolls whites down to {@code white}. */
+    private static void fade(float[] rgb, float black, float white) {
+        for (int i = 0; i < 3; i++) {
+            rgb[i] = black + rgb[i] * (white - black);
+        }
+    }
+}
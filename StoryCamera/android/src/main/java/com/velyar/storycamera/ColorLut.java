@@ -0,0 +1,199 @@
+package com.velyar.storycamera;
+
+/**
+ * 3D color lookup table with trilinear interpolation.
+ *
+ * This is the reference implementation of the grading pipeline: it works on packed ARGB and
+ * YUV 4:2:0 buffers with plain Java arithmetic (no Android types), so results can be checked
+ * and timed on the JVM. The GPU path ({@link LutRenderer}) samples the same table, uploaded as
+ * the 2D strip from {@link #toRgbaStrip()}.
+ *
+ * Table layout is red-fastest: entry (r, g, b) lives at {@code ((b * size + g) * size + r) * 3}.
+ */
+public class ColorLut {
+    public static final int DEFAULT_SIZE = 33;
+
+    /** Maps a normalized RGB triple (0..1) to its graded value, written into {@code out}. */
+    public interface ColorTransform {
+        void apply(float r, float g, float b, float[] out);
+    }
+
+    private final int size;
+    private final float[] table;
+    private final float scale;
+
+    public ColorLut(int size, float[] table) {
+        if (size < 2) {
+            throw new IllegalArgumentException("LUT size must be at least 2");
+        }
+        if (table.length != size * size * size * 3) {
+            throw new IllegalArgumentException("LUT table has " + table.length + " entries, expected " + (size * size * size * 3));
+        }
+        this.size = size;
+        this.table = table;
+        this.scale = size - 1;
+    }
+
+    public static ColorLut identity(int size) {
+        return fromTransform(size, (r, g, b, out) -> {
+            out[0] = r;
+            out[1] = g;
+            out[2] = b;
+        });
+    }
+
+    public static ColorLut fromTransform(int size, ColorTransform transform) {
+        float[] table = new float[size * size * size * 3];
+        float[] out = new float[3];
+        float step = 1f / (size - 1);
+        int i = 0;
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    transform.apply(r * step, g * step, b * step, out);
+                    table[i++] = clamp01(out[0]);
+                    table[i++] = clamp01(out[1]);
+                    table[i++] = clamp01(out[2]);
+                }
+            }
+        }
+        return new ColorLut(size, table);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /** Trilinear lookup of a normalized RGB triple. */
+    public void lookup(float r, float g, float b, float[] out) {
+        float rs = clamp01(r) * scale;
+        float gs = clamp01(g) * scale;
+        float bs = clamp01(b) * scale;
+        int r0 = Math.min((int) rs, size - 2);
+        int g0 = Math.min((int) gs, size - 2);
+        int b0 = Math.min((int) bs, size - 2);
+        float fr = rs - r0;
+        float fg = gs - g0;
+        float fb = bs - b0;
+
+        int rowStride = size * 3;
+        int sliceStride = size * rowStride;
+        int base = b0 * sliceStride + g0 * rowStride + r0 * 3;
+        for (int c = 0; c < 3; c++) {
+            int i = base + c;
+            float c000 = table[i];
+            float c100 = table[i + 3];
+            float c010 = table[i + rowStride];
+            float c110 = table[i + rowStride + 3];
+            float c001 = table[i + sliceStride];
+            float c101 = table[i + sliceStride + 3];
+            float c011 = table[i + sliceStride + rowStride];
+            float c111 = table[i + sliceStride + rowStride + 3];
+            float c00 = c000 + (c100 - c000) * fr;
+            float c10 = c010 + (c110 - c010) * fr;
+            float c01 = c001 + (c101 - c001) * fr;
+            float c11 = c011 + (c111 - c011) * fr;
+            float c0 = c00 + (c10 - c00) * fg;
+            float c1 = c01 + (c11 - c01) * fg;
+            out[c] = c0 + (c1 - c0) * fb;
+        }
+    }
+
+    public int applyArgb(int argb) {
+        float[] out = new float[3];
+        return applyArgb(argb, out);
+    }
+
+    /** Grades {@code count} packed ARGB pixels in place; alpha is preserved. */
+    public void applyArgb(int[] pixels, int offset, int count) {
+        float[] out = new float[3];
+        for (int i = offset, end = offset + count; i < end; i++) {
+            pixels[i] = applyArgb(pixels[i], out);
+        }
+    }
+
+    private int applyArgb(int argb, float[] out) {
+        lookup(((argb >> 16) & 0xFF) / 255f, ((argb >> 8) & 0xFF) / 255f, (argb & 0xFF) / 255f, out);
+        return (argb & 0xFF000000) | (to8Bit(out[0]) << 16) | (to8Bit(out[1]) << 8) | to8Bit(out[2]);
+    }
+
+    /** Grades an NV21 frame (Y plane followed by interleaved V/U) in place. */
+    public void applyNv21(byte[] nv21, int width, int height) {
+        int chromaOffset = width * height;
+        applyYuv420(nv21, 0, width, nv21, chromaOffset + 1, nv21, chromaOffset, width, 2, width, height);
+    }
+
+    /**
+     * Grades a YUV 4:2:0 frame in place. Covers planar (I420, pixel stride 1) and semi-planar
+     * (NV12/NV21, pixel stride 2) layouts. Each 2x2 block is converted to RGB (BT.601 full range),
+     * looked up, and written back with the block's chroma averaged.
+     */
+    public void applyYuv420(byte[] yPlane, int yOffset, int yRowStride,
+                            byte[] uPlane, int uOffset, byte[] vPlane, int vOffset,
+                            int uvRowStride, int uvPixelStride, int width, int height) {
+        float[] out = new float[3];
+        for (int by = 0; by < height; by += 2) {
+            for (int bx = 0; bx < width; bx += 2) {
+                int uvIndex = (by >> 1) * uvRowStride + (bx >> 1) * uvPixelStride;
+                float u = (uPlane[uOffset + uvIndex] & 0xFF) - 128f;
+                float v = (vPlane[vOffset + uvIndex] & 0xFF) - 128f;
+                float uSum = 0f;
+                float vSum = 0f;
+                int pixels = 0;
+                for (int y = by; y < by + 2 && y < height; y++) {
+                    for (int x = bx; x < bx + 2 && x < width; x++) {
+                        int yIndex = yOffset + y * yRowStride + x;
+                        float luma = yPlane[yIndex] & 0xFF;
+                        lookup((luma + 1.402f * v) / 255f,
+                               (luma - 0.344136f * u - 0.714136f * v) / 255f,
+                               (luma + 1.772f * u) / 255f, out);
+                        float r = out[0] * 255f;
+                        float g = out[1] * 255f;
+                        float b = out[2] * 255f;
+                        yPlane[yIndex] = (byte) clamp255(0.299f * r + 0.587f * g + 0.114f * b);
+                        uSum += -0.168736f * r - 0.331264f * g + 0.5f * b;
+                        vSum += 0.5f * r - 0.418688f * g - 0.081312f * b;
+                        pixels++;
+                    }
+                }
+                uPlane[uOffset + uvIndex] = (byte) clamp255(uSum / pixels + 128f);
+                vPlane[vOffset + uvIndex] = (byte) clamp255(vSum / pixels + 128f);
+            }
+        }
+    }
+
+    /**
+     * RGBA8 texture data for the shader path: {@code size * size} texels wide and {@code size}
+     * high, one {@code size x size} red/green slice per blue step laid out left to right.
+     */
+    public byte[] toRgbaStrip() {
+        int width = size * size;
+        byte[] rgba = new byte[width * size * 4];
+        int i = 0;
+        for (int g = 0; g < size; g++) {
+            for (int b = 0; b < size; b++) {
+                for (int r = 0; r < size; r++) {
+                    int t = ((b * size + g) * size + r) * 3;
+                    rgba[i++] = (byte) to8Bit(table[t]);
+                    rgba[i++] = (byte) to8Bit(table[t + 1]);
+                    rgba[i++] = (byte) to8Bit(table[t + 2]);
+                    rgba[i++] = (byte) 0xFF;
+                }
+            }
+        }
+        return rgba;
+    }
+
+    private static int to8Bit(float value) {
+        return clamp255(value * 255f);
+    }
+
+    private static int clamp255(float value) {
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+    }
+
+    private static float clamp01(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+}
@@ -0,0 +1,52 @@
+package com.velyar.storycamera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 of a file's contents, for content-addressed upload paths: the same recording always maps
+ * to the same object, so a retry or a second tap finds it already uploaded.
+ *
+ * The file is digested incrementally from its {@link FileChannel} through one reusable direct
+ * buffer, so memory use does not grow with the file. Blocking; call it on a background executor.
+ */
+public class ContentHasher {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private ContentHasher() {
+    }
+
+    /** Lower-case hex SHA-256 of {@code file}. */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xFF;
+            hex[i * 2] = Character.forDigit(value >>> 4, 16);
+            hex[i * 2 + 1] = Character.forDigit(value & 0x0F, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,87 @@
+package com.velyar.storycamera;
+
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+
+/**
+ * Surface a MediaCodec decoder renders into. Frames land in an OES texture that
+ * {@link GlTextureRenderer} draws onto the current EGL surface (typically an encoder input).
+ * Create and use on the thread that owns the EGL context.
+ */
+public class DecoderOutputSurface implements SurfaceTexture.OnFrameAvailableListener {
+    private static final long FRAME_TIMEOUT_MS = 2500;
+
+    private final GlTextureRenderer renderer;
+    private final float[] stMatrix = new float[16];
+    private final Object frameSyncObject = new Object();
+    private final HandlerThread callbackThread;
+    private SurfaceTexture surfaceTexture;
+    private Surface surface;
+    private boolean frameAvailable;
+
+    public DecoderOutputSurface(GlTextureRenderer renderer) {
+        this.renderer = renderer;
+        renderer.surfaceCreated();
+
+        // Frame callbacks must not arrive on the thread that blocks in awaitNewImage()
+        callbackThread = new HandlerThread("StoryCameraDecoderSurface");
+        callbackThread.start();
+        surfaceTexture = new SurfaceTexture(renderer.getTextureId());
+        surfaceTexture.setOnFrameAvailableListener(this, new Handler(callbackThread.getLooper()));
+        surface = new Surface(surfaceTexture);
+    }
+
+    public Surface getSurface() {
+        return surface;
+    }
+
+    /** Blocks until the decoder has rendered a new frame, then latches it into the texture. */
+    public void awaitNewImage() {
+        synchronized (frameSyncObject) {
+            long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+            while (!frameAvailable) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new RuntimeException("Timed out waiting for decoded frame");
+                }
+                try {
+                    frameSyncObject.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted waiting for decoded frame", e);
+                }
+            }
+            frameAvailable = false;
+        }
+        GlTextureRenderer.checkGlError("before updateTexImage");
+        surfaceTexture.updateTexImage();
+    }
+
+    public void drawImage(int viewportWidth, int viewportHeight) {
+        surfaceTexture.getTransformMatrix(stMatrix);
+        renderer.drawFrame(stMatrix, viewportWidth, viewportHeight);
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture st) {
+        synchronized (frameSyncObject) {
+            frameAvailable = true;
+            frameSyncObject.notifyAll();
+        }
+    }
+
+    public void release() {
+        if (surface != null) {
+            surface.release();
+            surface = null;
+        }
+        if (surfaceTexture != null) {
+            surfaceTexture.release();
+            surfaceTexture = null;
+        }
+        renderer.release();
+        callbackThread.quitSafely();
+    }
+}
@@ -0,0 +1,134 @@
+package com.velyar.storycamera;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.util.Log;
+
+/**
+ * Minimal EGL14 wrapper used by the GL paths in this plugin (transcoder, color grading).
+ * One context, any number of window surfaces. Must be used from a single thread.
+ */
+public class EglCore {
+    private static final String TAG = "EglCore";
+    // EGL_RECORDABLE_ANDROID is not exposed by EGL14 before API 26
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+    private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLConfig eglConfig = null;
+
+    public EglCore(boolean recordable) {
+        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (eglDisplay == EGL14.EGL_NO_DISPLAY) {
+            throw new RuntimeException("Unable to get EGL14 display");
+        }
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
+            eglDisplay = EGL14.EGL_NO_DISPLAY;
+            throw new RuntimeException("Unable to initialize EGL14");
+        }
+
+        int[] attribList = recordable
+            ? new int[] {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL_RECORDABLE_ANDROID, 1,
+                EGL14.EGL_NONE
+            }
+            : new int[] {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_NONE
+            };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(eglDisplay, attribList, 0, configs, 0, configs.length, numConfigs, 0) || numConfigs[0] == 0) {
+            throw new RuntimeException("Unable to find a suitable EGLConfig (recordable=" + recordable + ")");
+        }
+        eglConfig = configs[0];
+
+        int[] contextAttribs = { EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE };
+        eglContext = EGL14.eglCreateContext(eglDisplay, eglConfig, EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        checkEglError("eglCreateContext");
+        if (eglContext == null || eglContext == EGL14.EGL_NO_CONTEXT) {
+            throw new RuntimeException("Null EGL context");
+        }
+        Log.d(TAG, "EGL initialized, version " + version[0] + "." + version[1] + ", recordable=" + recordable);
+    }
+
+    /** Wraps a {@link android.view.Surface} or {@link android.graphics.SurfaceTexture} in an EGL window surface. */
+    public EGLSurface createWindowSurface(Object surface) {
+        int[] surfaceAttribs = { EGL14.EGL_NONE };
+        EGLSurface eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, eglConfig, surface, surfaceAttribs, 0);
+        checkEglError("eglCreateWindowSurface");
+        if (eglSurface == null || eglSurface == EGL14.EGL_NO_SURFACE) {
+            throw new RuntimeException("Null EGL window surface");
+        }
+        return eglSurface;
+    }
+
+    /** Small offscreen surface so the context can be made current before any output exists. */
+    public EGLSurface createOffscreenSurface(int width, int height) {
+        int[] surfaceAttribs = { EGL14.EGL_WIDTH, width, EGL14.EGL_HEIGHT, height, EGL14.EGL_NONE };
+        EGLSurface eglSurface = EGL14.eglCreatePbufferSurface(eglDisplay, eglConfig, surfaceAttribs, 0);
+        checkEglError("eglCreatePbufferSurface");
+        return eglSurface;
+    }
+
+    public void makeCurrent(EGLSurface eglSurface) {
+        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
+            throw new RuntimeException("eglMakeCurrent failed");
+        }
+    }
+
+    public boolean swapBuffers(EGLSurface eglSurface) {
+        return EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+    }
+
+    /** Sets the timestamp the encoder will see for the next swapped frame. */
+    public void setPresentationTime(EGLSurface eglSurface, long nsecs) {
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, nsecs);
+        checkEglError("eglPresentationTimeANDROID");
+    }
+
+    public int querySurface(EGLSurface eglSurface, int what) {
+        int[] value = new int[1];
+        EGL14.eglQuerySurface(eglDisplay, eglSurface, what, value, 0);
+        return value[0];
+    }
+
+    public void releaseSurface(EGLSurface eglSurface) {
+        if (eglSurface != null && eglSurface != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglDestroySurface(eglDisplay, eglSurface);
+        }
+    }
+
+    public void release() {
+        if (eglDisplay != EGL14.EGL_NO_DISPLAY) {
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroyContext(eglDisplay, eglContext);
+            EGL14.eglReleaseThread();
+            EGL14.eglTerminate(eglDisplay);
+        }
+        eglDisplay = EGL14.EGL_NO_DISPLAY;
+        eglContext = EGL14.EGL_NO_CONTEXT;
+        eglConfig = null;
+    }
+
+    private void checkEglError(String op) {
+        int error = EGL14.eglGetError();
+        if (error != EGL14.EGL_SUCCESS) {
+            throw new RuntimeException(op + ": EGL error 0x" + Integer.toHexString(error));
+        }
+    }
+}
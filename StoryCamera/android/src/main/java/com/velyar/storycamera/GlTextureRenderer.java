@@ -0,0 +1,181 @@
+package com.velyar.storycamera;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws an external OES texture (camera or decoder output) as a full-viewport quad.
+ * Subclasses can swap the fragment shader and bind extra uniforms/textures in {@link #onPreDraw(int)}.
+ */
+public class GlTextureRenderer {
+    private static final int FLOAT_SIZE_BYTES = 4;
+    private static final int VERTICES_STRIDE_BYTES = 5 * FLOAT_SIZE_BYTES;
+    private static final int VERTICES_POS_OFFSET = 0;
+    private static final int VERTICES_UV_OFFSET = 3;
+
+    private static final float[] VERTICES_DATA = {
+        // X, Y, Z, U, V
+        -1.0f, -1.0f, 0, 0.f, 0.f,
+         1.0f, -1.0f, 0, 1.f, 0.f,
+        -1.0f,  1.0f, 0, 0.f, 1.f,
+         1.0f,  1.0f, 0, 1.f, 1.f,
+    };
+
+    private static final String VERTEX_SHADER =
+        "uniform mat4 uMVPMatrix;\n" +
+        "uniform mat4 uSTMatrix;\n" +
+        "attribute vec4 aPosition;\n" +
+        "attribute vec4 aTextureCoord;\n" +
+        "varying vec2 vTextureCoord;\n" +
+        "void main() {\n" +
+        "    gl_Position = uMVPMatrix * aPosition;\n" +
+        "    vTextureCoord = (uSTMatrix * aTextureCoord).xy;\n" +
+        "}\n";
+
+    public static final String PASSTHROUGH_FRAGMENT_SHADER =
+        "#extension GL_OES_EGL_image_external : require\n" +
+        "precision mediump float;\n" +
+        "varying vec2 vTextureCoord;\n" +
+        "uniform samplerExternalOES sTexture;\n" +
+        "void main() {\n" +
+        "    gl_FragColor = texture2D(sTexture, vTextureCoord);\n" +
+        "}\n";
+
+    private final FloatBuffer vertices;
+    private final float[] mvpMatrix = new float[16];
+    private final String fragmentShader;
+
+    private int program;
+    private int textureId = -12345;
+    private int uMVPMatrixHandle;
+    private int uSTMatrixHandle;
+    private int aPositionHandle;
+    private int aTextureHandle;
+
+    public GlTextureRenderer() {
+        this(PASSTHROUGH_FRAGMENT_SHADER);
+    }
+
+    public GlTextureRenderer(String fragmentShader) {
+        this.fragmentShader = fragmentShader;
+        vertices = ByteBuffer.allocateDirect(VERTICES_DATA.length * FLOAT_SIZE_BYTES)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertices.put(VERTICES_DATA).position(0);
+        Matrix.setIdentityM(mvpMatrix, 0);
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    /** Compiles the program and creates the OES texture. Requires a current EGL context. */
+    public void surfaceCreated() {
+        program = createProgram(VERTEX_SHADER, fragmentShader);
+        if (program == 0) {
+            throw new RuntimeException("Failed creating GL program");
+        }
+        aPositionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        aTextureHandle = GLES20.glGetAttribLocation(program, "aTextureCoord");
+        uMVPMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
+        uSTMatrixHandle = GLES20.glGetUniformLocation(program, "uSTMatrix");
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        checkGlError("glBindTexture");
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        onProgramCreated(program);
+    }
+
+    /** Draws the current texture content into the bound surface, using the SurfaceTexture transform. */
+    public void drawFrame(float[] stMatrix, int viewportWidth, int viewportHeight) {
+        GLES20.glViewport(0, 0, viewportWidth, viewportHeight);
+        GLES20.glClearColor(0f, 0f, 0f, 1f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        GLES20.glUseProgram(program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        onPreDraw(program);
+
+        vertices.position(VERTICES_POS_OFFSET);
+        GLES20.glVertexAttribPointer(aPositionHandle, 3, GLES20.GL_FLOAT, false, VERTICES_STRIDE_BYTES, vertices);
+        GLES20.glEnableVertexAttribArray(aPositionHandle);
+        vertices.position(VERTICES_UV_OFFSET);
+        GLES20.glVertexAttribPointer(aTextureHandle, 2, GLES20.GL_FLOAT, false, VERTICES_STRIDE_BYTES, vertices);
+        GLES20.glEnableVertexAttribArray(aTextureHandle);
+
+        GLES20.glUniformMatrix4fv(uMVPMatrixHandle, 1, false, mvpMatrix, 0);
+        GLES20.glUniformMatrix4fv(uSTMatrixHandle, 1, false, stMatrix, 0);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        checkGlError("glDrawArrays");
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
+    }
+
+    public void release() {
+        if (program != 0) {
+            GLES20.glDeleteProgram(program);
+            program = 0;
+        }
+        if (textureId > 0) {
+            GLES20.glDeleteTextures(1, new int[] { textureId }, 0);
+            textureId = -12345;
+        }
+    }
+
+    /** Hook for subclasses to look up extra uniform locations. */
+    protected void onProgramCreated(int program) {
+    }
+
+    /** Hook for subclasses to bind extra textures/uniforms before the draw call. */
+    protected void onPreDraw(int program) {
+    }
+
+    private static int loadShader(int shaderType, String source) {
+        int shader = GLES20.glCreateShader(shaderType);
+        checkGlError("glCreateShader type=" + shaderType);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            String info = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new RuntimeException("Could not compile shader " + shaderType + ": " + info);
+        }
+        return shader;
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int pixelShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, pixelShader);
+        GLES20.glLinkProgram(program);
+        int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] != GLES20.GL_TRUE) {
+            String info = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new RuntimeException("Could not link program: " + info);
+        }
+        return program;
+    }
+
+    static void checkGlError(String op) {
+        int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            throw new RuntimeException(op + ": glError 0x" + Integer.toHexString(error));
+        }
+    }
+}
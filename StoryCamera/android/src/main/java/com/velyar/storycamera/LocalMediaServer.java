@@ -0,0 +1,313 @@
+package com.velyar.storycamera;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loopback HTTP/1.1 server for recorded media, with byte-range support.
+ *
+ * The WebView's {@code <video>} element seeks with Range requests; each one is answered straight
+ * from a {@link FileChannel} via transferTo (sendfile), so only the touched bytes are read and
+ * nothing is buffered in the WebView heap. Only files inside {@code rootDir} are served, and every
+ * URL carries a random per-process token because any app on the device can reach 127.0.0.1.
+ */
+public class LocalMediaServer {
+    private static final String TAG = "LocalMediaServer";
+    private static final int MAX_CONNECTIONS = 4;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final int IDLE_TIMEOUT_MS = 15_000;
+
+    private final File rootDir;
+    private final String token;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private Thread acceptThread;
+    private volatile boolean running = false;
+
+    public LocalMediaServer(File rootDir) {
+        this.rootDir = rootDir;
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) sb.append(String.format(Locale.ROOT, "%02x", b));
+        this.token = sb.toString();
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) return;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        workers = Executors.newFixedThreadPool(MAX_CONNECTIONS);
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "StoryCameraMediaServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        Log.d(TAG, "Media server listening on port " + getPort() + " for " + rootDir.getAbsolutePath());
+    }
+
+    public synchronized void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException ignore) {}
+        if (workers != null) workers.shutdownNow();
+        serverChannel = null;
+        workers = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /** URL for a file inside rootDir, or null if the file lives elsewhere. */
+    public String urlFor(File file) throws IOException {
+        if (!isInsideRoot(file)) return null;
+        String name = URLEncoder.encode(file.getName(), "UTF-8").replace("+", "%20");
+        return "http://127.0.0.1:" + getPort() + "/" + token + "/" + name;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                workers.execute(() -> handleConnection(client));
+            } catch (IOException e) {
+                if (running) Log.w(TAG, "accept failed: " + e.getMessage());
+            } catch (java.util.concurrent.RejectedExecutionException e) {
+                break;
+            }
+        }
+    }
+
+    private void handleConnection(SocketChannel client) {
+        try {
+            client.socket().setSoTimeout(IDLE_TIMEOUT_MS);
+            client.socket().setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(client.socket().getInputStream());
+            boolean keepAlive = true;
+            // Media elements issue several range requests; keep the connection for all of them
+            while (keepAlive && running) {
+                Request request = readRequest(in);
+                if (request == null) break;
+                keepAlive = !"close".equalsIgnoreCase(request.connection);
+                serve(client, request, keepAlive);
+            }
+        } catch (java.net.SocketTimeoutException e) {
+            // Idle keep-alive connection, just close it
+        } catch (IOException e) {
+            Log.d(TAG, "Connection ended: " + e.getMessage());
+        } finally {
+            try { client.close(); } catch (IOException ignore) {}
+        }
+    }
+
+    private void serve(SocketChannel client, Request request, boolean keepAlive) throws IOException {
+        if ("OPTIONS".equals(request.method)) {
+            // CORS preflight for fetch() calls that send a Range header
+            StringBuilder headers = baseHeaders(204, "No Content", keepAlive);
+            headers.append("Access-Control-Allow-Methods: GET, HEAD, OPTIONS\r\n");
+            headers.append("Access-Control-Allow-Headers: Range\r\n");
+            headers.append("Content-Length: 0\r\n\r\n");
+            writeAscii(client, headers);
+            return;
+        }
+        if (!"GET".equals(request.method) && !"HEAD".equals(request.method)) {
+            writeStatus(client, 405, "Method Not Allowed", keepAlive);
+            return;
+        }
+        File file = resolve(request.path);
+        if (file == null) {
+            writeStatus(client, 404, "Not Found", keepAlive);
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            long start = 0;
+            long end = size - 1;
+            boolean partial = false;
+
+            if (request.range != null) {
+                long[] range = parseRange(request.range, size);
+                if (range == null) {
+                    StringBuilder headers = baseHeaders(416, "Range Not Satisfiable", keepAlive);
+                    headers.append("Content-Range: bytes */").append(size).append("\r\n");
+                    headers.append("Content-Length: 0\r\n\r\n");
+                    writeAscii(client, headers);
+                    return;
+                }
+                start = range[0];
+                end = range[1];
+                partial = true;
+            }
+
+            long length = size == 0 ? 0 : end - start + 1;
+            StringBuilder headers = partial ? baseHeaders(206, "Partial Content", keepAlive) : baseHeaders(200, "OK", keepAlive);
+            headers.append("Content-Type: ").append(contentType(file.getName())).append("\r\n");
+            headers.append("Content-Length: ").append(length).append("\r\n");
+            if (partial) {
+                headers.append("Content-Range: bytes ").append(start).append('-').append(end).append('/').append(size).append("\r\n");
+            }
+            headers.append("\r\n");
+            writeAscii(client, headers);
+
+            if ("HEAD".equals(request.method)) return;
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, client);
+                if (sent <= 0) {
+                    throw new IOException("Client stopped reading at " + position);
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    private File resolve(String rawPath) throws IOException {
+        String path = rawPath;
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        String prefix = "/" + token + "/";
+        if (!path.startsWith(prefix)) return null;
+        String name = URLDecoder.decode(path.substring(prefix.length()), "UTF-8");
+        if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.startsWith(".")) return null;
+        File file = new File(rootDir, name);
+        return file.isFile() && isInsideRoot(file) ? file : null;
+    }
+
+    private boolean isInsideRoot(File file) throws IOException {
+        String root = rootDir.getCanonicalPath() + File.separator;
+        return file.getCanonicalPath().startsWith(root);
+    }
+
+    /** Parses the first range of a "bytes=" header into inclusive [start, end], or null if unsatisfiable. */
+    static long[] parseRange(String header, long size) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || size <= 0) return null;
+        String spec = value.substring("bytes=".length());
+        int comma = spec.indexOf(',');
+        if (comma >= 0) spec = spec.substring(0, comma); // multipart ranges: serve the first one
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+            if (start >= size || start > end) return null;
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Request readRequest(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) return null;
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2) throw new IOException("Malformed request line");
+        Request request = new Request(parts[0].toUpperCase(Locale.ROOT), parts[1]);
+        int headerBytes = requestLine.length();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES) throw new IOException("Request headers too large");
+            int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if ("range".equals(name)) request.range = value;
+            else if ("connection".equals(name)) request.connection = value;
+        }
+        return request;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') break;
+            if (c != '\r') sb.append((char) c);
+            if (sb.length() > MAX_HEADER_BYTES) throw new IOException("Header line too long");
+        }
+        if (c == -1 && sb.length() == 0) return null;
+        return sb.toString();
+    }
+
+    private static StringBuilder baseHeaders(int status, String reason, boolean keepAlive) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        sb.append("Accept-Ranges: bytes\r\n");
+        sb.append("Access-Control-Allow-Origin: *\r\n");
+        sb.append("Access-Control-Expose-Headers: Content-Range, Content-Length, Accept-Ranges\r\n");
+        sb.append("Cache-Control: no-cache\r\n");
+        sb.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        return sb;
+    }
+
+    private static void writeStatus(SocketChannel client, int status, String reason, boolean keepAlive) throws IOException {
+        StringBuilder headers = baseHeaders(status, reason, keepAlive);
+        headers.append("Content-Length: 0\r\n\r\n");
+        writeAscii(client, headers);
+    }
+
+    private static void writeAscii(SocketChannel client, CharSequence text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+    }
+
+    private static String contentType(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".mp4") || lower.endsWith(".m4v")) return "video/mp4";
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) return "image/jpeg";
+        if (lower.endsWith(".webp")) return "image/webp";
+        return "application/octet-stream";
+    }
+
+    private static class Request {
+        final String method;
+        final String path;
+        String range;
+        String connection;
+
+        Request(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.velyar.storycamera;
+
+import android.util.Log;
+
+import androidx.camera.core.CameraEffect;
+
+/**
+ * Color-grading effect for the preview and video streams. Bind it in the same UseCaseGroup as
+ * Preview and VideoCapture; {@link #setFilter(int)} then changes the look without a rebind.
+ */
+public class LutCameraEffect extends CameraEffect {
+    private static final String TAG = "LutCameraEffect";
+
+    private final LutSurfaceProcessor processor;
+
+    public static LutCameraEffect create() {
+        return new LutCameraEffect(new LutSurfaceProcessor());
+    }
+
+    private LutCameraEffect(LutSurfaceProcessor processor) {
+        super(PREVIEW | VIDEO_CAPTURE, processor.getGlExecutor(), processor,
+            error -> Log.e(TAG, "Color grading failed: " + error.getMessage(), error));
+        this.processor = processor;
+    }
+
+    /** One of the {@link ColorFilters} indices. */
+    public void setFilter(int filterIndex) {
+        // Table generation stays off the caller's (UI) thread
+        processor.getGlExecutor().execute(() -> processor.setLut(ColorFilters.lutFor(filterIndex)));
+    }
+
+    public void release() {
+        processor.release();
+    }
+}
@@ -0,0 +1,115 @@
+package com.velyar.storycamera;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link GlTextureRenderer} that grades the OES frame through a {@link ColorLut}.
+ *
+ * GLES2 has no 3D textures, so the LUT is uploaded as the 2D strip from
+ * {@link ColorLut#toRgbaStrip()}: bilinear filtering covers red/green inside a slice and the
+ * shader blends the two nearest blue slices, giving the same trilinear result as the Java path.
+ * All methods must be called on the thread that owns the EGL context.
+ */
+public class LutRenderer extends GlTextureRenderer {
+    private static final String LUT_FRAGMENT_SHADER =
+        "#extension GL_OES_EGL_image_external : require\n" +
+        "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+        "precision highp float;\n" +
+        "#else\n" +
+        "precision mediump float;\n" +
+        "#endif\n" +
+        "varying vec2 vTextureCoord;\n" +
+        "uniform samplerExternalOES sTexture;\n" +
+        "uniform sampler2D sLut;\n" +
+        "uniform float uLutSize;\n" +
+        "uniform float uIntensity;\n" +
+        "vec3 grade(vec3 color) {\n" +
+        "    float maxIndex = uLutSize - 1.0;\n" +
+        "    float blue = color.b * maxIndex;\n" +
+        "    float b0 = floor(blue);\n" +
+        "    float b1 = min(b0 + 1.0, maxIndex);\n" +
+        "    float x = (color.r * maxIndex + 0.5) / (uLutSize * uLutSize);\n" +
+        "    float y = (color.g * maxIndex + 0.5) / uLutSize;\n" +
+        "    vec3 slice0 = texture2D(sLut, vec2(x + b0 / uLutSize, y)).rgb;\n" +
+        "    vec3 slice1 = texture2D(sLut, vec2(x + b1 / uLutSize, y)).rgb;\n" +
+        "    return mix(slice0, slice1, blue - b0);\n" +
+        "}\n" +
+        "void main() {\n" +
+        "    vec4 color = texture2D(sTexture, vTextureCoord);\n" +
+        "    if (uIntensity <= 0.0) {\n" +
+        "        gl_FragColor = color;\n" +
+        "        return;\n" +
+        "    }\n" +
+        "    vec3 graded = grade(clamp(color.rgb, 0.0, 1.0));\n" +
+        "    gl_FragColor = vec4(mix(color.rgb, graded, uIntensity), color.a);\n" +
+        "}\n";
+
+    private int lutTextureId = 0;
+    private int sLutHandle;
+    private int uLutSizeHandle;
+    private int uIntensityHandle;
+    private ColorLut lut;
+    private boolean lutDirty = false;
+    private float intensity = 1f;
+
+    public LutRenderer() {
+        super(LUT_FRAGMENT_SHADER);
+    }
+
+    /** Sets the table for the next frame; null draws the frame ungraded. */
+    public void setLut(ColorLut lut) {
+        this.lut = lut;
+        this.lutDirty = lut != null;
+    }
+
+    public void setIntensity(float intensity) {
+        this.intensity = Math.max(0f, Math.min(1f, intensity));
+    }
+
+    @Override
+    protected void onProgramCreated(int program) {
+        sLutHandle = GLES20.glGetUniformLocation(program, "sLut");
+        uLutSizeHandle = GLES20.glGetUniformLocation(program, "uLutSize");
+        uIntensityHandle = GLES20.glGetUniformLocation(program, "uIntensity");
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        lutTextureId = textures[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, lutTextureId);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        checkGlError("LUT texture setup");
+    }
+
+    @Override
+    protected void onPreDraw(int program) {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, lutTextureId);
+        if (lutDirty) {
+            // Uploaded only when the filter changes, never per frame
+            int size = lut.getSize();
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, size * size, size, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, ByteBuffer.wrap(lut.toRgbaStrip()));
+            checkGlError("LUT upload");
+            lutDirty = false;
+        }
+        GLES20.glUniform1i(sLutHandle, 1);
+        GLES20.glUniform1f(uLutSizeHandle, lut != null ? lut.getSize() : 2f);
+        GLES20.glUniform1f(uIntensityHandle, lut != null ? intensity : 0f);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    }
+
+    @Override
+    public void release() {
+        if (lutTextureId != 0) {
+            GLES20.glDeleteTextures(1, new int[] { lutTextureId }, 0);
+            lutTextureId = 0;
+        }
+        super.release();
+    }
+}
@@ -0,0 +1,146 @@
+package com.velyar.storycamera;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGLSurface;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+import androidx.camera.core.SurfaceOutput;
+import androidx.camera.core.SurfaceProcessor;
+import androidx.camera.core.SurfaceRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * CameraX {@link SurfaceProcessor} that draws each camera frame through a {@link LutRenderer}
+ * into every output surface (preview and encoder), so the selected filter is applied once on
+ * the GPU and ends up in the recorded file. All GL work runs on one dedicated thread.
+ */
+public class LutSurfaceProcessor implements SurfaceProcessor, SurfaceTexture.OnFrameAvailableListener {
+    private static final String TAG = "LutSurfaceProcessor";
+
+    private final HandlerThread glThread;
+    private final Handler glHandler;
+    private final Executor glExecutor;
+    private final float[] textureMatrix = new float[16];
+    private final float[] outputMatrix = new float[16];
+    private final Map<SurfaceOutput, EGLSurface> outputSurfaces = new LinkedHashMap<>();
+
+    private EglCore eglCore;
+    private EGLSurface placeholderSurface;
+    private LutRenderer renderer;
+    private SurfaceTexture inputTexture;
+    private boolean released = false;
+
+    public LutSurfaceProcessor() {
+        glThread = new HandlerThread("StoryCameraLut");
+        glThread.start();
+        glHandler = new Handler(glThread.getLooper());
+        glExecutor = glHandler::post;
+        glHandler.post(() -> {
+            eglCore = new EglCore(true);
+            // Keeps the context current while no output surface is attached yet
+            placeholderSurface = eglCore.createOffscreenSurface(1, 1);
+            eglCore.makeCurrent(placeholderSurface);
+            renderer = new LutRenderer();
+            renderer.surfaceCreated();
+        });
+    }
+
+    /** Executor for the CameraEffect; every processor callback then runs on the GL thread. */
+    public Executor getGlExecutor() {
+        return glExecutor;
+    }
+
+    /** Switches the grading table for subsequent frames; null renders ungraded. Any thread. */
+    public void setLut(ColorLut lut) {
+        glHandler.post(() -> {
+            if (!released) renderer.setLut(lut);
+        });
+    }
+
+    @Override
+    public void onInputSurface(SurfaceRequest request) {
+        if (released) {
+            request.willNotProvideSurface();
+            return;
+        }
+        Size resolution = request.getResolution();
+        SurfaceTexture surfaceTexture = new SurfaceTexture(renderer.getTextureId());
+        surfaceTexture.setDefaultBufferSize(resolution.getWidth(), resolution.getHeight());
+        Surface surface = new Surface(surfaceTexture);
+        request.provideSurface(surface, glExecutor, result -> {
+            surfaceTexture.setOnFrameAvailableListener(null);
+            surfaceTexture.release();
+            surface.release();
+            if (inputTexture == surfaceTexture) {
+                inputTexture = null;
+            }
+        });
+        surfaceTexture.setOnFrameAvailableListener(this, glHandler);
+        inputTexture = surfaceTexture;
+        Log.d(TAG, "Input surface " + resolution);
+    }
+
+    @Override
+    public void onOutputSurface(SurfaceOutput surfaceOutput) {
+        if (released) {
+            surfaceOutput.close();
+            return;
+        }
+        Surface surface = surfaceOutput.getSurface(glExecutor, event -> {
+            if (event.getEventCode() == SurfaceOutput.Event.EVENT_REQUEST_CLOSE) {
+                EGLSurface eglSurface = outputSurfaces.remove(surfaceOutput);
+                if (eglSurface != null) {
+                    eglCore.makeCurrent(placeholderSurface);
+                    eglCore.releaseSurface(eglSurface);
+                }
+                surfaceOutput.close();
+            }
+        });
+        outputSurfaces.put(surfaceOutput, eglCore.createWindowSurface(surface));
+        Log.d(TAG, "Output surface " + surfaceOutput.getSize() + " targets=" + surfaceOutput.getTargets());
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        if (released || surfaceTexture != inputTexture) return;
+        eglCore.makeCurrent(placeholderSurface);
+        surfaceTexture.updateTexImage();
+        surfaceTexture.getTransformMatrix(textureMatrix);
+        long timestampNs = surfaceTexture.getTimestamp();
+        for (Map.Entry<SurfaceOutput, EGLSurface> entry : outputSurfaces.entrySet()) {
+            SurfaceOutput output = entry.getKey();
+            EGLSurface eglSurface = entry.getValue();
+            Size size = output.getSize();
+            eglCore.makeCurrent(eglSurface);
+            // Adds the crop/rotation/mirroring CameraX expects for this particular output
+            output.updateTransformMatrix(outputMatrix, textureMatrix);
+            renderer.drawFrame(outputMatrix, size.getWidth(), size.getHeight());
+            eglCore.setPresentationTime(eglSurface, timestampNs);
+            eglCore.swapBuffers(eglSurface);
+        }
+    }
+
+    public void release() {
+        glHandler.post(() -> {
+            if (released) return;
+            released = true;
+            for (Map.Entry<SurfaceOutput, EGLSurface> entry : outputSurfaces.entrySet()) {
+                eglCore.releaseSurface(entry.getValue());
+                entry.getKey().close();
+            }
+            outputSurfaces.clear();
+            eglCore.makeCurrent(placeholderSurface);
+            renderer.release();
+            eglCore.releaseSurface(placeholderSurface);
+            eglCore.release();
+            glThread.quitSafely();
+        });
+    }
+}
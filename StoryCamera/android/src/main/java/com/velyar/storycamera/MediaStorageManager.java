@@ -0,0 +1,230 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.StatFs;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the recordings directory (getExternalFilesDir(null)/Movies) under a size quota.
+ *
+ * Each recording's upload state and last access come from the {@link RecordingJournal}. When the
+ * directory grows past the quota, recordings that are already uploaded are deleted least recently
+ * used first, together with their thumbnail and any _compressed_*/_trimmed_* copies. Recordings that
+ * were not uploaded, or that the journal does not know, are never evicted. Leftover segment
+ * directories from interrupted sessions are removed as well.
+ *
+ * Blocking; run {@link #cleanup()} on a background executor.
+ */
+public class MediaStorageManager {
+    private static final String TAG = "MediaStorageManager";
+    private static final String PREFS_NAME = "StoryCameraStorage";
+    private static final String KEY_QUOTA_BYTES = "quotaBytes";
+    public static final long DEFAULT_QUOTA_BYTES = 2048L * 1024 * 1024;
+    // Segment directories this old belong to a session that is gone
+    private static final long STALE_SEGMENTS_MS = 24L * 60 * 60 * 1000;
+    public static final String KIND_COMPRESSED = "compressed";
+    public static final String KIND_TRIMMED = "trimmed";
+    // <recording>_thumb.jpg, and <recording>_compressed[_n].mp4 / <recording>_trimmed[_n].mp4 copies
+    private static final Pattern DERIVED_NAME = Pattern.compile("(.+)(?:_thumb\\.jpg|_(?:compressed|trimmed)(?:_-?\\d+)?\\.mp4)");
+
+    private final Context context;
+    private volatile long lastEvictedCount = 0;
+    private volatile long lastFreedBytes = 0;
+    private volatile long lastCleanupAt = 0;
+
+    public MediaStorageManager(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static File moviesDir(Context context) {
+        return new File(context.getExternalFilesDir(null), "Movies");
+    }
+
+    public long getQuotaBytes() {
+        return prefs().getLong(KEY_QUOTA_BYTES, DEFAULT_QUOTA_BYTES);
+    }
+
+    public void setQuotaBytes(long quotaBytes) {
+        prefs().edit().putLong(KEY_QUOTA_BYTES, quotaBytes).apply();
+    }
+
+    /**
+     * A new, uniquely named file for a {@code kind} copy of {@code source}, next to it. Every call gets
+     * its own file, so a copy that is still in use is never overwritten; {@link #recordingFor} maps
+     * it back to the recording.
+     */
+    public static File createDerivedFile(File source, String kind) throws IOException {
+        String name = recordingFor(source).getName();
+        String base = name.endsWith(".mp4") ? name.substring(0, name.length() - ".mp4".length()) : name;
+        return File.createTempFile(base + "_" + kind + "_", ".mp4", source.getParentFile());
+    }
+
+    /** The recording a derived file (thumbnail, compressed/trimmed copy) was made from, or the file itself. */
+    public static File recordingFor(File file) {
+        Matcher matcher = DERIVED_NAME.matcher(file.getName());
+        if (!matcher.matches()) {
+            return file;
+        }
+        return new File(file.getParentFile(), matcher.group(1) + ".mp4");
+    }
+
+    /** Deletes a compressed/trimmed copy in the recordings directory; anything else is left alone. */
+    public boolean deleteDerived(File file) {
+        boolean copy = file.getName().endsWith(".mp4") && !recordingFor(file).equals(file);
+        if (!copy || !moviesDir(context).equals(file.getParentFile())) {
+            return false;
+        }
+        return file.delete();
+    }
+
+    public void markUploaded(File file) {
+        File recording = recordingFor(file);
+        if (!RecordingJournal.getInstance(context).markUploaded(recording.getAbsolutePath())) {
+            Log.d(TAG, "Not in the journal, upload state not tracked: " + recording.getName());
+        }
+    }
+
+    public void touch(File file) {
+        RecordingJournal.getInstance(context).touch(recordingFor(file).getAbsolutePath());
+    }
+
+    /** Removes stale segment directories, then evicts uploaded recordings until usage fits the quota. */
+    public synchronized void cleanup() {
+        File dir = moviesDir(context);
+        if (!dir.isDirectory()) {
+            return;
+        }
+        long freed = removeStaleSegments(dir);
+        long evicted = 0;
+        long quota = getQuotaBytes();
+        long used = sizeOf(dir);
+        if (used > quota) {
+            RecordingJournal journal = RecordingJournal.getInstance(context);
+            List<String> candidates = journal.listEvictable();
+            for (String path : candidates) {
+                if (used <= quota) break;
+                long bytes = deleteRecording(new File(path));
+                journal.markEvicted(path);
+                used -= bytes;
+                freed += bytes;
+                evicted++;
+            }
+            if (used > quota) {
+                Log.w(TAG, "Still over quota after evicting all uploaded recordings: " + used + " / " + quota + " bytes");
+            }
+        }
+        lastEvictedCount = evicted;
+        lastFreedBytes = freed;
+        lastCleanupAt = System.currentTimeMillis();
+        Log.d(TAG, "Cleanup evicted " + evicted + " recordings, freed " + freed + " bytes, using " + used + " / " + quota);
+    }
+
+    /** The getStorageUsage() result. */
+    public JSObject usage() {
+        File dir = moviesDir(context);
+        long used = 0;
+        long uploaded = 0;
+        int recordings = 0;
+        RecordingJournal journal = RecordingJournal.getInstance(context);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long size = file.isDirectory() ? sizeOf(file) : file.length();
+                used += size;
+                if (file.isFile() && file.getName().endsWith(".mp4") && recordingFor(file).equals(file)) {
+                    recordings++;
+                }
+                if (file.isFile() && journal.isUploaded(recordingFor(file).getAbsolutePath())) {
+                    uploaded += size;
+                }
+            }
+        }
+        JSObject ret = new JSObject();
+        ret.put("usedBytes", used);
+        ret.put("quotaBytes", getQuotaBytes());
+        ret.put("uploadedBytes", uploaded);
+        ret.put("recordingCount", recordings);
+        ret.put("freeBytes", freeBytes(dir));
+        if (lastCleanupAt > 0) {
+            JSObject cleanup = new JSObject();
+            cleanup.put("at", lastCleanupAt);
+            cleanup.put("evictedCount", lastEvictedCount);
+            cleanup.put("freedBytes", lastFreedBytes);
+            ret.put("lastCleanup", cleanup);
+        }
+        return ret;
+    }
+
+    static long freeBytes(File dir) {
+        try {
+            return new StatFs(dir.exists() ? dir.getAbsolutePath() : dir.getParent()).getAvailableBytes();
+        } catch (IllegalArgumentException e) {
+            return -1L;
+        }
+    }
+
+    private long deleteRecording(File recording) {
+        long bytes = 0;
+        if (recording.exists()) {
+            bytes += recording.length();
+            recording.delete();
+        }
+        File[] siblings = recording.getParentFile() != null ? recording.getParentFile().listFiles() : null;
+        if (siblings != null) {
+            for (File derived : siblings) {
+                if (derived.isFile() && !derived.equals(recording) && recordingFor(derived).equals(recording)) {
+                    bytes += derived.length();
+                    derived.delete();
+                }
+            }
+        }
+        Log.d(TAG, "Evicted " + recording.getName() + " (" + bytes + " bytes)");
+        return bytes;
+    }
+
+    private static long removeStaleSegments(File dir) {
+        long freed = 0;
+        long cutoff = System.currentTimeMillis() - STALE_SEGMENTS_MS;
+        File[] entries = dir.listFiles();
+        if (entries == null) return 0;
+        for (File entry : entries) {
+            // StoryCameraActivity keeps takes in ".<name>_segments" until they are joined
+            if (entry.isDirectory() && entry.getName().endsWith("_segments") && entry.lastModified() < cutoff) {
+                File[] takes = entry.listFiles();
+                if (takes != null) {
+                    for (File take : takes) {
+                        freed += take.length();
+                        take.delete();
+                    }
+                }
+                entry.delete();
+            }
+        }
+        return freed;
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) return file.length();
+        long total = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                total += sizeOf(child);
+            }
+        }
+        return total;
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
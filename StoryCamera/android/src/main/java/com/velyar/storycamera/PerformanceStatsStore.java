@@ -0,0 +1,72 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Ring buffer of the last {@link #MAX_SESSIONS} {@link SessionMetrics} snapshots, kept in
+ * SharedPreferences so sessions survive the activity and process until JS collects them.
+ */
+public class PerformanceStatsStore {
+    private static final String TAG = "PerformanceStatsStore";
+    private static final String PREFS_NAME = "StoryCameraMetrics";
+    private static final String KEY_SESSIONS = "sessions";
+    public static final int MAX_SESSIONS = 20;
+
+    private static final Object lock = new Object();
+
+    public static void append(Context context, SessionMetrics metrics) {
+        synchronized (lock) {
+            try {
+                SharedPreferences prefs = prefs(context);
+                JSONArray sessions = read(prefs);
+                sessions.put(metrics.toJson());
+                // Drop the oldest entries beyond capacity
+                JSONArray trimmed = new JSONArray();
+                for (int i = Math.max(0, sessions.length() - MAX_SESSIONS); i < sessions.length(); i++) {
+                    trimmed.put(sessions.get(i));
+                }
+                prefs.edit().putString(KEY_SESSIONS, trimmed.toString()).apply();
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to store session metrics: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Most recent sessions first, at most {@code limit}. */
+    public static JSONArray load(Context context, int limit) {
+        synchronized (lock) {
+            JSONArray sessions = read(prefs(context));
+            JSONArray result = new JSONArray();
+            for (int i = sessions.length() - 1; i >= 0 && result.length() < limit; i--) {
+                result.put(sessions.opt(i));
+            }
+            return result;
+        }
+    }
+
+    public static void clear(Context context) {
+        synchronized (lock) {
+            prefs(context).edit().remove(KEY_SESSIONS).apply();
+        }
+    }
+
+    private static JSONArray read(SharedPreferences prefs) {
+        String raw = prefs.getString(KEY_SESSIONS, null);
+        if (raw == null) return new JSONArray();
+        try {
+            return new JSONArray(raw);
+        } catch (JSONException e) {
+            Log.w(TAG, "Discarding unreadable session metrics: " + e.getMessage());
+            return new JSONArray();
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
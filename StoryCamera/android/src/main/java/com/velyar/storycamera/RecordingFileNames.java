@@ -0,0 +1,29 @@
+package com.velyar.storycamera;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Recording file names: MISSION_&lt;id&gt;_&lt;ts&gt;.mp4, DAILY_&lt;id&gt;_&lt;ts&gt;.mp4 or STORY_&lt;ts&gt;.mp4.
+ * Plain Java so the naming can be benchmarked off-device.
+ */
+public class RecordingFileNames {
+    // SimpleDateFormat is costly to build and not thread-safe; keep one per thread
+    private static final ThreadLocal<SimpleDateFormat> TIMESTAMP_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+        }
+    };
+
+    public static String fileNameFor(String contextType, String missionId, String promptId, long timeMillis) {
+        String timeStamp = TIMESTAMP_FORMAT.get().format(new Date(timeMillis));
+        if ("mission".equals(contextType) && missionId != null) {
+            return "MISSION_" + missionId + "_" + timeStamp + ".mp4";
+        } else if ("daily".equals(contextType) && promptId != null) {
+            return "DAILY_" + promptId + "_" + timeStamp + ".mp4";
+        }
+        return "STORY_" + timeStamp + ".mp4";
+    }
+}
@@ -0,0 +1,188 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.content.Intent;
+import android.media.MediaMetadataRetriever;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+/**
+ * Turns a finished recording into the activity result, off the main thread.
+ *
+ * Stages: probe the file once with {@link MediaMetadataRetriever} (metadata + poster frame from the
+ * same open retriever), append the recording to the {@link RecordingJournal}, hand it to
+ * {@link RecordingSalvager}, resolve the FileProvider URI and build the result intent. The SHA-256
+ * of the file is stored in the journal after the result has been handed back. Only the callback
+ * is posted to the UI executor, so the stop animation is never blocked on disk or codec work.
+ */
+public class RecordingFinalizer {
+    private static final String TAG = "RecordingFinalizer";
+
+    // Result intent extras read back by StoryCameraPlugin.handleOnActivityResult
+    static final String EXTRA_DURATION_MS = "durationMs";
+    static final String EXTRA_WIDTH = "width";
+    static final String EXTRA_HEIGHT = "height";
+    static final String EXTRA_ROTATION = "rotation";
+    static final String EXTRA_HAS_AUDIO = "hasAudio";
+    static final String EXTRA_SIZE = "size";
+    static final String EXTRA_JOURNAL_ID = "journalId";
+
+    public interface Callback {
+        void onFinalized(Intent result);
+
+        void onFailed(Exception error);
+    }
+
+    /** What the plugin returns about a recording, so JS does not have to probe the file again. */
+    public static class RecordingMetadata {
+        public long durationMs;
+        public int width;
+        public int height;
+        public int rotation;
+        public boolean hasAudio;
+        public long size;
+
+        static RecordingMetadata read(MediaMetadataRetriever mmr, File file) {
+            RecordingMetadata metadata = new RecordingMetadata();
+            metadata.durationMs = parseLong(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+            metadata.width = (int) parseLong(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+            metadata.height = (int) parseLong(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+            metadata.rotation = (int) parseLong(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+            metadata.hasAudio = "yes".equals(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_HAS_AUDIO));
+            metadata.size = file.length();
+            return metadata;
+        }
+
+        void putExtras(Intent intent) {
+            intent.putExtra(EXTRA_DURATION_MS, durationMs);
+            intent.putExtra(EXTRA_WIDTH, width);
+            intent.putExtra(EXTRA_HEIGHT, height);
+            intent.putExtra(EXTRA_ROTATION, rotation);
+            intent.putExtra(EXTRA_HAS_AUDIO, hasAudio);
+            intent.putExtra(EXTRA_SIZE, size);
+        }
+
+        @Override
+        public String toString() {
+            return durationMs + " ms, " + width + "x" + height + " rot " + rotation + ", audio=" + hasAudio + ", " + size + " bytes";
+        }
+
+        private static long parseLong(String value) {
+            try {
+                return value != null ? Long.parseLong(value.trim()) : 0L;
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        }
+    }
+
+    private final Context context;
+    private final Executor backgroundExecutor;
+    private final Executor callbackExecutor;
+
+    public RecordingFinalizer(Context context, Executor backgroundExecutor, Executor callbackExecutor) {
+        this.context = context.getApplicationContext();
+        this.backgroundExecutor = backgroundExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Runs the pipeline for {@code videoFile} and delivers the result intent on the callback executor.
+     * Context values are echoed into both the prefs hand-off and the result, as before.
+     */
+    public void finalizeRecording(File videoFile, String contextType, String missionId, String promptId, Callback callback) {
+        backgroundExecutor.execute(() -> {
+            long startedAt = SystemClock.elapsedRealtime();
+            try {
+                if (videoFile == null || !videoFile.exists()) {
+                    throw new IllegalStateException("Recorded file is missing");
+                }
+
+                RecordingMetadata metadata = null;
+                String thumbnailPath = null;
+                MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+                try {
+                    mmr.setDataSource(videoFile.getAbsolutePath());
+                    metadata = RecordingMetadata.read(mmr, videoFile);
+                    Log.d(TAG, "Recording metadata: " + metadata);
+                    try {
+                        thumbnailPath = ThumbnailExtractor.extract(mmr, videoFile,
+                            ThumbnailExtractor.DEFAULT_MAX_EDGE, ThumbnailExtractor.DEFAULT_FRAME_TIME_US).getAbsolutePath();
+                    } catch (Exception e) {
+                        Log.w(TAG, "Thumbnail extraction failed: " + e.getMessage());
+                    }
+                } catch (RuntimeException e) {
+                    // A file the retriever cannot open is still worth returning; JS falls back to probing it
+                    Log.w(TAG, "Could not read recording metadata: " + e.getMessage());
+                } finally {
+                    try { mmr.release(); } catch (Exception ignore) {}
+                }
+
+                long journalId = saveHandOff(videoFile, thumbnailPath, metadata, contextType, missionId, promptId);
+                // Keeps this take's codec config for salvaging a later one, and drops its crash marker
+                RecordingSalvager.onFinalized(context, videoFile);
+
+                Intent result = new Intent();
+                result.putExtra("videoUri", videoFile.getAbsolutePath());
+                if (thumbnailPath != null) {
+                    result.putExtra("thumbnailPath", thumbnailPath);
+                }
+                if (metadata != null) {
+                    metadata.putExtras(result);
+                }
+                if (journalId > 0) {
+                    result.putExtra(EXTRA_JOURNAL_ID, journalId);
+                }
+                String contentUri = FileProvider.getUriForFile(
+                    context,
+                    context.getPackageName() + ".fileprovider",
+                    videoFile
+                ).toString();
+                result.putExtra("contentUri", contentUri);
+                if (contextType != null) result.putExtra("contextType", contextType);
+                if (missionId != null) result.putExtra("missionId", missionId);
+                if (promptId != null) result.putExtra("promptId", promptId);
+
+                Log.d(TAG, "Finalize pipeline took " + (SystemClock.elapsedRealtime() - startedAt) + " ms");
+                callbackExecutor.execute(() -> callback.onFinalized(result));
+
+                // After the result is on its way, so the digest never delays it
+                storeContentHash(videoFile);
+            } catch (Exception e) {
+                Log.e(TAG, "Finalize pipeline failed: " + e.getMessage(), e);
+                callbackExecutor.execute(() -> callback.onFailed(e));
+            }
+        });
+    }
+
+    private void storeContentHash(File videoFile) {
+        long startedAt = SystemClock.elapsedRealtime();
+        try {
+            String hash = ContentHasher.sha256(videoFile);
+            RecordingJournal.getInstance(context).setContentHash(videoFile.getAbsolutePath(), hash);
+            Log.d(TAG, "SHA-256 of " + videoFile.length() + " bytes took " + (SystemClock.elapsedRealtime() - startedAt) + " ms");
+        } catch (Exception e) {
+            // getContentHash() digests it on demand instead
+            Log.w(TAG, "Content hash failed: " + e.getMessage());
+        }
+    }
+
+    private long saveHandOff(File videoFile, String thumbnailPath, RecordingMetadata metadata,
+                             String contextType, String missionId, String promptId) {
+        // Read by getVideoData()/listPendingRecordings(), also when the activity result is lost
+        try {
+            long id = RecordingHandOff.save(context, videoFile.getAbsolutePath(), thumbnailPath, contextType, missionId, promptId,
+                metadata != null ? metadata.durationMs : 0L, metadata != null ? metadata.size : videoFile.length());
+            Log.d(TAG, "Journaled recording " + id + ": contextType=" + contextType + ", missionId=" + missionId + ", promptId=" + promptId);
+            return id;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to write recording journal: " + e.getMessage());
+            return -1L;
+        }
+    }
+}
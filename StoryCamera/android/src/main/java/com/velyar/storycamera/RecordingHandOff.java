@@ -0,0 +1,118 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Hand-off between the camera activity and JS, on top of {@link RecordingJournal}. It is the
+ * polling fallback behind getVideoData()/clearVideoData() for when the activity result is lost:
+ * getVideoData() reports the newest pending recording, clearVideoData() consumes it.
+ *
+ * Older versions kept a single recording in the "StoryCamera" SharedPreferences; a value left
+ * there is moved into the journal the first time the hand-off is used.
+ */
+public class RecordingHandOff {
+    private static final String TAG = "RecordingHandOff";
+
+    // Legacy SharedPreferences hand-off, read once for migration
+    static final String PREFS_NAME = "StoryCamera";
+    static final String KEY_VIDEO_PATH = "lastVideoPath";
+    static final String KEY_THUMBNAIL_PATH = "lastThumbnailPath";
+    static final String KEY_CONTEXT_TYPE = "lastContextType";
+    static final String KEY_MISSION_ID = "lastMissionId";
+    static final String KEY_PROMPT_ID = "lastPromptId";
+    static final String KEY_SHOULD_NAVIGATE = "shouldNavigateToTest";
+
+    private static volatile boolean migrated = false;
+
+    /** Records a finished recording and returns its journal id. */
+    public static long save(Context context, String videoPath, String thumbnailPath,
+                            String contextType, String missionId, String promptId) {
+        return save(context, videoPath, thumbnailPath, contextType, missionId, promptId, 0L, 0L);
+    }
+
+    public static long save(Context context, String videoPath, String thumbnailPath,
+                            String contextType, String missionId, String promptId,
+                            long durationMs, long size) {
+        RecordingJournal.Entry entry = new RecordingJournal.Entry();
+        entry.videoPath = videoPath;
+        entry.thumbnailPath = thumbnailPath;
+        entry.contextType = contextType;
+        entry.missionId = missionId;
+        entry.promptId = promptId;
+        entry.durationMs = durationMs;
+        entry.size = size;
+        return journal(context).append(entry);
+    }
+
+    /** The getVideoData() result; {@code consumeNavigate} resets the navigate flag once read. */
+    public static JSObject read(Context context, boolean consumeNavigate) {
+        RecordingJournal journal = journal(context);
+        RecordingJournal.Entry latest = journal.latestPending();
+        if (latest == null) {
+            JSObject result = new JSObject();
+            result.put("hasVideo", false);
+            result.put("pendingCount", 0);
+            return result;
+        }
+
+        if (consumeNavigate && latest.navigatePending) {
+            journal.clearNavigate(latest.id);
+        }
+
+        JSObject result = latest.toJSObject();
+        result.put("hasVideo", latest.navigatePending);
+        result.put("pendingCount", journal.pendingCount());
+        return result;
+    }
+
+    /** Consumes the newest pending recording, the one getVideoData() reports. */
+    public static void clear(Context context) {
+        RecordingJournal journal = journal(context);
+        RecordingJournal.Entry latest = journal.latestPending();
+        if (latest != null) {
+            journal.markConsumed(latest.id);
+        }
+    }
+
+    public static boolean clear(Context context, long id) {
+        return journal(context).markConsumed(id);
+    }
+
+    static RecordingJournal journal(Context context) {
+        RecordingJournal journal = RecordingJournal.getInstance(context);
+        if (!migrated) {
+            migrateLegacyPrefs(context, journal);
+        }
+        return journal;
+    }
+
+    private static synchronized void migrateLegacyPrefs(Context context, RecordingJournal journal) {
+        if (migrated) return;
+        SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String videoPath = prefs.getString(KEY_VIDEO_PATH, null);
+        if (videoPath != null) {
+            RecordingJournal.Entry entry = new RecordingJournal.Entry();
+            entry.videoPath = videoPath;
+            entry.thumbnailPath = prefs.getString(KEY_THUMBNAIL_PATH, null);
+            entry.contextType = prefs.getString(KEY_CONTEXT_TYPE, null);
+            entry.missionId = prefs.getString(KEY_MISSION_ID, null);
+            entry.promptId = prefs.getString(KEY_PROMPT_ID, null);
+            entry.navigatePending = prefs.getBoolean(KEY_SHOULD_NAVIGATE, false);
+            journal.append(entry);
+            Log.d(TAG, "Migrated legacy hand-off for " + videoPath);
+        }
+        prefs.edit()
+            .remove(KEY_VIDEO_PATH)
+            .remove(KEY_CONTEXT_TYPE)
+            .remove(KEY_MISSION_ID)
+            .remove(KEY_PROMPT_ID)
+            .remove(KEY_THUMBNAIL_PATH)
+            .remove(KEY_SHOULD_NAVIGATE)
+            .commit();
+        migrated = true;
+    }
+}
@@ -0,0 +1,314 @@
+package com.velyar.storycamera;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only SQLite journal of finished recordings and the context they were made for.
+ *
+ * Every recording gets its own row keyed by rowid, so a second take no longer overwrites one that
+ * has not been uploaded yet. Pending entries are read newest first through the (consumed_at, id)
+ * index and paged by id. Consumed rows are kept for a while and pruned when the database is opened.
+ *
+ * Only the newest pending entry may open the preview: appending or consuming an entry also clears
+ * the navigate flag of every older pending one, so an earlier take that was never cleared does not
+ * resurface in getVideoData() once the newer one has been handled.
+ *
+ * Rows also carry the upload state and last access time that {@link MediaStorageManager} uses to
+ * pick eviction candidates, whether {@link RecordingSalvager} rebuilt the recording after a
+ * crash, and the SHA-256 of its contents once {@link ContentHasher} has digested it.
+ */
+public class RecordingJournal extends SQLiteOpenHelper {
+    private static final String TAG = "RecordingJournal";
+    private static final String DB_NAME = "story_camera_journal.db";
+    private static final int DB_VERSION = 4;
+    private static final String TABLE = "recordings";
+    private static final long CONSUMED_RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String[] COLUMNS = {
+        "id", "video_path", "thumbnail_path", "context_type", "mission_id", "prompt_id",
+        "duration_ms", "size", "created_at", "navigate", "recovered", "content_hash"
+    };
+    private static final String PENDING = "consumed_at IS NULL";
+
+    private static RecordingJournal instance;
+
+    /** One pending (or consumed) recording. */
+    public static class Entry {
+        public long id;
+        public String videoPath;
+        public String thumbnailPath;
+        public String contextType;
+        public String missionId;
+        public String promptId;
+        public long durationMs;
+        public long size;
+        public long createdAt;
+        // Cleared once getVideoData() has reported the entry, to avoid navigation loops
+        public boolean navigatePending = true;
+        // Salvaged from a take that was never finalized
+        public boolean recovered;
+        public String contentHash; // hex SHA-256, null until digested
+
+        public JSObject toJSObject() {
+            JSObject json = new JSObject();
+            json.put("id", id);
+            json.put("filePath", videoPath);
+            if (thumbnailPath != null) json.put("thumbnailPath", thumbnailPath);
+            if (contextType != null) json.put("contextType", contextType);
+            if (missionId != null) json.put("missionId", missionId);
+            if (promptId != null) json.put("promptId", promptId);
+            if (durationMs > 0) json.put("durationMs", durationMs);
+            if (size > 0) json.put("size", size);
+            json.put("createdAt", createdAt);
+            if (recovered) json.put("recovered", true);
+            if (contentHash != null) json.put("sha256", contentHash);
+            return json;
+        }
+    }
+
+    public static synchronized RecordingJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new RecordingJournal(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RecordingJournal(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        // Appends come from the finalize thread while the plugin thread reads
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+            + "id INTEGER PRIMARY KEY, "
+            + "video_path TEXT NOT NULL, "
+            + "thumbnail_path TEXT, "
+            + "context_type TEXT, "
+            + "mission_id TEXT, "
+            + "prompt_id TEXT, "
+            + "duration_ms INTEGER NOT NULL DEFAULT 0, "
+            + "size INTEGER NOT NULL DEFAULT 0, "
+            + "created_at INTEGER NOT NULL, "
+            + "navigate INTEGER NOT NULL DEFAULT 1, "
+            + "consumed_at INTEGER)");
+        db.execSQL("CREATE INDEX " + TABLE + "_pending ON " + TABLE + " (consumed_at, id)");
+        addStorageColumns(db);
+        addRecoveredColumn(db);
+        addContentHashColumn(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            addStorageColumns(db);
+        }
+        if (oldVersion < 3) {
+            addRecoveredColumn(db);
+        }
+        if (oldVersion < 4) {
+            addContentHashColumn(db);
+        }
+    }
+
+    private static void addStorageColumns(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN uploaded_at INTEGER");
+        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN last_access_at INTEGER");
+        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN evicted_at INTEGER");
+        db.execSQL("CREATE INDEX " + TABLE + "_path ON " + TABLE + " (video_path)");
+    }
+
+    private static void addRecoveredColumn(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN recovered INTEGER NOT NULL DEFAULT 0");
+    }
+
+    private static void addContentHashColumn(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN content_hash TEXT");
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            long cutoff = System.currentTimeMillis() - CONSUMED_RETENTION_MS;
+            // Uploaded rows stay until evicted; storage accounting needs them
+            int pruned = db.delete(TABLE, "consumed_at IS NOT NULL AND consumed_at < ? AND (uploaded_at IS NULL OR evicted_at IS NOT NULL)",
+                new String[] { String.valueOf(cutoff) });
+            if (pruned > 0) {
+                Log.d(TAG, "Pruned " + pruned + " consumed recordings");
+            }
+        }
+    }
+
+    /** Appends {@code entry} and returns its id. */
+    public long append(Entry entry) {
+        ContentValues values = new ContentValues();
+        values.put("video_path", entry.videoPath);
+        values.put("thumbnail_path", entry.thumbnailPath);
+        values.put("context_type", entry.contextType);
+        values.put("mission_id", entry.missionId);
+        values.put("prompt_id", entry.promptId);
+        values.put("duration_ms", entry.durationMs);
+        values.put("size", entry.size);
+        values.put("created_at", entry.createdAt > 0 ? entry.createdAt : System.currentTimeMillis());
+        values.put("navigate", entry.navigatePending ? 1 : 0);
+        values.put("recovered", entry.recovered ? 1 : 0);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            entry.id = db.insertOrThrow(TABLE, null, values);
+            clearNavigateBefore(db, entry.id);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return entry.id;
+    }
+
+    /** The newest entry that has not been consumed, or null. */
+    public Entry latestPending() {
+        List<Entry> entries = listPending(Long.MAX_VALUE, 1);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /** Up to {@code limit} pending entries with an id below {@code beforeId}, newest first. */
+    public List<Entry> listPending(long beforeId, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS, PENDING + " AND id < ?",
+                new String[] { String.valueOf(beforeId) }, null, null, "id DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                entries.add(readEntry(cursor));
+            }
+        }
+        return entries;
+    }
+
+    public long pendingCount() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE, PENDING);
+    }
+
+    /** Marks the entry consumed; returns false if it was unknown or already consumed. */
+    public boolean markConsumed(long id) {
+        ContentValues values = new ContentValues();
+        values.put("consumed_at", System.currentTimeMillis());
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            boolean consumed = db.update(TABLE, values, "id = ? AND " + PENDING, new String[] { String.valueOf(id) }) > 0;
+            if (consumed) {
+                clearNavigateBefore(db, id);
+            }
+            db.setTransactionSuccessful();
+            return consumed;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Whether the recording at {@code videoPath} has a row at all. */
+    public boolean contains(String videoPath) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE, "video_path = ?", new String[] { videoPath }) > 0;
+    }
+
+    /** The stored SHA-256 of the recording at {@code videoPath}, or null. */
+    public String contentHash(String videoPath) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE, new String[] { "content_hash" },
+                "video_path = ? AND content_hash IS NOT NULL", new String[] { videoPath }, null, null, "id DESC", "1")) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    public void setContentHash(String videoPath, String contentHash) {
+        ContentValues values = new ContentValues();
+        values.put("content_hash", contentHash);
+        getWritableDatabase().update(TABLE, values, "video_path = ?", new String[] { videoPath });
+    }
+
+    /** Marks the recording at {@code videoPath} uploaded; returns false if it is not journaled. */
+    public boolean markUploaded(String videoPath) {
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put("uploaded_at", now);
+        values.put("last_access_at", now);
+        return getWritableDatabase().update(TABLE, values, "video_path = ?", new String[] { videoPath }) > 0;
+    }
+
+    /** Records a read of the recording, for LRU eviction. */
+    public void touch(String videoPath) {
+        ContentValues values = new ContentValues();
+        values.put("last_access_at", System.currentTimeMillis());
+        getWritableDatabase().update(TABLE, values, "video_path = ? AND evicted_at IS NULL", new String[] { videoPath });
+    }
+
+    /** Uploaded recordings still on disk, least recently used first. */
+    public List<String> listEvictable() {
+        List<String> paths = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE, new String[] { "video_path" },
+                "uploaded_at IS NOT NULL AND evicted_at IS NULL", null, null, null,
+                "COALESCE(last_access_at, created_at) ASC")) {
+            while (cursor.moveToNext()) {
+                paths.add(cursor.getString(0));
+            }
+        }
+        return paths;
+    }
+
+    /** Uploaded and not yet evicted. */
+    public boolean isUploaded(String videoPath) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE,
+            "video_path = ? AND uploaded_at IS NOT NULL", new String[] { videoPath }) > 0;
+    }
+
+    /** The file is gone from disk; also takes it off the pending list. */
+    public void markEvicted(String videoPath) {
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put("evicted_at", now);
+        getWritableDatabase().update(TABLE, values, "video_path = ?", new String[] { videoPath });
+        ContentValues consumed = new ContentValues();
+        consumed.put("consumed_at", now);
+        getWritableDatabase().update(TABLE, consumed, "video_path = ? AND " + PENDING, new String[] { videoPath });
+    }
+
+    public void clearNavigate(long id) {
+        ContentValues values = new ContentValues();
+        values.put("navigate", 0);
+        getWritableDatabase().update(TABLE, values, "id = ?", new String[] { String.valueOf(id) });
+    }
+
+    // Older takes stay pending for listPendingRecordings() but no longer open the preview
+    private static void clearNavigateBefore(SQLiteDatabase db, long id) {
+        ContentValues values = new ContentValues();
+        values.put("navigate", 0);
+        db.update(TABLE, values, PENDING + " AND navigate = 1 AND id < ?", new String[] { String.valueOf(id) });
+    }
+
+    private static Entry readEntry(Cursor cursor) {
+        Entry entry = new Entry();
+        entry.id = cursor.getLong(0);
+        entry.videoPath = cursor.getString(1);
+        entry.thumbnailPath = cursor.getString(2);
+        entry.contextType = cursor.getString(3);
+        entry.missionId = cursor.getString(4);
+        entry.promptId = cursor.getString(5);
+        entry.durationMs = cursor.getLong(6);
+        entry.size = cursor.getLong(7);
+        entry.createdAt = cursor.getLong(8);
+        entry.navigatePending = cursor.getInt(9) != 0;
+        entry.recovered = cursor.getInt(10) != 0;
+        entry.contentHash = cursor.getString(11);
+        return entry;
+    }
+}
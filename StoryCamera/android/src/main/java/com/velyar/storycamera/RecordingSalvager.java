@@ -0,0 +1,520 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rescues recordings that were never finalized because the app was killed, crashed or lost power
+ * while recording.
+ *
+ * When a take starts, a marker ".<name>.recording" is written next to it with the recording's
+ * context and the codec configuration from {@link CodecConfigCache}; a normal finalize or a user
+ * cancel removes it again. On the next start the plugin calls {@link #recoverOrphans(Context)}:
+ * for every marker still there, a file that still has its moov box (closed, but never delivered)
+ * is journaled as is. A truncated file has no moov, so its sample data is walked instead: the mdat
+ * holds length-prefixed H.264/HEVC NAL units interleaved with AAC frames, the NAL units are grouped
+ * into access units and muxed into a new video-only MP4 with the cached SPS/PPS.
+ *
+ * Audio is not recovered: raw AAC frames carry no length or sync word, so without the sample table
+ * their boundaries in the mdat cannot be found. Frame times are rebuilt from the cached frame rate.
+ */
+public class RecordingSalvager {
+    private static final String TAG = "RecordingSalvager";
+    private static final String MARKER_SUFFIX = ".recording";
+
+    private static final int BOX_MOOV = 0x6D6F6F76; // 'moov'
+    private static final int BOX_MDAT = 0x6D646174; // 'mdat'
+    private static final int WINDOW_BYTES = 256 * 1024;
+    // Larger than any single NAL unit the camera encoders write, even an UHD IDR slice
+    private static final long MAX_NAL_BYTES = 4L * 1024 * 1024;
+
+    // The take being recorded in this process; its marker is not an orphan
+    private static volatile String activePath;
+
+    /** A marker left by a take that never finished, turned into a recording again. */
+    public static class Recovered {
+        public final RecordingJournal.Entry entry;
+        public final boolean remuxed;
+        public final int frames;
+
+        Recovered(RecordingJournal.Entry entry, boolean remuxed, int frames) {
+            this.entry = entry;
+            this.remuxed = remuxed;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * Writes the marker for a take that is about to be recorded into {@code video}. Blocking, but
+     * small; the activity runs it on its finalize executor.
+     */
+    public static void begin(Context context, File video, String configKey,
+                             String contextType, String missionId, String promptId) {
+        activePath = video.getAbsolutePath();
+        JSONObject marker = new JSONObject();
+        try {
+            marker.put("videoPath", video.getAbsolutePath());
+            marker.put("startedAt", System.currentTimeMillis());
+            marker.put("configKey", configKey);
+            if (contextType != null) marker.put("contextType", contextType);
+            if (missionId != null) marker.put("missionId", missionId);
+            if (promptId != null) marker.put("promptId", promptId);
+            CodecConfigCache.CodecConfig config = CodecConfigCache.get(context, configKey);
+            if (config != null) {
+                marker.put("codecConfig", config.toJson());
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not build recording marker: " + e.getMessage());
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(markerFor(video))) {
+            out.write(marker.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write recording marker: " + e.getMessage());
+        }
+    }
+
+    /** The take stopped without being delivered; its marker stays for the next start to pick up. */
+    public static void end(File video) {
+        if (video != null && video.getAbsolutePath().equals(activePath)) {
+            activePath = null;
+        }
+    }
+
+    /** The take was discarded on purpose. */
+    public static void discard(File video) {
+        if (video == null) {
+            return;
+        }
+        end(video);
+        markerFor(video).delete();
+    }
+
+    /**
+     * The take was finalized: caches its codec configuration for future salvage and removes the
+     * marker. Blocking; called from the finalize pipeline.
+     */
+    public static void onFinalized(Context context, File video) {
+        File marker = markerFor(video);
+        JSONObject json = readMarker(marker);
+        if (json != null && json.has("configKey")) {
+            CodecConfigCache.capture(context, json.optString("configKey"), video);
+        }
+        discard(video);
+    }
+
+    /**
+     * Handles every marker left in the recordings directory and returns the recordings that were
+     * journaled again. Blocking; run on a background executor before storage cleanup.
+     */
+    public static List<Recovered> recoverOrphans(Context context) {
+        List<Recovered> recovered = new ArrayList<>();
+        File[] markers = MediaStorageManager.moviesDir(context).listFiles(
+            (dir, name) -> name.startsWith(".") && name.endsWith(MARKER_SUFFIX));
+        if (markers == null) {
+            return recovered;
+        }
+        RecordingJournal journal = RecordingJournal.getInstance(context);
+        for (File marker : markers) {
+            JSONObject json = readMarker(marker);
+            String videoPath = json != null ? json.optString("videoPath", null) : null;
+            if (videoPath == null) {
+                marker.delete();
+                continue;
+            }
+            if (videoPath.equals(activePath)) {
+                continue;
+            }
+            File video = new File(videoPath);
+            try {
+                if (video.length() > 0 && !journal.contains(videoPath)) {
+                    Recovered result = recover(context, video, json);
+                    if (result != null) {
+                        recovered.add(result);
+                    }
+                }
+            } catch (Exception e) {
+                // The file stays on disk; there is nothing more to try on the next start
+                Log.w(TAG, "Could not recover " + video.getName() + ": " + e.getMessage());
+            }
+            marker.delete();
+        }
+        return recovered;
+    }
+
+    private static Recovered recover(Context context, File video, JSONObject marker) throws IOException {
+        boolean remuxed = false;
+        int frames = 0;
+        if (!isComplete(video)) {
+            CodecConfigCache.CodecConfig config = CodecConfigCache.CodecConfig.fromJson(marker.optJSONObject("codecConfig"));
+            if (config == null) {
+                config = CodecConfigCache.get(context, marker.optString("configKey"));
+            }
+            if (config == null) {
+                Log.w(TAG, "No codec config for " + video.getName() + ", cannot rebuild it");
+                return null;
+            }
+            File temp = new File(video.getParentFile(), "." + video.getName() + ".salvage");
+            frames = remux(video, temp, config);
+            if (frames == 0) {
+                temp.delete();
+                Log.w(TAG, "No complete frames in " + video.getName());
+                return null;
+            }
+            if (!temp.renameTo(video)) {
+                temp.delete();
+                throw new IOException("Could not replace " + video.getName());
+            }
+            remuxed = true;
+        }
+
+        RecordingJournal.Entry entry = new RecordingJournal.Entry();
+        entry.videoPath = video.getAbsolutePath();
+        entry.contextType = marker.optString("contextType", null);
+        entry.missionId = marker.optString("missionId", null);
+        entry.promptId = marker.optString("promptId", null);
+        entry.createdAt = marker.optLong("startedAt", video.lastModified());
+        entry.size = video.length();
+        entry.recovered = true;
+        // Offered through listPendingRecordings() and the recordingRecovered event, never by opening the preview
+        entry.navigatePending = false;
+        MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+        try {
+            mmr.setDataSource(video.getAbsolutePath());
+            entry.durationMs = RecordingFinalizer.RecordingMetadata.read(mmr, video).durationMs;
+            entry.thumbnailPath = ThumbnailExtractor.extract(mmr, video,
+                ThumbnailExtractor.DEFAULT_MAX_EDGE, ThumbnailExtractor.DEFAULT_FRAME_TIME_US).getAbsolutePath();
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read recovered recording: " + e.getMessage());
+        } finally {
+            try { mmr.release(); } catch (Exception ignore) {}
+        }
+        RecordingJournal.getInstance(context).append(entry);
+        Log.d(TAG, "Recovered " + video.getName() + (remuxed ? " (" + frames + " frames rebuilt)" : " (complete)")
+            + ", " + entry.durationMs + " ms");
+        return new Recovered(entry, remuxed, frames);
+    }
+
+    /** True when the file has a moov box, i.e. the Recorder finalized it. */
+    static boolean isComplete(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            return findSampleData(channel, channel.size()) == null;
+        }
+    }
+
+    /**
+     * The [start, end) range of the sample data, or null when a moov box says the file is
+     * complete. The Recorder only writes the mdat size when it finalizes, so a truncated file's
+     * mdat runs to the end of the file.
+     */
+    private static long[] findSampleData(FileChannel channel, long fileSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long position = 0;
+        long[] data = null;
+        while (position + 8 <= fileSize) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            long size = header.getInt() & 0xFFFFFFFFL;
+            int type = header.getInt();
+            int headerSize = 8;
+            if (size == 1 && header.remaining() >= 8) {
+                size = header.getLong();
+                headerSize = 16;
+            }
+            if (type == BOX_MOOV) {
+                return null;
+            }
+            boolean open = size < headerSize || position + size > fileSize;
+            if (type == BOX_MDAT) {
+                data = new long[] { position + headerSize, open ? fileSize : position + size };
+            }
+            if (open) {
+                break;
+            }
+            position += size;
+        }
+        if (data == null) {
+            throw new IOException("No sample data");
+        }
+        return data;
+    }
+
+    /** Rebuilds the video track of the truncated {@code input} into {@code output}; returns the frames written. */
+    static int remux(File input, File output, CodecConfigCache.CodecConfig config) throws IOException {
+        try (FileInputStream in = new FileInputStream(input); FileChannel channel = in.getChannel()) {
+            long[] data = findSampleData(channel, channel.size());
+            if (data == null) {
+                throw new IOException("Recording is complete");
+            }
+            NalWalker walker = new NalWalker(channel, data[0], data[1], config.isHevc());
+            MediaMuxer muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            int frames = 0;
+            boolean started = false;
+            try {
+                int track = muxer.addTrack(config.toFormat());
+                muxer.setOrientationHint(config.rotation);
+                muxer.start();
+                started = true;
+                long frameDurationUs = 1_000_000L / Math.max(1, config.frameRate);
+                MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+                AccessUnit unit;
+                boolean keyFrameSeen = false;
+                while ((unit = walker.next()) != null) {
+                    // Decoding has to start at a key frame
+                    keyFrameSeen |= unit.keyFrame;
+                    if (!keyFrameSeen) {
+                        continue;
+                    }
+                    info.set(0, unit.data.limit(), frames * frameDurationUs, unit.keyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                    muxer.writeSampleData(track, unit.data, info);
+                    frames++;
+                }
+                Log.d(TAG, "Rebuilt " + frames + " frames from " + (data[1] - data[0]) + " bytes of sample data, skipped "
+                    + walker.skippedBytes + " bytes of audio and incomplete data");
+            } finally {
+                try {
+                    if (started) muxer.stop();
+                } catch (IllegalStateException e) {
+                    // Nothing was written
+                    frames = 0;
+                }
+                muxer.release();
+            }
+            return frames;
+        }
+    }
+
+    /** One picture's NAL units in Annex B form, which is what MediaMuxer takes for AVC and HEVC. */
+    private static final class AccessUnit {
+        ByteBuffer data = ByteBuffer.allocateDirect(512 * 1024);
+        boolean hasSlice;
+        boolean keyFrame;
+
+        void reset() {
+            data.clear();
+            hasSlice = false;
+            keyFrame = false;
+        }
+
+        void append(FileChannel channel, long position, int length) throws IOException {
+            if (data.remaining() < length + 4) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(data.capacity() * 2, data.position() + length + 4));
+                data.flip();
+                grown.put(data);
+                data = grown;
+            }
+            data.putInt(1); // start code 00 00 00 01 in place of the length prefix
+            int limit = data.limit();
+            data.limit(data.position() + length);
+            while (data.hasRemaining()) {
+                int read = channel.read(data, position + length - data.remaining());
+                if (read < 0) {
+                    throw new EOFException();
+                }
+            }
+            data.limit(limit);
+        }
+    }
+
+    /**
+     * Walks the mdat and hands out complete access units. Runs of length-prefixed NAL units are
+     * video chunks; anything else is an audio chunk (or the truncated end) and is skipped byte by
+     * byte until the next run of NAL units starts. A sample always ends with a slice, so a run may
+     * only end after one, and a new run has to start a picture and be followed by another NAL unit.
+     */
+    private static final class NalWalker {
+        private final FileChannel channel;
+        private final long end;
+        private final boolean hevc;
+        private final ByteBuffer window = ByteBuffer.allocate(WINDOW_BYTES);
+        private long windowStart = -1;
+        private long position;
+        private boolean inRun;
+        private final AccessUnit unit = new AccessUnit();
+        private final AccessUnit ready = new AccessUnit();
+        long skippedBytes;
+
+        NalWalker(FileChannel channel, long start, long end, boolean hevc) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.hevc = hevc;
+        }
+
+        /** The next complete access unit (valid until the next call), or null at the end. */
+        AccessUnit next() throws IOException {
+            while (position < end) {
+                if (inRun ? continuesRun(position) : startsRun(position)) {
+                    inRun = true;
+                    int length = (int) lengthAt(position);
+                    int type = typeAt(position);
+                    boolean emit = unit.hasSlice && startsPicture(position, type);
+                    AccessUnit complete = emit ? takeUnit() : null;
+                    unit.append(channel, position + 4, length);
+                    if (isSlice(type)) {
+                        unit.hasSlice = true;
+                        unit.keyFrame |= isKeyFrame(type);
+                    }
+                    position += 4 + length;
+                    if (complete != null) {
+                        return complete;
+                    }
+                } else {
+                    // End of a video chunk: the picture in progress is complete
+                    boolean wasInRun = inRun;
+                    inRun = false;
+                    position++;
+                    skippedBytes++;
+                    if (wasInRun && unit.hasSlice) {
+                        return takeUnit();
+                    }
+                }
+            }
+            return unit.hasSlice ? takeUnit() : null;
+        }
+
+        private AccessUnit takeUnit() {
+            ready.reset();
+            ByteBuffer swap = ready.data;
+            ready.data = unit.data;
+            ready.data.flip();
+            ready.hasSlice = unit.hasSlice;
+            ready.keyFrame = unit.keyFrame;
+            unit.data = swap;
+            unit.reset();
+            return ready;
+        }
+
+        private boolean continuesRun(long at) throws IOException {
+            if (!isNal(at)) {
+                return false;
+            }
+            long next = at + 4 + lengthAt(at);
+            return isSlice(typeAt(at)) || next == end || isNal(next);
+        }
+
+        private boolean startsRun(long at) throws IOException {
+            if (!isNal(at)) {
+                return false;
+            }
+            long next = at + 4 + lengthAt(at);
+            return startsPicture(at, typeAt(at)) && (next == end || isNal(next));
+        }
+
+        private boolean isNal(long at) throws IOException {
+            int headerBytes = hevc ? 2 : 1;
+            if (at + 4 + headerBytes + 1 > end) {
+                return false;
+            }
+            long length = lengthAt(at);
+            if (length <= headerBytes || length > MAX_NAL_BYTES || at + 4 + length > end) {
+                return false;
+            }
+            int header = byteAt(at + 4);
+            if ((header & 0x80) != 0) {
+                return false; // forbidden_zero_bit
+            }
+            int type = typeAt(at);
+            if (hevc) {
+                // nuh_layer_id is 0 and nuh_temporal_id_plus1 is never 0 in camera streams
+                int second = byteAt(at + 5);
+                if ((header & 0x01) != 0 || (second & 0xF8) != 0 || (second & 0x07) == 0) {
+                    return false;
+                }
+                return type <= 9 || (type >= 16 && type <= 21) || (type >= 32 && type <= 35) || type == 39 || type == 40;
+            }
+            return type == 1 || type == 5 || type == 6 || type == 7 || type == 8 || type == 9;
+        }
+
+        private int typeAt(long at) throws IOException {
+            int header = byteAt(at + 4);
+            return hevc ? (header >> 1) & 0x3F : header & 0x1F;
+        }
+
+        private boolean isSlice(int type) {
+            return hevc ? type <= 21 : type == 1 || type == 5;
+        }
+
+        private boolean isKeyFrame(int type) {
+            return hevc ? type >= 16 && type <= 21 : type == 5;
+        }
+
+        /** Delimiters, parameter sets and SEI open a picture; so does the first slice of one. */
+        private boolean startsPicture(long at, int type) throws IOException {
+            if (isSlice(type)) {
+                // first_mb_in_slice == 0 (AVC) or first_slice_segment_in_pic_flag (HEVC): the top bit after the header
+                return (byteAt(at + 4 + (hevc ? 2 : 1)) & 0x80) != 0;
+            }
+            return true;
+        }
+
+        private long lengthAt(long at) throws IOException {
+            fill(at, 4);
+            return window.getInt((int) (at - windowStart)) & 0xFFFFFFFFL;
+        }
+
+        private int byteAt(long at) throws IOException {
+            fill(at, 1);
+            return window.get((int) (at - windowStart)) & 0xFF;
+        }
+
+        private void fill(long at, int bytes) throws IOException {
+            if (windowStart >= 0 && at >= windowStart && at + bytes <= windowStart + window.limit()) {
+                return;
+            }
+            window.clear();
+            while (window.hasRemaining()) {
+                if (channel.read(window, at + window.position()) <= 0) {
+                    break;
+                }
+            }
+            window.flip();
+            windowStart = at;
+            if (window.limit() < bytes) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static File markerFor(File video) {
+        return new File(video.getParentFile(), "." + video.getName() + MARKER_SUFFIX);
+    }
+
+    private static JSONObject readMarker(File marker) {
+        if (!marker.isFile()) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(marker)) {
+            byte[] bytes = new byte[(int) marker.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read < 0) break;
+                offset += read;
+            }
+            return new JSONObject(new String(bytes, 0, offset, StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Unreadable recording marker " + marker.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
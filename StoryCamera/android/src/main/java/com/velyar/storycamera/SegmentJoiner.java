@@ -0,0 +1,201 @@
+package com.velyar.storycamera;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Joins MP4 segments recorded with the same Recorder into one file without re-encoding.
+ *
+ * Compressed samples are copied from {@link MediaExtractor} to {@link MediaMuxer} with their
+ * timestamps shifted so each segment starts one frame after the previous one ended. No codec is
+ * involved, so the cost is one sequential read and write of the bytes, independent of how long
+ * the video is. The video and audio formats and the orientation come from the first segment;
+ * segments whose video format or rotation differs (e.g. recorded on the other lens) cannot be
+ * joined losslessly and are rejected.
+ */
+public class SegmentJoiner {
+    private static final String TAG = "SegmentJoiner";
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    // Gap inserted between segments, about one frame at 30 fps
+    private static final long SEGMENT_GAP_US = 33_333;
+
+    /** Writes the concatenation of {@code segments} to {@code output}; returns the number of segments joined. */
+    public static int join(List<File> segments, File output) throws IOException {
+        List<File> usable = new ArrayList<>();
+        for (File segment : segments) {
+            if (segment != null && segment.length() > 0) {
+                usable.add(segment);
+            }
+        }
+        if (usable.isEmpty()) {
+            throw new IOException("No recorded segments to join");
+        }
+        if (usable.size() == 1) {
+            // Nothing to join; a rename is enough when the segment is on the same volume
+            File only = usable.get(0);
+            if (only.renameTo(output)) {
+                return 1;
+            }
+        }
+
+        MediaMuxer muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        boolean started = false;
+        try {
+            MediaFormat videoFormat = null;
+            MediaFormat audioFormat = null;
+            int rotation = 0;
+            int videoTrack = -1;
+            int audioTrack = -1;
+            int bufferSize = DEFAULT_BUFFER_SIZE;
+            long offsetUs = 0;
+            int joined = 0;
+            ByteBuffer buffer = null;
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+            for (File segment : usable) {
+                MediaExtractor extractor = new MediaExtractor();
+                try {
+                    try {
+                        extractor.setDataSource(segment.getAbsolutePath());
+                    } catch (IOException e) {
+                        // A take cut short by an error may not have a readable moov; skip it
+                        Log.w(TAG, "Skipping unreadable segment " + segment.getName() + ": " + e.getMessage());
+                        continue;
+                    }
+                    int segmentVideo = -1;
+                    int segmentAudio = -1;
+                    for (int i = 0; i < extractor.getTrackCount(); i++) {
+                        MediaFormat format = extractor.getTrackFormat(i);
+                        String mime = format.getString(MediaFormat.KEY_MIME);
+                        if (mime == null) continue;
+                        if (mime.startsWith("video/") && segmentVideo < 0) segmentVideo = i;
+                        else if (mime.startsWith("audio/") && segmentAudio < 0) segmentAudio = i;
+                    }
+                    if (segmentVideo < 0) {
+                        Log.w(TAG, "Skipping segment without video: " + segment.getName());
+                        continue;
+                    }
+
+                    MediaFormat segmentVideoFormat = extractor.getTrackFormat(segmentVideo);
+                    if (!started) {
+                        videoFormat = segmentVideoFormat;
+                        videoTrack = muxer.addTrack(videoFormat);
+                        if (segmentAudio >= 0) {
+                            audioFormat = extractor.getTrackFormat(segmentAudio);
+                            audioTrack = muxer.addTrack(audioFormat);
+                        }
+                        rotation = readRotation(segment);
+                        muxer.setOrientationHint(rotation);
+                        bufferSize = Math.max(maxInputSize(videoFormat), maxInputSize(audioFormat));
+                        buffer = ByteBuffer.allocateDirect(bufferSize);
+                        muxer.start();
+                        started = true;
+                    } else {
+                        checkCompatible(videoFormat, rotation, segmentVideoFormat, segment);
+                    }
+
+                    extractor.selectTrack(segmentVideo);
+                    if (audioTrack >= 0 && segmentAudio >= 0) {
+                        extractor.selectTrack(segmentAudio);
+                    }
+
+                    long firstUs = -1;
+                    long lastUs = 0;
+                    while (true) {
+                        int trackIndex = extractor.getSampleTrackIndex();
+                        if (trackIndex < 0) break;
+                        long sampleSize = extractor.getSampleSize();
+                        if (sampleSize > buffer.capacity()) {
+                            buffer = ByteBuffer.allocateDirect((int) sampleSize);
+                        }
+                        buffer.clear();
+                        int size = extractor.readSampleData(buffer, 0);
+                        if (size < 0) break;
+
+                        long timeUs = extractor.getSampleTime();
+                        if (firstUs < 0) firstUs = timeUs;
+                        long shiftedUs = offsetUs + Math.max(0L, timeUs - firstUs);
+                        lastUs = Math.max(lastUs, shiftedUs);
+
+                        info.offset = 0;
+                        info.size = size;
+                        info.presentationTimeUs = shiftedUs;
+                        // MediaExtractor.SAMPLE_FLAG_SYNC and BUFFER_FLAG_KEY_FRAME share the same bit
+                        info.flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                            ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                        muxer.writeSampleData(trackIndex == segmentVideo ? videoTrack : audioTrack, buffer, info);
+                        extractor.advance();
+                    }
+                    offsetUs = lastUs + SEGMENT_GAP_US;
+                    joined++;
+                } finally {
+                    extractor.release();
+                }
+            }
+            if (!started) {
+                throw new IOException("None of the " + usable.size() + " segments could be read");
+            }
+            return joined;
+        } finally {
+            try {
+                if (started) muxer.stop();
+            } finally {
+                muxer.release();
+            }
+        }
+    }
+
+    private static void checkCompatible(MediaFormat expected, int rotation, MediaFormat actual, File segment) throws IOException {
+        String expectedMime = expected.getString(MediaFormat.KEY_MIME);
+        if (!expectedMime.equals(actual.getString(MediaFormat.KEY_MIME))
+            || expected.getInteger(MediaFormat.KEY_WIDTH) != actual.getInteger(MediaFormat.KEY_WIDTH)
+            || expected.getInteger(MediaFormat.KEY_HEIGHT) != actual.getInteger(MediaFormat.KEY_HEIGHT)) {
+            throw new IOException("Segment " + segment.getName() + " has a different video format: " + actual);
+        }
+        if (readRotation(segment) != rotation) {
+            throw new IOException("Segment " + segment.getName() + " has a different rotation");
+        }
+        if (!sameBuffer(expected, actual, "csd-0") || !sameBuffer(expected, actual, "csd-1")) {
+            // Same encoder settings normally give the same parameter sets; decoders usually cope if not
+            Log.w(TAG, "Codec config differs in " + segment.getName() + ", joining anyway");
+        }
+    }
+
+    private static boolean sameBuffer(MediaFormat a, MediaFormat b, String key) {
+        ByteBuffer first = a.containsKey(key) ? a.getByteBuffer(key) : null;
+        ByteBuffer second = b.containsKey(key) ? b.getByteBuffer(key) : null;
+        if (first == null || second == null) return first == second;
+        return first.equals(second);
+    }
+
+    /** Sample buffer size for copying a track: its KEY_MAX_INPUT_SIZE, but at least 1 MB. */
+    static int maxInputSize(MediaFormat format) {
+        if (format != null && format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+            return Math.max(DEFAULT_BUFFER_SIZE, format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE));
+        }
+        return DEFAULT_BUFFER_SIZE;
+    }
+
+    static int readRotation(File file) {
+        MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+        try {
+            mmr.setDataSource(file.getAbsolutePath());
+            String rotation = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+            return rotation != null ? Integer.parseInt(rotation.trim()) : 0;
+        } catch (RuntimeException e) {
+            return 0;
+        } finally {
+            try { mmr.release(); } catch (Exception ignore) {}
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.velyar.storycamera;
+
+import android.os.Build;
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timings and output stats for one camera session, from the recordVideo call to the result.
+ *
+ * Stage times are {@link SystemClock#elapsedRealtime()} offsets from the session origin, so they
+ * are monotonic and unaffected by wall-clock changes. Each stage keeps its first mark; repeated
+ * events (camera switches) are counted instead. Marks come from the main and finalize threads.
+ */
+public class SessionMetrics {
+    public static final String STAGE_ACTIVITY_CREATED = "activityCreated";
+    public static final String STAGE_PROVIDER_READY = "providerReady";
+    public static final String STAGE_BIND_START = "bindStart";
+    public static final String STAGE_BIND_END = "bindEnd";
+    public static final String STAGE_FIRST_PREVIEW_FRAME = "firstPreviewFrame";
+    public static final String STAGE_RECORD_REQUESTED = "recordRequested";
+    public static final String STAGE_RECORDING_STARTED = "recordingStarted";
+    public static final String STAGE_STOP_REQUESTED = "stopRequested";
+    public static final String STAGE_FINALIZED = "finalized";
+    public static final String STAGE_RESULT_READY = "resultReady";
+
+    // Async trace sections, measured by the macrobenchmark suite in android/macrobenchmark
+    public static final String TRACE_RECORD_TO_PREVIEW = "StoryCamera.recordToPreview";
+    public static final String TRACE_STOP_TO_RESULT = "StoryCamera.stopToResult";
+    static final int TRACE_COOKIE = 0;
+
+    public static final String OUTCOME_RECORDED = "recorded";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_ABANDONED = "abandoned";
+
+    private final long originElapsedMs;
+    private final long startedAtWallMs;
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private int cameraSwitches = 0;
+    private long lastSwitchMs = -1;
+    private long recordedDurationNs = 0;
+    private long recordedBytes = 0;
+    private int statusEvents = 0;
+    private long outputSize = -1;
+    private String outcome = null;
+
+    /** @param originElapsedMs elapsedRealtime of the recordVideo call (or activity start) */
+    public SessionMetrics(long originElapsedMs) {
+        this.originElapsedMs = originElapsedMs;
+        this.startedAtWallMs = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - originElapsedMs);
+    }
+
+    public synchronized void mark(String stage) {
+        if (!stages.containsKey(stage)) {
+            stages.put(stage, SystemClock.elapsedRealtime() - originElapsedMs);
+        }
+    }
+
+    public synchronized void put(String key, Object value) {
+        attributes.put(key, value);
+    }
+
+    public synchronized void onCameraSwitched(long tookMs) {
+        cameraSwitches++;
+        lastSwitchMs = tookMs;
+    }
+
+    /** Latest cumulative stats from a VideoRecordEvent.Status (or any other record event). */
+    public synchronized void onRecordingStats(long recordedDurationNanos, long numBytesRecorded) {
+        recordedDurationNs = recordedDurationNanos;
+        recordedBytes = numBytesRecorded;
+        statusEvents++;
+    }
+
+    public synchronized void setOutputSize(long bytes) {
+        outputSize = bytes;
+    }
+
+    /** Sets the outcome once; later calls are ignored so the first cause wins. */
+    public synchronized boolean finish(String outcome) {
+        if (this.outcome != null) return false;
+        this.outcome = outcome;
+        return true;
+    }
+
+    public synchronized boolean isFinished() {
+        return outcome != null;
+    }
+
+    private long between(String from, String to) {
+        Long start = stages.get(from);
+        Long end = stages.get(to);
+        return start != null && end != null ? end - start : -1;
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("startedAt", startedAtWallMs);
+        json.put("outcome", outcome != null ? outcome : OUTCOME_ABANDONED);
+        json.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        json.put("sdkInt", Build.VERSION.SDK_INT);
+
+        JSONObject stageJson = new JSONObject();
+        for (Map.Entry<String, Long> stage : stages.entrySet()) {
+            stageJson.put(stage.getKey(), stage.getValue());
+        }
+        json.put("stages", stageJson);
+
+        // Derived durations the dashboards care about
+        JSONObject durations = new JSONObject();
+        durations.put("timeToPreviewMs", stages.containsKey(STAGE_FIRST_PREVIEW_FRAME) ? stages.get(STAGE_FIRST_PREVIEW_FRAME) : -1);
+        durations.put("bindMs", between(STAGE_BIND_START, STAGE_BIND_END));
+        durations.put("recordStartLatencyMs", between(STAGE_RECORD_REQUESTED, STAGE_RECORDING_STARTED));
+        durations.put("stopToFinalizeMs", between(STAGE_STOP_REQUESTED, STAGE_FINALIZED));
+        durations.put("finalizeToResultMs", between(STAGE_FINALIZED, STAGE_RESULT_READY));
+        json.put("durations", durations);
+
+        JSONObject recording = new JSONObject();
+        recording.put("durationMs", recordedDurationNs / 1_000_000L);
+        recording.put("bytesRecorded", recordedBytes);
+        recording.put("outputSize", outputSize);
+        long bytes = outputSize > 0 ? outputSize : recordedBytes;
+        recording.put("bitrate", recordedDurationNs > 0 ? (long) (bytes * 8 * 1e9 / recordedDurationNs) : 0);
+        recording.put("statusEvents", statusEvents);
+        json.put("recording", recording);
+
+        json.put("cameraSwitches", cameraSwitches);
+        if (lastSwitchMs >= 0) json.put("lastSwitchMs", lastSwitchMs);
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            json.put(attribute.getKey(), attribute.getValue());
+        }
+        return json;
+    }
+}
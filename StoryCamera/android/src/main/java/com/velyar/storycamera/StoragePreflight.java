@@ -0,0 +1,104 @@
+package com.velyar.storycamera;
+
+import android.util.Log;
+
+/**
+ * Checks before a recording starts that the volume has room for it, so it cannot fail with
+ * ERROR_INSUFFICIENT_STORAGE after the user has already performed the story.
+ *
+ * The size of a take is estimated from the bitrate of the chosen quality tier and the longest
+ * duration allowed. When that does not fit in the free space (minus a reserve for the moov box
+ * and the rest of the system), the quality is stepped down a tier at a time; if even the lowest
+ * allowed tier does not fit, the duration is capped to what does. The plan always carries a file
+ * size limit so the Recorder finalizes a playable file before the disk actually fills up.
+ */
+public class StoragePreflight {
+    private static final String TAG = "StoragePreflight";
+
+    // Left free for finalizing the MP4, the thumbnail and the rest of the device
+    static final long RESERVE_BYTES = 64L * 1024 * 1024;
+    // Shorter than this is not worth starting; the user is told to free space instead
+    static final long MIN_RECORDING_MS = 3000L;
+    private static final int AUDIO_BITRATE = 192_000;
+    // MP4 container and index overhead
+    private static final double CONTAINER_OVERHEAD = 1.05;
+
+    public static final String REASON_NONE = "none";
+    public static final String REASON_QUALITY = "quality";
+    public static final String REASON_DURATION = "duration";
+    public static final String REASON_INSUFFICIENT = "insufficient";
+    // Quality reason reported in the recording result when the step down came from here
+    public static final String REASON_STORAGE = "storage";
+
+    public static class Plan {
+        public final CaptureProfile profile;
+        public final long durationLimitMs;
+        public final long fileSizeLimitBytes; // 0 when free space is unknown
+        public final long estimatedBytes;
+        public final long freeBytes;
+        public final String reason;
+
+        Plan(CaptureProfile profile, long durationLimitMs, long fileSizeLimitBytes, long estimatedBytes, long freeBytes, String reason) {
+            this.profile = profile;
+            this.durationLimitMs = durationLimitMs;
+            this.fileSizeLimitBytes = fileSizeLimitBytes;
+            this.estimatedBytes = estimatedBytes;
+            this.freeBytes = freeBytes;
+            this.reason = reason;
+        }
+
+        public boolean canRecord() {
+            return !REASON_INSUFFICIENT.equals(reason);
+        }
+
+        public boolean isAdjusted() {
+            return !REASON_NONE.equals(reason);
+        }
+    }
+
+    /**
+     * Fits a recording of up to {@code durationMs} with {@code profile} into {@code freeBytes}
+     * ({@code < 0} when unknown, in which case nothing is changed).
+     */
+    public static Plan plan(CaptureProfile profile, long freeBytes, long durationMs) {
+        if (freeBytes < 0) {
+            return new Plan(profile, durationMs, 0L, estimateBytes(profile, durationMs), freeBytes, REASON_NONE);
+        }
+        long budget = Math.max(0L, freeBytes - RESERVE_BYTES);
+        long needed = estimateBytes(profile, durationMs);
+        if (needed <= budget) {
+            return new Plan(profile, durationMs, budget, needed, freeBytes, REASON_NONE);
+        }
+
+        CaptureProfile candidate = profile;
+        if (!CaptureProfile.FALLBACK_NONE.equals(profile.fallback)) {
+            for (int tier = CaptureProfile.tierIndex(profile.effectiveTier()) - 1; tier >= 0; tier--) {
+                candidate = profile.withTier(tier);
+                needed = estimateBytes(candidate, durationMs);
+                if (needed <= budget) {
+                    Log.d(TAG, "Stepping quality down to " + CaptureProfile.TIERS[tier] + ": " + needed + " of " + budget + " bytes");
+                    return new Plan(candidate, durationMs, budget, needed, freeBytes, REASON_QUALITY);
+                }
+            }
+        }
+
+        // Lowest tier still too big; record as long as it fits
+        long bitrate = totalBitrate(candidate);
+        long maxMs = (long) (budget * 8L * 1000L / (bitrate * CONTAINER_OVERHEAD));
+        if (maxMs < MIN_RECORDING_MS) {
+            Log.w(TAG, "Not enough space to record: " + freeBytes + " bytes free");
+            return new Plan(candidate, 0L, budget, 0L, freeBytes, REASON_INSUFFICIENT);
+        }
+        Log.d(TAG, "Capping duration to " + maxMs + " ms at " + candidate.effectiveTier() + ": " + budget + " bytes available");
+        return new Plan(candidate, Math.min(durationMs, maxMs), budget, budget, freeBytes, REASON_DURATION);
+    }
+
+    static long estimateBytes(CaptureProfile profile, long durationMs) {
+        return (long) (totalBitrate(profile) / 8.0 * durationMs / 1000.0 * CONTAINER_OVERHEAD);
+    }
+
+    // Upper end of what CameraX picks per tier, so the estimate errs on the safe side
+    private static long totalBitrate(CaptureProfile profile) {
+        return (long) profile.estimatedVideoBitrate() + AUDIO_BITRATE;
+    }
+}
@@ -6,21 +6,11 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
-import android.widget.Button;
-import android.widget.ImageButton;
 import android.widget.Toast;
-import androidx.core.content.FileProvider;
-import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.Drawable;
 import androidx.core.content.ContextCompat;
 import android.view.WindowManager;
 import android.os.Build;
-import android.animation.ValueAnimator;
-import android.animation.ObjectAnimator;
-import android.animation.AnimatorSet;
-import android.view.animation.AccelerateDecelerateInterpolator;
-import android.view.animation.BounceInterpolator;
-import android.view.animation.OvershootInterpolator;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.os.Build;
@@ -31,24 +21,30 @@ import android.view.ScaleGestureDetector;
 import android.view.MotionEvent;
 import android.graphics.Matrix;
 import android.graphics.RectF;
-import android.graphics.PorterDuff;
-import android.graphics.drawable.InsetDrawable;
 import android.widget.TextView;
 import android.os.CountDownTimer;
+import android.os.PowerManager;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.tracing.Trace;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.Preview;
+import androidx.camera.core.UseCase;
+import androidx.camera.core.UseCaseGroup;
 import androidx.camera.video.Recorder;
 import androidx.camera.video.VideoCapture;
 import androidx.camera.video.VideoRecordEvent;
 import androidx.camera.video.Recording;
+import androidx.camera.video.RecordingStats;
 import androidx.camera.video.PendingRecording;
+import androidx.camera.video.ExperimentalPersistentRecording;
 import androidx.camera.video.FileOutputOptions;
-import androidx.camera.video.QualitySelector;
 import androidx.camera.video.Quality;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
@@ -59,23 +55,23 @@ import androidx.core.app.ActivityCompat;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import java.io.File;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Date;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.json.JSONException;
 
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class StoryCameraActivity extends AppCompatActivity {
     private static final String TAG = "StoryCameraActivity";
     private PreviewView previewView;
-    private Button recordButton;
-    private ImageButton pauseButton;
-    private ImageButton switchCameraButton;
-    private ImageButton flashButton;
-    private View pulsingRing;
-    private ValueAnimator pulseAnimator;
+    private CameraControlsOverlay controls;
+    // Dropped UI frames while recording; null where JankStats cannot attach
+    private UiFrameMonitor frameMonitor;
     private boolean isRecording = false;
     private boolean isPaused = false;
     private boolean isFlashOn = false;
@@ -84,10 +80,16 @@ public class StoryCameraActivity extends AppCompatActivity {
     private boolean isIntentionalCancellation = false;
     private ProcessCameraProvider cameraProvider;
     private Camera camera;
-    private ImageCapture imageCapture;
+    private Preview preview;
+    private ImageCapture imageCapture; // only bound when the use-case plan needs it
+    private ImageAnalysis imageAnalysis; // only bound when the use-case plan needs it
+    private UseCasePlanner.Plan useCasePlan;
     private VideoCapture<Recorder> videoCapture;
     private Recording recording;
     private File videoFile;
+    // Post-recording work (thumbnailing) must stay off the UI thread
+    private final ExecutorService finalizeExecutor = Executors.newSingleThreadExecutor();
+    private RecordingFinalizer recordingFinalizer;
     private static final int REQUEST_CODE_PERMISSIONS = 10;
     private static final String[] REQUIRED_PERMISSIONS = {
         Manifest.permission.CAMERA,
@@ -96,14 +98,14 @@ public class StoryCameraActivity extends AppCompatActivity {
     
     // Zoom-related fields
     private ScaleGestureDetector scaleGestureDetector;
-    private float currentZoomRatio = 1.0f;
-    private float minZoomRatio = 1.0f;
-    private float maxZoomRatio = 10.0f;
+    private ZoomController zoomController;
     private boolean zoomEnabled = true;
     // Simple filter overlay and index
     private View filterOverlay;
     private TextView filterLabel;
     private int currentFilterIndex = 0; // 0=None, 1=Warm, 2=Cool, 3=Sunset, 4=Film
+    // GPU color grading for preview + recording; null falls back to the translucent overlay
+    private LutCameraEffect lutEffect;
     private TextView countdownLabel;
     private CountDownTimer countdownTimer;
     private int maxDurationSeconds = 30;
@@ -114,10 +116,41 @@ public class StoryCameraActivity extends AppCompatActivity {
     private String activityMissionId = null;
     private String activityPromptId = null;
     private String activityPromptName = null;
-    
-    // UI elements for info button and prompt display
-    private ImageButton infoButton;
-    private TextView promptText;
+    private CaptureProfile captureProfile = CaptureProfile.defaults();
+    // What recordVideo asked for; captureProfile is this after AdaptiveQualityPolicy and the storage preflight
+    private CaptureProfile requestedProfile = CaptureProfile.defaults();
+    private String qualityReason = AdaptiveQualityPolicy.REASON_REQUESTED;
+    private int hardwareLevel = AdaptiveQualityPolicy.HARDWARE_LEVEL_UNKNOWN;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    // Quality and limits the free-space preflight settled on for this recording
+    private StoragePreflight.Plan storagePlan;
+    // Time-to-first-preview measurement
+    static final String EXTRA_LAUNCHED_AT = "launchedAtElapsedMs";
+    private long launchedAtElapsedMs;
+    private boolean startedWithWarmProvider = false;
+    private boolean firstFrameLogged = false;
+    private SessionMetrics sessionMetrics;
+
+    // Segment mode: every take is its own file, joined losslessly when the user finishes
+    static final String EXTRA_SEGMENTED = "segmented";
+    // Filter picker: the palette cycles the grades, so the grading pass is bound from the start
+    static final String EXTRA_FILTERS = "filters";
+    static final String EXTRA_STREAMING_UPLOAD_ID = "streamingUploadId";
+    static final String EXTRA_STORAGE_ADJUSTMENT = "storageAdjustment";
+    static final String EXTRA_RECORDED_QUALITY = "recordedQuality";
+    static final String EXTRA_QUALITY_REASON = "qualityReason";
+    private static final String STATE_SEGMENTS = "segments";
+    private static final String STATE_VIDEO_FILE = "videoFile";
+    private static final String STATE_REMAINING_MS = "remainingMs";
+    private boolean segmentedMode = false;
+    private boolean filtersEnabled = false;
+    private final ArrayList<File> segments = new ArrayList<>();
+    private File segmentDir;
+    private int pendingSegments = 0;
+    private boolean joinRequested = false;
+    private boolean joinStarted = false;
+    private long finishedSegmentsNanos = 0;
+    private long finishedSegmentsBytes = 0;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -130,6 +163,21 @@ public class StoryCameraActivity extends AppCompatActivity {
         this.activityContextType = intent.getStringExtra("contextType");
         this.activityMissionId = intent.getStringExtra("missionId");
         this.activityPromptId = intent.getStringExtra("promptId");
+        this.requestedProfile = CaptureProfile.fromIntent(intent);
+        this.captureProfile = requestedProfile;
+        this.currentFilterIndex = ColorFilters.indexOf(intent.getStringExtra("filter"));
+        this.segmentedMode = intent.getBooleanExtra(EXTRA_SEGMENTED, false);
+        this.filtersEnabled = intent.getBooleanExtra(EXTRA_FILTERS, false);
+        this.recordingFinalizer = new RecordingFinalizer(this, finalizeExecutor, ContextCompat.getMainExecutor(this));
+        this.zoomController = new ZoomController(ContextCompat.getMainExecutor(this));
+        this.launchedAtElapsedMs = intent.getLongExtra(EXTRA_LAUNCHED_AT, SystemClock.elapsedRealtime());
+        this.sessionMetrics = new SessionMetrics(launchedAtElapsedMs);
+        sessionMetrics.mark(SessionMetrics.STAGE_ACTIVITY_CREATED);
+        sessionMetrics.put("quality", captureProfile.effectiveTier());
+        if (activityContextType != null) sessionMetrics.put("contextType", activityContextType);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            registerThermalListener();
+        }
         
         // Check permissions first
         if (!allPermissionsGranted()) {
@@ -185,6 +233,10 @@ public class StoryCameraActivity extends AppCompatActivity {
             // Initialize scale gesture detector for pinch-to-zoom
             setupZoomGestureDetector();
             Log.d(TAG, "Zoom gesture detector setup completed");
+            observeFirstPreviewFrame();
+            if (savedInstanceState != null) {
+                restoreSegments(savedInstanceState);
+            }
             
             // Start camera since permissions are already granted
             Log.d(TAG, "Starting camera - permissions already granted");
@@ -234,217 +286,16 @@ public class StoryCameraActivity extends AppCompatActivity {
         layout.addView(filterLabel, flParams);
 
 
-        // Create pulsing ring behind the record button
-        pulsingRing = new View(this);
-        GradientDrawable ringDrawable = new GradientDrawable();
-        ringDrawable.setShape(GradientDrawable.OVAL);
-        ringDrawable.setColor(0x00FF7F5A); // Transparent initially
-        ringDrawable.setStroke(8, 0xFFFF7F5A); // Octo accent ring
-        pulsingRing.setBackground(ringDrawable);
-        
-        RelativeLayout.LayoutParams ringParams = new RelativeLayout.LayoutParams(160, 160);
-        ringParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-        ringParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
-        ringParams.bottomMargin = 100; // Positioned behind the button
-        layout.addView(pulsingRing, ringParams);
-        
-        // Create modern circular record button with Octo accent color (MUCH LARGER)
-        recordButton = new Button(this);
-        recordButton.setText(""); // No text - clean circle
-        recordButton.setWidth(120); // Much larger button
-        recordButton.setHeight(120);
-        recordButton.setPadding(0, 0, 0, 0);
-        // Remove default elevation/shadow
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                recordButton.setStateListAnimator(null);
-            }
-            recordButton.setElevation(0f);
-            recordButton.setTranslationZ(0f);
-        } catch (Exception ignored) {}
-        
-        // Create circular background with orange fill (no border)
-        GradientDrawable circularDrawable = new GradientDrawable();
-        circularDrawable.setShape(GradientDrawable.OVAL);
-        circularDrawable.setColor(0xFFFF7F5A); // Orange background
-        // No stroke/border
-        recordButton.setBackground(circularDrawable);
-        
-        RelativeLayout.LayoutParams recordParams = new RelativeLayout.LayoutParams(120, 120);
-        recordParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-        recordParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
-        recordParams.bottomMargin = 120; // More space from bottom for safe area
-        layout.addView(recordButton, recordParams);
-        Log.d(TAG, "Record button added to layout - width: " + recordButton.getWidth() + ", height: " + recordButton.getHeight());
-        
-        // Create pause/resume button (appears next to record button when recording)
-        pauseButton = new ImageButton(this);
-        pauseButton.setImageResource(android.R.drawable.ic_media_pause); // Will change to play when paused
-        pauseButton.setScaleType(ImageButton.ScaleType.CENTER_INSIDE);
-        pauseButton.setPadding(25, 25, 25, 25);
-        pauseButton.setColorFilter(0xFFFFFFFF, PorterDuff.Mode.SRC_IN);
-        
-        // Create circular background for pause button
-        GradientDrawable pauseDrawable = new GradientDrawable();
-        pauseDrawable.setShape(GradientDrawable.OVAL);
-        pauseDrawable.setColor(0xCC000000); // Semi-transparent black
-        pauseButton.setBackground(pauseDrawable);
-        pauseButton.setVisibility(View.GONE); // Hidden initially
-        
-        RelativeLayout.LayoutParams pauseParams = new RelativeLayout.LayoutParams(110, 110);
-        pauseParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-        pauseParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
-        pauseParams.bottomMargin = 120;
-        pauseParams.rightMargin = 300; // Position next to switch camera button
-        layout.addView(pauseButton, pauseParams);
-        
-        // (Removed) Text tool button
-
-        // Create palette/filter button (bottom right of record button) with proper icon - large circle
-        ImageButton paletteButton = new ImageButton(this);
-        paletteButton.setImageResource(R.drawable.ic_palette);
-        paletteButton.setScaleType(ImageButton.ScaleType.CENTER_INSIDE);
-        paletteButton.setPadding(25, 25, 25, 25);
-        // Ensure consistent icon color
-        paletteButton.setColorFilter(0xFFFFFFFF, PorterDuff.Mode.SRC_IN);
-        
-        // Create circular background for palette button
-        GradientDrawable paletteDrawable = new GradientDrawable();
-        paletteDrawable.setShape(GradientDrawable.OVAL);
-        paletteDrawable.setColor(0xCC000000); // Semi-transparent black
-        paletteButton.setBackground(paletteDrawable);
-        // Temporarily hide theme/palette button
-        paletteButton.setVisibility(View.GONE);
-
-        RelativeLayout.LayoutParams paletteParams = new RelativeLayout.LayoutParams(110, 110);
-        paletteParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-        paletteParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
-        paletteParams.bottomMargin = 120;
-        paletteParams.rightMargin = 60; // Move closer to center
-        layout.addView(paletteButton, paletteParams);
-
-        // Create modern switch camera button (bottom center, next to record button) with proper icon - large circle
-        switchCameraButton = new ImageButton(this);
-        // Use the vector drawable now present in the plugin resources
-        switchCameraButton.setImageResource(R.drawable.flip_camera_ios_24);
-        // Tint icon to white so it is visible on dark background
-        switchCameraButton.setColorFilter(0xFFFFFFFF, PorterDuff.Mode.SRC_IN);
-        switchCameraButton.setScaleType(ImageButton.ScaleType.CENTER_INSIDE);
-        switchCameraButton.setPadding(25, 25, 25, 25);
-        
-        // Create circular background for switch camera button
-        GradientDrawable switchDrawable = new GradientDrawable();
-        switchDrawable.setShape(GradientDrawable.OVAL);
-        switchDrawable.setColor(0xCC000000); // Semi-transparent black
-        switchCameraButton.setBackground(switchDrawable);
-
-        RelativeLayout.LayoutParams switchParams = new RelativeLayout.LayoutParams(110, 110);
-        switchParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-        switchParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
-        switchParams.bottomMargin = 120;
-        switchParams.rightMargin = 180; // Position between record button and palette
-        layout.addView(switchCameraButton, switchParams);
-        
-        // Create close button (top left) with proper X icon - smaller circle
-        ImageButton closeButton = new ImageButton(this);
-        closeButton.setImageResource(R.drawable.ic_close);
-        closeButton.setScaleType(ImageButton.ScaleType.CENTER_INSIDE);
-        closeButton.setPadding(20, 20, 20, 20);
-        
-        // Create circular background for close button
-        GradientDrawable closeDrawable = new GradientDrawable();
-        closeDrawable.setShape(GradientDrawable.OVAL);
-        closeDrawable.setColor(0xCC000000); // Semi-transparent black
-        closeButton.setBackground(closeDrawable);
-        
-        RelativeLayout.LayoutParams closeParams = new RelativeLayout.LayoutParams(110, 110); // match other buttons
-        closeParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
-        closeParams.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
-        closeParams.topMargin = 120; // More space from top for safe area
-        closeParams.leftMargin = 60; // Move closer to center
-        layout.addView(closeButton, closeParams);
-
-        // Create modern flash button (top right) with proper icon - large circle
-        flashButton = new ImageButton(this);
-        flashButton.setImageResource(R.drawable.ic_flash_off);
-        flashButton.setScaleType(ImageButton.ScaleType.CENTER_INSIDE);
-        flashButton.setPadding(25, 25, 25, 25);
-        
-        // Create circular background for flash button
-        GradientDrawable flashDrawable = new GradientDrawable();
-        flashDrawable.setShape(GradientDrawable.OVAL);
-        flashDrawable.setColor(0xCC000000); // Semi-transparent black
-        flashButton.setBackground(flashDrawable);
-        
-        RelativeLayout.LayoutParams flashParams = new RelativeLayout.LayoutParams(110, 110);
-        flashParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
-        flashParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
-        flashParams.topMargin = 120; // More space from top for safe area
-        flashParams.rightMargin = 60; // Move closer to center
-        layout.addView(flashButton, flashParams);
-
-        // Countdown label (top center)
-        countdownLabel = new TextView(this);
-        countdownLabel.setTextColor(0xFFFFFFFF);
-        countdownLabel.setTextSize(16f);
-        countdownLabel.setText("");
-        RelativeLayout.LayoutParams cdParams = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
-        cdParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
-        cdParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
-        cdParams.topMargin = 140; // center between close and flash buttons
-        layout.addView(countdownLabel, cdParams);
-        
-        // Prompt text display (above record button)
-        promptText = new TextView(this);
-        promptText.setTextColor(0xFFFFFFFF);
-        promptText.setTextSize(14f);
-        promptText.setTypeface(null, android.graphics.Typeface.BOLD);
-        promptText.setGravity(android.view.Gravity.CENTER);
-        promptText.setPadding(16, 8, 16, 8);
-        promptText.setVisibility(View.GONE); // Initially hidden
-        
-        // Configure text wrapping for long prompts
-        promptText.setSingleLine(false);
-        promptText.setMaxLines(4); // Allow up to 4 lines
-        promptText.setEllipsize(android.text.TextUtils.TruncateAt.END);
-        promptText.setLineSpacing(2, 1.0f); // Add some line spacing
-        RelativeLayout.LayoutParams promptParams = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
-        promptParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-        promptParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
-        promptParams.bottomMargin = 280; // Higher above the record button to avoid intersection
-        layout.addView(promptText, promptParams);
-        
-        // Info button (left of record button)
-        infoButton = new ImageButton(this);
-        infoButton.setImageResource(R.drawable.info_24);
-        infoButton.setScaleType(ImageButton.ScaleType.CENTER_INSIDE);
-        infoButton.setPadding(20, 20, 20, 20);
-        
-        // Create circular background for info button (unpressed state)
-        GradientDrawable infoDrawable = new GradientDrawable();
-        infoDrawable.setShape(GradientDrawable.OVAL);
-        infoDrawable.setColor(0xCC000000); // Semi-transparent black
-        infoButton.setBackground(infoDrawable);
-        
-        RelativeLayout.LayoutParams infoParams = new RelativeLayout.LayoutParams(110, 110);
-        infoParams.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-        infoParams.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
-        infoParams.bottomMargin = 120;
-        infoParams.leftMargin = 180; // Same distance as switch camera button (180px from right)
-        layout.addView(infoButton, infoParams);
-        
-        // Set click listeners
-        closeButton.setOnClickListener(new View.OnClickListener() {
+        // Buttons, ring, countdown and prompt, with every state's drawables built up front
+        controls = new CameraControlsOverlay(this, layout, new CameraControlsOverlay.Listener() {
             @Override
-            public void onClick(View v) {
+            public void onCloseTapped() {
                 Log.d(TAG, "Close button clicked - exiting camera");
                 onBackPressed();
             }
-        });
-        
-        recordButton.setOnClickListener(new View.OnClickListener() {
+
             @Override
-            public void onClick(View v) {
+            public void onRecordTapped() {
                 Log.d(TAG, "Record button clicked - isRecording: " + isRecording);
                 if (!isRecording) {
                     Log.d(TAG, "Starting recording from button click");
@@ -454,13 +305,9 @@ public class StoryCameraActivity extends AppCompatActivity {
                     stopRecording();
                 }
             }
-        });
-        Log.d(TAG, "Record button click listener set up successfully");
-        Log.d(TAG, "Record button visibility: " + recordButton.getVisibility() + ", enabled: " + recordButton.isEnabled());
-        
-        pauseButton.setOnClickListener(new View.OnClickListener() {
+
             @Override
-            public void onClick(View v) {
+            public void onPauseTapped() {
                 Log.d(TAG, "Pause button clicked - isPaused: " + isPaused);
                 if (isPaused) {
                     Log.d(TAG, "Resuming recording from button click");
@@ -470,50 +317,25 @@ public class StoryCameraActivity extends AppCompatActivity {
                     pauseRecording();
                 }
             }
-        });
-        
-        switchCameraButton.setOnClickListener(new View.OnClickListener() {
+
             @Override
-            public void onClick(View v) {
-                // Rotate icon for interactivity, then switch camera
-                switchCameraButton.animate()
-                    .rotationBy(180f)
-                    .setDuration(200)
-                    .withEndAction(new Runnable() {
-                        @Override
-                        public void run() {
-                            switchCamera();
-                        }
-                    })
-                    .start();
+            public void onSwitchCameraTapped() {
+                switchCamera();
             }
-        });
-        
-        flashButton.setOnClickListener(new View.OnClickListener() {
+
             @Override
-            public void onClick(View v) {
+            public void onFlashTapped() {
                 toggleFlash();
             }
-        });
-        
-        // Info button click listener
-        infoButton.setOnClickListener(new View.OnClickListener() {
+
             @Override
-            public void onClick(View v) {
+            public void onInfoTapped() {
                 togglePromptDisplay();
             }
-        });
-        
-        // Set up prompt text if available (but keep it hidden by default)
-        if (activityPromptName != null && !activityPromptName.isEmpty()) {
-            promptText.setText(activityPromptName);
-            promptText.setVisibility(View.GONE); // Hidden by default, user must tap info button
-        }
 
-        // Cycle through simple filter overlays
-        paletteButton.setOnClickListener(new View.OnClickListener() {
             @Override
-            public void onClick(View v) {
+            public void onPaletteTapped() {
+                // Cycle through simple filter overlays
                 currentFilterIndex = (currentFilterIndex + 1) % 5;
                 applyFilterOverlay(currentFilterIndex);
                 String name;
@@ -525,19 +347,27 @@ public class StoryCameraActivity extends AppCompatActivity {
                     default: name = "None"; break;
                 }
                 showFilterLabel(name);
-                // Subtle pulse on theme change
-                paletteButton.animate().scaleX(0.92f).scaleY(0.92f).setDuration(90)
-                    .withEndAction(new Runnable() {
-                        @Override
-                        public void run() {
-                            paletteButton.animate().scaleX(1f).scaleY(1f).setDuration(120).start();
-                        }
-                    }).start();
             }
         });
+        controls.setPaletteVisible(filtersEnabled);
+        countdownLabel = controls.countdownLabel;
+        Log.d(TAG, "Camera controls added to layout");
+
+        // Set up prompt text if available (but keep it hidden by default, user must tap info button)
+        if (activityPromptName != null && !activityPromptName.isEmpty()) {
+            controls.promptText.setText(activityPromptName);
+        }
+
+        frameMonitor = UiFrameMonitor.create(getWindow());
     }
 
     private void applyFilterOverlay(int index) {
+        if (lutEffect != null) {
+            // Graded in the camera pipeline, so it is in the recording and needs no extra layer
+            lutEffect.setFilter(index);
+            if (filterOverlay != null) filterOverlay.setVisibility(View.GONE);
+            return;
+        }
         if (filterOverlay == null) return;
         switch (index) {
             case 0: // None
@@ -591,19 +421,8 @@ public class StoryCameraActivity extends AppCompatActivity {
             @Override
             public boolean onScale(ScaleGestureDetector detector) {
                 if (!zoomEnabled) return false;
-                
-                float scaleFactor = detector.getScaleFactor();
-                float newZoomRatio = currentZoomRatio * scaleFactor;
-                
-                // Clamp zoom ratio between min and max values
-                newZoomRatio = Math.max(minZoomRatio, Math.min(maxZoomRatio, newZoomRatio));
-                
-                if (newZoomRatio != currentZoomRatio) {
-                    currentZoomRatio = newZoomRatio;
-                    applyZoomToCamera();
-                    Log.d(TAG, "Zoom ratio changed to: " + currentZoomRatio);
-                }
-                
+                // Only moves the target; the controller sends at most one request per frame
+                zoomController.scaleBy(detector.getScaleFactor());
                 return true;
             }
         });
@@ -617,15 +436,19 @@ public class StoryCameraActivity extends AppCompatActivity {
         });
     }
     
-    private void applyZoomToCamera() {
-        if (camera != null) {
-            camera.getCameraControl().setZoomRatio(currentZoomRatio);
-        }
-    }
-    
     private void startCamera() {
         try {
             Log.d(TAG, "Starting camera setup");
+            // A prewarmed provider is already initialized - bind on this frame instead of waiting
+            ProcessCameraProvider warmProvider = CameraPrewarmer.getInstance().getCameraProvider();
+            if (warmProvider != null) {
+                Log.d(TAG, "Using prewarmed camera provider");
+                cameraProvider = warmProvider;
+                startedWithWarmProvider = true;
+                bindCameraUseCases();
+                return;
+            }
+
             ListenableFuture<ProcessCameraProvider> cameraProviderFuture = 
                 ProcessCameraProvider.getInstance(this);
                 
@@ -634,44 +457,10 @@ public class StoryCameraActivity extends AppCompatActivity {
                     Log.d(TAG, "Camera provider future completed");
                     cameraProvider = cameraProviderFuture.get();
                     Log.d(TAG, "Got camera provider: " + (cameraProvider != null));
-                    
-                    Preview preview = new Preview.Builder().build();
-                    Log.d(TAG, "Created preview: " + (preview != null));
-                    
-                    // Create ImageCapture for flash control
-                    imageCapture = new ImageCapture.Builder().build();
-                    
-                    // Create VideoCapture for video recording (audio enabled by default)
-                    Recorder recorder = new Recorder.Builder()
-                        .setQualitySelector(QualitySelector.from(Quality.HIGHEST))
-                        .build();
-                    videoCapture = VideoCapture.withOutput(recorder);
-                    Log.d(TAG, "VideoCapture created with default audio settings");
-                    
-                    if (previewView != null) {
-                        preview.setSurfaceProvider(previewView.getSurfaceProvider());
-                        Log.d(TAG, "Set surface provider");
-                    } else {
-                        Log.e(TAG, "PreviewView is null!");
-                        return;
-                    }
-                    
-                    CameraSelector cameraSelector = isFrontCamera ? 
-                        CameraSelector.DEFAULT_FRONT_CAMERA : CameraSelector.DEFAULT_BACK_CAMERA;
-                    Log.d(TAG, "Created camera selector for: " + (isFrontCamera ? "front" : "back"));
-                    
-                    camera = cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageCapture, videoCapture);
-                    Log.d(TAG, "Camera bound to lifecycle successfully");
-                    
-                    // Get zoom range from the camera and update zoom limits
-                    updateZoomRange();
-                    
+                    bindCameraUseCases();
                 } catch (ExecutionException | InterruptedException e) {
                     Log.e(TAG, "Error starting camera", e);
                     Toast.makeText(this, "Error starting camera: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                } catch (Exception e) {
-                    Log.e(TAG, "Unexpected error in camera setup", e);
-                    Toast.makeText(this, "Camera setup failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 }
             }, ContextCompat.getMainExecutor(this));
             
@@ -680,45 +469,227 @@ public class StoryCameraActivity extends AppCompatActivity {
             Toast.makeText(this, "Failed to start camera: " + e.getMessage(), Toast.LENGTH_LONG).show();
         }
     }
-    
-    private void updateZoomRange() {
-        if (camera != null) {
-            try {
-                CameraInfo cameraInfo = camera.getCameraInfo();
-                minZoomRatio = cameraInfo.getZoomState().getValue().getMinZoomRatio();
-                float cameraMaxZoom = cameraInfo.getZoomState().getValue().getMaxZoomRatio();
-                // Use the smaller of camera max zoom or configured max zoom
-                maxZoomRatio = Math.min(cameraMaxZoom, 10.0f); // Default max is 10.0f
-                Log.d(TAG, "Zoom range updated - Min: " + minZoomRatio + ", Max: " + maxZoomRatio);
-            } catch (Exception e) {
-                Log.w(TAG, "Could not get zoom range, using defaults", e);
-                minZoomRatio = 1.0f;
-                maxZoomRatio = 10.0f;
+
+    private void bindCameraUseCases() {
+        sessionMetrics.mark(SessionMetrics.STAGE_PROVIDER_READY);
+        sessionMetrics.put("prewarmed", startedWithWarmProvider);
+        try {
+            preview = new Preview.Builder().build();
+            Log.d(TAG, "Created preview: " + (preview != null));
+            
+            CameraSelector cameraSelector = CameraPrewarmer.getInstance().resolveSelector(isFrontCamera);
+            Log.d(TAG, "Created camera selector for: " + (isFrontCamera ? "front" : "back"));
+            CameraInfo cameraInfo = findCameraInfo(cameraSelector);
+            
+            // Video only needs Preview + VideoCapture; the flash is the torch
+            useCasePlan = UseCasePlanner.plan(UseCasePlanner.MODE_VIDEO, cameraInfo);
+            imageCapture = useCasePlan.imageCapture ? new ImageCapture.Builder().build() : null;
+            imageAnalysis = useCasePlan.imageAnalysis
+                ? new ImageAnalysis.Builder().setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST).build()
+                : null;
+            
+            // Cap the tier to what this device can sustain right now, before the Recorder is built
+            hardwareLevel = AdaptiveQualityPolicy.hardwareLevel(cameraInfo);
+            captureProfile = decideQuality().profile;
+            sessionMetrics.put("quality", captureProfile.effectiveTier());
+            
+            // Create VideoCapture for video recording (audio enabled by default)
+            Recorder recorder = CameraPrewarmer.getInstance().takeRecorder(captureProfile);
+            if (recorder != null) {
+                Log.d(TAG, "Using prewarmed Recorder");
+            } else {
+                recorder = captureProfile.applyTo(new Recorder.Builder()).build();
+            }
+            videoCapture = VideoCapture.withOutput(recorder);
+            Log.d(TAG, "VideoCapture created with default audio settings");
+            
+            if (previewView != null) {
+                preview.setSurfaceProvider(previewView.getSurfaceProvider());
+                Log.d(TAG, "Set surface provider");
+            } else {
+                Log.e(TAG, "PreviewView is null!");
+                return;
+            }
+            
+            // The grading pass is only worth its GPU cost when a filter was requested or can be picked
+            if ((filtersEnabled || currentFilterIndex != ColorFilters.NONE) && lutEffect == null) {
+                lutEffect = LutCameraEffect.create();
             }
+            
+            sessionMetrics.mark(SessionMetrics.STAGE_BIND_START);
+            long bindStartedAt = SystemClock.elapsedRealtime();
+            camera = cameraProvider.bindToLifecycle(this, cameraSelector, buildUseCaseGroup());
+            sessionMetrics.mark(SessionMetrics.STAGE_BIND_END);
+            logStreamConfiguration(SystemClock.elapsedRealtime() - bindStartedAt);
+            applyFilterOverlay(currentFilterIndex);
+            
+            // Get zoom range from the camera and update zoom limits
+            zoomController.attach(camera);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Unexpected error in camera setup", e);
+            Toast.makeText(this, "Camera setup failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private CameraInfo findCameraInfo(CameraSelector selector) {
+        try {
+            List<CameraInfo> infos = selector.filter(cameraProvider.getAvailableCameraInfos());
+            return infos.isEmpty() ? null : infos.get(0);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not resolve camera info: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Runs {@link AdaptiveQualityPolicy} on the requested profile and records why it was capped. */
+    private AdaptiveQualityPolicy.Decision decideQuality() {
+        AdaptiveQualityPolicy.Decision decision = AdaptiveQualityPolicy.decide(requestedProfile,
+            AdaptiveQualityPolicy.thermalStatus(this), hardwareLevel, AdaptiveQualityPolicy.performanceClass());
+        qualityReason = decision.reason;
+        sessionMetrics.put("qualityReason", decision.reason);
+        sessionMetrics.put("thermalStatus", decision.thermalStatus);
+        sessionMetrics.put("hardwareLevel", AdaptiveQualityPolicy.hardwareLevelName(decision.hardwareLevel));
+        sessionMetrics.put("performanceClass", decision.performanceClass);
+        return decision;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    private void registerThermalListener() {
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null) {
+            return;
+        }
+        thermalListener = this::onThermalStatusChanged;
+        powerManager.addThermalStatusListener(ContextCompat.getMainExecutor(this), thermalListener);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    private void unregisterThermalListener() {
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+        }
+        thermalListener = null;
+    }
+
+    private void onThermalStatusChanged(int status) {
+        Log.d(TAG, "Thermal status changed to " + status);
+        if (isRecording || cameraProvider == null || camera == null || videoCapture == null) {
+            // The Recorder cannot change mid-take (or between takes that get joined);
+            // startRecording decides again for the next one
+            return;
+        }
+        AdaptiveQualityPolicy.Decision decision = decideQuality();
+        if (!decision.profile.equals(captureProfile)) {
+            rebindRecorder(decision.profile);
+        }
+    }
+
+    /** Stores the session's metrics once, with the first outcome reported. */
+    private void finishSessionMetrics(String outcome) {
+        if (sessionMetrics != null && zoomController != null) {
+            try {
+                sessionMetrics.put("zoom", zoomController.stats());
+            } catch (JSONException ignore) {}
+        }
+        if (sessionMetrics != null && frameMonitor != null) {
+            try {
+                sessionMetrics.put("uiFrames", frameMonitor.stats());
+            } catch (JSONException ignore) {}
+        }
+        if (sessionMetrics != null && sessionMetrics.finish(outcome)) {
+            PerformanceStatsStore.append(this, sessionMetrics);
+        }
+    }
+
+    /** Logs what was bound on this device and at which resolutions; also kept in the session metrics. */
+    private void logStreamConfiguration(long bindMs) {
+        String previewSize = preview.getResolutionInfo() != null ? preview.getResolutionInfo().getResolution().toString() : "unknown";
+        String videoSize = videoCapture.getResolutionInfo() != null ? videoCapture.getResolutionInfo().getResolution().toString() : "unknown";
+        String device = Build.MANUFACTURER + " " + Build.MODEL;
+        Log.i(TAG, "Bound " + useCasePlan.describe() + " on " + device + " ("
+            + AdaptiveQualityPolicy.hardwareLevelName(hardwareLevel) + ") in " + bindMs + " ms: preview " + previewSize
+            + ", video " + videoSize + " (" + captureProfile.effectiveTier() + "), flash " + useCasePlan.flash);
+        sessionMetrics.put("useCases", useCasePlan.describe());
+        sessionMetrics.put("previewResolution", previewSize);
+        sessionMetrics.put("videoResolution", videoSize);
+    }
+
+    /** The use cases {@link #useCasePlan} asks for, in binding order. */
+    private UseCase[] boundUseCases() {
+        List<UseCase> useCases = new ArrayList<>(useCasePlan.streamCount());
+        useCases.add(preview);
+        if (useCasePlan.imageCapture) useCases.add(imageCapture);
+        if (useCasePlan.videoCapture) useCases.add(videoCapture);
+        if (useCasePlan.imageAnalysis) useCases.add(imageAnalysis);
+        return useCases.toArray(new UseCase[0]);
+    }
+
+    private UseCaseGroup buildUseCaseGroup() {
+        UseCaseGroup.Builder group = new UseCaseGroup.Builder();
+        for (UseCase useCase : boundUseCases()) {
+            group.addUseCase(useCase);
+        }
+        if (lutEffect != null) {
+            group.addEffect(lutEffect);
         }
+        return group.build();
+    }
+
+    private void observeFirstPreviewFrame() {
+        // Time-to-first-preview-frame, from the recordVideo call when the plugin passed its timestamp
+        previewView.getPreviewStreamState().observe(this, state -> {
+            if (state != PreviewView.StreamState.STREAMING || firstFrameLogged) return;
+            firstFrameLogged = true;
+            long elapsedMs = SystemClock.elapsedRealtime() - launchedAtElapsedMs;
+            Log.d(TAG, "Time to first preview frame: " + elapsedMs + " ms (prewarmed: " + startedWithWarmProvider + ")");
+            CameraPrewarmer.getInstance().recordTimeToPreview(elapsedMs, startedWithWarmProvider);
+            Trace.endAsyncSection(SessionMetrics.TRACE_RECORD_TO_PREVIEW, SessionMetrics.TRACE_COOKIE);
+            sessionMetrics.mark(SessionMetrics.STAGE_FIRST_PREVIEW_FRAME);
+        });
     }
     
     private void switchCamera() {
+        if (segmentedMode && isPaused && !segments.isEmpty()) {
+            // A take on the other lens has a different rotation and could not be joined losslessly;
+            // flipping while recording is fine, the persistent recording keeps one segment
+            Toast.makeText(this, "Resume recording to switch camera", Toast.LENGTH_SHORT).show();
+            return;
+        }
         Log.d(TAG, "Switching camera from " + (isFrontCamera ? "front" : "back") + " to " + (!isFrontCamera ? "front" : "back"));
         isFrontCamera = !isFrontCamera;
         
         // Reset zoom when switching cameras
-        currentZoomRatio = 1.0f;
+        zoomController.reset();
         
         // Disable flash for front camera
         if (isFrontCamera && isFlashOn) {
             isFlashOn = false;
-            flashButton.setImageResource(R.drawable.ic_flash_off);
-            GradientDrawable flashDrawable = new GradientDrawable();
-            flashDrawable.setShape(GradientDrawable.OVAL);
-            flashDrawable.setColor(0xCC000000);
-            flashButton.setBackground(flashDrawable);
+            controls.setFlashOn(false);
         }
         
-        // Restart camera with new selector
-        if (cameraProvider != null) {
-            cameraProvider.unbindAll();
-            startCamera();
+        if (cameraProvider == null || preview == null || videoCapture == null) {
+            Log.w(TAG, "Camera not bound yet, ignoring switch");
+            return;
+        }
+
+        // Rebind the existing use cases to the other lens. The provider, Preview surface, Recorder
+        // and any persistent Recording all survive, so a mid-recording flip continues the same file.
+        long switchStartedAt = SystemClock.elapsedRealtime();
+        try {
+            cameraProvider.unbind(boundUseCases());
+            camera = cameraProvider.bindToLifecycle(this, CameraPrewarmer.getInstance().resolveSelector(isFrontCamera),
+                buildUseCaseGroup());
+            zoomController.attach(camera);
+            // Front and back lenses can differ; the next take is planned for the new one
+            hardwareLevel = AdaptiveQualityPolicy.hardwareLevel(camera.getCameraInfo());
+            long switchMs = SystemClock.elapsedRealtime() - switchStartedAt;
+            sessionMetrics.onCameraSwitched(switchMs);
+            Log.d(TAG, "Camera switched in " + switchMs + " ms (recording: " + isRecording + ")");
+        } catch (Exception e) {
+            Log.e(TAG, "Error switching camera", e);
+            Toast.makeText(this, "Failed to switch camera: " + e.getMessage(), Toast.LENGTH_SHORT).show();
         }
     }
     
@@ -731,10 +702,11 @@ public class StoryCameraActivity extends AppCompatActivity {
         isFlashOn = !isFlashOn;
         Log.d(TAG, "Flash toggled to: " + (isFlashOn ? "ON" : "OFF"));
         
-        if (imageCapture != null) {
+        if (useCasePlan != null && UseCasePlanner.FLASH_IMAGE_CAPTURE.equals(useCasePlan.flash) && imageCapture != null) {
             imageCapture.setFlashMode(isFlashOn ? ImageCapture.FLASH_MODE_ON : ImageCapture.FLASH_MODE_OFF);
+            return;
         }
-        // Also toggle torch for preview/recording
+        // Torch for preview/recording
         try {
             if (camera != null && camera.getCameraInfo() != null && camera.getCameraInfo().hasFlashUnit()) {
                 camera.getCameraControl().enableTorch(isFlashOn);
@@ -743,45 +715,22 @@ public class StoryCameraActivity extends AppCompatActivity {
             Log.w(TAG, "enableTorch failed: " + e.getMessage());
         }
         
-        // Update button appearance
-        GradientDrawable flashDrawable = new GradientDrawable();
-        flashDrawable.setShape(GradientDrawable.OVAL);
-        
-        if (isFlashOn) {
-            flashButton.setImageResource(R.drawable.ic_flash_on);
-            flashDrawable.setColor(0xCCFFD700); // Gold when on
-        } else {
-            flashButton.setImageResource(R.drawable.ic_flash_off);
-            flashDrawable.setColor(0xCC000000); // Black when off
-        }
-        flashButton.setBackground(flashDrawable);
+        // Gold when on
+        controls.setFlashOn(isFlashOn);
     }
     
     private void togglePromptDisplay() {
-        if (promptText == null || activityPromptName == null || activityPromptName.isEmpty()) {
+        if (controls == null || activityPromptName == null || activityPromptName.isEmpty()) {
             return;
         }
         
         isInfoPressed = !isInfoPressed;
         
-        if (isInfoPressed) {
-            promptText.setVisibility(View.VISIBLE);
-        } else {
-            promptText.setVisibility(View.GONE);
-        }
-        
-        // Update button appearance based on state
-        GradientDrawable infoDrawable = new GradientDrawable();
-        infoDrawable.setShape(GradientDrawable.OVAL);
-        
-        if (isInfoPressed) {
-            infoDrawable.setColor(0xCCFFD700); // Gold when pressed (like flash button)
-        } else {
-            infoDrawable.setColor(0xCC000000); // Black when unpressed
-        }
-        infoButton.setBackground(infoDrawable);
+        // Gold while the prompt is shown (like the flash button)
+        controls.setInfoActive(isInfoPressed);
     }
     
+    @androidx.annotation.OptIn(markerClass = ExperimentalPersistentRecording.class)
     private void startRecording() {
         Log.d(TAG, "Starting recording");
         Log.d(TAG, "VideoCapture is null: " + (videoCapture == null));
@@ -800,6 +749,11 @@ public class StoryCameraActivity extends AppCompatActivity {
             return;
         }
         
+        // Make sure the take fits on disk before the user starts performing it
+        if (!applyStoragePreflight()) {
+            return;
+        }
+        
         // Create video file
         videoFile = createVideoFile();
         if (videoFile == null) {
@@ -809,28 +763,78 @@ public class StoryCameraActivity extends AppCompatActivity {
         }
         
         Log.d(TAG, "Video file created: " + videoFile.getAbsolutePath());
+
+        if (segmentedMode) {
+            sessionMetrics.mark(SessionMetrics.STAGE_RECORD_REQUESTED);
+            sessionMetrics.put("segmented", true);
+            // Next to the output so a single take can simply be renamed
+            String baseName = videoFile.getName().replace(".mp4", "");
+            segmentDir = new File(videoFile.getParentFile(), "." + baseName + "_segments");
+            if (!segmentDir.exists() && !segmentDir.mkdirs()) {
+                Toast.makeText(this, "Failed to create video file", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            if (!startSegment()) {
+                return;
+            }
+            isRecording = true;
+            onRecordingStarted();
+            return;
+        }
+        
+        // Starts sending finished parts of the file while it is being recorded, if the plugin set it up
+        StreamingUpload.attach(getIntent().getStringExtra(EXTRA_STREAMING_UPLOAD_ID), videoFile);
+        
+        // Lets the next app start rebuild this take if the process dies before it is finalized
+        final File take = videoFile;
+        final String codecConfigKey = CodecConfigCache.key(captureProfile.effectiveTier(), isFrontCamera);
+        finalizeExecutor.execute(() -> RecordingSalvager.begin(getApplicationContext(), take, codecConfigKey,
+            activityContextType, activityMissionId, activityPromptId));
         
         // Create output file options
-        FileOutputOptions outputOptions = new FileOutputOptions.Builder(videoFile).build();
+        FileOutputOptions outputOptions = buildOutputOptions(videoFile);
         Log.d(TAG, "FileOutputOptions created");
         
         // Start recording
         Log.d(TAG, "About to prepare recording");
+        sessionMetrics.mark(SessionMetrics.STAGE_RECORD_REQUESTED);
         try {
             PendingRecording pendingRecording = videoCapture.getOutput()
                 .prepareRecording(this, outputOptions)
-                .withAudioEnabled();  // Explicitly enable audio recording
+                .withAudioEnabled()  // Explicitly enable audio recording
+                // Keeps the recording alive while VideoCapture is rebound to the other camera
+                .asPersistentRecording();
             Log.d(TAG, "PendingRecording created with audio enabled: " + (pendingRecording != null));
                 
             Log.d(TAG, "About to start recording");
             Log.d(TAG, "Recording with default audio configuration");
             recording = pendingRecording.start(ContextCompat.getMainExecutor(this), videoRecordEvent -> {
+            // Every event carries cumulative stats; Status arrives continuously while recording
+            RecordingStats stats = videoRecordEvent.getRecordingStats();
+            sessionMetrics.onRecordingStats(stats.getRecordedDurationNanos(), stats.getNumBytesRecorded());
+            if (videoRecordEvent instanceof VideoRecordEvent.Status) {
+                return;
+            }
             Log.d(TAG, "VideoRecordEvent received: " + videoRecordEvent.getClass().getSimpleName());
+            if (videoRecordEvent instanceof VideoRecordEvent.Start) {
+                sessionMetrics.mark(SessionMetrics.STAGE_RECORDING_STARTED);
+            }
             if (videoRecordEvent instanceof VideoRecordEvent.Finalize) {
+                sessionMetrics.mark(SessionMetrics.STAGE_FINALIZED);
                 VideoRecordEvent.Finalize finalizeEvent = (VideoRecordEvent.Finalize) videoRecordEvent;
                 Log.d(TAG, "Finalize event hasError: " + finalizeEvent.hasError());
-                if (finalizeEvent.hasError()) {
+                if (finalizeEvent.hasError() && isOutputUsable(finalizeEvent, videoFile) && !isIntentionalCancellation) {
+                    // Hit the preflight's size or duration limit; the file is complete up to that point
+                    Log.w(TAG, "Recording ended early (" + finalizeEvent.getError() + "), keeping " + videoFile.length() + " bytes");
+                    sessionMetrics.put("endedBy", String.valueOf(finalizeEvent.getError()));
+                    isRecording = false;
+                    try { if (countdownTimer != null) { countdownTimer.cancel(); countdownTimer = null; } } catch (Exception ignore) {}
+                    animateToIdleState();
+                    deliverRecording();
+                } else if (finalizeEvent.hasError()) {
                     Log.e(TAG, "Video recording error: " + finalizeEvent.getError());
+                    // Whatever made it to disk is offered back on the next start
+                    RecordingSalvager.end(videoFile);
                     isRecording = false;
                     // Stop timer
                     try { if (countdownTimer != null) { countdownTimer.cancel(); countdownTimer = null; } } catch (Exception ignore) {}
@@ -842,6 +846,8 @@ public class StoryCameraActivity extends AppCompatActivity {
                     }
                     
                     // Return error result
+                    sessionMetrics.put("error", String.valueOf(finalizeEvent.getError()));
+                    finishSessionMetrics(isIntentionalCancellation ? SessionMetrics.OUTCOME_CANCELLED : SessionMetrics.OUTCOME_ERROR);
                     setResult(Activity.RESULT_CANCELED);
                     finish();
                 } else {
@@ -852,85 +858,15 @@ public class StoryCameraActivity extends AppCompatActivity {
                     try { if (countdownTimer != null) { countdownTimer.cancel(); countdownTimer = null; } } catch (Exception ignore) {}
                     Log.d(TAG, "About to call animateToIdleState");
                     animateToIdleState();
-                    Log.d(TAG, "Video saved successfully: " + videoFile.getAbsolutePath());
-
-                    // Save to shared preferences for React-side polling fallback
-                    try {
-                        android.content.SharedPreferences prefs = getSharedPreferences("StoryCamera", MODE_PRIVATE);
-                        android.content.SharedPreferences.Editor editor = prefs.edit();
-                        if (videoFile != null) {
-                            editor.putString("lastVideoPath", videoFile.getAbsolutePath());
-                        }
-                        // Persist context values for navigation
-                        if (activityContextType != null) {
-                            editor.putString("lastContextType", activityContextType);
-                        }
-                        if (activityMissionId != null) {
-                            editor.putString("lastMissionId", activityMissionId);
-                        }
-                        if (activityPromptId != null) {
-                            editor.putString("lastPromptId", activityPromptId);
-                        }
-                        editor.putBoolean("shouldNavigateToTest", true);
-                        editor.apply();
-                        Log.d(TAG, "Saved context to SharedPreferences: contextType=" + activityContextType + ", missionId=" + activityMissionId + ", promptId=" + activityPromptId);
-                    } catch (Exception e) {
-                        Log.w(TAG, "Failed to write SharedPreferences: " + e.getMessage());
-                    }
-
-                    // Auto-finish and return result to the plugin so React can navigate
-                    try {
-                        Intent intent = new Intent();
-                        
-                        // File already has correct name from createVideoFile()
-                        String finalVideoPath = videoFile != null ? videoFile.getAbsolutePath() : null;
-                        
-                        // Debug: Check video file properties
-                        if (videoFile != null && videoFile.exists()) {
-                            Log.d(TAG, "Video file exists: " + videoFile.getAbsolutePath());
-                            Log.d(TAG, "Video file size: " + videoFile.length() + " bytes");
-                            
-                            // Try to get video metadata
-                            try {
-                                android.media.MediaMetadataRetriever mmr = new android.media.MediaMetadataRetriever();
-                                mmr.setDataSource(videoFile.getAbsolutePath());
-                                String duration = mmr.extractMetadata(android.media.MediaMetadataRetriever.METADATA_KEY_DURATION);
-                                String hasAudio = mmr.extractMetadata(android.media.MediaMetadataRetriever.METADATA_KEY_HAS_AUDIO);
-                                String videoWidth = mmr.extractMetadata(android.media.MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
-                                String videoHeight = mmr.extractMetadata(android.media.MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
-                                mmr.release();
-                                
-                                Log.d(TAG, "Video duration: " + duration + " ms");
-                                Log.d(TAG, "Video has audio: " + hasAudio);
-                                Log.d(TAG, "Video resolution: " + videoWidth + "x" + videoHeight);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error reading video metadata: " + e.getMessage());
-                            }
-                        }
-                        
-                        intent.putExtra("videoUri", finalVideoPath);
-                        
-                        if (videoFile != null) {
-                            String contentUri = FileProvider.getUriForFile(
-                                StoryCameraActivity.this,
-                                getApplicationContext().getPackageName() + ".fileprovider",
-                                videoFile
-                            ).toString();
-                            intent.putExtra("contentUri", contentUri);
-                            
-                        }
-                        
-                        // Pass context back to the plugin
-                        if (activityContextType != null) intent.putExtra("contextType", activityContextType);
-                        if (activityMissionId != null) intent.putExtra("missionId", activityMissionId);
-                        if (activityPromptId != null) intent.putExtra("promptId", activityPromptId);
-                        setResult(Activity.RESULT_OK, intent);
-                        finish();
-                    } catch (Exception e) {
-                        Log.e(TAG, "Failed to set result on finalize: " + e.getMessage());
-                        setResult(Activity.RESULT_CANCELED);
-                        finish();
+                    if (isIntentionalCancellation) {
+                        // Cancelled with back; the result is already returned and the take is not kept
+                        Log.d(TAG, "Recording finalized after cancellation, not journaling it");
+                        RecordingSalvager.discard(videoFile);
+                        videoFile.delete();
+                        return;
                     }
+                    Log.d(TAG, "Video saved successfully: " + videoFile.getAbsolutePath());
+                    deliverRecording();
                 }
             }
         });
@@ -947,30 +883,355 @@ public class StoryCameraActivity extends AppCompatActivity {
             return;
         }
         
+        onRecordingStarted();
+    }
+
+    private void onRecordingStarted() {
         // Animate button morph from circle to rounded square
         animateToRecordingState();
         
-        // Show pause button when recording starts
-        if (pauseButton != null) {
-            pauseButton.setVisibility(View.VISIBLE);
-            pauseButton.setAlpha(0f);
-            pauseButton.animate().alpha(1f).setDuration(300).start();
-        }
-        
         // Reset cancellation flag for new recording
         isIntentionalCancellation = false;
         
         // Initialize remaining time and start countdown timer
-        remainingTimeMillis = maxDurationSeconds * 1000L;
+        remainingTimeMillis = storagePlan != null ? storagePlan.durationLimitMs : maxDurationSeconds * 1000L;
         startCountdownTimer();
 
         // Recording started - no need for toast
     }
+
+    /**
+     * Runs {@link StoragePreflight} for a recording of up to maxDurationSeconds, starting from the
+     * tier {@link AdaptiveQualityPolicy} allows, and applies the plan: a different quality means
+     * rebinding VideoCapture with a new Recorder, a shorter limit shows up in the countdown.
+     * False if there is not enough space to record at all.
+     */
+    private boolean applyStoragePreflight() {
+        long freeBytes = MediaStorageManager.freeBytes(MediaStorageManager.moviesDir(this));
+        // The device may have heated up since the camera was bound
+        CaptureProfile sustainable = decideQuality().profile;
+        storagePlan = StoragePreflight.plan(sustainable, freeBytes, maxDurationSeconds * 1000L);
+        sessionMetrics.put("storagePreflight", storagePlan.reason);
+        sessionMetrics.put("freeBytes", freeBytes);
+        if (!storagePlan.canRecord()) {
+            Toast.makeText(this, "Not enough storage to record. Free up some space and try again", Toast.LENGTH_LONG).show();
+            storagePlan = null;
+            return false;
+        }
+        if (!storagePlan.profile.equals(captureProfile) && !rebindRecorder(storagePlan.profile)) {
+            Toast.makeText(this, "Not enough storage to record. Free up some space and try again", Toast.LENGTH_LONG).show();
+            storagePlan = null;
+            return false;
+        }
+        if (StoragePreflight.REASON_QUALITY.equals(storagePlan.reason)) {
+            qualityReason = StoragePreflight.REASON_STORAGE;
+            sessionMetrics.put("qualityReason", qualityReason);
+        }
+        // The first segment's output options read it before onRecordingStarted runs
+        remainingTimeMillis = storagePlan.durationLimitMs;
+        if (StoragePreflight.REASON_QUALITY.equals(storagePlan.reason)) {
+            Toast.makeText(this, "Storage is low, recording in " + captureProfile.effectiveTier(), Toast.LENGTH_SHORT).show();
+        } else if (StoragePreflight.REASON_DURATION.equals(storagePlan.reason)) {
+            Toast.makeText(this, "Storage is low, recording up to " + (storagePlan.durationLimitMs / 1000L) + " s", Toast.LENGTH_SHORT).show();
+        }
+        return true;
+    }
+
+    /** Swaps in a Recorder built for {@code profile} between takes; the camera and Preview stay as they are. */
+    private boolean rebindRecorder(CaptureProfile profile) {
+        try {
+            VideoCapture<Recorder> rebuilt = VideoCapture.withOutput(profile.applyTo(new Recorder.Builder()).build());
+            cameraProvider.unbind(boundUseCases());
+            videoCapture = rebuilt;
+            camera = cameraProvider.bindToLifecycle(this, CameraPrewarmer.getInstance().resolveSelector(isFrontCamera),
+                buildUseCaseGroup());
+            zoomController.attach(camera);
+            captureProfile = profile;
+            sessionMetrics.put("quality", profile.effectiveTier());
+            Log.d(TAG, "Rebound VideoCapture: " + profile + " (" + qualityReason + ")");
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error rebinding VideoCapture", e);
+            return false;
+        }
+    }
+
+    /**
+     * Output options with a size limit from the current free space and a duration limit just
+     * past the countdown, so the Recorder stops with a playable file instead of running out of disk.
+     */
+    private FileOutputOptions buildOutputOptions(File file) {
+        FileOutputOptions.Builder builder = new FileOutputOptions.Builder(file);
+        // Read again per take; earlier segments have used some of the space since the preflight
+        long freeBytes = MediaStorageManager.freeBytes(file.getParentFile());
+        if (freeBytes >= 0) {
+            builder.setFileSizeLimit(Math.max(1L, freeBytes - StoragePreflight.RESERVE_BYTES));
+        }
+        if (remainingTimeMillis > 0) {
+            // The countdown normally stops the recording first
+            builder.setDurationLimitMillis(remainingTimeMillis + 1000L);
+        }
+        return builder.build();
+    }
+
+    /** Runs the finalize pipeline on {@link #videoFile} and returns its result to the plugin. */
+    private void deliverRecording() {
+        if (finalizeExecutor.isShutdown()) {
+            // Recording was closed from onDestroy; nobody is waiting for a result
+            Log.w(TAG, "Activity destroyed before finalize, skipping result");
+            RecordingSalvager.end(videoFile);
+            return;
+        }
+
+        // Metadata, journal hand-off, thumbnail and result building run in the background;
+        // only setResult/finish come back to the main thread
+        recordingFinalizer.finalizeRecording(videoFile, activityContextType, activityMissionId, activityPromptId,
+            new RecordingFinalizer.Callback() {
+                @Override
+                public void onFinalized(Intent result) {
+                    // Lets JS tell the user why the clip is shorter or softer than asked for
+                    result.putExtra(EXTRA_RECORDED_QUALITY, captureProfile.effectiveTier());
+                    result.putExtra(EXTRA_QUALITY_REASON, qualityReason);
+                    if (storagePlan != null && storagePlan.isAdjusted()) {
+                        result.putExtra(EXTRA_STORAGE_ADJUSTMENT, storagePlan.reason);
+                    }
+                    sessionMetrics.mark(SessionMetrics.STAGE_RESULT_READY);
+                    sessionMetrics.setOutputSize(result.getLongExtra(RecordingFinalizer.EXTRA_SIZE, -1L));
+                    finishSessionMetrics(SessionMetrics.OUTCOME_RECORDED);
+                    setResult(Activity.RESULT_OK, result);
+                    finish();
+                }
+
+                @Override
+                public void onFailed(Exception error) {
+                    Log.e(TAG, "Failed to set result on finalize: " + error.getMessage());
+                    sessionMetrics.put("error", String.valueOf(error.getMessage()));
+                    finishSessionMetrics(SessionMetrics.OUTCOME_ERROR);
+                    setResult(Activity.RESULT_CANCELED);
+                    finish();
+                }
+            });
+    }
+
+    /** Starts recording the next take into its own file; false if it could not start. */
+    @androidx.annotation.OptIn(markerClass = ExperimentalPersistentRecording.class)
+    private boolean startSegment() {
+        File segmentFile = null;
+        try {
+            // Unique even after a recreation dropped an empty take from the list
+            segmentFile = File.createTempFile("take_", ".mp4", segmentDir);
+            final File take = segmentFile;
+            recording = videoCapture.getOutput()
+                .prepareRecording(this, buildOutputOptions(segmentFile))
+                .withAudioEnabled()
+                // A camera flip continues the same take
+                .asPersistentRecording()
+                .start(ContextCompat.getMainExecutor(this), event -> onSegmentEvent(event, take));
+        } catch (SecurityException e) {
+            if (segmentFile != null) segmentFile.delete();
+            Log.e(TAG, "SecurityException starting segment: " + e.getMessage());
+            Toast.makeText(this, "Permission denied for recording", Toast.LENGTH_SHORT).show();
+            return false;
+        } catch (Exception e) {
+            if (segmentFile != null) segmentFile.delete();
+            Log.e(TAG, "Exception starting segment: " + e.getMessage());
+            Toast.makeText(this, "Failed to start recording: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        // Listed in take order now; dropped again if the take produces nothing usable
+        segments.add(segmentFile);
+        pendingSegments++;
+        Log.d(TAG, "Started segment " + segmentFile.getName());
+        return true;
+    }
+
+    private void onSegmentEvent(VideoRecordEvent event, File segmentFile) {
+        RecordingStats stats = event.getRecordingStats();
+        sessionMetrics.onRecordingStats(finishedSegmentsNanos + stats.getRecordedDurationNanos(),
+            finishedSegmentsBytes + stats.getNumBytesRecorded());
+        if (event instanceof VideoRecordEvent.Start) {
+            sessionMetrics.mark(SessionMetrics.STAGE_RECORDING_STARTED);
+            return;
+        }
+        if (!(event instanceof VideoRecordEvent.Finalize)) {
+            return;
+        }
+        VideoRecordEvent.Finalize finalizeEvent = (VideoRecordEvent.Finalize) event;
+        pendingSegments--;
+        finishedSegmentsNanos += stats.getRecordedDurationNanos();
+        finishedSegmentsBytes += stats.getNumBytesRecorded();
+
+        if (isIntentionalCancellation && isFinishing()) {
+            segmentFile.delete();
+            return;
+        }
+        if (!isOutputUsable(finalizeEvent, segmentFile)) {
+            Log.w(TAG, "Dropping segment " + segmentFile.getName() + ", error " + finalizeEvent.getError());
+            segments.remove(segmentFile);
+            segmentFile.delete();
+        } else {
+            Log.d(TAG, "Segment finalized: " + segmentFile.getName() + " (" + segmentFile.length() + " bytes)");
+        }
+        if (isDestroyed()) {
+            // Closed by onDestroy for a recreation; the new instance picks up the takes
+            return;
+        }
+
+        if (joinRequested) {
+            if (pendingSegments == 0) {
+                onSegmentsComplete();
+            }
+        } else if (finalizeEvent.hasError() && !isPaused && isRecording) {
+            // The take ended on its own; keep what was recorded and let the user resume
+            Log.w(TAG, "Segment interrupted: " + finalizeEvent.getError());
+            recording = null;
+            pauseRecording();
+            Toast.makeText(this, "Recording interrupted. Tap resume to continue", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private static boolean isOutputUsable(VideoRecordEvent.Finalize event, File outputFile) {
+        if (outputFile.length() == 0) {
+            return false;
+        }
+        switch (event.getError()) {
+            case VideoRecordEvent.Finalize.ERROR_NONE:
+            // These still leave a valid file with everything recorded so far
+            case VideoRecordEvent.Finalize.ERROR_FILE_SIZE_LIMIT_REACHED:
+            case VideoRecordEvent.Finalize.ERROR_DURATION_LIMIT_REACHED:
+            case VideoRecordEvent.Finalize.ERROR_INSUFFICIENT_STORAGE:
+            case VideoRecordEvent.Finalize.ERROR_SOURCE_INACTIVE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** All takes are closed: join them into {@link #videoFile} off the main thread and deliver it. */
+    private void onSegmentsComplete() {
+        isRecording = false;
+        try { if (countdownTimer != null) { countdownTimer.cancel(); countdownTimer = null; } } catch (Exception ignore) {}
+        animateToIdleState();
+        sessionMetrics.mark(SessionMetrics.STAGE_FINALIZED);
+        if (segments.isEmpty()) {
+            Log.e(TAG, "No usable segments recorded");
+            Toast.makeText(this, "Recording failed", Toast.LENGTH_LONG).show();
+            finishSessionMetrics(SessionMetrics.OUTCOME_ERROR);
+            setResult(Activity.RESULT_CANCELED);
+            finish();
+            return;
+        }
+        if (finalizeExecutor.isShutdown()) {
+            return;
+        }
+        joinStarted = true;
+        final ArrayList<File> takes = new ArrayList<>(segments);
+        final File dir = segmentDir;
+        finalizeExecutor.execute(() -> {
+            long startedAt = SystemClock.elapsedRealtime();
+            try {
+                int joined = SegmentJoiner.join(takes, videoFile);
+                long joinMs = SystemClock.elapsedRealtime() - startedAt;
+                Log.d(TAG, "Joined " + joined + " segments in " + joinMs + " ms");
+                sessionMetrics.put("segments", joined);
+                sessionMetrics.put("joinMs", joinMs);
+                deleteSegments(takes, dir);
+                runOnUiThread(this::deliverRecording);
+            } catch (Exception e) {
+                // Keep the takes on disk; the joined file would be incomplete
+                Log.e(TAG, "Joining segments failed: " + e.getMessage(), e);
+                videoFile.delete();
+                runOnUiThread(() -> {
+                    Toast.makeText(this, "Recording failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    sessionMetrics.put("error", String.valueOf(e.getMessage()));
+                    finishSessionMetrics(SessionMetrics.OUTCOME_ERROR);
+                    setResult(Activity.RESULT_CANCELED);
+                    finish();
+                });
+            }
+        });
+    }
+
+    private static void deleteSegments(List<File> takes, File dir) {
+        for (File take : takes) {
+            take.delete();
+        }
+        if (dir != null) {
+            dir.delete();
+        }
+    }
+
+    private void discardSegments() {
+        if (joinStarted || segments.isEmpty()) {
+            return;
+        }
+        deleteSegments(segments, segmentDir);
+        segments.clear();
+    }
+
+    private void restoreSegments(Bundle state) {
+        ArrayList<String> paths = state.getStringArrayList(STATE_SEGMENTS);
+        String videoPath = state.getString(STATE_VIDEO_FILE);
+        if (!segmentedMode || paths == null || videoPath == null) {
+            return;
+        }
+        for (String path : paths) {
+            File take = new File(path);
+            if (take.length() > 0) {
+                segments.add(take);
+            }
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        videoFile = new File(videoPath);
+        segmentDir = segments.get(0).getParentFile();
+        remainingTimeMillis = state.getLong(STATE_REMAINING_MS, remainingTimeMillis);
+        Log.d(TAG, "Restored " + segments.size() + " segments after recreation");
+
+        // Come back paused with the earlier takes kept; resume records the next one
+        isRecording = true;
+        isPaused = true;
+        setControlsState(CameraControlsOverlay.State.PAUSED, false);
+        long totalSec = Math.max(0L, remainingTimeMillis / 1000L);
+        countdownLabel.setText(String.format(Locale.getDefault(), "%02d:%02d", totalSec / 60, totalSec % 60));
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (segmentedMode && !segments.isEmpty() && videoFile != null) {
+            // Includes a take still being written; onDestroy closes it, so it is complete on restore
+            ArrayList<String> paths = new ArrayList<>();
+            for (File take : segments) {
+                paths.add(take.getAbsolutePath());
+            }
+            outState.putStringArrayList(STATE_SEGMENTS, paths);
+            outState.putString(STATE_VIDEO_FILE, videoFile.getAbsolutePath());
+            outState.putLong(STATE_REMAINING_MS, remainingTimeMillis);
+        }
+    }
     
     private void stopRecording() {
         Log.d(TAG, "Stopping recording");
-        
-        if (recording != null && isRecording) {
+        // Pause button out, record button stays square until the recording is finalized
+        setControlsState(CameraControlsOverlay.State.STOPPING, true);
+        
+        if (segmentedMode && isRecording) {
+            sessionMetrics.mark(SessionMetrics.STAGE_STOP_REQUESTED);
+            Trace.beginAsyncSection(SessionMetrics.TRACE_STOP_TO_RESULT, SessionMetrics.TRACE_COOKIE);
+            joinRequested = true;
+            if (recording != null) {
+                recording.stop();
+                recording = null;
+            }
+            // Otherwise the last take's Finalize event starts the join
+            if (pendingSegments == 0) {
+                onSegmentsComplete();
+            }
+        } else if (recording != null && isRecording) {
+            sessionMetrics.mark(SessionMetrics.STAGE_STOP_REQUESTED);
+            Trace.beginAsyncSection(SessionMetrics.TRACE_STOP_TO_RESULT, SessionMetrics.TRACE_COOKIE);
             recording.stop();
             recording = null;
             Log.d(TAG, "Stop recording called on Recording");
@@ -982,16 +1243,6 @@ public class StoryCameraActivity extends AppCompatActivity {
         try { if (countdownTimer != null) { countdownTimer.cancel(); countdownTimer = null; } } catch (Exception ignore) {}
         if (countdownLabel != null) countdownLabel.setText("");
         
-        // Hide pause button
-        if (pauseButton != null) {
-            pauseButton.animate().alpha(0f).setDuration(200).withEndAction(new Runnable() {
-                @Override
-                public void run() {
-                    pauseButton.setVisibility(View.GONE);
-                }
-            }).start();
-        }
-        
         // Reset pause state
         isPaused = false;
         
@@ -1001,14 +1252,22 @@ public class StoryCameraActivity extends AppCompatActivity {
     private void pauseRecording() {
         Log.d(TAG, "Pausing recording");
         
-        if (recording == null || !isRecording || isPaused) {
+        if ((recording == null && !segmentedMode) || !isRecording || isPaused) {
             Log.w(TAG, "Cannot pause - not recording or already paused");
             return;
         }
         
-        // Pause the recording (requires CameraX 1.1.0+)
         try {
-            recording.pause();
+            if (segmentedMode) {
+                // Close this take; resuming records the next one into a new file
+                if (recording != null) {
+                    recording.stop();
+                    recording = null;
+                }
+            } else {
+                // Pause the recording (requires CameraX 1.1.0+)
+                recording.pause();
+            }
             isPaused = true;
             Log.d(TAG, "Recording paused successfully");
             
@@ -1018,17 +1277,7 @@ public class StoryCameraActivity extends AppCompatActivity {
                 countdownTimer = null;
             }
             
-            // Update button to show resume icon (play)
-            pauseButton.setImageResource(android.R.drawable.ic_media_play);
-            
-            // Update button to show it's in paused state - gold/yellow color
-            GradientDrawable pausedDrawable = new GradientDrawable();
-            pausedDrawable.setShape(GradientDrawable.OVAL);
-            pausedDrawable.setColor(0xCCFFD700); // Gold when paused
-            pauseButton.setBackground(pausedDrawable);
-            
-            // Stop pulsing ring animation
-            stopPulsingRing();
+            showPausedControls();
             
             // Haptic feedback
             triggerHapticFeedback();
@@ -1040,34 +1289,43 @@ public class StoryCameraActivity extends AppCompatActivity {
         }
     }
     
+    private void showPausedControls() {
+        // Resume icon on gold, pulse stopped
+        setControlsState(CameraControlsOverlay.State.PAUSED, true);
+    }
+    
     private void resumeRecording() {
         Log.d(TAG, "Resuming recording");
         
-        if (recording == null || !isRecording || !isPaused) {
+        if ((recording == null && !segmentedMode) || !isRecording || !isPaused) {
             Log.w(TAG, "Cannot resume - not paused");
             return;
         }
         
-        // Resume the recording (requires CameraX 1.1.0+)
         try {
-            recording.resume();
+            if (segmentedMode) {
+                long freeBytes = MediaStorageManager.freeBytes(segmentDir != null ? segmentDir : MediaStorageManager.moviesDir(this));
+                if (freeBytes >= 0 && freeBytes - StoragePreflight.RESERVE_BYTES < StoragePreflight.estimateBytes(captureProfile, StoragePreflight.MIN_RECORDING_MS)) {
+                    // No room for another take; keep what was recorded
+                    Toast.makeText(this, "Storage is full, saving what was recorded", Toast.LENGTH_SHORT).show();
+                    stopRecording();
+                    return;
+                }
+                if (!startSegment()) {
+                    return;
+                }
+            } else {
+                // Resume the recording (requires CameraX 1.1.0+)
+                recording.resume();
+            }
             isPaused = false;
             Log.d(TAG, "Recording resumed successfully");
             
             // Resume the timer with remaining time
             startCountdownTimer();
             
-            // Update button back to pause icon
-            pauseButton.setImageResource(android.R.drawable.ic_media_pause);
-            
-            // Update button back to normal state
-            GradientDrawable resumeDrawable = new GradientDrawable();
-            resumeDrawable.setShape(GradientDrawable.OVAL);
-            resumeDrawable.setColor(0xCC000000); // Semi-transparent black
-            pauseButton.setBackground(resumeDrawable);
-            
-            // Restart pulsing ring animation
-            startPulsingRing();
+            // Pause icon back and the pulse restarted
+            setControlsState(CameraControlsOverlay.State.RECORDING, true);
             
             // Haptic feedback
             triggerHapticFeedback();
@@ -1110,21 +1368,11 @@ public class StoryCameraActivity extends AppCompatActivity {
     
     private File createVideoFile() {
         try {
-            // Create a unique filename with timestamp
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String fileName;
-            
-            // Include context in filename if available
-            if (activityContextType != null && activityContextType.equals("mission") && activityMissionId != null) {
-                fileName = "MISSION_" + activityMissionId + "_" + timeStamp + ".mp4";
-            } else if (activityContextType != null && activityContextType.equals("daily") && activityPromptId != null) {
-                fileName = "DAILY_" + activityPromptId + "_" + timeStamp + ".mp4";
-            } else {
-                fileName = "STORY_" + timeStamp + ".mp4";
-            }
+            // Create a unique filename with timestamp, including context if available
+            String fileName = RecordingFileNames.fileNameFor(activityContextType, activityMissionId, activityPromptId, System.currentTimeMillis());
             
             // Get the external storage directory for movies
-            File mediaDir = new File(getExternalFilesDir(null), "Movies");
+            File mediaDir = MediaStorageManager.moviesDir(this);
             if (!mediaDir.exists()) {
                 if (!mediaDir.mkdirs()) {
                     Log.e(TAG, "Failed to create Movies directory");
@@ -1146,115 +1394,27 @@ public class StoryCameraActivity extends AppCompatActivity {
         // Haptic feedback when recording starts
         triggerHapticFeedback();
         
-        // Remove text completely for clean look
-        recordButton.setText("");
-        
-        // Create rounded square background with Octo accent fill (no stroke to avoid double circle)
-        GradientDrawable recordingDrawable = new GradientDrawable();
-        recordingDrawable.setShape(GradientDrawable.RECTANGLE);
-        recordingDrawable.setCornerRadius(25); // Rounded square
-        recordingDrawable.setColor(0xFFFF7F5A); // Octo accent fill
-        // No stroke to avoid inner orange circle
-
-        // Inset the square inside the button to make it visibly smaller (~20%)
-        int insetPx = dpToPx(8); // slightly larger square than before
-        InsetDrawable insetDrawable = new InsetDrawable(recordingDrawable, insetPx);
-        recordButton.setBackground(insetDrawable);
-        // Ensure no elevation/shadow while recording
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                recordButton.setStateListAnimator(null);
-            }
-            recordButton.setElevation(0f);
-            recordButton.setTranslationZ(0f);
-        } catch (Exception ignored) {}
-
-        // Subtle scale feedback
-        recordButton.setScaleX(0.96f);
-        recordButton.setScaleY(0.96f);
-        recordButton.animate().scaleX(1f).scaleY(1f).setDuration(180).setInterpolator(new OvershootInterpolator(1.1f)).withEndAction(new Runnable() {
-            @Override
-            public void run() {
-                startPulsingRing();
-            }
-        }).start();
+        // Circle morphs to a rounded square, then the ring starts pulsing
+        setControlsState(CameraControlsOverlay.State.RECORDING, true);
     }
     
     private void animateToIdleState() {
-        // Stop pulsing ring
-        stopPulsingRing();
-        
-        // Remove any text from the button
-        recordButton.setText("");
-        
-        // Create circular background with orange fill (no border)
-        GradientDrawable idleDrawable = new GradientDrawable();
-        idleDrawable.setShape(GradientDrawable.OVAL);
-        idleDrawable.setColor(0xFFFF7F5A); // Orange background
-        // No stroke/border
-        
-        // Animate size change and background morph (rounded square back to circle)
-        AnimatorSet animatorSet = new AnimatorSet();
-        
-        // Background change
-        recordButton.setBackground(idleDrawable);
-        // Keep elevation disabled to avoid drop shadow
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                recordButton.setStateListAnimator(null);
-            }
-            recordButton.setElevation(0f);
-            recordButton.setTranslationZ(0f);
-        } catch (Exception ignored) {}
-        
-        // Combine animations with bounce effect
-        animatorSet.setDuration(200);
-        animatorSet.setInterpolator(new BounceInterpolator());
-        animatorSet.start();
+        setControlsState(CameraControlsOverlay.State.IDLE, true);
     }
 
-    private int dpToPx(int dp) {
-        float density = getResources().getDisplayMetrics().density;
-        return Math.round(dp * density);
-    }
-    
-    private void startPulsingRing() {
-        if (pulseAnimator != null) {
-            pulseAnimator.cancel();
+    /** Shows {@code state} on the controls; UI frames are counted only while recording. */
+    private void setControlsState(CameraControlsOverlay.State state, boolean animate) {
+        if (controls == null) {
+            return;
         }
-        
-        // Create pulsing animation for the ring
-        pulseAnimator = ValueAnimator.ofFloat(1.0f, 1.3f, 1.0f);
-        pulseAnimator.setDuration(1000); // 1 second pulse cycle
-        pulseAnimator.setRepeatCount(ValueAnimator.INFINITE);
-        pulseAnimator.setRepeatMode(ValueAnimator.RESTART);
-        
-        pulseAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                float scale = (Float) animation.getAnimatedValue();
-                pulsingRing.setScaleX(scale);
-                pulsingRing.setScaleY(scale);
-                
-                // Also animate opacity for glowing effect
-                float alpha = 0.3f + (0.4f * (float) Math.sin(animation.getAnimatedFraction() * Math.PI * 2));
-                pulsingRing.setAlpha(alpha);
+        controls.setState(state, animate);
+        if (frameMonitor != null) {
+            if (state == CameraControlsOverlay.State.RECORDING) {
+                frameMonitor.start();
+            } else {
+                frameMonitor.stop();
             }
-        });
-        
-        pulseAnimator.start();
-    }
-    
-    private void stopPulsingRing() {
-        if (pulseAnimator != null) {
-            pulseAnimator.cancel();
-            pulseAnimator = null;
         }
-        
-        // Reset ring to normal state
-        pulsingRing.setScaleX(1.0f);
-        pulsingRing.setScaleY(1.0f);
-        pulsingRing.setAlpha(0.0f); // Hide the ring
     }
     
     private void triggerHapticFeedback() {
@@ -1361,13 +1521,17 @@ public class StoryCameraActivity extends AppCompatActivity {
             if (videoFile != null && videoFile.exists()) {
                 try {
                     videoFile.delete();
+                    RecordingSalvager.discard(videoFile);
                     Log.d(TAG, "Deleted video file on cancellation");
                 } catch (Exception e) {
                     Log.w(TAG, "Could not delete video file: " + e.getMessage());
                 }
             }
             
+            discardSegments();
+            
             // Return cancelled result immediately - don't wait for finalize event
+            finishSessionMetrics(SessionMetrics.OUTCOME_CANCELLED);
             Intent data = new Intent();
             data.putExtra("error", "Recording cancelled by user");
             setResult(Activity.RESULT_CANCELED, data);
@@ -1377,6 +1541,9 @@ public class StoryCameraActivity extends AppCompatActivity {
         }
         
         // Return cancelled result when user presses back button
+        isIntentionalCancellation = true;
+        discardSegments();
+        finishSessionMetrics(SessionMetrics.OUTCOME_CANCELLED);
         Intent data = new Intent();
         data.putExtra("error", "Recording cancelled by user");
         setResult(Activity.RESULT_CANCELED, data);
@@ -1407,7 +1574,35 @@ public class StoryCameraActivity extends AppCompatActivity {
         Log.d(TAG, "onDestroy - activity being destroyed");
         
         // Stop any running animations
-        stopPulsingRing();
+        if (controls != null) {
+            controls.release();
+        }
+        if (frameMonitor != null) {
+            frameMonitor.stop();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            unregisterThermalListener();
+        }
+        if (!firstFrameLogged) {
+            // Closed before the preview streamed; do not leave the trace section open
+            Trace.endAsyncSection(SessionMetrics.TRACE_RECORD_TO_PREVIEW, SessionMetrics.TRACE_COOKIE);
+        }
+        // A persistent recording ignores lifecycle events, so it has to be closed explicitly
+        if (recording != null) {
+            isIntentionalCancellation = true;
+            try {
+                recording.close();
+            } catch (Exception e) {
+                Log.w(TAG, "Error closing recording on destroy: " + e.getMessage());
+            }
+            recording = null;
+        }
+        zoomController.release();
+        finalizeExecutor.shutdown();
+        if (isFinishing()) {
+            // Takes are only kept across a recreation
+            discardSegments();
+        }
         
         // If activity is being destroyed and we haven't set a result yet, 
         // it means the user left without recording
@@ -1422,6 +1617,11 @@ public class StoryCameraActivity extends AppCompatActivity {
         if (cameraProvider != null) {
             cameraProvider.unbindAll();
         }
+        if (lutEffect != null) {
+            lutEffect.release();
+            lutEffect = null;
+        }
+        finishSessionMetrics(SessionMetrics.OUTCOME_ABANDONED);
         
         super.onDestroy();
     }
@@ -3,10 +3,13 @@ package com.velyar.storycamera;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.tracing.Trace;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
@@ -15,6 +18,18 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @CapacitorPlugin(
     name = "StoryCamera",
     permissions = {
@@ -30,10 +45,40 @@ public class StoryCameraPlugin extends Plugin {
     private String missionId = null;
     private String promptId = null;
     private String promptName = null;
+    private String filter = null;
+    private boolean segmented = false;
+    private boolean filtersEnabled = false;
+    private CaptureProfile captureProfile = CaptureProfile.defaults();
+    private long recordRequestedAt = 0L;
+    // Heavy media work (transcoding etc.) runs here, never on the bridge or UI thread
+    private final ExecutorService mediaExecutor = Executors.newSingleThreadExecutor();
+    // Network transfers get their own threads so a long upload never queues behind a transcode
+    private final ExecutorService uploadExecutor = Executors.newFixedThreadPool(2);
+    private final Map<String, TusUploader> activeUploads = new ConcurrentHashMap<>();
+    private LocalMediaServer mediaServer = null;
+    // Upload-while-recording for the current recordVideo call, if it asked for one
+    private StreamingUpload streamingUpload = null;
+    private MediaStorageManager storageManager;
+
+    @Override
+    public void load() {
+        storageManager = new MediaStorageManager(getContext());
+        // Queued uploads report from their workers, also for jobs queued before the app restarted
+        UploadQueue.setListener(job -> notifyListeners("uploadQueueProgress", job.toJSObject()));
+        // Queued jobs carry no token; a worker that needs one asks the web layer for a fresh one
+        UploadAuth.setRefreshHook(() -> notifyListeners("uploadAuthRequired", new JSObject()));
+        // Rebuild takes a crash left unfinished, then enforce the storage quota, off the main thread on every app start
+        mediaExecutor.execute(() -> {
+            recoverRecordings();
+            runStorageCleanup();
+        });
+    }
 
     @PluginMethod
     public void recordVideo(PluginCall call) {
         Log.d(TAG, "recordVideo called");
+        this.recordRequestedAt = SystemClock.elapsedRealtime();
+        Trace.beginAsyncSection(SessionMetrics.TRACE_RECORD_TO_PREVIEW, SessionMetrics.TRACE_COOKIE);
         
         // Read context parameters
         try {
@@ -41,9 +86,22 @@ public class StoryCameraPlugin extends Plugin {
             this.contextType = call.getString("contextType");
             this.missionId = call.getString("missionId");
             this.promptId = call.getString("promptId");
+            this.filter = call.getString("filter");
+            this.segmented = call.getBoolean("segmented", false);
+            this.filtersEnabled = call.getBoolean("filters", false);
         } catch (Exception e) {
             Log.w(TAG, "Failed to read context parameters: " + e.getMessage());
         }
+
+        // Encoding profile - record at the size we publish instead of recompressing later
+        this.captureProfile = new CaptureProfile(
+            call.getString("quality"),
+            call.getString("qualityFallback"),
+            call.getInt("maxWidthOrHeight", 0),
+            call.getInt("videoBitrate", 0)
+        );
+        Log.d(TAG, "Capture profile: " + captureProfile);
+        this.streamingUpload = createStreamingUpload(call.getObject("streamUpload"));
         
         // Check permissions using standard Android permission checking
         boolean hasCameraPermission = ContextCompat.checkSelfPermission(getContext(), android.Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
@@ -84,6 +142,7 @@ public class StoryCameraPlugin extends Plugin {
             launchCameraActivity(call);
         } else {
             Log.d(TAG, "Permissions not granted in callback");
+            abortStreamingUpload();
             if (call != null) {
                 call.reject("Camera or microphone permission not granted. Please grant permissions in Settings.");
             }
@@ -106,40 +165,79 @@ public class StoryCameraPlugin extends Plugin {
             if (promptId != null) {
                 intent.putExtra("promptId", promptId);
             }
+            if (filter != null) {
+                intent.putExtra("filter", filter);
+            }
+            captureProfile.putExtras(intent);
+            intent.putExtra(StoryCameraActivity.EXTRA_LAUNCHED_AT, recordRequestedAt);
+            intent.putExtra(StoryCameraActivity.EXTRA_SEGMENTED, segmented);
+            intent.putExtra(StoryCameraActivity.EXTRA_FILTERS, filtersEnabled);
+            if (streamingUpload != null) {
+                intent.putExtra(StoryCameraActivity.EXTRA_STREAMING_UPLOAD_ID, streamingUpload.getId());
+            }
             startActivityForResult(call, intent, RECORD_VIDEO_REQUEST_CODE);
         } catch (Exception e) {
             Log.e(TAG, "Failed to start StoryCameraActivity", e);
+            abortStreamingUpload();
             if (call != null) {
                 call.reject("Failed to start camera activity: " + e.getMessage());
             }
         }
     }
 
+    @PluginMethod
+    public void prewarm(PluginCall call) {
+        // Same profile options as recordVideo, so the pre-built Recorder can be reused
+        CaptureProfile profile = new CaptureProfile(
+            call.getString("quality"),
+            call.getString("qualityFallback"),
+            call.getInt("maxWidthOrHeight", 0),
+            call.getInt("videoBitrate", 0)
+        );
+        CameraPrewarmer.getInstance().prewarm(getContext(), profile, new CameraPrewarmer.Listener() {
+            @Override
+            public void onReady(CameraPrewarmer prewarmer) {
+                JSObject ret = new JSObject();
+                ret.put("ready", true);
+                ret.put("providerInitMs", prewarmer.getProviderInitMs());
+                ret.put("hasFrontCamera", prewarmer.hasFrontCamera());
+                ret.put("hasBackCamera", prewarmer.hasBackCamera());
+                if (prewarmer.getLastTimeToPreviewMs() >= 0) {
+                    ret.put("lastTimeToPreviewMs", prewarmer.getLastTimeToPreviewMs());
+                    ret.put("lastPreviewPrewarmed", prewarmer.wasLastPreviewPrewarmed());
+                }
+                call.resolve(ret);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                call.reject("Error prewarming camera: " + error.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getPerformanceStats(PluginCall call) {
+        try {
+            int limit = call.getInt("limit", PerformanceStatsStore.MAX_SESSIONS);
+            JSObject ret = new JSObject();
+            ret.put("sessions", PerformanceStatsStore.load(getContext(), Math.max(0, limit)));
+            // Lets the caller hand sessions to analytics exactly once
+            if (call.getBoolean("clear", false)) {
+                PerformanceStatsStore.clear(getContext());
+            }
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("Error reading performance stats: " + e.getMessage());
+        }
+    }
+
     @PluginMethod
     public void getVideoData(PluginCall call) {
         try {
-            android.content.SharedPreferences prefs = getContext().getSharedPreferences("StoryCamera", android.content.Context.MODE_PRIVATE);
-            boolean shouldNavigate = prefs.getBoolean("shouldNavigateToTest", false);
-            String videoPath = prefs.getString("lastVideoPath", null);
-            String contextType = prefs.getString("lastContextType", null);
-            String missionId = prefs.getString("lastMissionId", null);
-            String promptId = prefs.getString("lastPromptId", null);
-
-            Log.d(TAG, "getVideoData: shouldNavigate=" + shouldNavigate + ", videoPath=" + videoPath + ", contextType=" + contextType + ", missionId=" + missionId + ", promptId=" + promptId);
-
-            // Optionally clear the navigate flag to avoid loops
-            if (shouldNavigate) {
-                android.content.SharedPreferences.Editor editor = prefs.edit();
-                editor.putBoolean("shouldNavigateToTest", false);
-                editor.apply();
-            }
-
-            JSObject result = new JSObject();
-            result.put("hasVideo", shouldNavigate && videoPath != null);
-            if (videoPath != null) result.put("filePath", videoPath);
-            if (contextType != null) result.put("contextType", contextType);
-            if (missionId != null) result.put("missionId", missionId);
-            if (promptId != null) result.put("promptId", promptId);
+            // Reading consumes the navigate flag to avoid loops
+            JSObject result = RecordingHandOff.read(getContext(), true);
+            Log.d(TAG, "getVideoData: " + result);
             call.resolve(result);
         } catch (Exception e) {
             Log.e(TAG, "Error in getVideoData", e);
@@ -151,15 +249,14 @@ public class StoryCameraPlugin extends Plugin {
     public void clearVideoData(PluginCall call) {
         Log.d(TAG, "clearVideoData called");
         try {
-            android.content.SharedPreferences prefs = getContext().getSharedPreferences("StoryCamera", android.content.Context.MODE_PRIVATE);
-            android.content.SharedPreferences.Editor editor = prefs.edit();
-            editor.remove("lastVideoPath");
-            editor.remove("lastContextType");
-            editor.remove("lastMissionId");
-            editor.remove("lastPromptId");
-            editor.remove("shouldNavigateToTest");
-            editor.apply();
-            Log.d(TAG, "Video data and context cleared from SharedPreferences");
+            // Without an id this consumes the recording getVideoData() reported
+            Long id = call.getLong("id");
+            if (id != null) {
+                RecordingHandOff.clear(getContext(), id);
+            } else {
+                RecordingHandOff.clear(getContext());
+            }
+            Log.d(TAG, "Video data consumed in the recording journal" + (id != null ? " (id " + id + ")" : ""));
             call.resolve();
         } catch (Exception e) {
             Log.e(TAG, "Error clearing video data", e);
@@ -167,6 +264,563 @@ public class StoryCameraPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void listPendingRecordings(PluginCall call) {
+        try {
+            int limit = Math.max(1, Math.min(call.getInt("limit", 20), 100));
+            // Cursor is the id of the last entry of the previous page
+            Long before = call.getLong("cursor");
+            RecordingJournal journal = RecordingHandOff.journal(getContext());
+            List<RecordingJournal.Entry> entries = journal.listPending(before != null ? before : Long.MAX_VALUE, limit);
+
+            JSArray recordings = new JSArray();
+            for (RecordingJournal.Entry entry : entries) {
+                recordings.put(entry.toJSObject());
+            }
+            JSObject ret = new JSObject();
+            ret.put("recordings", recordings);
+            ret.put("total", journal.pendingCount());
+            if (entries.size() == limit) {
+                ret.put("nextCursor", entries.get(entries.size() - 1).id);
+            }
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e(TAG, "Error listing pending recordings", e);
+            call.reject("Error listing pending recordings: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void compressVideo(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Missing required parameter: path");
+            return;
+        }
+        File input = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        if (!input.exists()) {
+            call.reject("Video file not found: " + path);
+            return;
+        }
+        int maxWidthOrHeight = call.getInt("maxWidthOrHeight", 1280);
+        double targetSizeMB = call.getDouble("targetSizeMB", 50.0);
+        if (maxWidthOrHeight <= 0) {
+            call.reject("maxWidthOrHeight must be positive");
+            return;
+        }
+        if (!(targetSizeMB > 0)) {
+            call.reject("targetSizeMB must be positive");
+            return;
+        }
+        long targetBytes = (long) (targetSizeMB * 1024 * 1024);
+        Log.d(TAG, "compressVideo called - path: " + path + ", maxWidthOrHeight: " + maxWidthOrHeight + ", targetSizeMB: " + targetSizeMB);
+
+        mediaExecutor.execute(() -> {
+            File output = null;
+            try {
+                storageManager.touch(input);
+                // Unique per call, so concurrent compressions of one recording never share an output
+                output = MediaStorageManager.createDerivedFile(input, MediaStorageManager.KIND_COMPRESSED);
+                VideoTranscoder transcoder = new VideoTranscoder(input, output, maxWidthOrHeight, targetBytes, progress -> {
+                    JSObject event = new JSObject();
+                    event.put("path", path);
+                    event.put("progress", progress);
+                    notifyListeners("compressProgress", event);
+                });
+                VideoTranscoder.Result result = transcoder.transcode();
+                if (result.skipped) {
+                    output.delete();
+                }
+
+                JSObject ret = new JSObject();
+                ret.put("path", result.path);
+                ret.put("originalSize", result.originalSize);
+                ret.put("size", result.size);
+                ret.put("width", result.width);
+                ret.put("height", result.height);
+                ret.put("bitrate", result.videoBitrate);
+                ret.put("duration", result.durationMs);
+                ret.put("skipped", result.skipped);
+                ret.put("targetMet", result.targetMet);
+                call.resolve(ret);
+            } catch (Exception e) {
+                if (output != null) {
+                    output.delete();
+                }
+                Log.e(TAG, "Error compressing video", e);
+                call.reject("Error compressing video: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getContentHash(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Missing required parameter: path");
+            return;
+        }
+        File file = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        if (!file.exists()) {
+            call.reject("Video file not found: " + path);
+            return;
+        }
+        mediaExecutor.execute(() -> {
+            try {
+                // Recordings are digested right after finalize; anything else is digested now
+                RecordingJournal journal = RecordingJournal.getInstance(getContext());
+                String hash = journal.contentHash(file.getAbsolutePath());
+                boolean cached = hash != null;
+                if (hash == null) {
+                    hash = ContentHasher.sha256(file);
+                    journal.setContentHash(file.getAbsolutePath(), hash);
+                }
+                JSObject ret = new JSObject();
+                ret.put("path", path);
+                ret.put("sha256", hash);
+                ret.put("size", file.length());
+                ret.put("cached", cached);
+                call.resolve(ret);
+            } catch (Exception e) {
+                Log.e(TAG, "Error hashing file", e);
+                call.reject("Error hashing file: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getStorageUsage(PluginCall call) {
+        try {
+            call.resolve(storageManager.usage());
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading storage usage", e);
+            call.reject("Error reading storage usage: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void setStorageQuota(PluginCall call) {
+        Double quotaMB = call.getDouble("quotaMB");
+        if (quotaMB == null || quotaMB <= 0) {
+            call.reject("Missing or invalid parameter: quotaMB");
+            return;
+        }
+        storageManager.setQuotaBytes((long) (quotaMB * 1024 * 1024));
+        mediaExecutor.execute(() -> {
+            runStorageCleanup();
+            call.resolve(storageManager.usage());
+        });
+    }
+
+    @PluginMethod
+    public void markUploaded(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Missing required parameter: path");
+            return;
+        }
+        try {
+            storageManager.markUploaded(new File(path.startsWith("file://") ? path.substring("file://".length()) : path));
+            mediaExecutor.execute(this::runStorageCleanup);
+            call.resolve();
+        } catch (Exception e) {
+            Log.e(TAG, "Error marking upload", e);
+            call.reject("Error marking upload: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void deleteDerivedFile(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Missing required parameter: path");
+            return;
+        }
+        File file = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        JSObject ret = new JSObject();
+        ret.put("deleted", storageManager.deleteDerived(file));
+        call.resolve(ret);
+    }
+
+    private void recoverRecordings() {
+        try {
+            for (RecordingSalvager.Recovered recovered : RecordingSalvager.recoverOrphans(getContext())) {
+                JSObject event = recovered.entry.toJSObject();
+                event.put("rebuilt", recovered.remuxed);
+                // Kept until a listener is registered; this usually runs before the app has added one
+                notifyListeners("recordingRecovered", event, true);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Recording recovery failed: " + e.getMessage());
+        }
+    }
+
+    private void runStorageCleanup() {
+        try {
+            storageManager.cleanup();
+        } catch (Exception e) {
+            Log.w(TAG, "Storage cleanup failed: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void trimVideo(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Missing required parameter: path");
+            return;
+        }
+        File input = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        if (!input.exists()) {
+            call.reject("Video file not found: " + path);
+            return;
+        }
+        long startMs = Math.max(0L, call.getLong("startMs", 0L));
+        long endMs = call.getLong("endMs", 0L);
+        if (endMs > 0 && endMs <= startMs) {
+            call.reject("endMs must be greater than startMs");
+            return;
+        }
+        Log.d(TAG, "trimVideo called - path: " + path + ", startMs: " + startMs + ", endMs: " + endMs);
+
+        mediaExecutor.execute(() -> {
+            File output = null;
+            try {
+                storageManager.touch(input);
+                // Unique per call: an earlier trim may still be held or played by the web layer
+                output = MediaStorageManager.createDerivedFile(input, MediaStorageManager.KIND_TRIMMED);
+                VideoTrimmer.Result result = VideoTrimmer.trim(input, output, startMs, endMs);
+                if (result.skipped) {
+                    output.delete();
+                }
+                JSObject ret = new JSObject();
+                ret.put("path", result.path);
+                ret.put("startMs", result.startMs);
+                ret.put("endMs", result.endMs);
+                ret.put("duration", result.durationMs);
+                ret.put("size", result.size);
+                ret.put("skipped", result.skipped);
+                call.resolve(ret);
+            } catch (Exception e) {
+                Log.e(TAG, "Error trimming video", e);
+                if (output != null) {
+                    output.delete();
+                }
+                call.reject("Error trimming video: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void startUpload(PluginCall call) {
+        String path = call.getString("path");
+        String endpoint = call.getString("endpoint");
+        if (path == null || path.isEmpty() || endpoint == null || endpoint.isEmpty()) {
+            call.reject("Missing required parameters: path and endpoint");
+            return;
+        }
+        File file = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        if (!file.exists()) {
+            call.reject("Video file not found: " + path);
+            return;
+        }
+        if (activeUploads.containsKey(file.getAbsolutePath())) {
+            call.reject("Upload already in progress for " + path);
+            return;
+        }
+        int chunkSize = call.getInt("chunkSize", TusUploader.DEFAULT_CHUNK_SIZE);
+        Map<String, String> headers = toStringMap(call.getObject("headers"));
+        String uploadMetadata = encodeUploadMetadata(call.getObject("metadata"));
+        Log.d(TAG, "startUpload called - path: " + path + ", endpoint: " + endpoint + ", chunkSize: " + chunkSize);
+
+        final TusUploader uploader;
+        try {
+            uploader = new TusUploader(new URL(endpoint), headers, uploadMetadata, new TusUploadStore(getContext()), chunkSize);
+        } catch (Exception e) {
+            call.reject("Invalid upload parameters: " + e.getMessage());
+            return;
+        }
+        activeUploads.put(file.getAbsolutePath(), uploader);
+
+        uploadExecutor.execute(() -> {
+            final int[] lastPercent = { -1 };
+            try {
+                String uploadUrl = uploader.upload(file, (uploaded, total) -> {
+                    int percent = total > 0 ? (int) (uploaded * 100 / total) : 100;
+                    if (percent == lastPercent[0]) return;
+                    lastPercent[0] = percent;
+                    JSObject event = new JSObject();
+                    event.put("path", path);
+                    event.put("uploadedBytes", uploaded);
+                    event.put("totalBytes", total);
+                    event.put("progress", total > 0 ? (double) uploaded / total : 1.0);
+                    notifyListeners("uploadProgress", event);
+                });
+                JSObject ret = new JSObject();
+                ret.put("path", path);
+                ret.put("uploadUrl", uploadUrl);
+                ret.put("size", file.length());
+                storageManager.markUploaded(file);
+                call.resolve(ret);
+                mediaExecutor.execute(this::runStorageCleanup);
+            } catch (Exception e) {
+                Log.e(TAG, "Error uploading video", e);
+                call.reject("Error uploading video: " + e.getMessage());
+            } finally {
+                activeUploads.remove(file.getAbsolutePath());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void enqueueUpload(PluginCall call) {
+        String path = call.getString("path");
+        String endpoint = call.getString("endpoint");
+        if (path == null || path.isEmpty() || endpoint == null || endpoint.isEmpty()) {
+            call.reject("Missing required parameters: path and endpoint");
+            return;
+        }
+        File file = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        if (!file.exists()) {
+            call.reject("Video file not found: " + path);
+            return;
+        }
+        try {
+            new URL(endpoint);
+            UploadQueue.Job job = new UploadQueue.Job();
+            job.path = file.getAbsolutePath();
+            job.endpoint = endpoint;
+            Map<String, String> headers = toStringMap(call.getObject("headers"));
+            Map<String, String> credentials = UploadAuth.extractCredentials(headers);
+            if (!credentials.isEmpty()) {
+                // Used while it is valid, never stored with the job
+                UploadAuth.set(credentials);
+            }
+            JSObject stored = new JSObject();
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                stored.put(header.getKey(), header.getValue());
+            }
+            job.headers = headers.isEmpty() ? null : stored.toString();
+            job.metadata = encodeUploadMetadata(call.getObject("metadata"));
+            job.chunkSize = call.getInt("chunkSize", TusUploader.DEFAULT_CHUNK_SIZE);
+            job.wifiOnly = call.getBoolean("wifiOnly", false);
+            job.requiresCharging = call.getBoolean("requiresCharging", false);
+            job.totalBytes = file.length();
+            String id = UploadQueue.getInstance(getContext()).enqueue(job);
+            JSObject ret = new JSObject();
+            ret.put("id", id);
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e(TAG, "Error queueing upload", e);
+            call.reject("Error queueing upload: " + e.getMessage());
+        }
+    }
+
+    /** The authorization headers queued uploads run with, e.g. after every session token refresh. */
+    @PluginMethod
+    public void setUploadAuth(PluginCall call) {
+        UploadAuth.set(toStringMap(call.getObject("headers")));
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getUploadQueue(PluginCall call) {
+        try {
+            int finishedLimit = Math.max(0, Math.min(call.getInt("finishedLimit", 20), 100));
+            JSArray uploads = new JSArray();
+            for (UploadQueue.Job job : UploadQueue.getInstance(getContext()).list(finishedLimit)) {
+                uploads.put(job.toJSObject());
+            }
+            JSObject ret = new JSObject();
+            ret.put("uploads", uploads);
+            ret.put("maxParallel", UploadQueue.MAX_PARALLEL);
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading upload queue", e);
+            call.reject("Error reading upload queue: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void finishStreamingUpload(PluginCall call) {
+        String id = call.getString("id");
+        StreamingUpload upload = StreamingUpload.get(id);
+        if (upload == null) {
+            call.reject("Unknown streaming upload: " + id);
+            return;
+        }
+        uploadExecutor.execute(() -> {
+            try {
+                String uploadUrl = upload.await();
+                StreamingUpload.remove(id);
+                JSObject ret = new JSObject();
+                ret.put("id", id);
+                ret.put("uploadUrl", uploadUrl);
+                ret.put("streamedBytes", upload.getStreamedBytes());
+                ret.put("finishBytes", upload.getFinishBytes());
+                call.resolve(ret);
+            } catch (Exception e) {
+                StreamingUpload.remove(id);
+                Log.e(TAG, "Error finishing streaming upload", e);
+                call.reject("Error uploading video: " + e.getMessage());
+            }
+        });
+    }
+
+    private StreamingUpload createStreamingUpload(JSObject options) {
+        if (options == null) {
+            return null;
+        }
+        String endpoint = options.getString("endpoint");
+        if (endpoint == null || endpoint.isEmpty()) {
+            Log.w(TAG, "streamUpload without endpoint, ignoring");
+            return null;
+        }
+        if (segmented) {
+            // Takes are joined into a new file at stop, so there is nothing to stream while recording
+            Log.w(TAG, "streamUpload is not supported with segmented recording, ignoring");
+            return null;
+        }
+        int chunkSize = options.optInt("chunkSize", TusUploader.DEFAULT_CHUNK_SIZE);
+        try {
+            TusUploader uploader = new TusUploader(new URL(endpoint), toStringMap(options.getJSObject("headers")),
+                encodeUploadMetadata(options.getJSObject("metadata")), new TusUploadStore(getContext()), chunkSize);
+            final String id = UUID.randomUUID().toString();
+            final long[] lastEventAt = { 0L };
+            return StreamingUpload.create(id, uploader, chunkSize, (uploaded, total) -> {
+                long now = SystemClock.elapsedRealtime();
+                if (uploaded < total && now - lastEventAt[0] < 250) return;
+                lastEventAt[0] = now;
+                JSObject event = new JSObject();
+                event.put("streamingUploadId", id);
+                event.put("uploadedBytes", uploaded);
+                event.put("totalBytes", total);
+                event.put("progress", total > 0 ? (double) uploaded / total : 1.0);
+                notifyListeners("uploadProgress", event);
+            });
+        } catch (Exception e) {
+            Log.w(TAG, "Invalid streamUpload options, recording without it: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void abortStreamingUpload() {
+        if (streamingUpload != null) {
+            streamingUpload.abort();
+            StreamingUpload.remove(streamingUpload.getId());
+            streamingUpload = null;
+        }
+    }
+
+    @PluginMethod
+    public void cancelUpload(PluginCall call) {
+        String id = call.getString("id");
+        if (id != null) {
+            StreamingUpload upload = StreamingUpload.remove(id);
+            if (upload != null) {
+                upload.abort();
+            }
+            boolean cancelled = upload != null || UploadQueue.getInstance(getContext()).cancel(id);
+            JSObject ret = new JSObject();
+            ret.put("cancelled", cancelled);
+            call.resolve(ret);
+            return;
+        }
+        String path = call.getString("path");
+        if (path == null) {
+            call.reject("Missing required parameter: path");
+            return;
+        }
+        File file = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        TusUploader uploader = activeUploads.get(file.getAbsolutePath());
+        if (uploader != null) {
+            // The persisted offset is kept, so a later startUpload resumes
+            uploader.cancel();
+        }
+        JSObject ret = new JSObject();
+        ret.put("cancelled", uploader != null);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getMediaUrl(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Missing required parameter: path");
+            return;
+        }
+        File file = new File(path.startsWith("file://") ? path.substring("file://".length()) : path);
+        if (!file.exists()) {
+            call.reject("Media file not found: " + path);
+            return;
+        }
+        try {
+            LocalMediaServer server = getMediaServer();
+            String url = server.urlFor(file);
+            if (url == null) {
+                call.reject("File is outside the recordings directory: " + path);
+                return;
+            }
+            storageManager.touch(file);
+            JSObject ret = new JSObject();
+            ret.put("url", url);
+            ret.put("size", file.length());
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e(TAG, "Error serving media file", e);
+            call.reject("Error serving media file: " + e.getMessage());
+        }
+    }
+
+    private synchronized LocalMediaServer getMediaServer() throws java.io.IOException {
+        if (mediaServer == null) {
+            // Same directory StoryCameraActivity.createVideoFile() records into
+            mediaServer = new LocalMediaServer(MediaStorageManager.moviesDir(getContext()));
+        }
+        mediaServer.start();
+        return mediaServer;
+    }
+
+    private static Map<String, String> toStringMap(JSObject object) {
+        Map<String, String> map = new HashMap<>();
+        if (object == null) return map;
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            String value = object.getString(key);
+            if (value != null) map.put(key, value);
+        }
+        return map;
+    }
+
+    // tus Upload-Metadata: comma-separated "key base64(value)" pairs
+    private static String encodeUploadMetadata(JSObject metadata) {
+        if (metadata == null) return null;
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : toStringMap(metadata).entrySet()) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(entry.getKey()).append(' ')
+                .append(android.util.Base64.encodeToString(entry.getValue().getBytes(StandardCharsets.UTF_8), android.util.Base64.NO_WRAP));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        for (TusUploader uploader : activeUploads.values()) {
+            uploader.cancel();
+        }
+        // Queued uploads keep running under WorkManager; only the events stop
+        UploadQueue.setListener(null);
+        UploadAuth.setRefreshHook(null);
+        uploadExecutor.shutdownNow();
+        mediaExecutor.shutdownNow();
+        if (mediaServer != null) {
+            mediaServer.stop();
+        }
+        super.handleOnDestroy();
+    }
+
     @Override
     protected void handleOnActivityResult(int requestCode, int resultCode, Intent data) {
         Log.d(TAG, "handleOnActivityResult called - requestCode: " + requestCode + ", resultCode: " + resultCode);
@@ -188,32 +842,29 @@ public class StoryCameraPlugin extends Plugin {
         
         if (savedCall == null) {
             Log.w(TAG, "No saved call to resolve");
+            // Nobody could collect the streamed upload
+            abortStreamingUpload();
             return;
         }
 
         if (resultCode == Activity.RESULT_OK && data != null && data.hasExtra("videoUri")) {
-            String videoUri = data.getStringExtra("videoUri");
-            String contentUri = data.hasExtra("contentUri") ? data.getStringExtra("contentUri") : null;
-            Log.d(TAG, "Recording successful, videoUri: " + videoUri);
-            JSObject ret = new JSObject();
-            ret.put("filePath", videoUri);
-            if (contentUri != null) {
-                ret.put("contentUri", contentUri);
-            }
-            
-            // Echo back context from the activity
-            String returnedContextType = data.getStringExtra("contextType");
-            String returnedMissionId = data.getStringExtra("missionId");
-            String returnedPromptId = data.getStringExtra("promptId");
-            
-            if (returnedContextType != null) ret.put("contextType", returnedContextType);
-            if (returnedMissionId != null) ret.put("missionId", returnedMissionId);
-            if (returnedPromptId != null) ret.put("promptId", returnedPromptId);
+            Log.d(TAG, "Recording successful, videoUri: " + data.getStringExtra("videoUri"));
+            JSObject ret = buildRecordingResult(data);
+            if (streamingUpload != null) {
+                // Only the head and the tail are left; finishStreamingUpload() waits for them
+                streamingUpload.finish(new File(data.getStringExtra("videoUri")));
+                ret.put("streamingUploadId", streamingUpload.getId());
+                streamingUpload = null;
+            }
             savedCall.resolve(ret);
+            // New bytes on disk; make room if that pushed usage over the quota
+            mediaExecutor.execute(this::runStorageCleanup);
         } else if (resultCode == Activity.RESULT_CANCELED) {
+            abortStreamingUpload();
             Log.d(TAG, "Recording cancelled");
             savedCall.reject("Recording cancelled");
         } else {
+            abortStreamingUpload();
             Log.d(TAG, "Recording failed");
             savedCall.reject("Recording failed");
         }
@@ -221,6 +872,54 @@ public class StoryCameraPlugin extends Plugin {
         Log.d(TAG, "Releasing call");
         bridge.releaseCall(savedCall);
         pendingCall = null; // Clear the pending call
+        Trace.endAsyncSection(SessionMetrics.TRACE_STOP_TO_RESULT, SessionMetrics.TRACE_COOKIE);
     }
-}
 
+    /** Maps the activity's result extras onto the recordVideo result. */
+    static JSObject buildRecordingResult(Intent data) {
+        JSObject ret = new JSObject();
+        ret.put("filePath", data.getStringExtra("videoUri"));
+        String contentUri = data.getStringExtra("contentUri");
+        if (contentUri != null) {
+            ret.put("contentUri", contentUri);
+        }
+        String thumbnailPath = data.getStringExtra("thumbnailPath");
+        if (thumbnailPath != null) {
+            ret.put("thumbnailPath", thumbnailPath);
+        }
+        // Metadata probed by the activity's finalize pipeline
+        if (data.hasExtra(RecordingFinalizer.EXTRA_DURATION_MS)) {
+            long durationMs = data.getLongExtra(RecordingFinalizer.EXTRA_DURATION_MS, 0L);
+            ret.put("duration", durationMs / 1000.0);
+            ret.put("durationMs", durationMs);
+            ret.put("width", data.getIntExtra(RecordingFinalizer.EXTRA_WIDTH, 0));
+            ret.put("height", data.getIntExtra(RecordingFinalizer.EXTRA_HEIGHT, 0));
+            ret.put("rotation", data.getIntExtra(RecordingFinalizer.EXTRA_ROTATION, 0));
+            ret.put("hasAudio", data.getBooleanExtra(RecordingFinalizer.EXTRA_HAS_AUDIO, false));
+        }
+        if (data.hasExtra(RecordingFinalizer.EXTRA_SIZE)) {
+            ret.put("size", data.getLongExtra(RecordingFinalizer.EXTRA_SIZE, 0L));
+        }
+        String quality = data.getStringExtra(StoryCameraActivity.EXTRA_RECORDED_QUALITY);
+        if (quality != null) {
+            ret.put("quality", quality);
+            ret.put("qualityReason", data.getStringExtra(StoryCameraActivity.EXTRA_QUALITY_REASON));
+        }
+        String storageAdjustment = data.getStringExtra(StoryCameraActivity.EXTRA_STORAGE_ADJUSTMENT);
+        if (storageAdjustment != null) {
+            ret.put("storageAdjustment", storageAdjustment);
+        }
+        if (data.hasExtra(RecordingFinalizer.EXTRA_JOURNAL_ID)) {
+            ret.put("recordingId", data.getLongExtra(RecordingFinalizer.EXTRA_JOURNAL_ID, 0L));
+        }
+
+        // Echo back context from the activity
+        String returnedContextType = data.getStringExtra("contextType");
+        String returnedMissionId = data.getStringExtra("missionId");
+        String returnedPromptId = data.getStringExtra("promptId");
+        if (returnedContextType != null) ret.put("contextType", returnedContextType);
+        if (returnedMissionId != null) ret.put("missionId", returnedMissionId);
+        if (returnedPromptId != null) ret.put("promptId", returnedPromptId);
+        return ret;
+    }
+}
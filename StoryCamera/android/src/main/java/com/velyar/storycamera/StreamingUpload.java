@@ -0,0 +1,290 @@
+package com.velyar.storycamera;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads a recording while the camera is still writing it, so that after stop only the start
+ * and the end of the file are left to send.
+ *
+ * The Recorder's MP4 is laid out as [ftyp][reserved moov space][mdat header][samples...] and
+ * only the first few hundred KB (the moov written into the reservation, the mdat size) and
+ * the end of the file change when it is finalized; sample bytes are never rewritten. So the file
+ * is cut into chunkSize pieces: the first piece (the head) waits for stop, and every later piece
+ * is sent as a tus partial upload as soon as the file has grown past it. On stop the head and
+ * the tail go up, and a final upload concatenates head, body pieces and tail in order.
+ *
+ * Needs the tus concatenation extension. Without it, or when the finished file does not have the
+ * expected layout, the whole file is uploaded sequentially after stop instead, so the caller
+ * always ends up with a complete upload.
+ */
+public class StreamingUpload {
+    private static final String TAG = "StreamingUpload";
+    private static final long POLL_INTERVAL_MS = 500;
+
+    public static final String STATE_WAITING = "waiting";
+    public static final String STATE_STREAMING = "streaming";
+    public static final String STATE_FINISHING = "finishing";
+    public static final String STATE_COMPLETED = "completed";
+    public static final String STATE_FAILED = "failed";
+    public static final String STATE_CANCELLED = "cancelled";
+
+    // Sessions by id, from recordVideo until JS collects the result
+    private static final Map<String, StreamingUpload> SESSIONS = new ConcurrentHashMap<>();
+
+    public interface Listener {
+        void onProgress(long uploadedBytes, long totalBytes);
+    }
+
+    private final String id;
+    private final TusUploader uploader;
+    private final long chunkSize;
+    private final Listener listener;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<String> bodyUrls = new ArrayList<>();
+
+    // Confined to the executor thread
+    private File file;
+    private ScheduledFuture<?> poller;
+    private Boolean concatenation; // null until the server was asked
+    private long nextStart; // first byte not yet sent as a body piece
+
+    private volatile String state = STATE_WAITING;
+    private volatile long streamedBytes = 0;
+    private volatile long finishBytes = 0;
+    private volatile String uploadUrl;
+    private volatile Exception error;
+
+    StreamingUpload(String id, TusUploader uploader, int chunkSize, Listener listener) {
+        this.id = id;
+        this.uploader = uploader;
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+        this.nextStart = chunkSize;
+    }
+
+    public static StreamingUpload create(String id, TusUploader uploader, int chunkSize, Listener listener) {
+        StreamingUpload upload = new StreamingUpload(id, uploader, chunkSize, listener);
+        SESSIONS.put(id, upload);
+        return upload;
+    }
+
+    public static StreamingUpload get(String id) {
+        return id != null ? SESSIONS.get(id) : null;
+    }
+
+    public static StreamingUpload remove(String id) {
+        return id != null ? SESSIONS.remove(id) : null;
+    }
+
+    /** Called by the camera when it starts writing {@code file}; body pieces go up from here on. */
+    public static void attach(String id, File file) {
+        StreamingUpload upload = get(id);
+        if (upload != null) {
+            upload.post(() -> upload.onAttached(file));
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public long getStreamedBytes() {
+        return streamedBytes;
+    }
+
+    /** Bytes sent after stop; the part of the upload the user waited for. */
+    public long getFinishBytes() {
+        return finishBytes;
+    }
+
+    /** The recording is finalized: send what is left and join the pieces. Runs in the background. */
+    public void finish(File finalFile) {
+        post(() -> onFinish(finalFile));
+    }
+
+    /** The recording was discarded; drops the pieces sent so far. */
+    public void abort() {
+        uploader.cancel();
+        post(() -> {
+            for (String url : bodyUrls) {
+                uploader.terminate(url);
+            }
+            complete(STATE_CANCELLED, null, new IOException("Upload cancelled"));
+        });
+    }
+
+    /** Blocks until the upload completed or failed and returns the final upload URL. */
+    public String await() throws Exception {
+        done.await();
+        if (error != null) {
+            throw error;
+        }
+        return uploadUrl;
+    }
+
+    private void post(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Already completed
+        }
+    }
+
+    private void onAttached(File recording) {
+        if (done.getCount() == 0) {
+            return;
+        }
+        file = recording;
+        try {
+            Set<String> extensions = uploader.fetchExtensions();
+            concatenation = extensions.contains("concatenation");
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read tus extensions: " + e.getMessage());
+            concatenation = false;
+        }
+        if (!concatenation) {
+            Log.d(TAG, "Server has no concatenation extension; uploading after stop");
+            return;
+        }
+        state = STATE_STREAMING;
+        poller = executor.scheduleWithFixedDelay(this::sendCompletedPieces, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Sends every body piece the Recorder has written past; stops streaming on the first error. */
+    private void sendCompletedPieces() {
+        try {
+            // The piece after this one must have started too, so this one is all sample data
+            while (file.length() >= nextStart + chunkSize + chunkSize / 16) {
+                String url = uploader.uploadPartial(file, nextStart, chunkSize, (sent, total) -> report(streamedBytes + sent));
+                bodyUrls.add(url);
+                nextStart += chunkSize;
+                streamedBytes += chunkSize;
+            }
+        } catch (IOException e) {
+            // Whatever was not sent yet goes with the tail
+            Log.w(TAG, "Streaming piece failed, sending the rest after stop: " + e.getMessage());
+            stopPolling();
+        }
+    }
+
+    private void onFinish(File finalFile) {
+        if (done.getCount() == 0) {
+            return;
+        }
+        stopPolling();
+        file = finalFile;
+        state = STATE_FINISHING;
+        long total = file.length();
+        try {
+            if (Boolean.TRUE.equals(concatenation) && !bodyUrls.isEmpty() && headFitsFirstPiece(total)) {
+                List<String> parts = new ArrayList<>();
+                parts.add(uploader.uploadPartial(file, 0L, chunkSize, (sent, t) -> report(streamedBytes + sent)));
+                parts.addAll(bodyUrls);
+                finishBytes = chunkSize;
+                long tail = total - nextStart;
+                if (tail > 0) {
+                    final long headAndBody = streamedBytes + chunkSize;
+                    parts.add(uploader.uploadPartial(file, nextStart, tail, (sent, t) -> report(headAndBody + sent)));
+                    finishBytes += tail;
+                }
+                String url = uploader.concatenate(parts);
+                Log.d(TAG, "Streamed " + streamedBytes + " of " + total + " bytes during recording, "
+                    + finishBytes + " after stop, " + parts.size() + " pieces");
+                report(total);
+                complete(STATE_COMPLETED, url, null);
+            } else {
+                for (String url : bodyUrls) {
+                    uploader.terminate(url);
+                }
+                streamedBytes = 0;
+                finishBytes = total;
+                String url = uploader.upload(file, (sent, t) -> report(sent));
+                complete(STATE_COMPLETED, url, null);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Streaming upload failed: " + e.getMessage());
+            complete(STATE_FAILED, null, e);
+        }
+    }
+
+    /**
+     * True when everything that changed at finalize, up to the start of the sample data, lies in
+     * the first piece and every body piece lies inside the sample data.
+     */
+    private boolean headFitsFirstPiece(long total) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            long position = 0;
+            while (position + 8 <= total) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                long size = header.getInt() & 0xFFFFFFFFL;
+                int type = header.getInt();
+                int headerSize = 8;
+                if (size == 1 && header.remaining() >= 8) {
+                    size = header.getLong();
+                    headerSize = 16;
+                } else if (size == 0) {
+                    size = total - position;
+                }
+                if (type == 0x6D646174) { // 'mdat'
+                    boolean fits = position + headerSize <= chunkSize && position + size >= nextStart;
+                    if (!fits) {
+                        Log.w(TAG, "mdat at " + position + " (" + size + " bytes) does not match the streamed pieces");
+                    }
+                    return fits;
+                }
+                if (size < headerSize) {
+                    return false;
+                }
+                position += size;
+            }
+            return false;
+        }
+    }
+
+    private void report(long uploaded) {
+        if (listener != null && file != null) {
+            listener.onProgress(uploaded, Math.max(uploaded, file.length()));
+        }
+    }
+
+    private void stopPolling() {
+        if (poller != null) {
+            poller.cancel(false);
+            poller = null;
+        }
+    }
+
+    private void complete(String finalState, String url, Exception failure) {
+        stopPolling();
+        uploadUrl = url;
+        error = failure;
+        state = finalState;
+        done.countDown();
+        executor.shutdown();
+    }
+}
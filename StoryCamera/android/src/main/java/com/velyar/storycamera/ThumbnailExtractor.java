@@ -0,0 +1,125 @@
+package com.velyar.storycamera;
+
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a scaled JPEG poster frame next to a recording ("STORY_x.mp4" -> "STORY_x_thumb.jpg").
+ * Decodes a single frame at the target size, so it is cheap enough to run at finalize.
+ * Blocking; call from a background thread.
+ */
+public class ThumbnailExtractor {
+    private static final String TAG = "ThumbnailExtractor";
+    public static final int DEFAULT_MAX_EDGE = 480;
+    public static final long DEFAULT_FRAME_TIME_US = 1_500_000L;
+    private static final int JPEG_QUALITY = 80;
+
+    public static File thumbnailFileFor(File video) {
+        String name = video.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        return new File(video.getParentFile(), baseName + "_thumb.jpg");
+    }
+
+    public static File extract(File video) throws IOException {
+        return extract(video, DEFAULT_MAX_EDGE, DEFAULT_FRAME_TIME_US);
+    }
+
+    public static File extract(File video, int maxEdge, long frameTimeUs) throws IOException {
+        MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+        try {
+            mmr.setDataSource(video.getAbsolutePath());
+            return extract(mmr, video, maxEdge, frameTimeUs);
+        } catch (RuntimeException e) {
+            throw new IOException("Thumbnail extraction failed: " + e.getMessage(), e);
+        } finally {
+            try { mmr.release(); } catch (Exception ignore) {}
+        }
+    }
+
+    /** Variant for callers that already opened a retriever on the video (e.g. for metadata). */
+    public static File extract(MediaMetadataRetriever mmr, File video, int maxEdge, long frameTimeUs) throws IOException {
+        Bitmap frame = null;
+        try {
+            long timeUs = clampFrameTime(mmr, frameTimeUs);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                int[] size = scaledSize(mmr, maxEdge);
+                frame = mmr.getScaledFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, size[0], size[1]);
+            } else {
+                Bitmap full = mmr.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+                if (full != null) {
+                    int[] size = fitWithin(full.getWidth(), full.getHeight(), maxEdge);
+                    frame = Bitmap.createScaledBitmap(full, size[0], size[1], true);
+                    if (frame != full) {
+                        full.recycle();
+                    }
+                }
+            }
+            if (frame == null) {
+                throw new IOException("No frame could be decoded from " + video.getName());
+            }
+
+            File thumbnail = thumbnailFileFor(video);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(thumbnail))) {
+                if (!frame.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                    throw new IOException("JPEG encode failed for " + thumbnail.getName());
+                }
+            }
+            Log.d(TAG, "Thumbnail written: " + thumbnail.getAbsolutePath() + " (" + frame.getWidth() + "x" + frame.getHeight() + ", " + thumbnail.length() + " bytes)");
+            return thumbnail;
+        } catch (RuntimeException e) {
+            throw new IOException("Thumbnail extraction failed: " + e.getMessage(), e);
+        } finally {
+            if (frame != null) {
+                frame.recycle();
+            }
+        }
+    }
+
+    private static long clampFrameTime(MediaMetadataRetriever mmr, long frameTimeUs) {
+        String duration = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+        if (duration == null) {
+            return 0;
+        }
+        long durationUs = Long.parseLong(duration) * 1000L;
+        // Very short clips: take the middle frame rather than seeking past the end
+        return frameTimeUs < durationUs ? frameTimeUs : durationUs / 2;
+    }
+
+    private static int[] scaledSize(MediaMetadataRetriever mmr, int maxEdge) {
+        int width = parseInt(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+        int height = parseInt(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+        int rotation = parseInt(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+        if (rotation == 90 || rotation == 270) {
+            int tmp = width;
+            width = height;
+            height = tmp;
+        }
+        if (width <= 0 || height <= 0) {
+            return new int[] { maxEdge, maxEdge };
+        }
+        return fitWithin(width, height, maxEdge);
+    }
+
+    private static int[] fitWithin(int width, int height, int maxEdge) {
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        return new int[] { Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)) };
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value != null ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * SharedPreferences-backed {@link TusUploader.UploadStore}. Keeps one upload URL and the last
+ * offset the server acknowledged per file fingerprint, so uploads survive process death.
+ */
+public class TusUploadStore implements TusUploader.UploadStore {
+    private static final String PREFS_NAME = "StoryCameraUploads";
+    private static final String URL_SUFFIX = ".url";
+    private static final String OFFSET_SUFFIX = ".offset";
+
+    private final SharedPreferences prefs;
+
+    public TusUploadStore(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public String getUploadUrl(String fingerprint) {
+        return prefs.getString(fingerprint + URL_SUFFIX, null);
+    }
+
+    @Override
+    public long getOffset(String fingerprint) {
+        return prefs.getLong(fingerprint + OFFSET_SUFFIX, 0L);
+    }
+
+    @Override
+    public void save(String fingerprint, String uploadUrl, long offset) {
+        prefs.edit()
+            .putString(fingerprint + URL_SUFFIX, uploadUrl)
+            .putLong(fingerprint + OFFSET_SUFFIX, offset)
+            .apply();
+    }
+
+    @Override
+    public void remove(String fingerprint) {
+        prefs.edit()
+            .remove(fingerprint + URL_SUFFIX)
+            .remove(fingerprint + OFFSET_SUFFIX)
+            .apply();
+    }
+}
@@ -0,0 +1,412 @@
+package com.velyar.storycamera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resumable upload client for the tus 1.0.0 protocol (core + creation), as spoken by
+ * Supabase Storage's /storage/v1/upload/resumable endpoint.
+ *
+ * The file is streamed straight from a {@link FileChannel} in fixed-size PATCH chunks; only a
+ * small reusable buffer is held in memory. The upload URL and last acknowledged offset are kept
+ * in an {@link UploadStore}, so a later call for the same file resumes where the server stopped.
+ *
+ * Servers with the concatenation extension also accept byte ranges of a file as partial uploads
+ * in any order, joined by a final upload; {@link StreamingUpload} uses that to send a recording
+ * while it is still being written.
+ *
+ * Plain Java on purpose (no Android types) so it can run against a local tus stand-in server.
+ */
+public class TusUploader {
+    public static final String TUS_VERSION = "1.0.0";
+    // Supabase requires every chunk except the last to be exactly 6 MB
+    public static final int DEFAULT_CHUNK_SIZE = 6 * 1024 * 1024;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 60_000;
+    private static final int MAX_RETRIES = 5;
+    private static final long INITIAL_RETRY_DELAY_MS = 500;
+
+    public interface ProgressListener {
+        void onProgress(long uploadedBytes, long totalBytes);
+    }
+
+    private interface OffsetCallback {
+        void onAcknowledged(long offset);
+    }
+
+    /** Persists upload URL + acknowledged offset per file fingerprint. */
+    public interface UploadStore {
+        String getUploadUrl(String fingerprint);
+
+        long getOffset(String fingerprint);
+
+        void save(String fingerprint, String uploadUrl, long offset);
+
+        void remove(String fingerprint);
+    }
+
+    public static class UploadException extends IOException {
+        public final int statusCode;
+
+        public UploadException(String message, int statusCode) {
+            super(message + " (HTTP " + statusCode + ")");
+            this.statusCode = statusCode;
+        }
+    }
+
+    private final URL endpoint;
+    private final Map<String, String> headers;
+    private final String uploadMetadata;
+    private final UploadStore store;
+    private final int chunkSize;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param uploadMetadata pre-encoded Upload-Metadata header value ("key base64,key2 base64"), may be null
+     */
+    public TusUploader(URL endpoint, Map<String, String> headers, String uploadMetadata, UploadStore store, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.endpoint = endpoint;
+        this.headers = headers != null ? headers : Collections.<String, String>emptyMap();
+        this.uploadMetadata = uploadMetadata;
+        this.store = store;
+        this.chunkSize = chunkSize;
+    }
+
+    public static String fingerprint(File file, URL endpoint) {
+        return endpoint + "|" + file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Uploads (or resumes) the file and returns the tus upload URL once the server holds every byte.
+     */
+    public String upload(File file, ProgressListener listener) throws IOException {
+        long total = file.length();
+        String fingerprint = fingerprint(file, endpoint);
+        String uploadUrl = store.getUploadUrl(fingerprint);
+        long offset = -1;
+
+        if (uploadUrl != null) {
+            try {
+                offset = fetchOffset(new URL(uploadUrl));
+            } catch (UploadException e) {
+                // Expired or unknown upload (404/410/403) - start over with a fresh one
+                if (e.statusCode == 404 || e.statusCode == 410 || e.statusCode == 403) {
+                    store.remove(fingerprint);
+                    uploadUrl = null;
+                } else if (isFatal(e)) {
+                    throw e;
+                } else {
+                    offset = store.getOffset(fingerprint); // transient (5xx/429), as below
+                }
+            } catch (IOException e) {
+                // Server unreachable for the HEAD: start from the last acknowledged offset; if the
+                // server got further, the PATCH is answered with 409 and re-synced in sendRange
+                offset = store.getOffset(fingerprint);
+            }
+        }
+        if (uploadUrl == null) {
+            uploadUrl = create(total, null);
+            offset = 0;
+        }
+        store.save(fingerprint, uploadUrl, offset);
+        if (listener != null) {
+            listener.onProgress(offset, total);
+        }
+
+        final String acknowledgedUrl = uploadUrl;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            sendRange(new URL(uploadUrl), channel, 0L, offset, total, listener,
+                acknowledged -> store.save(fingerprint, acknowledgedUrl, acknowledged));
+        }
+        store.remove(fingerprint);
+        if (listener != null) {
+            listener.onProgress(total, total);
+        }
+        return uploadUrl;
+    }
+
+    /** Extensions the server lists in Tus-Extension, lower-cased (e.g. "creation", "concatenation"). */
+    public Set<String> fetchExtensions() throws IOException {
+        HttpURLConnection conn = open(endpoint, "OPTIONS");
+        try {
+            int status = conn.getResponseCode();
+            if (status != 200 && status != 204) {
+                throw new UploadException("tus OPTIONS failed", status);
+            }
+            Set<String> extensions = new HashSet<>();
+            String value = conn.getHeaderField("Tus-Extension");
+            if (value != null) {
+                for (String extension : value.split(",")) {
+                    extensions.add(extension.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            return extensions;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Uploads bytes [start, start + length) of the file as a partial upload (concatenation
+     * extension) and returns its URL. The range must not change while it is being sent.
+     */
+    public String uploadPartial(File file, long start, long length, ProgressListener listener) throws IOException {
+        String uploadUrl = create(length, "partial");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            sendRange(new URL(uploadUrl), channel, start, 0L, length, listener, null);
+        }
+        return uploadUrl;
+    }
+
+    /** Creates the final upload joining {@code partialUrls} in order; returns its URL. */
+    public String concatenate(List<String> partialUrls) throws IOException {
+        StringBuilder concat = new StringBuilder("final;");
+        for (int i = 0; i < partialUrls.size(); i++) {
+            if (i > 0) concat.append(' ');
+            concat.append(partialUrls.get(i));
+        }
+        HttpURLConnection conn = open(endpoint, "POST");
+        try {
+            conn.setRequestProperty("Upload-Concat", concat.toString());
+            if (uploadMetadata != null && !uploadMetadata.isEmpty()) {
+                conn.setRequestProperty("Upload-Metadata", uploadMetadata);
+            }
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(0);
+            conn.getOutputStream().close();
+            int status = conn.getResponseCode();
+            if (status != 201) {
+                throw new UploadException("tus concatenation failed: " + readError(conn), status);
+            }
+            String location = conn.getHeaderField("Location");
+            if (location == null) {
+                throw new UploadException("tus concatenation response has no Location header", status);
+            }
+            return new URL(endpoint, location).toString();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /** Deletes an upload (termination extension); failures are ignored, the server expires it anyway. */
+    public void terminate(String uploadUrl) {
+        try {
+            HttpURLConnection conn = open(new URL(uploadUrl), "DELETE");
+            try {
+                conn.getResponseCode();
+            } finally {
+                conn.disconnect();
+            }
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * PATCHes upload offsets [offset, length) from file positions starting at {@code base}, in
+     * chunkSize requests, retrying and re-syncing the offset with the server on errors.
+     */
+    private void sendRange(URL target, FileChannel channel, long base, long offset, long length,
+                           ProgressListener listener, OffsetCallback acknowledged) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+        int attempt = 0;
+        while (offset < length) {
+            if (cancelled) {
+                throw new IOException("Upload cancelled");
+            }
+            long chunk = Math.min(chunkSize, length - offset);
+            try {
+                offset = patch(target, channel, base, offset, chunk, length, buffer, listener);
+                if (acknowledged != null) acknowledged.onAcknowledged(offset);
+                attempt = 0;
+            } catch (IOException e) {
+                if (cancelled || ++attempt > MAX_RETRIES || isFatal(e)) {
+                    throw e;
+                }
+                sleepBackoff(attempt);
+                // The server is the source of truth for how much of the chunk arrived
+                try {
+                    offset = fetchOffset(target);
+                    if (acknowledged != null) acknowledged.onAcknowledged(offset);
+                } catch (IOException resyncError) {
+                    if (isFatal(resyncError)) {
+                        throw resyncError;
+                    }
+                    // Keep the last acknowledged offset; a stale one is answered with 409 and re-synced
+                }
+            }
+        }
+    }
+
+    private String create(long total, String concat) throws IOException {
+        HttpURLConnection conn = open(endpoint, "POST");
+        try {
+            conn.setRequestProperty("Upload-Length", Long.toString(total));
+            if (concat != null) {
+                conn.setRequestProperty("Upload-Concat", concat);
+            }
+            if (uploadMetadata != null && !uploadMetadata.isEmpty()) {
+                conn.setRequestProperty("Upload-Metadata", uploadMetadata);
+            }
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(0);
+            conn.getOutputStream().close();
+            int status = conn.getResponseCode();
+            if (status != 201) {
+                throw new UploadException("tus create failed: " + readError(conn), status);
+            }
+            String location = conn.getHeaderField("Location");
+            if (location == null) {
+                throw new UploadException("tus create response has no Location header", status);
+            }
+            return new URL(endpoint, location).toString();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private long fetchOffset(URL uploadUrl) throws IOException {
+        HttpURLConnection conn = open(uploadUrl, "HEAD");
+        try {
+            int status = conn.getResponseCode();
+            if (status != 200 && status != 204) {
+                throw new UploadException("tus HEAD failed", status);
+            }
+            return parseOffset(conn, status);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private long patch(URL uploadUrl, FileChannel channel, long base, long offset, long length, long total,
+                       ByteBuffer buffer, ProgressListener listener) throws IOException {
+        HttpURLConnection conn = open(uploadUrl, "PATCH");
+        try {
+            conn.setRequestProperty("Upload-Offset", Long.toString(offset));
+            conn.setRequestProperty("Content-Type", "application/offset+octet-stream");
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(length);
+
+            try (OutputStream out = conn.getOutputStream()) {
+                WritableByteChannel sink = Channels.newChannel(out);
+                long position = offset;
+                long end = offset + length;
+                while (position < end) {
+                    if (cancelled) {
+                        throw new IOException("Upload cancelled");
+                    }
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, base + position);
+                    if (read < 0) {
+                        throw new IOException("File truncated while uploading at " + position);
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        sink.write(buffer);
+                    }
+                    position += read;
+                    if (listener != null) {
+                        listener.onProgress(position, total);
+                    }
+                }
+            }
+
+            int status = conn.getResponseCode();
+            if (status != 204 && status != 200) {
+                throw new UploadException("tus PATCH failed: " + readError(conn), status);
+            }
+            long newOffset = parseOffset(conn, status);
+            if (newOffset < offset) {
+                throw new UploadException("Server offset went backwards: " + newOffset + " < " + offset, status);
+            }
+            return newOffset;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(URL url, String method) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setUseCaches(false);
+        if ("PATCH".equals(method)) {
+            // HttpURLConnection has no PATCH verb; tus defines this override for such clients
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            conn.setRequestMethod(method);
+        }
+        conn.setRequestProperty("Tus-Resumable", TUS_VERSION);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return conn;
+    }
+
+    private static long parseOffset(HttpURLConnection conn, int status) throws UploadException {
+        String value = conn.getHeaderField("Upload-Offset");
+        if (value == null) {
+            throw new UploadException("Missing Upload-Offset header", status);
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new UploadException("Invalid Upload-Offset header: " + value, status);
+        }
+    }
+
+    static boolean isFatal(IOException e) {
+        if (!(e instanceof UploadException)) {
+            return false; // network errors are worth retrying
+        }
+        int status = ((UploadException) e).statusCode;
+        // 409 (offset mismatch) and 423 (locked) resolve after re-syncing; 5xx/429 are transient
+        return status >= 400 && status < 500 && status != 409 && status != 423 && status != 429;
+    }
+
+    private static void sleepBackoff(int attempt) throws IOException {
+        try {
+            Thread.sleep(INITIAL_RETRY_DELAY_MS << Math.min(attempt - 1, 6));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+    }
+
+    private static String readError(HttpURLConnection conn) {
+        try (InputStream err = conn.getErrorStream()) {
+            if (err == null) {
+                return conn.getResponseMessage();
+            }
+            byte[] bytes = new byte[512];
+            int n = err.read(bytes);
+            return n > 0 ? new String(bytes, 0, n, "UTF-8") : conn.getResponseMessage();
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+}
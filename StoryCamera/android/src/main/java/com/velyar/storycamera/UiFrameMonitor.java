@@ -0,0 +1,80 @@
+package com.velyar.storycamera;
+
+import android.util.Log;
+import android.view.Window;
+
+import androidx.annotation.NonNull;
+import androidx.metrics.performance.FrameData;
+import androidx.metrics.performance.JankStats;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Counts the camera screen's UI frames and the janky ones with {@link JankStats}, so dropped frames
+ * while recording show up in the session metrics next to the capture stages.
+ *
+ * Tracking is on only between {@link #start()} and {@link #stop()}; the activity turns it on while a
+ * recording is running, the stretch where a dropped frame is visible in the countdown and the pulse.
+ * JankStats reports through FrameMetrics on API 24+ and through the Choreographer before that.
+ *
+ * Create and control it on the main thread; frames may be reported on another thread.
+ */
+public class UiFrameMonitor implements JankStats.OnFrameListener {
+    private static final String TAG = "UiFrameMonitor";
+
+    private JankStats jankStats;
+
+    private int frames;
+    private int jankyFrames;
+    private long jankyNanos;
+    private long slowestNanos;
+
+    private UiFrameMonitor() {
+    }
+
+    /** Tracks {@code window}, paused until {@link #start()}; null if JankStats cannot attach to it. */
+    public static UiFrameMonitor create(Window window) {
+        UiFrameMonitor monitor = new UiFrameMonitor();
+        try {
+            monitor.jankStats = JankStats.createAndTrack(window, monitor);
+            monitor.jankStats.setTrackingEnabled(false);
+            return monitor;
+        } catch (Exception e) {
+            Log.w(TAG, "Frame monitoring unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void start() {
+        jankStats.setTrackingEnabled(true);
+    }
+
+    public void stop() {
+        jankStats.setTrackingEnabled(false);
+    }
+
+    @Override
+    public synchronized void onFrame(@NonNull FrameData frameData) {
+        // frameData is reused for the next frame; only primitives are kept
+        long durationNanos = frameData.getFrameDurationUiNanos();
+        frames++;
+        if (frameData.isJank()) {
+            jankyFrames++;
+            jankyNanos += durationNanos;
+        }
+        if (durationNanos > slowestNanos) {
+            slowestNanos = durationNanos;
+        }
+    }
+
+    /** Counters for the session metrics: frames drawn while tracking, the janky ones and the slowest. */
+    public synchronized JSONObject stats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("frames", frames);
+        json.put("janky", jankyFrames);
+        json.put("jankyMs", jankyNanos / 1_000_000L);
+        json.put("slowestMs", slowestNanos / 1_000_000L);
+        return json;
+    }
+}
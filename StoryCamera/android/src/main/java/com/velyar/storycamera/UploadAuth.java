@@ -0,0 +1,98 @@
+package com.velyar.storycamera;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Credentials for queued uploads, held in memory only.
+ *
+ * Jobs in {@link UploadQueue} store no authorization header: a short-lived session token would
+ * expire while a job waits for wifi or backs off. The web layer hands the current one to
+ * setUploadAuth() whenever its session changes, and {@link UploadWorker} adds it to each request
+ * when the job runs. A worker that finds none, e.g. in a process WorkManager restarted, or whose
+ * token the server rejects, asks for a fresh one through the refresh hook and waits a little.
+ */
+public final class UploadAuth {
+    private static final Object LOCK = new Object();
+    private static Grant current; // guarded by LOCK
+    private static long nextVersion = 1; // guarded by LOCK
+    private static volatile Runnable refreshHook;
+
+    /** Authorization headers and a version that grows with every {@link #set}. */
+    public static final class Grant {
+        final Map<String, String> headers;
+        final long version;
+
+        private Grant(Map<String, String> headers, long version) {
+            this.headers = headers;
+            this.version = version;
+        }
+    }
+
+    private UploadAuth() {
+    }
+
+    /** Replaces the credentials; empty or null headers clear them, e.g. on sign-out. */
+    public static void set(Map<String, String> headers) {
+        synchronized (LOCK) {
+            current = headers == null || headers.isEmpty()
+                ? null
+                : new Grant(Collections.unmodifiableMap(new HashMap<>(headers)), nextVersion++);
+            LOCK.notifyAll();
+        }
+    }
+
+    /** Called when a worker needs a fresh token; the plugin turns it into an uploadAuthRequired event. */
+    public static void setRefreshHook(Runnable hook) {
+        refreshHook = hook;
+    }
+
+    public static Grant current() {
+        synchronized (LOCK) {
+            return current;
+        }
+    }
+
+    /**
+     * Asks for fresh credentials and waits up to {@code timeoutMs} for a grant newer than
+     * {@code staleVersion} (0 for none); null if none arrived. Blocking; workers only.
+     */
+    static Grant refresh(long staleVersion, long timeoutMs) throws InterruptedException {
+        Runnable hook = refreshHook;
+        if (hook != null) {
+            hook.run();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (LOCK) {
+            while (current == null || current.version <= staleVersion) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LOCK.wait(remaining);
+            }
+            return current;
+        }
+    }
+
+    /** Whether {@code name} is a header that carries credentials and must not be persisted. */
+    static boolean isCredential(String name) {
+        return "authorization".equalsIgnoreCase(name);
+    }
+
+    /** Removes credential headers from {@code headers} in place; returns what was removed. */
+    static Map<String, String> extractCredentials(Map<String, String> headers) {
+        Map<String, String> credentials = new HashMap<>();
+        Iterator<Map.Entry<String, String>> it = headers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, String> header = it.next();
+            if (isCredential(header.getKey())) {
+                credentials.put(header.getKey(), header.getValue());
+                it.remove();
+            }
+        }
+        return credentials;
+    }
+}
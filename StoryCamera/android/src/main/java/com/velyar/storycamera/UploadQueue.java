@@ -0,0 +1,376 @@
+package com.velyar.storycamera;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Native upload queue: recordings handed to {@link #enqueue} are uploaded by {@link UploadWorker}
+ * under WorkManager, so they keep going when the web view leaves the screen, the app is in the
+ * background or the process is killed, and wait for the network they are allowed to use.
+ *
+ * Jobs live in their own SQLite table; WorkManager only carries the job id. Every job is its own
+ * unique work, so one that waits for wifi or backs off never holds up the others; the worker
+ * limits transfers to {@link #MAX_PARALLEL} at once. A failed attempt is retried with
+ * WorkManager's exponential backoff and resumes from the offset {@link TusUploadStore} kept for it.
+ *
+ * Credentials are not stored: an authorization header is dropped on enqueue and supplied by
+ * {@link UploadAuth} when the job runs. The remaining headers are cleared once a job finishes.
+ */
+public class UploadQueue extends SQLiteOpenHelper {
+    private static final String TAG = "UploadQueue";
+    private static final String DB_NAME = "story_camera_uploads.db";
+    private static final int DB_VERSION = 2;
+    private static final String TABLE = "uploads";
+    private static final String WORK_TAG = "storycamera-upload";
+    private static final String WORK_PREFIX = "storycamera-upload-";
+    private static final long FINISHED_RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+
+    // Same as the plugin's upload threads
+    public static final int MAX_PARALLEL = 2;
+    static final long BACKOFF_SECONDS = 30;
+    // Attempts before a job that keeps failing on transient errors is given up
+    static final int MAX_ATTEMPTS = 10;
+
+    public static final String STATE_QUEUED = "queued";
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_RETRYING = "retrying";
+    public static final String STATE_COMPLETED = "completed";
+    public static final String STATE_FAILED = "failed";
+    public static final String STATE_CANCELLED = "cancelled";
+
+    private static final String[] COLUMNS = {
+        "id", "path", "endpoint", "headers", "metadata", "chunk_size", "wifi_only", "requires_charging",
+        "state", "uploaded_bytes", "total_bytes", "upload_url", "error", "attempts", "created_at", "updated_at"
+    };
+    private static final String ACTIVE = "state IN ('" + STATE_QUEUED + "', '" + STATE_RUNNING + "', '" + STATE_RETRYING + "')";
+
+    private static UploadQueue instance;
+    private static volatile Listener listener;
+
+    public interface Listener {
+        void onChanged(Job job);
+    }
+
+    /** One queued upload. Headers (without credentials) are kept for the worker but never reported back to JS. */
+    public static class Job {
+        public String id;
+        public String path;
+        public String endpoint;
+        public String headers; // JSON object, no credentials
+        public String metadata; // encoded Upload-Metadata header value
+        public int chunkSize = TusUploader.DEFAULT_CHUNK_SIZE;
+        public boolean wifiOnly;
+        public boolean requiresCharging;
+        public String state = STATE_QUEUED;
+        public long uploadedBytes;
+        public long totalBytes;
+        public String uploadUrl;
+        public String error;
+        public int attempts;
+        public long createdAt;
+        public long updatedAt;
+
+        public boolean isFinished() {
+            return STATE_COMPLETED.equals(state) || STATE_FAILED.equals(state) || STATE_CANCELLED.equals(state);
+        }
+
+        Map<String, String> headerMap() {
+            Map<String, String> map = new HashMap<>();
+            if (headers == null) return map;
+            try {
+                JSONObject json = new JSONObject(headers);
+                Iterator<String> keys = json.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    map.put(key, json.getString(key));
+                }
+            } catch (JSONException e) {
+                Log.w(TAG, "Unreadable headers for upload " + id + ": " + e.getMessage());
+            }
+            return map;
+        }
+
+        public JSObject toJSObject() {
+            JSObject json = new JSObject();
+            json.put("id", id);
+            json.put("path", path);
+            json.put("state", state);
+            json.put("uploadedBytes", uploadedBytes);
+            json.put("totalBytes", totalBytes);
+            json.put("progress", totalBytes > 0 ? (double) uploadedBytes / totalBytes : 0.0);
+            if (uploadUrl != null) json.put("uploadUrl", uploadUrl);
+            if (error != null) json.put("error", error);
+            json.put("attempts", attempts);
+            json.put("wifiOnly", wifiOnly);
+            json.put("requiresCharging", requiresCharging);
+            json.put("createdAt", createdAt);
+            json.put("updatedAt", updatedAt);
+            return json;
+        }
+    }
+
+    public static synchronized UploadQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new UploadQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context context;
+
+    private UploadQueue(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        this.context = context;
+        // Workers update progress while the plugin thread reads the queue
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /** Receives every state and progress change; the plugin turns them into uploadQueueProgress events. */
+    public static void setListener(Listener queueListener) {
+        listener = queueListener;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+            + "id TEXT PRIMARY KEY, "
+            + "path TEXT NOT NULL, "
+            + "endpoint TEXT NOT NULL, "
+            + "headers TEXT, "
+            + "metadata TEXT, "
+            + "chunk_size INTEGER NOT NULL, "
+            + "wifi_only INTEGER NOT NULL DEFAULT 0, "
+            + "requires_charging INTEGER NOT NULL DEFAULT 0, "
+            + "state TEXT NOT NULL, "
+            + "uploaded_bytes INTEGER NOT NULL DEFAULT 0, "
+            + "total_bytes INTEGER NOT NULL DEFAULT 0, "
+            + "upload_url TEXT, "
+            + "error TEXT, "
+            + "attempts INTEGER NOT NULL DEFAULT 0, "
+            + "created_at INTEGER NOT NULL, "
+            + "updated_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + TABLE + "_state ON " + TABLE + " (state, created_at)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Version 1 stored authorization headers and kept them after the job finished
+            db.execSQL("UPDATE " + TABLE + " SET headers = NULL WHERE NOT " + ACTIVE);
+            try (Cursor cursor = db.query(TABLE, new String[] { "id", "headers" }, ACTIVE + " AND headers IS NOT NULL",
+                    null, null, null, null)) {
+                while (cursor.moveToNext()) {
+                    ContentValues values = new ContentValues();
+                    values.put("headers", withoutCredentials(cursor.getString(1)));
+                    db.update(TABLE, values, "id = ?", new String[] { cursor.getString(0) });
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            long cutoff = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+            int pruned = db.delete(TABLE, "NOT " + ACTIVE + " AND updated_at < ?", new String[] { String.valueOf(cutoff) });
+            if (pruned > 0) {
+                Log.d(TAG, "Pruned " + pruned + " finished uploads");
+            }
+        }
+    }
+
+    /** Stores {@code job} and schedules it; returns the job id. */
+    public synchronized String enqueue(Job job) {
+        long now = System.currentTimeMillis();
+        job.id = UUID.randomUUID().toString();
+        job.state = STATE_QUEUED;
+        job.createdAt = now;
+        job.updatedAt = now;
+        job.headers = withoutCredentials(job.headers);
+        ContentValues values = new ContentValues();
+        values.put("id", job.id);
+        values.put("path", job.path);
+        values.put("endpoint", job.endpoint);
+        values.put("headers", job.headers);
+        values.put("metadata", job.metadata);
+        values.put("chunk_size", job.chunkSize);
+        values.put("wifi_only", job.wifiOnly ? 1 : 0);
+        values.put("requires_charging", job.requiresCharging ? 1 : 0);
+        values.put("state", job.state);
+        values.put("total_bytes", job.totalBytes);
+        values.put("created_at", now);
+        values.put("updated_at", now);
+        getWritableDatabase().insertOrThrow(TABLE, null, values);
+
+        Constraints constraints = new Constraints.Builder()
+            .setRequiredNetworkType(job.wifiOnly ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+            .setRequiresCharging(job.requiresCharging)
+            .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(UploadWorker.class)
+            .setConstraints(constraints)
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+            .setInputData(new Data.Builder().putString(UploadWorker.KEY_JOB_ID, job.id).build())
+            .addTag(WORK_TAG)
+            .addTag(job.id)
+            .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(workName(job.id), ExistingWorkPolicy.KEEP, request);
+        Log.d(TAG, "Queued upload " + job.id + " for " + job.path);
+        notifyChanged(job.id);
+        return job.id;
+    }
+
+    /**
+     * Cancels a job that has not finished. The tus upload URL and offset are kept, so queueing
+     * the file again resumes it.
+     */
+    public boolean cancel(String id) {
+        Job job = get(id);
+        if (job == null || job.isFinished()) {
+            return false;
+        }
+        update(id, STATE_CANCELLED, null, "Upload cancelled");
+        WorkManager.getInstance(context).cancelUniqueWork(workName(id));
+        // A transfer that is already running is stopped mid-chunk
+        UploadWorker.stopRunning(id);
+        return true;
+    }
+
+    public Job get(String id) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS, "id = ?", new String[] { id }, null, null, null)) {
+            return cursor.moveToFirst() ? readJob(cursor) : null;
+        }
+    }
+
+    /** Unfinished jobs oldest first, then up to {@code finishedLimit} finished ones newest first. */
+    public List<Job> list(int finishedLimit) {
+        List<Job> jobs = new ArrayList<>();
+        SQLiteDatabase db = getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE, COLUMNS, ACTIVE, null, null, null, "created_at ASC")) {
+            while (cursor.moveToNext()) {
+                jobs.add(readJob(cursor));
+            }
+        }
+        try (Cursor cursor = db.query(TABLE, COLUMNS, "NOT " + ACTIVE, null, null, null, "updated_at DESC",
+                String.valueOf(finishedLimit))) {
+            while (cursor.moveToNext()) {
+                jobs.add(readJob(cursor));
+            }
+        }
+        return jobs;
+    }
+
+    void markRunning(String id, int attempt) {
+        ContentValues values = new ContentValues();
+        values.put("state", STATE_RUNNING);
+        values.put("attempts", attempt + 1);
+        values.putNull("error");
+        values.put("updated_at", System.currentTimeMillis());
+        getWritableDatabase().update(TABLE, values, "id = ? AND " + ACTIVE, new String[] { id });
+        notifyChanged(id);
+    }
+
+    void updateProgress(String id, long uploadedBytes, long totalBytes) {
+        ContentValues values = new ContentValues();
+        values.put("uploaded_bytes", uploadedBytes);
+        values.put("total_bytes", totalBytes);
+        values.put("updated_at", System.currentTimeMillis());
+        getWritableDatabase().update(TABLE, values, "id = ? AND " + ACTIVE, new String[] { id });
+        notifyChanged(id);
+    }
+
+    /** Moves an unfinished job to {@code state}; a cancelled or finished job stays as it is. */
+    void update(String id, String state, String uploadUrl, String error) {
+        ContentValues values = new ContentValues();
+        values.put("state", state);
+        if (STATE_COMPLETED.equals(state) || STATE_FAILED.equals(state) || STATE_CANCELLED.equals(state)) {
+            // Only the worker needs them, and it is done with this job
+            values.putNull("headers");
+        }
+        if (uploadUrl != null) values.put("upload_url", uploadUrl);
+        values.put("error", error);
+        values.put("updated_at", System.currentTimeMillis());
+        getWritableDatabase().update(TABLE, values, "id = ? AND " + ACTIVE, new String[] { id });
+        notifyChanged(id);
+    }
+
+    private static String workName(String id) {
+        return WORK_PREFIX + id;
+    }
+
+    // The headers JSON without credential headers, which UploadAuth supplies at run time
+    static String withoutCredentials(String headersJson) {
+        if (headersJson == null) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(headersJson);
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                if (UploadAuth.isCredential(keys.next())) {
+                    keys.remove();
+                }
+            }
+            return json.length() > 0 ? json.toString() : null;
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable upload headers: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void notifyChanged(String id) {
+        Listener current = listener;
+        if (current != null) {
+            Job job = get(id);
+            if (job != null) {
+                current.onChanged(job);
+            }
+        }
+    }
+
+    private static Job readJob(Cursor cursor) {
+        Job job = new Job();
+        job.id = cursor.getString(0);
+        job.path = cursor.getString(1);
+        job.endpoint = cursor.getString(2);
+        job.headers = cursor.getString(3);
+        job.metadata = cursor.getString(4);
+        job.chunkSize = cursor.getInt(5);
+        job.wifiOnly = cursor.getInt(6) != 0;
+        job.requiresCharging = cursor.getInt(7) != 0;
+        job.state = cursor.getString(8);
+        job.uploadedBytes = cursor.getLong(9);
+        job.totalBytes = cursor.getLong(10);
+        job.uploadUrl = cursor.getString(11);
+        job.error = cursor.getString(12);
+        job.attempts = cursor.getInt(13);
+        job.createdAt = cursor.getLong(14);
+        job.updatedAt = cursor.getLong(15);
+        return job;
+    }
+}
@@ -0,0 +1,176 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one {@link UploadQueue} job with {@link TusUploader}. Transient failures return
+ * {@link Result#retry()} so WorkManager backs off and runs it again, resuming from the last
+ * acknowledged offset; a rejected upload (4xx) or a missing file fails the job for good.
+ *
+ * Credentials come from {@link UploadAuth} when the job runs. A 401 means the token expired
+ * while the job waited, not that the upload was rejected: the worker asks for a fresh token and
+ * tries again, and backs off like any transient failure if none arrives.
+ *
+ * At most {@link UploadQueue#MAX_PARALLEL} workers transfer at once; the others wait for a slot.
+ * A failed job returns {@link Result#success()}; the queue table holds its state.
+ */
+public class UploadWorker extends Worker {
+    private static final String TAG = "UploadWorker";
+    static final String KEY_JOB_ID = "jobId";
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    // How long a job waits for the web layer to hand over a fresh token
+    private static final long AUTH_WAIT_MS = 15_000;
+
+    private static final Semaphore SLOTS = new Semaphore(UploadQueue.MAX_PARALLEL);
+
+    // Transfers running in this process by job id, so a cancel can stop one mid-chunk
+    private static final Map<String, TusUploader> RUNNING = new ConcurrentHashMap<>();
+
+    private volatile TusUploader uploader;
+
+    public UploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    static void stopRunning(String id) {
+        TusUploader running = RUNNING.get(id);
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String id = getInputData().getString(KEY_JOB_ID);
+        UploadQueue queue = UploadQueue.getInstance(getApplicationContext());
+        UploadQueue.Job job = id != null ? queue.get(id) : null;
+        if (job == null || job.isFinished()) {
+            // Cancelled (or pruned) while it waited
+            return Result.success();
+        }
+        File file = new File(job.path);
+        if (!file.exists()) {
+            queue.update(id, UploadQueue.STATE_FAILED, null, "Video file not found: " + job.path);
+            return Result.success();
+        }
+
+        if (!acquireSlot()) {
+            // Stopped while waiting; WorkManager runs it again later
+            return Result.retry();
+        }
+        queue.markRunning(id, getRunAttemptCount());
+        try {
+            UploadAuth.Grant auth = UploadAuth.current();
+            if (auth == null) {
+                auth = UploadAuth.refresh(0, AUTH_WAIT_MS);
+            }
+            if (auth == null) {
+                // Nobody signed in to hand one over yet, e.g. the app has not been opened since a restart
+                queue.update(id, UploadQueue.STATE_RETRYING, null, "Waiting for authorization");
+                return Result.retry();
+            }
+            String uploadUrl;
+            try {
+                uploadUrl = transfer(queue, job, file, auth);
+            } catch (TusUploader.UploadException e) {
+                if (e.statusCode != 401) {
+                    throw e;
+                }
+                Log.w(TAG, "Upload " + id + " unauthorized, asking for a fresh token");
+                UploadAuth.Grant fresh = UploadAuth.refresh(auth.version, AUTH_WAIT_MS);
+                if (fresh == null) {
+                    queue.update(id, UploadQueue.STATE_RETRYING, null, "Authorization expired");
+                    return Result.retry();
+                }
+                // The offset is kept, so this resumes where the rejected attempt stopped
+                uploadUrl = transfer(queue, job, file, fresh);
+            }
+            queue.update(id, UploadQueue.STATE_COMPLETED, uploadUrl, null);
+            new MediaStorageManager(getApplicationContext()).markUploaded(file);
+            Log.d(TAG, "Upload " + id + " completed: " + uploadUrl);
+            return Result.success();
+        } catch (IOException e) {
+            UploadQueue.Job current = queue.get(id);
+            if (current == null || current.isFinished()) {
+                // Cancelled through the queue
+                return Result.success();
+            }
+            boolean unauthorized = e instanceof TusUploader.UploadException && ((TusUploader.UploadException) e).statusCode == 401;
+            if ((TusUploader.isFatal(e) && !unauthorized) || getRunAttemptCount() + 1 >= UploadQueue.MAX_ATTEMPTS) {
+                Log.e(TAG, "Upload " + id + " failed: " + e.getMessage());
+                queue.update(id, UploadQueue.STATE_FAILED, null, e.getMessage());
+                return Result.success();
+            }
+            // Also the path for a worker WorkManager stopped because a constraint went away
+            Log.w(TAG, "Upload " + id + " attempt " + (getRunAttemptCount() + 1) + " failed, retrying: " + e.getMessage());
+            queue.update(id, UploadQueue.STATE_RETRYING, null, e.getMessage());
+            return Result.retry();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queue.update(id, UploadQueue.STATE_RETRYING, null, "Interrupted");
+            return Result.retry();
+        } catch (Exception e) {
+            Log.e(TAG, "Upload " + id + " failed: " + e.getMessage(), e);
+            queue.update(id, UploadQueue.STATE_FAILED, null, e.getMessage());
+            return Result.success();
+        } finally {
+            RUNNING.remove(id);
+            SLOTS.release();
+        }
+    }
+
+    private String transfer(UploadQueue queue, UploadQueue.Job job, File file, UploadAuth.Grant auth) throws IOException {
+        Map<String, String> headers = job.headerMap();
+        headers.putAll(auth.headers);
+        uploader = new TusUploader(new URL(job.endpoint), headers, job.metadata,
+            new TusUploadStore(getApplicationContext()), job.chunkSize);
+        RUNNING.put(job.id, uploader);
+        if (isStopped()) {
+            uploader.cancel();
+        }
+        final long[] lastReportAt = { 0L };
+        return uploader.upload(file, (uploaded, total) -> {
+            long now = SystemClock.elapsedRealtime();
+            if (uploaded < total && now - lastReportAt[0] < PROGRESS_INTERVAL_MS) return;
+            lastReportAt[0] = now;
+            queue.updateProgress(job.id, uploaded, total);
+        });
+    }
+
+    // Polls so a worker stopped while waiting does not hold a thread until a slot frees up
+    private boolean acquireSlot() {
+        try {
+            while (!isStopped()) {
+                if (SLOTS.tryAcquire(1, TimeUnit.SECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public void onStopped() {
+        TusUploader current = uploader;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+}
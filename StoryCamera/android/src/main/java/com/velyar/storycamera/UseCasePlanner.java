@@ -0,0 +1,83 @@
+package com.velyar.storycamera;
+
+import android.util.Log;
+
+import androidx.camera.core.CameraInfo;
+
+/**
+ * Works out the smallest set of use cases a camera session needs, so nothing is bound that the
+ * session does not use.
+ *
+ * Every extra use case is another stream the camera has to configure: on LEGACY and LIMITED
+ * hardware, three streams force smaller preview and recording resolutions than two, and binding
+ * takes longer. Video sessions need only Preview and VideoCapture; the flash is the torch, driven
+ * through CameraControl, so ImageCapture is not bound for it.
+ */
+public class UseCasePlanner {
+    private static final String TAG = "UseCasePlanner";
+
+    public static final String MODE_VIDEO = "video";
+    public static final String MODE_PHOTO = "photo";
+    public static final String MODE_ANALYSIS = "analysis";
+
+    public static final String FLASH_TORCH = "torch";
+    public static final String FLASH_IMAGE_CAPTURE = "imageCapture";
+    public static final String FLASH_NONE = "none";
+
+    public static class Plan {
+        public final String mode;
+        public final boolean preview;
+        public final boolean imageCapture;
+        public final boolean videoCapture;
+        public final boolean imageAnalysis;
+        public final String flash;
+
+        Plan(String mode, boolean imageCapture, boolean videoCapture, boolean imageAnalysis, String flash) {
+            this.mode = mode;
+            this.preview = true;
+            this.imageCapture = imageCapture;
+            this.videoCapture = videoCapture;
+            this.imageAnalysis = imageAnalysis;
+            this.flash = flash;
+        }
+
+        public int streamCount() {
+            return (preview ? 1 : 0) + (imageCapture ? 1 : 0) + (videoCapture ? 1 : 0) + (imageAnalysis ? 1 : 0);
+        }
+
+        /** Bound use cases, e.g. "Preview+VideoCapture". */
+        public String describe() {
+            StringBuilder sb = new StringBuilder("Preview");
+            if (imageCapture) sb.append("+ImageCapture");
+            if (videoCapture) sb.append("+VideoCapture");
+            if (imageAnalysis) sb.append("+ImageAnalysis");
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return mode + ": " + describe() + ", flash=" + flash;
+        }
+    }
+
+    /** Plans the use cases for {@code mode} on the camera described by {@code cameraInfo} (may be null). */
+    public static Plan plan(String mode, CameraInfo cameraInfo) {
+        boolean hasFlash = cameraInfo == null || cameraInfo.hasFlashUnit();
+        Plan plan;
+        switch (mode) {
+            case MODE_PHOTO:
+                // A still flash fires through ImageCapture's flash mode
+                plan = new Plan(mode, true, false, false, hasFlash ? FLASH_IMAGE_CAPTURE : FLASH_NONE);
+                break;
+            case MODE_ANALYSIS:
+                plan = new Plan(mode, false, false, true, hasFlash ? FLASH_TORCH : FLASH_NONE);
+                break;
+            case MODE_VIDEO:
+            default:
+                plan = new Plan(MODE_VIDEO, false, true, false, hasFlash ? FLASH_TORCH : FLASH_NONE);
+                break;
+        }
+        Log.d(TAG, "Planned " + plan);
+        return plan;
+    }
+}
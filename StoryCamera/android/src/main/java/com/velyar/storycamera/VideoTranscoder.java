@@ -0,0 +1,415 @@
+package com.velyar.storycamera;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.opengl.EGLSurface;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Single-pass hardware transcoder: MediaCodec decoder -> GL surface -> MediaCodec encoder.
+ * Frames never leave GPU memory; the video bitrate is derived from the size budget so the
+ * output fits the target without retrying. The audio track is copied as-is.
+ *
+ * Blocking; run it on a background executor.
+ */
+public class VideoTranscoder {
+    private static final String TAG = "VideoTranscoder";
+    private static final String OUTPUT_MIME = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final long TIMEOUT_US = 2500;
+    private static final int DEFAULT_FRAME_RATE = 30;
+    private static final int I_FRAME_INTERVAL_SECONDS = 1;
+    private static final int DEFAULT_AUDIO_BITRATE = 128_000;
+    private static final int MIN_VIDEO_BITRATE = 300_000;
+    // Leave room for the moov box and chunk tables so the muxed file lands under the target
+    private static final double CONTAINER_OVERHEAD_FACTOR = 0.97;
+
+    public interface ProgressListener {
+        void onProgress(double progress);
+    }
+
+    public static class Result {
+        public final String path;
+        public final long originalSize;
+        public final long size;
+        public final int width;
+        public final int height;
+        public final int videoBitrate;
+        public final long durationMs;
+        public final boolean skipped;
+        // False when the budget was below MIN_VIDEO_BITRATE or the muxed file still came out larger
+        public final boolean targetMet;
+
+        Result(String path, long originalSize, long size, int width, int height, int videoBitrate, long durationMs,
+               boolean skipped, boolean targetMet) {
+            this.path = path;
+            this.originalSize = originalSize;
+            this.size = size;
+            this.width = width;
+            this.height = height;
+            this.videoBitrate = videoBitrate;
+            this.durationMs = durationMs;
+            this.skipped = skipped;
+            this.targetMet = targetMet;
+        }
+    }
+
+    private final File input;
+    private final File output;
+    private final int maxWidthOrHeight;
+    private final long targetBytes;
+    private final ProgressListener progressListener;
+    private int lastReportedPercent = -1;
+
+    public VideoTranscoder(File input, File output, int maxWidthOrHeight, long targetBytes, ProgressListener progressListener) {
+        if (maxWidthOrHeight <= 0) {
+            throw new IllegalArgumentException("maxWidthOrHeight must be positive");
+        }
+        if (targetBytes <= 0) {
+            throw new IllegalArgumentException("targetBytes must be positive");
+        }
+        this.input = input;
+        this.output = output;
+        this.maxWidthOrHeight = maxWidthOrHeight;
+        this.targetBytes = targetBytes;
+        this.progressListener = progressListener;
+    }
+
+    public Result transcode() throws IOException {
+        MediaExtractor videoExtractor = new MediaExtractor();
+        MediaExtractor audioExtractor = null;
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        MediaMuxer muxer = null;
+        EglCore eglCore = null;
+        EGLSurface eglSurface = null;
+        DecoderOutputSurface outputSurface = null;
+        boolean muxerStarted = false;
+        boolean success = false;
+
+        try {
+            videoExtractor.setDataSource(input.getAbsolutePath());
+            int videoTrack = findTrack(videoExtractor, "video/");
+            if (videoTrack < 0) {
+                throw new IOException("No video track in " + input.getName());
+            }
+            MediaFormat inputFormat = videoExtractor.getTrackFormat(videoTrack);
+            int sourceWidth = inputFormat.getInteger(MediaFormat.KEY_WIDTH);
+            int sourceHeight = inputFormat.getInteger(MediaFormat.KEY_HEIGHT);
+            long durationUs = inputFormat.containsKey(MediaFormat.KEY_DURATION) ? inputFormat.getLong(MediaFormat.KEY_DURATION) : 0L;
+            int frameRate = inputFormat.containsKey(MediaFormat.KEY_FRAME_RATE) ? inputFormat.getInteger(MediaFormat.KEY_FRAME_RATE) : DEFAULT_FRAME_RATE;
+            int rotation = readRotation(input);
+
+            MediaFormat audioFormat = null;
+            int audioTrackIndex = -1;
+            MediaExtractor probe = new MediaExtractor();
+            try {
+                probe.setDataSource(input.getAbsolutePath());
+                audioTrackIndex = findTrack(probe, "audio/");
+                if (audioTrackIndex >= 0) {
+                    audioFormat = probe.getTrackFormat(audioTrackIndex);
+                }
+            } finally {
+                probe.release();
+            }
+
+            long originalSize = input.length();
+            long durationMs = durationUs / 1000;
+            boolean fitsSize = originalSize <= targetBytes;
+            boolean fitsResolution = Math.max(sourceWidth, sourceHeight) <= maxWidthOrHeight;
+            if (fitsSize && fitsResolution) {
+                Log.d(TAG, "Input already within limits (" + originalSize + " bytes, " + sourceWidth + "x" + sourceHeight + "), skipping transcode");
+                success = true;
+                return new Result(input.getAbsolutePath(), originalSize, originalSize, sourceWidth, sourceHeight, 0, durationMs, true, true);
+            }
+            if (durationUs <= 0) {
+                throw new IOException("Unknown video duration, cannot derive bitrate");
+            }
+
+            // Scale the long edge down to maxWidthOrHeight, keeping encoder-friendly 16px alignment
+            double scale = Math.min(1.0, (double) maxWidthOrHeight / Math.max(sourceWidth, sourceHeight));
+            int outWidth = align16(sourceWidth * scale);
+            int outHeight = align16(sourceHeight * scale);
+
+            int audioBitrate = 0;
+            if (audioFormat != null) {
+                audioBitrate = audioFormat.containsKey(MediaFormat.KEY_BIT_RATE) ? audioFormat.getInteger(MediaFormat.KEY_BIT_RATE) : DEFAULT_AUDIO_BITRATE;
+            }
+            int videoBitrate = computeVideoBitrate(targetBytes, originalSize, durationUs, audioBitrate);
+            boolean bitrateClamped = videoBitrate <= MIN_VIDEO_BITRATE;
+            Log.d(TAG, "Transcoding " + sourceWidth + "x" + sourceHeight + " -> " + outWidth + "x" + outHeight
+                + ", duration " + durationMs + " ms, video bitrate " + videoBitrate + ", audio bitrate " + audioBitrate + ", rotation " + rotation);
+
+            MediaFormat outputFormat = MediaFormat.createVideoFormat(OUTPUT_MIME, outWidth, outHeight);
+            outputFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, videoBitrate);
+            outputFormat.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+            outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+
+            encoder = MediaCodec.createEncoderByType(OUTPUT_MIME);
+            MediaCodecInfo.EncoderCapabilities encoderCapabilities =
+                encoder.getCodecInfo().getCapabilitiesForType(OUTPUT_MIME).getEncoderCapabilities();
+            // CBR keeps the encoder on budget for short clips; VBR can overshoot on high-motion content
+            if (encoderCapabilities.isBitrateModeSupported(MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR)) {
+                outputFormat.setInteger(MediaFormat.KEY_BITRATE_MODE, MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR);
+            } else if (encoderCapabilities.isBitrateModeSupported(MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_VBR)) {
+                outputFormat.setInteger(MediaFormat.KEY_BITRATE_MODE, MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_VBR);
+            }
+            encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+
+            eglCore = new EglCore(true);
+            eglSurface = eglCore.createWindowSurface(encoder.createInputSurface());
+            eglCore.makeCurrent(eglSurface);
+            encoder.start();
+
+            outputSurface = new DecoderOutputSurface(new GlTextureRenderer());
+            // The muxer carries the rotation; stop the decoder from rotating frames on render
+            inputFormat.setInteger(MediaFormat.KEY_ROTATION, 0);
+            decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(inputFormat, outputSurface.getSurface(), null, 0);
+            decoder.start();
+            videoExtractor.selectTrack(videoTrack);
+
+            if (audioFormat != null) {
+                audioExtractor = new MediaExtractor();
+                audioExtractor.setDataSource(input.getAbsolutePath());
+                audioExtractor.selectTrack(audioTrackIndex);
+            }
+
+            muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            muxer.setOrientationHint(rotation);
+
+            AudioCopier audioCopier = null;
+            int muxerVideoTrack = -1;
+            MediaCodec.BufferInfo decoderInfo = new MediaCodec.BufferInfo();
+            MediaCodec.BufferInfo encoderInfo = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean encoderDone = false;
+
+            while (!encoderDone) {
+                if (!inputDone) {
+                    int inputIndex = decoder.dequeueInputBuffer(TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        ByteBuffer inputBuffer = decoder.getInputBuffer(inputIndex);
+                        int sampleSize = videoExtractor.readSampleData(inputBuffer, 0);
+                        if (sampleSize < 0) {
+                            decoder.queueInputBuffer(inputIndex, 0, 0, 0L, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(inputIndex, 0, sampleSize, videoExtractor.getSampleTime(), 0);
+                            videoExtractor.advance();
+                        }
+                    }
+                }
+
+                boolean encoderOutputAvailable = true;
+                boolean decoderOutputAvailable = !decoderDone;
+                while (encoderOutputAvailable || decoderOutputAvailable) {
+                    // Drain the encoder first so its input surface never backs up
+                    int encoderIndex = encoder.dequeueOutputBuffer(encoderInfo, TIMEOUT_US);
+                    if (encoderIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                        encoderOutputAvailable = false;
+                    } else if (encoderIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                        if (muxerStarted) {
+                            throw new IllegalStateException("Encoder output format changed twice");
+                        }
+                        muxerVideoTrack = muxer.addTrack(encoder.getOutputFormat());
+                        if (audioFormat != null) {
+                            int muxerAudioTrack = muxer.addTrack(audioFormat);
+                            audioCopier = new AudioCopier(audioExtractor, audioFormat, muxer, muxerAudioTrack);
+                        }
+                        muxer.start();
+                        muxerStarted = true;
+                    } else if (encoderIndex >= 0) {
+                        ByteBuffer encoded = encoder.getOutputBuffer(encoderIndex);
+                        if ((encoderInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                            // Already delivered through the output format (csd-0/csd-1)
+                            encoderInfo.size = 0;
+                        }
+                        if (encoderInfo.size > 0 && muxerStarted) {
+                            encoded.position(encoderInfo.offset);
+                            encoded.limit(encoderInfo.offset + encoderInfo.size);
+                            muxer.writeSampleData(muxerVideoTrack, encoded, encoderInfo);
+                            if (audioCopier != null) {
+                                audioCopier.copyUntil(encoderInfo.presentationTimeUs);
+                            }
+                            reportProgress((double) encoderInfo.presentationTimeUs / durationUs);
+                        }
+                        encoderDone = (encoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                        encoder.releaseOutputBuffer(encoderIndex, false);
+                        if (encoderDone) {
+                            break;
+                        }
+                    }
+                    if (encoderIndex != MediaCodec.INFO_TRY_AGAIN_LATER) {
+                        continue;
+                    }
+
+                    if (!decoderDone) {
+                        int decoderIndex = decoder.dequeueOutputBuffer(decoderInfo, TIMEOUT_US);
+                        if (decoderIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                            decoderOutputAvailable = false;
+                        } else if (decoderIndex >= 0) {
+                            boolean render = decoderInfo.size != 0;
+                            decoder.releaseOutputBuffer(decoderIndex, render);
+                            if (render) {
+                                outputSurface.awaitNewImage();
+                                outputSurface.drawImage(outWidth, outHeight);
+                                eglCore.setPresentationTime(eglSurface, decoderInfo.presentationTimeUs * 1000L);
+                                eglCore.swapBuffers(eglSurface);
+                            }
+                            if ((decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                                encoder.signalEndOfInputStream();
+                                decoderDone = true;
+                                decoderOutputAvailable = false;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (audioCopier != null) {
+                audioCopier.copyUntil(Long.MAX_VALUE);
+            }
+            muxer.stop();
+            muxerStarted = false;
+            reportProgress(1.0);
+
+            long outputSize = output.length();
+            Log.d(TAG, "Transcode finished: " + originalSize + " -> " + outputSize + " bytes (target " + targetBytes + ")");
+            success = true;
+            boolean targetMet = !bitrateClamped && outputSize <= targetBytes;
+            return new Result(output.getAbsolutePath(), originalSize, outputSize, outWidth, outHeight, videoBitrate, durationMs,
+                false, targetMet);
+        } finally {
+            try { videoExtractor.release(); } catch (Exception ignore) {}
+            if (audioExtractor != null) {
+                try { audioExtractor.release(); } catch (Exception ignore) {}
+            }
+            if (decoder != null) {
+                try { decoder.stop(); } catch (Exception ignore) {}
+                decoder.release();
+            }
+            if (encoder != null) {
+                try { encoder.stop(); } catch (Exception ignore) {}
+                encoder.release();
+            }
+            if (muxer != null) {
+                try { if (muxerStarted) muxer.stop(); } catch (Exception ignore) {}
+                try { muxer.release(); } catch (Exception ignore) {}
+            }
+            if (outputSurface != null) {
+                outputSurface.release();
+            }
+            if (eglCore != null) {
+                eglCore.releaseSurface(eglSurface);
+                eglCore.release();
+            }
+            if (!success && output.exists() && !output.delete()) {
+                Log.w(TAG, "Could not delete partial output " + output.getAbsolutePath());
+            }
+        }
+    }
+
+    /** Bits per second left for video once audio and container overhead are taken out of the budget. */
+    static int computeVideoBitrate(long targetBytes, long originalSize, long durationUs, int audioBitrate) {
+        double durationSec = durationUs / 1_000_000.0;
+        double budgetBps = (targetBytes * CONTAINER_OVERHEAD_FACTOR * 8.0) / durationSec;
+        double sourceBps = (originalSize * 8.0) / durationSec;
+        // Never ask for more than the source had; re-encoding at a higher rate only wastes bytes
+        double videoBps = Math.min(budgetBps, sourceBps) - audioBitrate;
+        if (videoBps < MIN_VIDEO_BITRATE) {
+            Log.w(TAG, "Size budget leaves only " + (long) videoBps + " bps for video, clamping to " + MIN_VIDEO_BITRATE);
+            videoBps = MIN_VIDEO_BITRATE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, videoBps);
+    }
+
+    private void reportProgress(double progress) {
+        if (progressListener == null) return;
+        int percent = (int) Math.max(0, Math.min(100, Math.round(progress * 100)));
+        if (percent != lastReportedPercent) {
+            lastReportedPercent = percent;
+            progressListener.onProgress(percent / 100.0);
+        }
+    }
+
+    private static int align16(double value) {
+        return Math.max(16, ((int) Math.round(value / 16.0)) * 16);
+    }
+
+    private static int findTrack(MediaExtractor extractor, String mimePrefix) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(mimePrefix)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int readRotation(File file) {
+        MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+        try {
+            mmr.setDataSource(file.getAbsolutePath());
+            String rotation = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+            return rotation != null ? Integer.parseInt(rotation) : 0;
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read rotation: " + e.getMessage());
+            return 0;
+        } finally {
+            try { mmr.release(); } catch (Exception ignore) {}
+        }
+    }
+
+    /** Copies compressed audio samples into the muxer, interleaved with the video as it is encoded. */
+    private static class AudioCopier {
+        private final MediaExtractor extractor;
+        private final MediaMuxer muxer;
+        private final int track;
+        private final ByteBuffer buffer;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        private boolean done = false;
+
+        AudioCopier(MediaExtractor extractor, MediaFormat format, MediaMuxer muxer, int track) {
+            this.extractor = extractor;
+            this.muxer = muxer;
+            this.track = track;
+            int maxInput = format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE) ? format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : 64 * 1024;
+            this.buffer = ByteBuffer.allocateDirect(maxInput);
+        }
+
+        void copyUntil(long presentationTimeUs) {
+            while (!done) {
+                long sampleTime = extractor.getSampleTime();
+                if (sampleTime < 0) {
+                    done = true;
+                    return;
+                }
+                if (sampleTime > presentationTimeUs) {
+                    return;
+                }
+                buffer.clear();
+                int size = extractor.readSampleData(buffer, 0);
+                if (size < 0) {
+                    done = true;
+                    return;
+                }
+                info.offset = 0;
+                info.size = size;
+                info.presentationTimeUs = sampleTime;
+                info.flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0 ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                muxer.writeSampleData(track, buffer, info);
+                extractor.advance();
+            }
+        }
+    }
+}
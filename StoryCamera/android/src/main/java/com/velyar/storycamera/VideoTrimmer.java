@@ -0,0 +1,153 @@
+package com.velyar.storycamera;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Lossless trim: copies compressed samples from {@link MediaExtractor} to {@link MediaMuxer}
+ * without decoding. The cut starts at the last sync sample at or before the requested start, so
+ * the first frame is decodable; the real range is reported back. Cost is a sequential copy of the
+ * kept bytes, far below a transcode.
+ *
+ * Blocking; run it on a background executor.
+ */
+public class VideoTrimmer {
+    private static final String TAG = "VideoTrimmer";
+
+    public static class Result {
+        public final String path;
+        public final long startMs; // actual start in the source, on a sync sample
+        public final long endMs; // actual end in the source
+        public final long durationMs;
+        public final long size;
+        public final boolean skipped;
+
+        Result(String path, long startMs, long endMs, long size, boolean skipped) {
+            this.path = path;
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.durationMs = endMs - startMs;
+            this.size = size;
+            this.skipped = skipped;
+        }
+    }
+
+    /**
+     * Writes the [startMs, endMs) range of {@code input} to {@code output}. {@code endMs} <= 0 keeps
+     * everything to the end; a range covering the whole clip returns the input untouched.
+     */
+    public static Result trim(File input, File output, long startMs, long endMs) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaMuxer muxer = null;
+        boolean started = false;
+        try {
+            extractor.setDataSource(input.getAbsolutePath());
+            int videoIndex = -1;
+            int audioIndex = -1;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+                if (mime == null) continue;
+                if (mime.startsWith("video/") && videoIndex < 0) videoIndex = i;
+                else if (mime.startsWith("audio/") && audioIndex < 0) audioIndex = i;
+            }
+            if (videoIndex < 0) {
+                throw new IOException("No video track in " + input.getName());
+            }
+            MediaFormat videoFormat = extractor.getTrackFormat(videoIndex);
+            long durationUs = videoFormat.containsKey(MediaFormat.KEY_DURATION) ? videoFormat.getLong(MediaFormat.KEY_DURATION) : Long.MAX_VALUE;
+            long endUs = endMs > 0 ? Math.min(endMs * 1000L, durationUs) : durationUs;
+
+            // Snap the start back to the nearest sync sample of the video track
+            extractor.selectTrack(videoIndex);
+            extractor.seekTo(Math.max(0L, startMs) * 1000L, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            long startUs = Math.max(0L, extractor.getSampleTime());
+            if (startUs >= endUs) {
+                throw new IllegalArgumentException("Trim range is empty: start " + startMs + " ms, end " + endMs + " ms");
+            }
+            if (startUs == 0 && endUs >= durationUs) {
+                Log.d(TAG, "Trim covers the whole clip, returning the input");
+                return new Result(input.getAbsolutePath(), 0, durationUs / 1000L, input.length(), true);
+            }
+
+            muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            int videoTrack = muxer.addTrack(videoFormat);
+            int audioTrack = -1;
+            MediaFormat audioFormat = null;
+            if (audioIndex >= 0) {
+                audioFormat = extractor.getTrackFormat(audioIndex);
+                audioTrack = muxer.addTrack(audioFormat);
+                extractor.selectTrack(audioIndex);
+                // Re-seek so the audio track is positioned too; audio samples are all sync samples
+                extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+            muxer.setOrientationHint(SegmentJoiner.readRotation(input));
+            muxer.start();
+            started = true;
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(SegmentJoiner.maxInputSize(videoFormat), SegmentJoiner.maxInputSize(audioFormat)));
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean videoDone = false;
+            boolean audioDone = audioIndex < 0;
+            long lastVideoUs = startUs;
+            while (!videoDone || !audioDone) {
+                int trackIndex = extractor.getSampleTrackIndex();
+                if (trackIndex < 0) break;
+                long timeUs = extractor.getSampleTime();
+                boolean isVideo = trackIndex == videoIndex;
+                if (timeUs >= endUs) {
+                    // Past the end for this track; stop reading it
+                    extractor.unselectTrack(trackIndex);
+                    if (isVideo) videoDone = true; else audioDone = true;
+                    continue;
+                }
+                if (timeUs < startUs) {
+                    // Audio ahead of the first video sync sample
+                    extractor.advance();
+                    continue;
+                }
+                long sampleSize = extractor.getSampleSize();
+                if (sampleSize > buffer.capacity()) {
+                    buffer = ByteBuffer.allocateDirect((int) sampleSize);
+                }
+                buffer.clear();
+                int size = extractor.readSampleData(buffer, 0);
+                if (size < 0) break;
+
+                info.offset = 0;
+                info.size = size;
+                info.presentationTimeUs = timeUs - startUs;
+                info.flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                    ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                muxer.writeSampleData(isVideo ? videoTrack : audioTrack, buffer, info);
+                if (isVideo) lastVideoUs = Math.max(lastVideoUs, timeUs);
+                extractor.advance();
+            }
+
+            long actualEndUs = Math.min(endUs, durationUs);
+            if (actualEndUs == Long.MAX_VALUE) {
+                actualEndUs = lastVideoUs;
+            }
+            Log.d(TAG, "Trimmed " + input.getName() + " to " + startUs / 1000L + "-" + actualEndUs / 1000L + " ms");
+            muxer.stop();
+            started = false;
+            return new Result(output.getAbsolutePath(), startUs / 1000L, actualEndUs / 1000L, output.length(), false);
+        } finally {
+            extractor.release();
+            if (muxer != null) {
+                try {
+                    if (started) muxer.stop();
+                } catch (Exception e) {
+                    Log.w(TAG, "Error stopping muxer: " + e.getMessage());
+                }
+                muxer.release();
+            }
+        }
+    }
+}
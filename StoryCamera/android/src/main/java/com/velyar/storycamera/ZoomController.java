@@ -0,0 +1,234 @@
+package com.velyar.storycamera;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.camera.core.Camera;
+import androidx.camera.core.CameraControl;
+import androidx.camera.core.ZoomState;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Paces pinch-to-zoom to the display instead of to touch events.
+ *
+ * A ScaleGestureDetector reports several times per frame on fast touch screens, and each
+ * setZoomRatio() call is a new capture request; CameraX cancels the previous one when the next
+ * arrives, so most are wasted and the HAL falls behind. Here gesture input only moves the target.
+ * Once per Choreographer frame, if the previous request has completed, one request is issued for
+ * a point that closes part of the gap between the last applied zoom and the target, so the zoom
+ * eases in over a few frames. Inputs that arrive between two issued requests are coalesced.
+ *
+ * Steps are computed on CameraX's linear zoom scale, which is perceptually even across the range
+ * (equal ratio steps look large near 1x and tiny near the maximum), and issued with setLinearZoom.
+ * When the camera reports no zoom range, ratios are issued directly.
+ *
+ * Main thread only.
+ */
+public class ZoomController implements Choreographer.FrameCallback {
+    private static final String TAG = "ZoomController";
+    // Fraction of the remaining distance covered per frame
+    private static final float SMOOTHING = 0.4f;
+    // Closer than this on the linear scale counts as arrived
+    private static final float SETTLE_DISTANCE = 0.002f;
+    // A request not completed after this long no longer holds back the next one
+    private static final long STALL_NANOS = 250_000_000L;
+    // The gesture never zooms further than this, even if the lens could
+    private static final float MAX_GESTURE_RATIO = 10.0f;
+
+    private final Executor mainExecutor;
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    private Camera camera;
+    private CameraControl control;
+    private boolean rangeKnown;
+    private float minRatio = 1.0f;
+    private float maxRatio = MAX_GESTURE_RATIO; // camera maximum; the gesture stops at MAX_GESTURE_RATIO
+    private float targetRatio = 1.0f;
+    private float appliedRatio = 1.0f;
+    private ListenableFuture<Void> inFlight;
+    private long inFlightSinceNanos;
+    private boolean frameScheduled;
+    private boolean pendingInput;
+
+    private int requests;
+    private int issued;
+    private int coalesced;
+    private int cancelled;
+    private int failed;
+    private int stalled;
+
+    public ZoomController(Executor mainExecutor) {
+        this.mainExecutor = mainExecutor;
+    }
+
+    /**
+     * Drives {@code camera} from now on, e.g. after a bind or a camera switch. The current target
+     * is clamped to the new range and applied.
+     */
+    public void attach(Camera camera) {
+        this.camera = camera;
+        control = camera.getCameraControl();
+        inFlight = null;
+        rangeKnown = false;
+        readRange();
+        targetRatio = clamp(targetRatio);
+        if (targetRatio != appliedRatio) {
+            scheduleFrame();
+        }
+    }
+
+    // The zoom state is only published once the camera has opened
+    private void readRange() {
+        ZoomState state = camera != null ? camera.getCameraInfo().getZoomState().getValue() : null;
+        if (state == null) {
+            return;
+        }
+        minRatio = state.getMinZoomRatio();
+        maxRatio = state.getMaxZoomRatio();
+        appliedRatio = state.getZoomRatio();
+        rangeKnown = true;
+        Log.d(TAG, "Zoom range " + minRatio + "-" + Math.min(maxRatio, MAX_GESTURE_RATIO) + "x (camera max " + maxRatio + "x)");
+    }
+
+    /** Back to no zoom, e.g. for a camera switch; applied on the next {@link #attach}. */
+    public void reset() {
+        targetRatio = 1.0f;
+        pendingInput = false;
+    }
+
+    /** Multiplies the target by a pinch gesture's scale factor. */
+    public void scaleBy(float scaleFactor) {
+        setTargetRatio(targetRatio * scaleFactor);
+    }
+
+    public void setTargetRatio(float ratio) {
+        if (!rangeKnown) {
+            readRange();
+        }
+        float clamped = clamp(ratio);
+        if (clamped == targetRatio) {
+            return;
+        }
+        requests++;
+        if (pendingInput) {
+            // The previous input never got its own request
+            coalesced++;
+        }
+        pendingInput = true;
+        targetRatio = clamped;
+        scheduleFrame();
+    }
+
+    public float getTargetRatio() {
+        return targetRatio;
+    }
+
+    /** Stops pacing; call when the activity goes away. */
+    public void release() {
+        choreographer.removeFrameCallback(this);
+        frameScheduled = false;
+        control = null;
+        camera = null;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (control == null) {
+            return;
+        }
+        if (inFlight != null && !inFlight.isDone()) {
+            if (frameTimeNanos - inFlightSinceNanos < STALL_NANOS) {
+                // Still waiting on the camera; try again next frame with whatever the target is then
+                scheduleFrame();
+                return;
+            }
+            stalled++;
+        }
+
+        float next;
+        if (hasLinearRange()) {
+            float applied = toLinear(appliedRatio);
+            float target = toLinear(targetRatio);
+            float step = applied + (target - applied) * SMOOTHING;
+            next = Math.abs(target - step) < SETTLE_DISTANCE ? targetRatio : fromLinear(step);
+            issue(control.setLinearZoom(next == targetRatio ? target : step), frameTimeNanos);
+        } else {
+            next = targetRatio;
+            issue(control.setZoomRatio(next), frameTimeNanos);
+        }
+        appliedRatio = next;
+        pendingInput = false;
+        if (appliedRatio != targetRatio) {
+            scheduleFrame();
+        }
+    }
+
+    private void issue(ListenableFuture<Void> future, long frameTimeNanos) {
+        issued++;
+        inFlight = future;
+        inFlightSinceNanos = frameTimeNanos;
+        future.addListener(() -> {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CameraControl.OperationCanceledException) {
+                    cancelled++;
+                } else {
+                    failed++;
+                    Log.w(TAG, "Zoom request failed: " + e.getCause());
+                }
+            } catch (InterruptedException | CancellationException e) {
+                cancelled++;
+            }
+        }, mainExecutor);
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled && control != null) {
+            frameScheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    private float clamp(float ratio) {
+        return Math.max(minRatio, Math.min(Math.min(maxRatio, MAX_GESTURE_RATIO), ratio));
+    }
+
+    private boolean hasLinearRange() {
+        return rangeKnown && maxRatio > minRatio;
+    }
+
+    // Same mapping as CameraX: linear zoom is even in 1/ratio
+    private float toLinear(float ratio) {
+        if (ratio <= minRatio) return 0f;
+        if (ratio >= maxRatio) return 1f;
+        return (1f / minRatio - 1f / ratio) / (1f / minRatio - 1f / maxRatio);
+    }
+
+    private float fromLinear(float linear) {
+        if (linear <= 0f) return minRatio;
+        if (linear >= 1f) return maxRatio;
+        return 1f / (1f / minRatio - linear * (1f / minRatio - 1f / maxRatio));
+    }
+
+    /** Counters for the session metrics: gesture inputs against requests the camera actually got. */
+    public JSONObject stats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("requests", requests);
+        json.put("issued", issued);
+        json.put("coalesced", coalesced);
+        json.put("cancelled", cancelled);
+        json.put("failed", failed);
+        json.put("stalled", stalled);
+        return json;
+    }
+}
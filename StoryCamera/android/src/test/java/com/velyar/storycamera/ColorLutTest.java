@@ -0,0 +1,170 @@
+package com.velyar.storycamera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ColorLutTest {
+    private static final float EPSILON = 1e-5f;
+
+    // Non-linear per channel and mixes channels, so interpolation errors show up
+    private static final ColorLut.ColorTransform CURVE = (r, g, b, out) -> {
+        out[0] = r * r;
+        out[1] = 0.5f * g + 0.25f * b;
+        out[2] = (float) Math.sqrt(b) * (1f - 0.5f * r);
+    };
+
+    @Test
+    public void identityRoundTripsEveryArgbChannelValue() {
+        ColorLut lut = ColorLut.identity(ColorLut.DEFAULT_SIZE);
+        for (int v = 0; v < 256; v++) {
+            int argb = 0x80000000 | (v << 16) | ((255 - v) << 8) | ((v * 7) & 0xFF);
+            assertEquals(Integer.toHexString(argb), argb, lut.applyArgb(argb));
+        }
+    }
+
+    @Test
+    public void identityRoundTripsBufferInPlace() {
+        ColorLut lut = ColorLut.identity(17);
+        int[] pixels = {0xFF000000, 0xFFFFFFFF, 0x00123456, 0x7FABCDEF, 0xFF0080FF};
+        int[] expected = pixels.clone();
+        lut.applyArgb(pixels, 1, 3);
+        assertArrayEquals(expected, pixels);
+    }
+
+    @Test
+    public void stripTexelsMatchLookupAtGridPoints() {
+        int size = 9;
+        ColorLut lut = ColorLut.fromTransform(size, CURVE);
+        byte[] strip = lut.toRgbaStrip();
+        int width = size * size;
+        assertEquals(width * size * 4, strip.length);
+
+        float[] out = new float[3];
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    lut.lookup(r / (size - 1f), g / (size - 1f), b / (size - 1f), out);
+                    // Blue picks the slice left to right, red is x within it, green is the row
+                    int texel = (g * width + b * size + r) * 4;
+                    assertEquals(Math.round(out[0] * 255f), strip[texel] & 0xFF);
+                    assertEquals(Math.round(out[1] * 255f), strip[texel + 1] & 0xFF);
+                    assertEquals(Math.round(out[2] * 255f), strip[texel + 2] & 0xFF);
+                    assertEquals(0xFF, strip[texel + 3] & 0xFF);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lookupHitsTableEntriesAtCellBoundaries() {
+        int size = 5;
+        ColorLut lut = ColorLut.fromTransform(size, CURVE);
+        float[] out = new float[3];
+        float[] expected = new float[3];
+        for (int i = 0; i < size; i++) {
+            float t = i / (size - 1f);
+            lut.lookup(t, t, 1f - t, out);
+            CURVE.apply(t, t, 1f - t, expected);
+            assertArrayEquals("grid point " + i, expected, out, EPSILON);
+        }
+    }
+
+    @Test
+    public void lookupIsContinuousAcrossCellBoundaries() {
+        int size = 5;
+        ColorLut lut = ColorLut.fromTransform(size, CURVE);
+        float[] onBoundary = new float[3];
+        float[] below = new float[3];
+        float[] above = new float[3];
+        float boundary = 2f / (size - 1f);
+        float d = 1e-4f;
+        lut.lookup(boundary, 0.3f, 0.7f, onBoundary);
+        lut.lookup(boundary - d, 0.3f, 0.7f, below);
+        lut.lookup(boundary + d, 0.3f, 0.7f, above);
+        assertArrayEquals(onBoundary, below, 1e-3f);
+        assertArrayEquals(onBoundary, above, 1e-3f);
+    }
+
+    @Test
+    public void lookupInterpolatesLinearlyInsideACell() {
+        int size = 3;
+        ColorLut lut = ColorLut.fromTransform(size, CURVE);
+        float[] out = new float[3];
+        float[] low = new float[3];
+        float[] high = new float[3];
+        // Halfway between red 0.5 and 1.0 on a grid line of the other two axes
+        lut.lookup(0.75f, 0.5f, 0f, out);
+        CURVE.apply(0.5f, 0.5f, 0f, low);
+        CURVE.apply(1f, 0.5f, 0f, high);
+        for (int c = 0; c < 3; c++) {
+            assertEquals(0.5f * (low[c] + high[c]), out[c], EPSILON);
+        }
+        // The cube centre averages all eight corners of the first cell
+        lut.lookup(0.25f, 0.25f, 0.25f, out);
+        float[] corner = new float[3];
+        float[] sum = new float[3];
+        for (int i = 0; i < 8; i++) {
+            CURVE.apply((i & 1) * 0.5f, ((i >> 1) & 1) * 0.5f, ((i >> 2) & 1) * 0.5f, corner);
+            for (int c = 0; c < 3; c++) {
+                sum[c] += corner[c] / 8f;
+            }
+        }
+        assertArrayEquals(sum, out, EPSILON);
+    }
+
+    @Test
+    public void lookupClampsOutOfRangeInput() {
+        ColorLut lut = ColorLut.fromTransform(5, CURVE);
+        float[] clamped = new float[3];
+        float[] edge = new float[3];
+        lut.lookup(-0.5f, 1.5f, 2f, clamped);
+        lut.lookup(0f, 1f, 1f, edge);
+        assertArrayEquals(edge, clamped, EPSILON);
+    }
+
+    @Test
+    public void identityNv21KeepsFrame() {
+        int width = 4;
+        int height = 4;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int i = 0; i < width * height; i++) {
+            nv21[i] = (byte) (40 + i * 10);
+        }
+        // V/U pairs near the centre keep every pixel inside the RGB cube
+        for (int i = width * height; i < nv21.length; i += 2) {
+            nv21[i] = (byte) 140;
+            nv21[i + 1] = (byte) 120;
+        }
+        byte[] expected = nv21.clone();
+        ColorLut.identity(ColorLut.DEFAULT_SIZE).applyNv21(nv21, width, height);
+        for (int i = 0; i < nv21.length; i++) {
+            assertEquals("byte " + i, expected[i] & 0xFF, nv21[i] & 0xFF, 1);
+        }
+    }
+
+    @Test
+    public void nv21GradesLumaAndAveragesChromaPerBlock() {
+        // Everything to pure red, whatever the input
+        ColorLut red = ColorLut.fromTransform(5, (r, g, b, out) -> {
+            out[0] = 1f;
+            out[1] = 0f;
+            out[2] = 0f;
+        });
+        int width = 2;
+        int height = 2;
+        byte[] nv21 = {10, 80, (byte) 160, (byte) 240, (byte) 128, (byte) 128};
+        red.applyNv21(nv21, width, height);
+        for (int i = 0; i < width * height; i++) {
+            assertEquals(Math.round(0.299f * 255f), nv21[i] & 0xFF);
+        }
+        assertEquals(255, nv21[4] & 0xFF); // V
+        assertEquals(Math.round(-0.168736f * 255f + 128f), nv21[5] & 0xFF); // U
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTableOfWrongLength() {
+        new ColorLut(3, new float[3 * 3 * 3 * 3 - 1]);
+    }
+}
@@ -0,0 +1,252 @@
+package com.velyar.storycamera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TusUploaderTest {
+    private static final int CHUNK_SIZE = 1024;
+    private static final int FILE_SIZE = 5000;
+
+    private TusStandIn server;
+    private MemoryStore store;
+    private File file;
+    private byte[] content;
+    private URL endpoint;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TusStandIn();
+        endpoint = new URL("http://127.0.0.1:" + server.http.getAddress().getPort() + "/files");
+        store = new MemoryStore();
+        content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        file = File.createTempFile("tus", ".bin");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.http.stop(0);
+        file.delete();
+    }
+
+    @Test
+    public void createsUploadAndSendsFileInChunks() throws IOException {
+        List<Long> progress = new ArrayList<>();
+        String url = uploader().upload(file, (uploaded, total) -> progress.add(uploaded));
+
+        assertEquals(new URL(endpoint, "/files/1").toString(), url);
+        assertArrayEquals(content, server.bytes("/files/1"));
+        assertEquals(Arrays.asList("CREATE 5000", "PATCH 0", "PATCH 1024", "PATCH 2048", "PATCH 3072", "PATCH 4096"),
+            server.requests);
+        assertEquals(Long.valueOf(FILE_SIZE), progress.get(progress.size() - 1));
+        assertTrue(store.urls.isEmpty());
+    }
+
+    @Test
+    public void resumesWithPatchFromServerOffset() throws IOException {
+        String url = server.seed(content, 2048);
+        store.save(fingerprint(), url, 2048);
+
+        assertEquals(url, uploader().upload(file, null));
+        assertArrayEquals(content, server.bytes("/files/1"));
+        assertEquals(Arrays.asList("HEAD 2048", "PATCH 2048", "PATCH 3072", "PATCH 4096"), server.requests);
+        assertNull(store.getUploadUrl(fingerprint()));
+    }
+
+    @Test
+    public void resumesFromStoredOffsetWhenHeadFails() throws IOException {
+        String url = server.seed(content, 2048);
+        store.save(fingerprint(), url, 2048);
+        server.failedHeads = 1;
+
+        uploader().upload(file, null);
+        assertArrayEquals(content, server.bytes("/files/1"));
+        assertEquals(Arrays.asList("HEAD 503", "PATCH 2048", "PATCH 3072", "PATCH 4096"), server.requests);
+    }
+
+    @Test
+    public void recoversFromOffsetMismatch() throws IOException {
+        // The server acknowledged up to 3072 but the store only saw 1024 before the process died
+        String url = server.seed(content, 3072);
+        store.save(fingerprint(), url, 1024);
+        server.failedHeads = 1;
+
+        uploader().upload(file, null);
+        assertArrayEquals(content, server.bytes("/files/1"));
+        assertEquals(Arrays.asList("HEAD 503", "PATCH 1024 409", "HEAD 3072", "PATCH 3072", "PATCH 4096"),
+            server.requests);
+    }
+
+    @Test
+    public void startsOverWhenStoredUploadIsGone() throws IOException {
+        store.save(fingerprint(), new URL(endpoint, "/files/expired").toString(), 2048);
+
+        String url = uploader().upload(file, null);
+        assertEquals(new URL(endpoint, "/files/1").toString(), url);
+        assertArrayEquals(content, server.bytes("/files/1"));
+        assertEquals("HEAD 404", server.requests.get(0));
+        assertEquals("CREATE 5000", server.requests.get(1));
+        assertEquals("PATCH 0", server.requests.get(2));
+    }
+
+    private TusUploader uploader() {
+        return new TusUploader(endpoint, null, null, store, CHUNK_SIZE);
+    }
+
+    private String fingerprint() {
+        return TusUploader.fingerprint(file, endpoint);
+    }
+
+    private static final class MemoryStore implements TusUploader.UploadStore {
+        final Map<String, String> urls = new HashMap<>();
+        final Map<String, Long> offsets = new HashMap<>();
+
+        @Override
+        public String getUploadUrl(String fingerprint) {
+            return urls.get(fingerprint);
+        }
+
+        @Override
+        public long getOffset(String fingerprint) {
+            Long offset = offsets.get(fingerprint);
+            return offset != null ? offset : 0L;
+        }
+
+        @Override
+        public void save(String fingerprint, String uploadUrl, long offset) {
+            urls.put(fingerprint, uploadUrl);
+            offsets.put(fingerprint, offset);
+        }
+
+        @Override
+        public void remove(String fingerprint) {
+            urls.remove(fingerprint);
+            offsets.remove(fingerprint);
+        }
+    }
+
+    /**
+     * Local tus stand-in: creation and core, PATCH through X-HTTP-Method-Override. Logs each
+     * request as "CREATE length", "HEAD offset|status" or "PATCH offset [status]".
+     */
+    private static final class TusStandIn implements HttpHandler {
+        final HttpServer http;
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, ByteArrayOutputStream> uploads = new HashMap<>();
+        private int nextId = 1;
+        volatile int failedHeads;
+
+        TusStandIn() throws IOException {
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/files", this);
+            http.start();
+        }
+
+        /** Creates an upload that already holds the first {@code offset} bytes; returns its URL. */
+        synchronized String seed(byte[] bytes, int offset) {
+            String path = "/files/" + nextId++;
+            ByteArrayOutputStream upload = new ByteArrayOutputStream();
+            upload.write(bytes, 0, offset);
+            uploads.put(path, upload);
+            return "http://127.0.0.1:" + http.getAddress().getPort() + path;
+        }
+
+        synchronized byte[] bytes(String path) {
+            return uploads.get(path).toByteArray();
+        }
+
+        @Override
+        public synchronized void handle(HttpExchange exchange) throws IOException {
+            byte[] body = readAll(exchange.getRequestBody());
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            String override = exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override");
+            if (override != null) {
+                method = override;
+            }
+            exchange.getResponseHeaders().set("Tus-Resumable", TusUploader.TUS_VERSION);
+            ByteArrayOutputStream upload = uploads.get(path);
+
+            if ("POST".equals(method)) {
+                String length = exchange.getRequestHeaders().getFirst("Upload-Length");
+                String location = "/files/" + nextId++;
+                uploads.put(location, new ByteArrayOutputStream());
+                requests.add("CREATE " + length);
+                exchange.getResponseHeaders().set("Location", location);
+                respond(exchange, 201);
+            } else if ("HEAD".equals(method)) {
+                if (failedHeads > 0) {
+                    failedHeads--;
+                    requests.add("HEAD 503");
+                    respond(exchange, 503);
+                } else if (upload == null) {
+                    requests.add("HEAD 404");
+                    respond(exchange, 404);
+                } else {
+                    requests.add("HEAD " + upload.size());
+                    exchange.getResponseHeaders().set("Upload-Offset", Integer.toString(upload.size()));
+                    respond(exchange, 200);
+                }
+            } else if ("PATCH".equals(method)) {
+                long offset = Long.parseLong(exchange.getRequestHeaders().getFirst("Upload-Offset"));
+                if (upload == null) {
+                    requests.add("PATCH " + offset + " 404");
+                    respond(exchange, 404);
+                } else if (offset != upload.size()) {
+                    requests.add("PATCH " + offset + " 409");
+                    respond(exchange, 409);
+                } else {
+                    requests.add("PATCH " + offset);
+                    upload.write(body, 0, body.length);
+                    exchange.getResponseHeaders().set("Upload-Offset", Integer.toString(upload.size()));
+                    respond(exchange, 204);
+                }
+            } else {
+                respond(exchange, 405);
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int status) throws IOException {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
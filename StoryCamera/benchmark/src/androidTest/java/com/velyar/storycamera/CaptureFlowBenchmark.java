@@ -0,0 +1,116 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.getcapacitor.JSObject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * The small synchronous steps around a recording: naming the output file, building the
+ * recordVideo result from the activity extras and the recording journal hand-off behind
+ * getVideoData()/clearVideoData().
+ */
+@RunWith(AndroidJUnit4.class)
+public class CaptureFlowBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private File mediaDir;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mediaDir = new File(context.getExternalFilesDir(null), "Movies");
+        mediaDir.mkdirs();
+    }
+
+    @Test
+    public void createVideoFile_mission() {
+        BenchmarkState state = benchmarkRule.getState();
+        long now = System.currentTimeMillis();
+        while (state.keepRunning()) {
+            // Same work as StoryCameraActivity.createVideoFile()
+            String name = RecordingFileNames.fileNameFor("mission", "8d1f0c2e-5b7a-4c1e-9f3a-0d6b2a9e7c41", null, now);
+            File file = new File(mediaDir, name);
+            if (!mediaDir.exists()) {
+                mediaDir.mkdirs();
+            }
+            file.getAbsolutePath();
+        }
+    }
+
+    @Test
+    public void createVideoFile_story() {
+        BenchmarkState state = benchmarkRule.getState();
+        long now = System.currentTimeMillis();
+        while (state.keepRunning()) {
+            RecordingFileNames.fileNameFor(null, null, null, now);
+        }
+    }
+
+    @Test
+    public void buildRecordingResult() {
+        Intent data = new Intent();
+        data.putExtra("videoUri", new File(mediaDir, "DAILY_42_20250101_120000.mp4").getAbsolutePath());
+        data.putExtra("contentUri", "content://com.velyar.app.fileprovider/movies/DAILY_42_20250101_120000.mp4");
+        data.putExtra("thumbnailPath", new File(mediaDir, "DAILY_42_20250101_120000_thumb.jpg").getAbsolutePath());
+        data.putExtra(RecordingFinalizer.EXTRA_DURATION_MS, 14_532L);
+        data.putExtra(RecordingFinalizer.EXTRA_WIDTH, 1920);
+        data.putExtra(RecordingFinalizer.EXTRA_HEIGHT, 1080);
+        data.putExtra(RecordingFinalizer.EXTRA_ROTATION, 90);
+        data.putExtra(RecordingFinalizer.EXTRA_HAS_AUDIO, true);
+        data.putExtra(RecordingFinalizer.EXTRA_SIZE, 18_734_112L);
+        data.putExtra("contextType", "daily");
+        data.putExtra("promptId", "42");
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            JSObject result = StoryCameraPlugin.buildRecordingResult(data);
+            result.length();
+        }
+    }
+
+    @Test
+    public void handOff_save() {
+        String videoPath = new File(mediaDir, "MISSION_7_20250101_120000.mp4").getAbsolutePath();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            RecordingHandOff.save(context, videoPath, null, "mission", "7", null);
+        }
+    }
+
+    @Test
+    public void handOff_getVideoData() {
+        RecordingHandOff.save(context, new File(mediaDir, "STORY_20250101_120000.mp4").getAbsolutePath(), null, null, null, null);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            // Without consuming the flag, so every iteration does the same reads
+            RecordingHandOff.read(context, false);
+        }
+    }
+
+    @Test
+    public void handOff_clearVideoData() {
+        String videoPath = new File(mediaDir, "STORY_20250101_120000.mp4").getAbsolutePath();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            RecordingHandOff.save(context, videoPath, null, null, null, null);
+            state.resumeTiming();
+            RecordingHandOff.clear(context);
+        }
+    }
+}
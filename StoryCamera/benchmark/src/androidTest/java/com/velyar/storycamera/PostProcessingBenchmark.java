@@ -0,0 +1,97 @@
+package com.velyar.storycamera;
+
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * Finalize-time work on a real MP4: metadata probing, poster-frame extraction and color
+ * grading of a camera-sized NV21 frame on the CPU reference path.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PostProcessingBenchmark {
+    private static File video;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @BeforeClass
+    public static void createVideo() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File dir = new File(context.getCacheDir(), "benchmark");
+        dir.mkdirs();
+        // 3 s at 1080p, long enough for the default 1.5 s poster frame
+        video = SyntheticVideo.create(new File(dir, "STORY_benchmark.mp4"), 1920, 1080, 90);
+    }
+
+    @AfterClass
+    public static void deleteVideo() {
+        if (video != null) {
+            ThumbnailExtractor.thumbnailFileFor(video).delete();
+            video.delete();
+        }
+    }
+
+    @Test
+    public void readMetadata() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+            try {
+                mmr.setDataSource(video.getAbsolutePath());
+                RecordingFinalizer.RecordingMetadata.read(mmr, video);
+            } finally {
+                try { mmr.release(); } catch (Exception ignore) {}
+            }
+        }
+    }
+
+    @Test
+    public void extractThumbnail() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            ThumbnailExtractor.extract(video);
+        }
+    }
+
+    @Test
+    public void metadataAndThumbnail_sharedRetriever() throws Exception {
+        // What RecordingFinalizer does: one retriever for both steps
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+            try {
+                mmr.setDataSource(video.getAbsolutePath());
+                RecordingFinalizer.RecordingMetadata.read(mmr, video);
+                ThumbnailExtractor.extract(mmr, video, ThumbnailExtractor.DEFAULT_MAX_EDGE, ThumbnailExtractor.DEFAULT_FRAME_TIME_US);
+            } finally {
+                try { mmr.release(); } catch (Exception ignore) {}
+            }
+        }
+    }
+
+    @Test
+    public void gradeNv21Frame_720p() {
+        ColorLut lut = ColorFilters.lutFor(ColorFilters.WARM);
+        byte[] frame = new byte[1280 * 720 * 3 / 2];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (i * 31);
+        }
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            lut.applyNv21(frame, 1280, 720);
+        }
+    }
+}
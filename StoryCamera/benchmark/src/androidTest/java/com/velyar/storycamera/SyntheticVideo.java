@@ -0,0 +1,86 @@
+package com.velyar.storycamera;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a short H.264 clip of solid color frames, so post-processing benchmarks have a real
+ * MP4 to work on without a camera or a checked-in binary asset.
+ */
+final class SyntheticVideo {
+    private static final String MIME = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final int FRAME_RATE = 30;
+    private static final long TIMEOUT_US = 10_000;
+
+    private SyntheticVideo() {}
+
+    static File create(File output, int width, int height, int frameCount) throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(MIME, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, 4_000_000);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 1);
+
+        MediaCodec encoder = MediaCodec.createEncoderByType(MIME);
+        encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        Surface inputSurface = encoder.createInputSurface();
+        encoder.start();
+
+        EglCore egl = new EglCore(true);
+        EGLSurface eglSurface = egl.createWindowSurface(inputSurface);
+        egl.makeCurrent(eglSurface);
+
+        MediaMuxer muxer = new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        int track = -1;
+        try {
+            for (int frame = 0; frame <= frameCount; frame++) {
+                if (frame < frameCount) {
+                    float t = (float) frame / frameCount;
+                    GLES20.glClearColor(t, 1f - t, 0.5f, 1f);
+                    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+                    egl.setPresentationTime(eglSurface, frame * 1_000_000_000L / FRAME_RATE);
+                    egl.swapBuffers(eglSurface);
+                } else {
+                    encoder.signalEndOfInputStream();
+                }
+                // Drain whatever is ready; on the last pass drain to end of stream
+                boolean endOfStream = frame == frameCount;
+                while (true) {
+                    int index = encoder.dequeueOutputBuffer(info, TIMEOUT_US);
+                    if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                        if (!endOfStream) break;
+                    } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                        track = muxer.addTrack(encoder.getOutputFormat());
+                        muxer.start();
+                    } else if (index >= 0) {
+                        ByteBuffer data = encoder.getOutputBuffer(index);
+                        if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0 && track >= 0) {
+                            muxer.writeSampleData(track, data, info);
+                        }
+                        encoder.releaseOutputBuffer(index, false);
+                        if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) break;
+                    }
+                }
+            }
+        } finally {
+            encoder.stop();
+            encoder.release();
+            if (track >= 0) muxer.stop();
+            muxer.release();
+            egl.releaseSurface(eglSurface);
+            egl.release();
+            inputSurface.release();
+        }
+        return output;
+    }
+}
@@ -1,4 +1,5 @@
 import { registerPlugin, Capacitor } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
 
 export interface RecordVideoOptions {
   duration?: number; // max seconds, default 30
@@ -8,13 +9,31 @@ export interface RecordVideoOptions {
   contextType?: 'mission' | 'daily'; // context for video assignment
   missionId?: string; // mission ID if contextType is 'mission'
   promptId?: string; // prompt ID if contextType is 'daily'
+  quality?: 'SD' | 'HD' | 'FHD' | 'UHD' | 'HIGHEST' | 'LOWEST'; // capture tier, default 'FHD'
+  qualityFallback?: 'lower' | 'higher' | 'none'; // when the tier is unsupported, default 'lower'
+  maxWidthOrHeight?: number; // caps the tier by its long edge (e.g. 1280 -> HD)
+  videoBitrate?: number; // target encoder bitrate in bits per second
+  filter?: 'none' | 'warm' | 'cool' | 'sunset' | 'film'; // color grade baked into preview and recording (Android)
+  filters?: boolean; // show the palette button; the picked grade is baked into preview and recording (Android)
+  segmented?: boolean; // record each take to its own file and join them losslessly on stop (Android)
+  streamUpload?: Omit<StartUploadOptions, 'path'>; // upload while recording, finish with finishStreamingUpload (Android, not with segmented)
 }
 
 export interface RecordVideoResult {
   filePath: string;
-  thumbnailPath?: string;
-  duration?: number;
-  size?: number;
+  thumbnailPath?: string; // JPEG poster frame written next to the video (Android)
+  duration?: number; // seconds
+  durationMs?: number;
+  size?: number; // bytes
+  width?: number; // encoded frame size, before rotation
+  height?: number;
+  rotation?: number; // degrees clockwise the player applies (0/90/180/270)
+  hasAudio?: boolean;
+  recordingId?: number; // recording journal id (Android)
+  streamingUploadId?: string; // set when recordVideo was called with streamUpload
+  storageAdjustment?: 'quality' | 'duration'; // set when low free space changed the recording (Android)
+  quality?: 'SD' | 'HD' | 'FHD' | 'UHD'; // tier actually recorded (Android)
+  qualityReason?: 'requested' | 'thermal' | 'hardwareLevel' | 'performanceClass' | 'storage'; // why it differs from the request
   camera?: 'front' | 'rear';
   overlays?: string[];
   contextType?: 'mission' | 'daily'; // echoed back context
@@ -22,12 +41,209 @@ export interface RecordVideoResult {
   promptId?: string; // echoed back prompt ID
 }
 
+export interface CompressVideoOptions {
+  path: string;
+  maxWidthOrHeight?: number; // default 1280
+  targetSizeMB?: number; // default 50
+}
+
+export interface CompressVideoResult {
+  path: string; // original path when skipped
+  originalSize: number;
+  size: number;
+  width: number;
+  height: number;
+  bitrate: number; // video bits per second chosen for the size budget
+  duration: number; // ms
+  skipped: boolean; // true when the input already fit both limits
+  targetMet: boolean; // false when the budget was too small for the minimum video bitrate or the output is still larger
+}
+
+export interface TrimVideoOptions {
+  path: string;
+  startMs?: number; // default 0; snapped back to the previous keyframe
+  endMs?: number; // default: end of the clip
+}
+
+export interface TrimVideoResult {
+  path: string; // original path when skipped
+  startMs: number; // actual start in the source, on a keyframe
+  endMs: number; // actual end in the source
+  duration: number; // ms
+  size: number;
+  skipped: boolean; // true when the range covers the whole clip
+}
+
+export interface StorageUsage {
+  usedBytes: number; // everything in the plugin's Movies directory
+  quotaBytes: number;
+  uploadedBytes: number; // recordings (and their copies) that can be evicted
+  recordingCount: number;
+  freeBytes: number; // free space on the volume
+  lastCleanup?: { at: number; evictedCount: number; freedBytes: number };
+}
+
+export interface CompressProgressEvent {
+  path: string;
+  progress: number; // 0..1
+}
+
+export interface StartUploadOptions {
+  path: string;
+  endpoint: string; // tus endpoint, e.g. `${SUPABASE_URL}/storage/v1/upload/resumable`
+  headers?: Record<string, string>; // e.g. authorization, x-upsert
+  metadata?: Record<string, string>; // sent as tus Upload-Metadata (bucketName, objectName, contentType...)
+  chunkSize?: number; // bytes per PATCH, default 6 MB (required by Supabase)
+}
+
+export interface StartUploadResult {
+  path: string;
+  uploadUrl: string;
+  size: number;
+}
+
+export interface FinishStreamingUploadResult {
+  id: string;
+  uploadUrl: string;
+  streamedBytes: number; // sent while the camera was recording
+  finishBytes: number; // sent after stop
+}
+
+export interface UploadProgressEvent {
+  path?: string; // startUpload
+  streamingUploadId?: string; // streamUpload
+  uploadedBytes: number;
+  totalBytes: number;
+  progress: number; // 0..1
+}
+
+export interface EnqueueUploadOptions extends StartUploadOptions {
+  wifiOnly?: boolean; // wait for an unmetered network
+  requiresCharging?: boolean;
+}
+
+export interface QueuedUpload {
+  id: string;
+  path: string;
+  state: 'queued' | 'running' | 'retrying' | 'completed' | 'failed' | 'cancelled';
+  uploadedBytes: number;
+  totalBytes: number;
+  progress: number; // 0..1
+  uploadUrl?: string; // once completed
+  error?: string; // last error, also while retrying
+  attempts: number;
+  wifiOnly: boolean;
+  requiresCharging: boolean;
+  createdAt: number; // epoch ms
+  updatedAt: number;
+}
+
+export interface PrewarmResult {
+  ready: boolean;
+  providerInitMs: number; // camera provider initialization time of the first prewarm
+  hasFrontCamera: boolean;
+  hasBackCamera: boolean;
+  lastTimeToPreviewMs?: number; // recordVideo call -> first preview frame, for the last session
+  lastPreviewPrewarmed?: boolean;
+}
+
+export interface CaptureSessionStats {
+  startedAt: number; // epoch ms
+  outcome: 'recorded' | 'cancelled' | 'error' | 'abandoned';
+  device: string;
+  sdkInt: number;
+  stages: Record<string, number>; // ms since the recordVideo call, monotonic clock
+  durations: {
+    timeToPreviewMs: number; // -1 when the stage was not reached
+    bindMs: number;
+    recordStartLatencyMs: number;
+    stopToFinalizeMs: number;
+    finalizeToResultMs: number;
+  };
+  recording: {
+    durationMs: number;
+    bytesRecorded: number;
+    outputSize: number;
+    bitrate: number; // bits per second, from the output size and recorded duration
+    statusEvents: number;
+  };
+  cameraSwitches: number;
+  lastSwitchMs?: number;
+  zoom?: {
+    requests: number; // pinch updates that changed the target
+    issued: number; // zoom requests sent to the camera, at most one per frame
+    coalesced: number; // updates folded into a later request instead of getting their own
+    cancelled: number;
+    failed: number;
+    stalled: number; // frames where a request was still pending after 250 ms
+  };
+  uiFrames?: {
+    frames: number; // UI frames drawn while recording (not while paused)
+    janky: number; // frames JankStats flagged as janky
+    jankyMs: number; // total duration of the janky frames
+    slowestMs: number;
+  };
+  quality?: string;
+  useCases?: string; // e.g. 'Preview+VideoCapture'
+  previewResolution?: string;
+  videoResolution?: string;
+  prewarmed?: boolean;
+  contextType?: string;
+  error?: string;
+}
+
+export interface PendingRecording {
+  id: number; // journal id, pass to clearVideoData({ id }) once handled
+  filePath: string;
+  thumbnailPath?: string;
+  contextType?: 'mission' | 'daily';
+  missionId?: string;
+  promptId?: string;
+  durationMs?: number;
+  size?: number; // bytes
+  createdAt: number; // epoch ms
+  recovered?: boolean; // rebuilt on app start from a take that was never finalized (Android)
+  sha256?: string; // hex SHA-256 of the file, once digested after finalize (Android)
+}
+
+export interface RecordingRecoveredEvent extends PendingRecording {
+  recovered: true;
+  rebuilt: boolean; // false when the file was complete and only never delivered; true = video-only rebuild
+}
+
+export interface VideoData extends Partial<PendingRecording> {
+  hasVideo: boolean;
+  pendingCount?: number;
+}
+
 export interface StoryCameraPlugin {
   recordVideo(options?: RecordVideoOptions): Promise<RecordVideoResult>;
-  getVideoData(): Promise<{ hasVideo: boolean; filePath?: string }>;
-  clearVideoData?(): Promise<void>;
+  getVideoData(): Promise<VideoData>;
+  clearVideoData?(options?: { id?: number }): Promise<void>;
+  listPendingRecordings?(options?: { limit?: number; cursor?: number }): Promise<{ recordings: PendingRecording[]; total: number; nextCursor?: number }>;
   dismissCamera?(): Promise<void>;
   ping?(): Promise<void>;
+  prewarm?(options?: Pick<RecordVideoOptions, 'quality' | 'qualityFallback' | 'maxWidthOrHeight' | 'videoBitrate'>): Promise<PrewarmResult>;
+  getPerformanceStats?(options?: { limit?: number; clear?: boolean }): Promise<{ sessions: CaptureSessionStats[] }>;
+  compressVideo?(options: CompressVideoOptions): Promise<CompressVideoResult>;
+  trimVideo?(options: TrimVideoOptions): Promise<TrimVideoResult>;
+  getMediaUrl?(options: { path: string }): Promise<{ url: string; size: number }>;
+  getContentHash?(options: { path: string }): Promise<{ path: string; sha256: string; size: number; cached: boolean }>;
+  getStorageUsage?(): Promise<StorageUsage>;
+  setStorageQuota?(options: { quotaMB: number }): Promise<StorageUsage>;
+  markUploaded?(options: { path: string }): Promise<void>;
+  deleteDerivedFile?(options: { path: string }): Promise<{ deleted: boolean }>; // compressed/trimmed copies only
+  startUpload?(options: StartUploadOptions): Promise<StartUploadResult>;
+  finishStreamingUpload?(options: { id: string }): Promise<FinishStreamingUploadResult>;
+  cancelUpload?(options: { path?: string; id?: string }): Promise<{ cancelled: boolean }>;
+  enqueueUpload?(options: EnqueueUploadOptions): Promise<{ id: string }>;
+  getUploadQueue?(options?: { finishedLimit?: number }): Promise<{ uploads: QueuedUpload[]; maxParallel: number }>;
+  setUploadAuth?(options: { headers?: Record<string, string> }): Promise<void>; // in memory only; empty clears it
+  addListener?(eventName: 'uploadProgress', listenerFunc: (event: UploadProgressEvent) => void): Promise<PluginListenerHandle>;
+  addListener?(eventName: 'compressProgress', listenerFunc: (event: CompressProgressEvent) => void): Promise<PluginListenerHandle>;
+  addListener?(eventName: 'uploadQueueProgress', listenerFunc: (event: QueuedUpload) => void): Promise<PluginListenerHandle>;
+  addListener?(eventName: 'uploadAuthRequired', listenerFunc: () => void): Promise<PluginListenerHandle>;
+  addListener?(eventName: 'recordingRecovered', listenerFunc: (event: RecordingRecoveredEvent) => void): Promise<PluginListenerHandle>;
 }
 
 const StoryCamera = registerPlugin<StoryCameraPlugin>('StoryCamera');
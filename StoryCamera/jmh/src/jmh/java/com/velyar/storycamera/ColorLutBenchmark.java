@@ -0,0 +1,65 @@
+package com.velyar.storycamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** CPU reference path of the color grading: table build, ARGB and NV21 frames. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ColorLutBenchmark {
+    @Param({ "1280x720", "1920x1080" })
+    public String resolution;
+
+    private ColorLut lut;
+    private int[] argbFrame;
+    private byte[] nv21Frame;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        lut = ColorLut.fromTransform(ColorLut.DEFAULT_SIZE, ColorFilters.transformFor(ColorFilters.FILM));
+        Random random = new Random(42);
+        argbFrame = new int[width * height];
+        for (int i = 0; i < argbFrame.length; i++) {
+            argbFrame[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        nv21Frame = new byte[width * height * 3 / 2];
+        random.nextBytes(nv21Frame);
+    }
+
+    @Benchmark
+    public ColorLut buildTable() {
+        return ColorLut.fromTransform(ColorLut.DEFAULT_SIZE, ColorFilters.transformFor(ColorFilters.SUNSET));
+    }
+
+    @Benchmark
+    public int[] gradeArgbFrame() {
+        lut.applyArgb(argbFrame, 0, argbFrame.length);
+        return argbFrame;
+    }
+
+    @Benchmark
+    public byte[] gradeNv21Frame() {
+        lut.applyNv21(nv21Frame, width, height);
+        return nv21Frame;
+    }
+
+    @Benchmark
+    public byte[] rgbaStrip() {
+        return lut.toRgbaStrip();
+    }
+}
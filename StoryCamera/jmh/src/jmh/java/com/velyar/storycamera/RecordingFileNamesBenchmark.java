@@ -0,0 +1,33 @@
+package com.velyar.storycamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** File naming from createVideoFile(), for each recording context. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecordingFileNamesBenchmark {
+    private final long now = System.currentTimeMillis();
+
+    @Benchmark
+    public String mission() {
+        return RecordingFileNames.fileNameFor("mission", "8d1f0c2e-5b7a-4c1e-9f3a-0d6b2a9e7c41", null, now);
+    }
+
+    @Benchmark
+    public String daily() {
+        return RecordingFileNames.fileNameFor("daily", null, "42", now);
+    }
+
+    @Benchmark
+    public String story() {
+        return RecordingFileNames.fileNameFor(null, null, null, now);
+    }
+}
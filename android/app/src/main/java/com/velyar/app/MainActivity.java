@@ -1,12 +1,18 @@
 package com.velyar.app;
 
+import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
+import android.webkit.WebView;
 import com.getcapacitor.BridgeActivity;
+import com.getcapacitor.WebViewListener;
 
 public class MainActivity extends BridgeActivity {
 
+    // Set by the macrobenchmark suite to open the story camera without tapping through the web UI
+    static final String EXTRA_BENCHMARK_RECORD = "benchmarkRecordVideo";
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -24,6 +30,37 @@ public class MainActivity extends BridgeActivity {
                 View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
             );
         }
+
+        handleBenchmarkIntent(getIntent());
+    }
+
+    private void handleBenchmarkIntent(Intent intent) {
+        // Only the benchmark build type enables this; release ignores the extra
+        if (intent == null || !intent.getBooleanExtra(EXTRA_BENCHMARK_RECORD, false)
+            || !getResources().getBoolean(R.bool.benchmark_hooks_enabled)) {
+            return;
+        }
+        final String recordVideo = "window.Capacitor.Plugins.StoryCamera.recordVideo({})";
+        if (getBridge().getWebView().getProgress() == 100) {
+            getBridge().eval(recordVideo, null);
+            return;
+        }
+        // Go through the same JS -> bridge -> plugin path as the app, once the page is up
+        getBridge().addWebViewListener(new WebViewListener() {
+            private boolean fired;
+
+            @Override
+            public void onPageLoaded(WebView webView) {
+                if (fired) {
+                    return;
+                }
+                fired = true;
+                // The bridge is iterating its listener list right now; remove this one after it is done
+                final WebViewListener listener = this;
+                webView.post(() -> getBridge().removeWebViewListener(listener));
+                getBridge().eval(recordVideo, null);
+            }
+        });
     }
 
 }
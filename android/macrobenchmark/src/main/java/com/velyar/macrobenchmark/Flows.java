@@ -0,0 +1,73 @@
+package com.velyar.macrobenchmark;
+
+import android.os.SystemClock;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import java.io.IOException;
+
+import kotlin.Unit;
+
+/**
+ * UI steps shared by the benchmarks. The story camera is opened through MainActivity's
+ * benchmark extra, which calls StoryCamera.recordVideo() from JS once the page has loaded.
+ */
+final class Flows {
+    static final String PACKAGE_NAME = "com.velyar.app";
+    static final int ITERATIONS = 10;
+
+    // Must match MainActivity.EXTRA_BENCHMARK_RECORD and the plugin's trace section names
+    static final String EXTRA_BENCHMARK_RECORD = "benchmarkRecordVideo";
+    static final String TRACE_RECORD_TO_PREVIEW = "StoryCamera.recordToPreview";
+    static final String TRACE_STOP_TO_RESULT = "StoryCamera.stopToResult";
+
+    private static final String RECORD_BUTTON = "Record";
+    private static final long UI_TIMEOUT_MS = 30_000;
+    // The preview streams shortly after the controls appear; give the trace section time to close
+    static final long PREVIEW_SETTLE_MS = 3_000;
+    static final long RECORDING_LENGTH_MS = 3_000;
+
+    private Flows() {}
+
+    static void grantCameraPermissions(UiDevice device) {
+        try {
+            device.executeShellCommand("pm grant " + PACKAGE_NAME + " android.permission.CAMERA");
+            device.executeShellCommand("pm grant " + PACKAGE_NAME + " android.permission.RECORD_AUDIO");
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grant camera permissions: " + e.getMessage(), e);
+        }
+    }
+
+    /** Launches MainActivity and waits until StoryCameraActivity shows its record button. */
+    static UiObject2 openStoryCamera(MacrobenchmarkScope scope) {
+        scope.startActivityAndWait(intent -> {
+            intent.putExtra(EXTRA_BENCHMARK_RECORD, true);
+            return Unit.INSTANCE;
+        });
+        return findRecordButton(scope.getDevice());
+    }
+
+    static UiObject2 findRecordButton(UiDevice device) {
+        UiObject2 recordButton = device.wait(Until.findObject(By.desc(RECORD_BUTTON)), UI_TIMEOUT_MS);
+        if (recordButton == null) {
+            throw new AssertionError("Story camera did not open within " + UI_TIMEOUT_MS + " ms");
+        }
+        return recordButton;
+    }
+
+    /** Waits until the camera activity has finished and the app is back on MainActivity. */
+    static void awaitResult(UiDevice device) {
+        if (!device.wait(Until.gone(By.desc(RECORD_BUTTON)), UI_TIMEOUT_MS)) {
+            throw new AssertionError("Story camera did not return a result within " + UI_TIMEOUT_MS + " ms");
+        }
+        device.waitForIdle();
+    }
+
+    static void sleep(long ms) {
+        SystemClock.sleep(ms);
+    }
+}
@@ -0,0 +1,45 @@
+package com.velyar.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import kotlin.Unit;
+
+/**
+ * Cold start of MainActivity: process start through the Capacitor bridge and the first
+ * drawn frame of the WebView host.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStart() {
+        benchmarkRule.measureRepeated(
+            Flows.PACKAGE_NAME,
+            Arrays.asList(new StartupTimingMetric(), new FrameTimingMetric()),
+            CompilationMode.DEFAULT,
+            StartupMode.COLD,
+            Flows.ITERATIONS,
+            scope -> {
+                scope.pressHome();
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                scope.startActivityAndWait();
+                return Unit.INSTANCE;
+            }
+        );
+    }
+}
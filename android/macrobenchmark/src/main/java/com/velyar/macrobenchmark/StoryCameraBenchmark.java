@@ -0,0 +1,90 @@
+package com.velyar.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import kotlin.Unit;
+
+/**
+ * The camera flows users feel, timed from the plugin's async trace sections:
+ * recordVideo() to the first preview frame, and the stop tap to handleOnActivityResult
+ * resolving the call. Needs a device or emulator with a camera; on the emulator use a
+ * virtual scene back camera (see README).
+ */
+@RunWith(AndroidJUnit4.class)
+public class StoryCameraBenchmark {
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Before
+    public void grantPermissions() {
+        Flows.grantCameraPermissions(UiDevice.getInstance(InstrumentationRegistry.getInstrumentation()));
+    }
+
+    @Test
+    public void recordToFirstPreviewFrame() {
+        benchmarkRule.measureRepeated(
+            Flows.PACKAGE_NAME,
+            Arrays.asList(
+                new TraceSectionMetric(Flows.TRACE_RECORD_TO_PREVIEW, TraceSectionMetric.Mode.First),
+                new FrameTimingMetric()
+            ),
+            CompilationMode.DEFAULT,
+            StartupMode.COLD,
+            Flows.ITERATIONS,
+            scope -> {
+                scope.pressHome();
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                Flows.openStoryCamera(scope);
+                Flows.sleep(Flows.PREVIEW_SETTLE_MS);
+                // Cancel out so the next iteration starts from a fresh process
+                scope.getDevice().pressBack();
+                return Unit.INSTANCE;
+            }
+        );
+    }
+
+    @Test
+    public void stopToResult() {
+        benchmarkRule.measureRepeated(
+            Flows.PACKAGE_NAME,
+            Arrays.asList(
+                new TraceSectionMetric(Flows.TRACE_STOP_TO_RESULT, TraceSectionMetric.Mode.First),
+                new FrameTimingMetric()
+            ),
+            CompilationMode.DEFAULT,
+            null,
+            Flows.ITERATIONS,
+            scope -> {
+                scope.killProcess();
+                UiObject2 recordButton = Flows.openStoryCamera(scope);
+                Flows.sleep(Flows.PREVIEW_SETTLE_MS);
+                recordButton.click();
+                Flows.sleep(Flows.RECORDING_LENGTH_MS);
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                // Same tap that starts recording also stops it
+                Flows.findRecordButton(scope.getDevice()).click();
+                Flows.awaitResult(scope.getDevice());
+                return Unit.INSTANCE;
+            }
+        );
+    }
+}
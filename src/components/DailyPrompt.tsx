@@ -8,6 +8,7 @@ import { Link } from "react-router-dom";
 import { supabase } from "@/integrations/supabase/client";
 import { useTranslation } from "react-i18next";
 import StoryCamera from "../../StoryCamera";
+import { Capacitor } from "@capacitor/core";
 import { useNavigate } from "react-router-dom";
 import { useToast } from "@/hooks/use-toast";
 import { getCountryFlag } from "@/utils/countryFlags";
@@ -24,6 +25,13 @@ export const DailyPrompt = () => {
   const navigate = useNavigate();
   const { toast } = useToast();
 
+  // Warm up the native camera while the card is on screen so recording opens without a black frame
+  useEffect(() => {
+    if (Capacitor.getPlatform() === 'android') {
+      StoryCamera.prewarm?.().catch(() => {});
+    }
+  }, []);
+
   useEffect(() => {
     const fetchPromptData = async () => {
       try {
@@ -1,3 +1,5 @@
+import { useEffect } from "react";
+import { Capacitor } from "@capacitor/core";
 
 import { MapPin, Users2, ArrowRight, Eye, Camera } from "lucide-react";
 import { Button } from "@/components/ui/button";
@@ -22,6 +24,13 @@ export const MissionCard = ({ id, title, description, participants, location, im
   const { t } = useTranslation();
   const navigate = useNavigate();
   const { toast } = useToast();
+
+  // Warm up the native camera while the card is on screen so recording opens without a black frame
+  useEffect(() => {
+    if (Capacitor.getPlatform() === 'android') {
+      StoryCamera.prewarm?.().catch(() => {});
+    }
+  }, []);
   
   const displayLocation = targetRegions && targetRegions.length > 0 
     ? `${targetRegions.slice(0, 2).join(', ')}${targetRegions.length > 2 ? '...' : ''}`
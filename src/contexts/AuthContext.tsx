@@ -1,6 +1,15 @@
 import { createContext, useContext, useEffect, useState } from 'react';
 import { User, Session } from '@supabase/supabase-js';
 import { supabase } from '@/integrations/supabase/client';
+import { Capacitor } from '@capacitor/core';
+import StoryCamera from '../../StoryCamera';
+
+// Queued native uploads store no token; they run with the one handed over here
+const syncUploadAuth = (session: Session | null) => {
+  if (Capacitor.getPlatform() !== 'android') return;
+  StoryCamera.setUploadAuth?.({ headers: session ? { authorization: `Bearer ${session.access_token}` } : {} })
+    ?.catch((e) => console.warn('[Auth] Could not update upload authorization:', e));
+};
 
 type AuthCtx = { 
   user: User | null; 
@@ -44,6 +53,7 @@ export function AuthProvider({ children }: AuthProviderProps) {
       setSession(session);
       setUser(session?.user ?? null);
       setLoading(false);
+      syncUploadAuth(session);
     });
 
     // Listen for auth changes
@@ -52,11 +62,20 @@ export function AuthProvider({ children }: AuthProviderProps) {
       setSession(session);
       setUser(session?.user ?? null);
       setLoading(false);
+      syncUploadAuth(session);
     });
 
+    // A queued upload found its token expired; the refresh comes back through onAuthStateChange
+    const uploadAuthListener = Capacitor.getPlatform() === 'android'
+      ? StoryCamera.addListener?.('uploadAuthRequired', () => {
+          supabase.auth.refreshSession().catch((e) => console.warn('[Auth] Session refresh for uploads failed:', e));
+        })
+      : undefined;
+
     return () => { 
       mounted = false; 
       subscription?.unsubscribe(); 
+      uploadAuthListener?.then((handle) => handle.remove());
     };
   }, []);
 
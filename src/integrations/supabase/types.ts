@@ -597,6 +597,7 @@ export type Database = {
           moderation_status: string | null
           removal_reason: string | null
           report_count: number | null
+          source_sha256: string | null
           thumbnail_url: string | null
           title: string | null
           updated_at: string
@@ -617,6 +618,7 @@ export type Database = {
           moderation_status?: string | null
           removal_reason?: string | null
           report_count?: number | null
+          source_sha256?: string | null
           thumbnail_url?: string | null
           title?: string | null
           updated_at?: string
@@ -637,6 +639,7 @@ export type Database = {
           moderation_status?: string | null
           removal_reason?: string | null
           report_count?: number | null
+          source_sha256?: string | null
           thumbnail_url?: string | null
           title?: string | null
           updated_at?: string
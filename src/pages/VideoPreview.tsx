@@ -7,10 +7,18 @@ import { PageLayout } from "@/components/PageLayout";
 import { X } from "lucide-react";
 import { supabase } from "@/integrations/supabase/client";
 import { compressVideo } from "@/utils/videoCompression";
-import { generateVideoThumbnail, uploadThumbnailToStorage } from "@/utils/videoThumbnail";
+import { generateVideoThumbnail, uploadThumbnailToStorage, uploadThumbnailBlobToStorage } from "@/utils/videoThumbnail";
 import { Capacitor as Cap } from "@capacitor/core";
 import StoryCamera from "../../StoryCamera";
 
+// Lower-case hex SHA-256 of a blob, or undefined where WebCrypto is not available. Reads the whole
+// blob into memory; natively compressed files are hashed by StoryCamera.getContentHash instead
+const sha256Hex = async (blob: Blob): Promise<string | undefined> => {
+  if (!globalThis.crypto?.subtle) return undefined;
+  const digest = await crypto.subtle.digest('SHA-256', await blob.arrayBuffer());
+  return Array.from(new Uint8Array(digest), (byte) => byte.toString(16).padStart(2, '0')).join('');
+};
+
 interface LocationState {
   filePath?: string;
   contentUri?: string;
@@ -40,11 +48,23 @@ const VideoPreviewShare: React.FC = () => {
   const promptId = state.promptId || qpPrompt;
   const missionId = state.missionId || qpMission;
 
+  // Android: stream from StoryCamera's range-capable loopback server so seeking only reads touched bytes
+  const [mediaUrl, setMediaUrl] = useState<string | null>(null);
+  useEffect(() => {
+    if (!filePath || Capacitor.getPlatform() !== 'android' || !StoryCamera.getMediaUrl) return;
+    let cancelled = false;
+    StoryCamera.getMediaUrl({ path: filePath })
+      .then(({ url }) => { if (!cancelled) setMediaUrl(url); })
+      .catch((e) => console.warn('📹 VideoPreview: Native media URL unavailable, using file src:', e));
+    return () => { cancelled = true; };
+  }, [filePath]);
+
   const playableSrc = useMemo(() => {
+    if (mediaUrl) return mediaUrl;
     if (contentUri) return contentUri;
     if (!filePath) return "";
     return Capacitor.convertFileSrc(filePath);
-  }, [filePath, contentUri]);
+  }, [filePath, contentUri, mediaUrl]);
 
   const [desc, setDesc] = useState("");
   const [isSharing, setIsSharing] = useState(false);
@@ -192,10 +212,37 @@ const VideoPreviewShare: React.FC = () => {
     }
   };
 
+  // Marks the recording handled and leaves the preview for the list it was posted to
+  const finishShare = async (effectiveMissionId: string | null, effectivePromptId: string | null) => {
+    // Clear video data after successful upload
+    try {
+      if (filePath) {
+        // Uploaded recordings may be evicted once the plugin's storage quota is reached
+        await StoryCamera.markUploaded?.({ path: filePath });
+      }
+      console.log('📹 VideoPreview: Clearing video data after successful share');
+      await StoryCamera.clearVideoData?.();
+      console.log('📹 VideoPreview: Video data cleared');
+    } catch (err) {
+      console.warn('📹 VideoPreview: Failed to clear video data:', err);
+    }
+
+    // Navigate after successful share (camera already auto-dismissed by plugin)
+    if (effectiveMissionId) {
+      navigate(`/video-list/mission/${effectiveMissionId}`, { replace: true });
+    } else if (effectivePromptId) {
+      navigate(`/video-list/daily-prompt/${effectivePromptId}`, { replace: true });
+    } else {
+      navigate('/', { replace: true });
+    }
+  };
+
   const handleShare = async () => {
     setIsSharing(true);
     setUploadProgress(0);
     setUploadStatus('Preparing video...');
+    // Native compression writes a new copy next to the recording; it is only needed for this attempt
+    let compressedCopy: string | undefined;
     
     try {
       if (!filePath) throw new Error('No video filePath');
@@ -240,8 +287,52 @@ const VideoPreviewShare: React.FC = () => {
       }
 
       setUploadProgress(10);
+      setUploadStatus('Authenticating user...');
+      const { data: { user } } = await supabase.auth.getUser();
+      if (!user) throw new Error('Not authenticated');
+
+      // A retry or double tap must not post the same recording twice; look it up by the recording's
+      // hash before spending time on compression and uploads
+      let sourceHash: string | undefined;
+      if (Capacitor.getPlatform() === 'android' && StoryCamera.getContentHash) {
+        try {
+          sourceHash = (await StoryCamera.getContentHash({ path: filePath })).sha256;
+        } catch (e) {
+          console.warn('[Share] Could not hash recording, skipping the duplicate check:', e);
+        }
+      }
+      if (sourceHash) {
+        const { data: existingPost } = await supabase
+          .from('videos')
+          .select('id')
+          .eq('user_id', user.id)
+          .eq('source_sha256', sourceHash)
+          .maybeSingle();
+        if (existingPost) {
+          setUploadProgress(100);
+          setUploadStatus('Already shared');
+          await finishShare(effectiveMissionId, effectivePromptId);
+          return;
+        }
+      }
+
+      // On Android, transcode natively (hardware codecs, single pass) before loading into the WebView
+      let sourcePath = filePath;
+      let nativelyCompressed = false;
+      if (Capacitor.getPlatform() === 'android' && StoryCamera.compressVideo) {
+        setUploadStatus('Compressing video...');
+        try {
+          const native = await StoryCamera.compressVideo({ path: filePath, maxWidthOrHeight: 1280, targetSizeMB: 50 });
+          sourcePath = native.path;
+          nativelyCompressed = true;
+          if (!native.skipped) compressedCopy = native.path;
+        } catch (e) {
+          console.warn('[Share] Native compression failed, falling back to browser compression. Error:', e);
+        }
+      }
+
       setUploadStatus('Loading video file...');
-      const src = Cap.convertFileSrc(filePath);
+      const src = Cap.convertFileSrc(sourcePath);
       const res = await fetch(src);
       const blob = await res.blob();
       const originalFile = new File([blob], 'story.mp4', { type: blob.type || 'video/mp4' });
@@ -253,7 +344,9 @@ const VideoPreviewShare: React.FC = () => {
       let compressed: File;
       const isIOS = Capacitor.getPlatform() === 'ios';
 
-      if (isIOS) {
+      if (nativelyCompressed) {
+        compressed = originalFile;
+      } else if (isIOS) {
         console.log('[Share] iOS detected - skipping browser compression (using native optimized video)');
         setUploadStatus('Preparing video...');
         compressed = originalFile;
@@ -268,16 +361,27 @@ const VideoPreviewShare: React.FC = () => {
       }
 
       setUploadProgress(40);
-      setUploadStatus('Generating thumbnail...');
-      const thumbBase64 = await generateVideoThumbnail(compressed, 1.5);
-      setUploadStatus('Uploading thumbnail...');
-      const thumbUrl = await uploadThumbnailToStorage(thumbBase64, 'thumb');
+      // Prefer the poster frame StoryCamera wrote at finalize; decode in the WebView only as a fallback
+      let nativeThumbPath: string | undefined;
+      try {
+        const data = await StoryCamera.getVideoData();
+        if (data?.filePath === filePath) nativeThumbPath = data.thumbnailPath;
+      } catch (e) {
+        console.warn('[Share] Could not read native thumbnail path:', e);
+      }
+      let thumbUrl: string;
+      if (nativeThumbPath) {
+        setUploadStatus('Uploading thumbnail...');
+        const thumbRes = await fetch(Cap.convertFileSrc(nativeThumbPath));
+        thumbUrl = await uploadThumbnailBlobToStorage(await thumbRes.blob(), 'thumb');
+      } else {
+        setUploadStatus('Generating thumbnail...');
+        const thumbBase64 = await generateVideoThumbnail(compressed, 1.5);
+        setUploadStatus('Uploading thumbnail...');
+        thumbUrl = await uploadThumbnailToStorage(thumbBase64, 'thumb');
+      }
 
       setUploadProgress(50);
-      setUploadStatus('Authenticating user...');
-      const { data: { user } } = await supabase.auth.getUser();
-      if (!user) throw new Error('Not authenticated');
-
       let locationStr: string | null = null;
       try {
         const { data: profile } = await supabase
@@ -295,19 +399,41 @@ const VideoPreviewShare: React.FC = () => {
         console.warn('[Share] Failed fetching profile location:', e);
       }
 
-      const videoPath = `${user.id}/videos/${Date.now()}_${compressed.name}`;
+      // Key the object by the hash of the bytes actually uploaded, so identical content is stored once.
+      // The native hasher streams the file; WebCrypto needs it in memory, so it only covers the browser fallback
+      let contentHash: string | undefined;
+      try {
+        contentHash = nativelyCompressed && StoryCamera.getContentHash
+          ? (await StoryCamera.getContentHash({ path: sourcePath })).sha256
+          : await sha256Hex(compressed);
+      } catch (e) {
+        console.warn('[Share] Could not hash video, using a timestamped path:', e);
+      }
+      const videoFolder = `${user.id}/videos`;
+      const videoPath = contentHash ? `${videoFolder}/${contentHash}.mp4` : `${videoFolder}/${Date.now()}_${compressed.name}`;
       setUploadProgress(70);
-      setUploadStatus('Uploading video...');
-      const { data: up, error: upErr } = await supabase.storage
-        .from('videos')
-        .upload(videoPath, compressed, { contentType: compressed.type || 'video/mp4', upsert: false });
-      if (upErr) throw upErr;
-      const { data: urlData } = supabase.storage.from('videos').getPublicUrl(up.path);
+      let alreadyUploaded = false;
+      if (contentHash) {
+        const { data: existing } = await supabase.storage.from('videos').list(videoFolder, { search: contentHash, limit: 1 });
+        alreadyUploaded = !!existing?.some((object) => object.name === `${contentHash}.mp4`);
+      }
+      if (alreadyUploaded) {
+        setUploadStatus('Video already uploaded');
+      } else {
+        setUploadStatus('Uploading video...');
+        const { error: upErr } = await supabase.storage
+          .from('videos')
+          .upload(videoPath, compressed, { contentType: compressed.type || 'video/mp4', upsert: false });
+        // A concurrent attempt may have stored the same content in the meantime
+        const duplicate = !!contentHash && !!upErr && /already exists|duplicate/i.test(upErr.message);
+        if (upErr && !duplicate) throw upErr;
+      }
+      const { data: urlData } = supabase.storage.from('videos').getPublicUrl(videoPath);
       const publicVideoUrl = urlData.publicUrl;
 
       setUploadProgress(90);
       setUploadStatus('Saving video data...');
-      const { error: insErr } = await supabase.from('videos').insert({
+      const post = {
         user_id: user.id,
         description: desc,
         video_url: publicVideoUrl,
@@ -316,33 +442,26 @@ const VideoPreviewShare: React.FC = () => {
         mission_id: effectiveMissionId,
         location: locationStr,
         is_public: true,
-        is_hidden: false
-      });
+        is_hidden: false,
+        source_sha256: sourceHash ?? null
+      };
+      // A concurrent attempt for the same recording may have posted it since the check above
+      const { error: insErr } = sourceHash
+        ? await supabase.from('videos').upsert(post, { onConflict: 'user_id,source_sha256', ignoreDuplicates: true })
+        : await supabase.from('videos').insert(post);
       if (insErr) throw insErr;
       setUploadProgress(100);
       setUploadStatus('Complete!');
 
-      // Clear video data after successful upload
-      try {
-        console.log('📹 VideoPreview: Clearing video data after successful share');
-        await StoryCamera.clearVideoData?.();
-        console.log('📹 VideoPreview: Video data cleared');
-      } catch (err) {
-        console.warn('📹 VideoPreview: Failed to clear video data:', err);
-      }
-
-      // Navigate after successful share (camera already auto-dismissed by plugin)
-      if (effectiveMissionId) {
-        navigate(`/video-list/mission/${effectiveMissionId}`, { replace: true });
-      } else if (effectivePromptId) {
-        navigate(`/video-list/daily-prompt/${effectivePromptId}`, { replace: true });
-      } else {
-        navigate('/', { replace: true });
-      }
+      await finishShare(effectiveMissionId, effectivePromptId);
     } catch (e) {
       console.error('[Share] Failed:', e);
       setUploadStatus('Upload failed: ' + ((e as any)?.message || String(e)));
     } finally {
+      if (compressedCopy) {
+        StoryCamera.deleteDerivedFile?.({ path: compressedCopy })
+          .catch((e) => console.warn('[Share] Could not delete compressed copy:', e));
+      }
       setIsSharing(false);
     }
   };
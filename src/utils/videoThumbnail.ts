@@ -122,20 +122,34 @@ export const generateVideoThumbnail = (
 export const uploadThumbnailToStorage = async (
   base64Thumbnail: string,
   fileName: string
+): Promise<string> => {
+  const base64Data = base64Thumbnail.split(',')[1];
+  
+  if (!base64Data) {
+    const error = new Error('Invalid base64 data');
+    console.error('Thumbnail upload failed:', error);
+    throw error;
+  }
+  
+  // More efficient base64 to blob conversion
+  const response = await fetch(base64Thumbnail);
+  const blob = await response.blob();
+  return uploadThumbnailBlobToStorage(blob, fileName);
+};
+
+/**
+ * Uploads an already-encoded JPEG thumbnail (e.g. the one written natively by StoryCamera)
+ * @param blob - JPEG image data
+ * @param fileName - Name for the thumbnail file
+ * @returns Promise<string> - Public URL of uploaded thumbnail
+ */
+export const uploadThumbnailBlobToStorage = async (
+  blob: Blob,
+  fileName: string
 ): Promise<string> => {
   const { supabase } = await import('@/integrations/supabase/client');
   
   try {
-    const base64Data = base64Thumbnail.split(',')[1];
-    
-    if (!base64Data) {
-      throw new Error('Invalid base64 data');
-    }
-    
-    // More efficient base64 to blob conversion
-    const response = await fetch(base64Thumbnail);
-    const blob = await response.blob();
-    
     // Get user ID for proper folder structure
     const { data: { user } } = await supabase.auth.getUser();
     if (!user) {
@@ -166,4 +180,4 @@ export const uploadThumbnailToStorage = async (
     console.error('Error details:', JSON.stringify(error, null, 2));
     throw error;
   }
-};
\ No newline at end of file
+};
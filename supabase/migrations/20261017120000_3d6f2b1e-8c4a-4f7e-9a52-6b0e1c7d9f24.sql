@@ -0,0 +1,6 @@
+-- SHA-256 of the recording a post was made from, so sharing the same recording twice
+-- (a retry or a double tap) finds the first post instead of creating another one
+ALTER TABLE public.videos ADD COLUMN IF NOT EXISTS source_sha256 text;
+
+CREATE UNIQUE INDEX IF NOT EXISTS videos_user_source_sha256_key
+  ON public.videos (user_id, source_sha256);